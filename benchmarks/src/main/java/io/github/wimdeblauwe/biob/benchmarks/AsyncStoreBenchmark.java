@@ -0,0 +1,96 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.storage.localfilesystem.AsyncLocalFileSystemBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.localfilesystem.LocalFileSystemBinaryObjectStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares storing a batch of binary objects with {@link AsyncLocalFileSystemBinaryObjectStorage} to storing them
+ * with the blocking {@link LocalFileSystemBinaryObjectStorage} on the same small thread pool. The score is the time
+ * per stored binary object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AsyncStoreBenchmark {
+    private static final int BATCH_SIZE = 64;
+    private static final int POOL_SIZE = 4;
+
+    @Param({"65536", "1048576"})
+    private long objectSize;
+
+    private Path directory;
+    private ExecutorService executorService;
+    private LocalFileSystemBinaryObjectStorage blockingStorage;
+    private AsyncLocalFileSystemBinaryObjectStorage asyncStorage;
+    private BinaryObjectMetadata metadata;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("biob-benchmark");
+        executorService = Executors.newFixedThreadPool(POOL_SIZE);
+        blockingStorage = new LocalFileSystemBinaryObjectStorage(directory.resolve("blocking"));
+        asyncStorage = new AsyncLocalFileSystemBinaryObjectStorage(
+                new LocalFileSystemBinaryObjectStorage(directory.resolve("async")), executorService);
+        metadata = new BinaryObjectMetadata(objectSize, "benchmark.bin", "application/octet-stream");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+        executorService.awaitTermination(1, TimeUnit.MINUTES);
+        Directories.delete(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void blockingStore() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String filePath = filePath(i);
+            futures[i] = CompletableFuture.runAsync(
+                    () -> blockingStorage.store(filePath, metadata, new GeneratedInputStream(objectSize)),
+                    executorService);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void asyncStore() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            futures[i] = asyncStorage.store(filePath(i), metadata, new GeneratedInputStream(objectSize));
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private static String filePath(int index) {
+        return "objects/" + index;
+    }
+}
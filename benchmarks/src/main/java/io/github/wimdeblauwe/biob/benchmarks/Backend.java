@@ -0,0 +1,90 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.contentaddressable.ContentAddressableBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.localfilesystem.LocalFileSystemBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.localfilesystem.ShardingStrategy;
+import io.github.wimdeblauwe.biob.storage.offheap.OffHeapBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.segment.SegmentBinaryObjectStorage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The storage implementations that can be benchmarked, selected with the {@code backend} parameter.
+ */
+public enum Backend {
+    IN_MEMORY {
+        @Override
+        BinaryObjectStorage create(Path directory) {
+            return new InMemoryBinaryObjectStorage();
+        }
+
+        @Override
+        boolean keepsBytesInMemory() {
+            return true;
+        }
+    },
+    OFF_HEAP {
+        @Override
+        BinaryObjectStorage create(Path directory) {
+            return new OffHeapBinaryObjectStorage();
+        }
+
+        @Override
+        boolean keepsBytesInMemory() {
+            return true;
+        }
+    },
+    LOCAL_FILE_SYSTEM {
+        @Override
+        BinaryObjectStorage create(Path directory) {
+            return new LocalFileSystemBinaryObjectStorage(directory);
+        }
+    },
+    /**
+     * Spreads the files over 65536 directories, two levels of two hex characters.
+     */
+    LOCAL_FILE_SYSTEM_SHARDED {
+        @Override
+        BinaryObjectStorage create(Path directory) {
+            return LocalFileSystemBinaryObjectStorage.builder(directory)
+                                                     .shardingStrategy(ShardingStrategy.hashPrefix(2, 2))
+                                                     .build();
+        }
+    },
+    SEGMENT {
+        @Override
+        BinaryObjectStorage create(Path directory) {
+            return SegmentBinaryObjectStorage.builder(directory)
+                                             .maximumObjectSize(Integer.MAX_VALUE - 8)
+                                             .build();
+        }
+    },
+    CONTENT_ADDRESSABLE {
+        @Override
+        BinaryObjectStorage create(Path directory) {
+            return new ContentAddressableBinaryObjectStorage(directory);
+        }
+    };
+
+    /**
+     * @param directory an empty directory that the storage can use
+     */
+    abstract BinaryObjectStorage create(Path directory);
+
+    /**
+     * @return whether the storage keeps all bytes in memory, so its size is limited by the heap or direct memory
+     */
+    boolean keepsBytesInMemory() {
+        return false;
+    }
+
+    static void close(BinaryObjectStorage storage) throws IOException {
+        if (storage instanceof Closeable) {
+            ((Closeable) storage).close();
+        }
+    }
+}
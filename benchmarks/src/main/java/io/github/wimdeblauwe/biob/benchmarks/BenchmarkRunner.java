@@ -0,0 +1,43 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs all benchmarks once for each thread count and writes the results as JSON to
+ * {@code target/jmh-results-<threads>-threads.json}, so runs of different versions can be compared.
+ * <p>
+ * The thread counts are taken from the {@code biob.threads} system property (default {@code 1,4,16}). When
+ * arguments are given, they are passed to the regular JMH command line instead, e.g.
+ * {@code -p backend=SEGMENT -p objectSize=1024 -rf json StorageBenchmark}.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        if (args.length > 0) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        File resultDirectory = new File("target");
+        if (!resultDirectory.isDirectory() && !resultDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + resultDirectory);
+        }
+        for (String threads : System.getProperty("biob.threads", "1,4,16").split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark")
+                    .threads(Integer.parseInt(threads.trim()))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(resultDirectory, "jmh-results-" + threads.trim() + "-threads.json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
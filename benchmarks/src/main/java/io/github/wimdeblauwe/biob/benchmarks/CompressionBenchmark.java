@@ -0,0 +1,132 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.compressing.CompressingBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.compressing.CompressionLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CompressingBinaryObjectStorage} for each {@link CompressionLevel} on compressible text and on
+ * incompressible random bytes, to compare the time spent compressing with the time saved writing fewer bytes.
+ * {@link CompressionLevel#NONE} is the baseline: it stores the bytes as they are, behind the header byte.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CompressionBenchmark {
+    private static final int OBJECT_COUNT = 64;
+
+    @Param({"IN_MEMORY", "LOCAL_FILE_SYSTEM"})
+    private Backend backend;
+
+    @Param({"NONE", "FAST", "DEFAULT", "BEST"})
+    private CompressionLevel level;
+
+    @Param({"TEXT", "RANDOM"})
+    private Content content;
+
+    @Param({"65536", "1048576"})
+    private int objectSize;
+
+    private Path directory;
+    private BinaryObjectStorage delegate;
+    private BinaryObjectStorage storage;
+    private BinaryObjectMetadata metadata;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("biob-benchmark");
+        delegate = backend.create(directory);
+        storage = new CompressingBinaryObjectStorage(delegate, objectMetadata -> level);
+        metadata = new BinaryObjectMetadata(objectSize, "benchmark.csv", "text/csv");
+        bytes = content.create(objectSize);
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            storage.store(filePath(i), metadata, new ByteArrayInputStream(bytes));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Backend.close(delegate);
+        Directories.delete(directory);
+    }
+
+    @Benchmark
+    public void store() {
+        storage.store(randomFilePath(), metadata, new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public long retrieve() throws IOException {
+        BinaryObject binaryObject = storage.retrieve(randomFilePath()).orElseThrow(IllegalStateException::new);
+        return StorageBenchmark.readFully(binaryObject);
+    }
+
+    public enum Content {
+        /**
+         * Rows of comma separated values, which compress well.
+         */
+        TEXT {
+            @Override
+            byte[] create(int size) {
+                StringBuilder builder = new StringBuilder(size + 64);
+                Random random = new Random(42);
+                for (int row = 0; builder.length() < size; row++) {
+                    builder.append(row).append(",customer-").append(random.nextInt(1000))
+                           .append(",").append(random.nextInt(100_000) / 100.0).append(",EUR\n");
+                }
+                byte[] text = new byte[size];
+                System.arraycopy(builder.toString().getBytes(StandardCharsets.US_ASCII), 0, text, 0, size);
+                return text;
+            }
+        },
+        /**
+         * Random bytes, which do not compress at all, like images or already compressed files.
+         */
+        RANDOM {
+            @Override
+            byte[] create(int size) {
+                byte[] random = new byte[size];
+                new Random(42).nextBytes(random);
+                return random;
+            }
+        };
+
+        abstract byte[] create(int size);
+    }
+
+    private String randomFilePath() {
+        return filePath(ThreadLocalRandom.current().nextInt(OBJECT_COUNT));
+    }
+
+    private static String filePath(int index) {
+        return "objects/" + index;
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} of a given number of bytes that are generated while reading, so large binary objects can be
+ * stored without holding their bytes in memory first.
+ */
+final class GeneratedInputStream extends InputStream {
+    private final long size;
+    private long position;
+
+    GeneratedInputStream(long size) {
+        this.size = size;
+    }
+
+    @Override
+    public int read() {
+        if (position >= size) {
+            return -1;
+        }
+        return (int) (position++ & 0x7F);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (position >= size) {
+            return -1;
+        }
+        int count = (int) Math.min(length, size - position);
+        for (int i = 0; i < count; i++) {
+            bytes[offset + i] = (byte) ((position + i) & 0x7F);
+        }
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the lookup latency of the file system storages grows with the number of binary objects, with all
+ * files in a single directory and with the files spread over hash prefix directories.
+ * <p>
+ * All binary objects share the same directory in their path, the layout that makes a flat directory grow. The
+ * binary objects are small, so the time to find the file dominates. Larger counts take long to set up; add them
+ * with e.g. {@code -p objectCount=1000000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LookupBenchmark {
+    private static final int OBJECT_SIZE = 16;
+
+    @Param({"LOCAL_FILE_SYSTEM", "LOCAL_FILE_SYSTEM_SHARDED"})
+    private Backend backend;
+
+    @Param({"1000", "10000", "100000"})
+    private int objectCount;
+
+    private Path directory;
+    private BinaryObjectStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("biob-benchmark");
+        storage = backend.create(directory);
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(OBJECT_SIZE, "lookup.bin",
+                                                                 "application/octet-stream");
+        for (int i = 0; i < objectCount; i++) {
+            storage.store(filePath(i), metadata, new GeneratedInputStream(OBJECT_SIZE));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Backend.close(storage);
+        Directories.delete(directory);
+    }
+
+    @Benchmark
+    public Optional<BinaryObjectMetadata> getMetadata() {
+        return storage.getMetadata(randomFilePath());
+    }
+
+    @Benchmark
+    public boolean hasBinaryObject() {
+        return storage.hasBinaryObject(randomFilePath());
+    }
+
+    @Benchmark
+    public boolean hasBinaryObjectMissing() {
+        return storage.hasBinaryObject(filePath(objectCount + ThreadLocalRandom.current().nextInt(objectCount)));
+    }
+
+    @Benchmark
+    public long retrieve() throws IOException {
+        BinaryObject binaryObject = storage.retrieve(randomFilePath()).orElseThrow(IllegalStateException::new);
+        return StorageBenchmark.readFully(binaryObject);
+    }
+
+    private String randomFilePath() {
+        return filePath(ThreadLocalRandom.current().nextInt(objectCount));
+    }
+
+    private static String filePath(int index) {
+        return "objects/" + index;
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectRepository;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the overhead of {@link BinaryObjectRepository} (generating the id and mapping it to a file path) by
+ * comparing its operations to the same operations directly on the storage. The objects are small, so the
+ * overhead is not hidden by the cost of copying bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+    private static final int OBJECT_COUNT = 1024;
+    private static final String USER = "user-1";
+
+    @Param({"IN_MEMORY", "LOCAL_FILE_SYSTEM"})
+    private Backend backend;
+
+    private Path directory;
+    private BinaryObjectStorage storage;
+    private BinaryObjectRepository<String, UUID> repository;
+    private UUID[] ids;
+    private final AtomicLong idCounter = new AtomicLong();
+    private BinaryObjectMetadata metadata;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("biob-benchmark");
+        storage = backend.create(directory);
+        ids = new UUID[OBJECT_COUNT];
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            ids[i] = UUID.randomUUID();
+        }
+        // Cycle through a fixed set of ids, so storing overwrites existing binary objects
+        repository = new BinaryObjectRepository<>(() -> ids[(int) (idCounter.getAndIncrement() % OBJECT_COUNT)],
+                                                  RepositoryBenchmark::toFilePath,
+                                                  storage);
+        metadata = new BinaryObjectMetadata(1024, "benchmark.bin", "application/octet-stream");
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            repository.store(USER, metadata, new GeneratedInputStream(1024));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Backend.close(storage);
+        Directories.delete(directory);
+    }
+
+    @Benchmark
+    public UUID storeViaRepository() {
+        return repository.store(USER, metadata, new GeneratedInputStream(1024));
+    }
+
+    @Benchmark
+    public void storeDirectly() {
+        storage.store(toFilePath(USER, randomId()), metadata, new GeneratedInputStream(1024));
+    }
+
+    @Benchmark
+    public long retrieveViaRepository() throws IOException {
+        return StorageBenchmark.readFully(repository.retrieve(USER, randomId()).orElseThrow(IllegalStateException::new));
+    }
+
+    @Benchmark
+    public long retrieveDirectly() throws IOException {
+        return StorageBenchmark.readFully(storage.retrieve(toFilePath(USER, randomId()))
+                                                 .orElseThrow(IllegalStateException::new));
+    }
+
+    @Benchmark
+    public Optional<BinaryObjectMetadata> getMetadataViaRepository() {
+        return repository.getMetadata(USER, randomId());
+    }
+
+    @Benchmark
+    public Optional<BinaryObjectMetadata> getMetadataDirectly() {
+        return storage.getMetadata(toFilePath(USER, randomId()));
+    }
+
+    @Benchmark
+    public boolean hasBinaryObjectViaRepository() {
+        return repository.hasBinaryObject(USER, randomId());
+    }
+
+    @Benchmark
+    public boolean hasBinaryObjectDirectly() {
+        return storage.hasBinaryObject(toFilePath(USER, randomId()));
+    }
+
+    private UUID randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(OBJECT_COUNT)];
+    }
+
+    private static String toFilePath(String user, UUID id) {
+        return "users/" + user + "/" + id;
+    }
+}
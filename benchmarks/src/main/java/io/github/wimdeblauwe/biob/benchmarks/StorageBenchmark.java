@@ -0,0 +1,159 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the basic operations of each {@link Backend} for object sizes from 1 KB to 1 GB.
+ * <p>
+ * A fixed set of binary objects is stored up front. {@link #store()} overwrites one of them, so the amount of data
+ * stays the same during the benchmark. The number of binary objects is lowered for large sizes to keep the total
+ * below {@link #MAXIMUM_TOTAL_BYTES}.
+ * <p>
+ * Backends that keep the bytes in memory also hold the binary object that each thread is storing, so for those the
+ * stored binary objects and one per thread should fit in {@link #MAXIMUM_IN_MEMORY_BYTES}, well below the 6 GB of
+ * the forked JVM. Combinations that do not fit even with a single stored binary object, like 1 GB objects with 4
+ * threads, fail in their setup instead of running out of memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "-XX:MaxDirectMemorySize=6g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StorageBenchmark {
+    private static final int MAXIMUM_OBJECT_COUNT = 1024;
+    private static final long MAXIMUM_TOTAL_BYTES = 1024L * 1024 * 1024;
+    private static final long MAXIMUM_IN_MEMORY_BYTES = 2L * 1024 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"IN_MEMORY", "OFF_HEAP", "LOCAL_FILE_SYSTEM"})
+    private Backend backend;
+
+    @Param({"1024", "65536", "1048576", "67108864", "1073741824"})
+    private long objectSize;
+
+    private Path directory;
+    private BinaryObjectStorage storage;
+    private BinaryObjectMetadata metadata;
+    private int objectCount;
+    private final AtomicLong deleteCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) throws IOException {
+        objectCount = (int) Math.max(1, Math.min(MAXIMUM_OBJECT_COUNT, MAXIMUM_TOTAL_BYTES / objectSize));
+        if (backend.keepsBytesInMemory()) {
+            objectCount = (int) Math.min(objectCount, MAXIMUM_IN_MEMORY_BYTES / objectSize - params.getThreads());
+            if (objectCount < 1) {
+                throw new IllegalStateException("Objects of " + objectSize + " bytes with " + params.getThreads()
+                                                        + " threads do not fit in memory for " + backend);
+            }
+        }
+        directory = Files.createTempDirectory("biob-benchmark");
+        storage = backend.create(directory);
+        metadata = new BinaryObjectMetadata(objectSize, "benchmark.bin", "application/octet-stream");
+        for (int i = 0; i < objectCount; i++) {
+            storage.store(filePath(i), metadata, new GeneratedInputStream(objectSize));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Backend.close(storage);
+        Directories.delete(directory);
+    }
+
+    @Benchmark
+    public void store() {
+        storage.store(randomFilePath(), metadata, new GeneratedInputStream(objectSize));
+    }
+
+    @Benchmark
+    public long retrieve() throws IOException {
+        Optional<BinaryObject> binaryObject = storage.retrieve(randomFilePath());
+        return readFully(binaryObject.orElseThrow(IllegalStateException::new));
+    }
+
+    @Benchmark
+    public Optional<BinaryObjectMetadata> getMetadata() {
+        return storage.getMetadata(randomFilePath());
+    }
+
+    @Benchmark
+    public boolean hasBinaryObject() {
+        return storage.hasBinaryObject(randomFilePath());
+    }
+
+    @Benchmark
+    public boolean hasBinaryObjectMissing() {
+        return storage.hasBinaryObject("missing/" + ThreadLocalRandom.current().nextInt(objectCount));
+    }
+
+    /**
+     * Deletes a binary object that is stored before the iteration, outside of the measured time. Each iteration
+     * deletes a single binary object, as a setup per invocation would distort the timing of such a short
+     * operation.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 50)
+    public void delete(DeleteState state) {
+        storage.delete(state.filePath);
+    }
+
+    @State(Scope.Thread)
+    public static class DeleteState {
+        private String filePath;
+
+        @Setup(Level.Iteration)
+        public void store(StorageBenchmark benchmark) {
+            filePath = "deleted/" + benchmark.deleteCounter.incrementAndGet();
+            benchmark.storage.store(filePath, benchmark.metadata, new GeneratedInputStream(benchmark.objectSize));
+        }
+    }
+
+    static long readFully(BinaryObject binaryObject) throws IOException {
+        long count = 0;
+        try (InputStream inputStream = binaryObject.getInputStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                count += read;
+            }
+        }
+        return count;
+    }
+
+    private String randomFilePath() {
+        return filePath(ThreadLocalRandom.current().nextInt(objectCount));
+    }
+
+    private static String filePath(int index) {
+        return "objects/" + index;
+    }
+}
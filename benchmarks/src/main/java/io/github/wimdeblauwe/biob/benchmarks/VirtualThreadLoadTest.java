@@ -0,0 +1,110 @@
+package io.github.wimdeblauwe.biob.benchmarks;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test where each client is a virtual thread that stores and retrieves its own binary objects, to check that
+ * the storages keep up with a large number of concurrent clients. All clients start at the same time.
+ * <p>
+ * Virtual threads need Java 21 or later, while the library targets Java 8, so the executor is looked up by
+ * reflection. Run it with {@code -Djdk.tracePinnedThreads=full} to have the JVM print a stack trace whenever a
+ * virtual thread pins its carrier thread.
+ * <p>
+ * Configured with system properties: {@code biob.backends} (default {@code IN_MEMORY,LOCAL_FILE_SYSTEM}),
+ * {@code biob.clients} (default 10000), {@code biob.operations} per client (default 10) and
+ * {@code biob.objectSize} in bytes (default 16384).
+ */
+public final class VirtualThreadLoadTest {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private VirtualThreadLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger("biob.clients", 10_000);
+        int operations = Integer.getInteger("biob.operations", 10);
+        long objectSize = Long.getLong("biob.objectSize", 16 * 1024);
+        for (String backend : System.getProperty("biob.backends", "IN_MEMORY,LOCAL_FILE_SYSTEM").split(",")) {
+            run(Backend.valueOf(backend.trim()), clients, operations, objectSize);
+        }
+    }
+
+    private static void run(Backend backend, int clients, int operations, long objectSize) throws Exception {
+        Path directory = Files.createTempDirectory("biob-load-test");
+        BinaryObjectStorage storage = backend.create(directory);
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(objectSize, "load.bin", "application/octet-stream");
+        ExecutorService executorService = newVirtualThreadPerTaskExecutor();
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>(clients);
+            for (int client = 0; client < clients; client++) {
+                String prefix = "clients/" + client + "/";
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    for (int operation = 0; operation < operations; operation++) {
+                        String filePath = prefix + operation;
+                        storage.store(filePath, metadata, new GeneratedInputStream(objectSize));
+                        readFully(storage.retrieve(filePath), filePath);
+                    }
+                    return null;
+                }));
+            }
+
+            long startNanos = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            long operationCount = 2L * clients * operations;
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            System.out.printf("%s: %d clients, %d operations in %.2f s: %.0f operations/s, %.1f MB/s%n",
+                              backend, clients, operationCount, seconds, operationCount / seconds,
+                              operationCount * objectSize / seconds / (1024 * 1024));
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+            Backend.close(storage);
+            Directories.delete(directory);
+        }
+    }
+
+    private static void readFully(Optional<BinaryObject> binaryObject, String filePath) throws IOException {
+        try (InputStream inputStream = binaryObject
+                .orElseThrow(() -> new IllegalStateException("Binary object " + filePath + " was not stored"))
+                .getInputStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (inputStream.read(buffer) != -1) {
+                // Discard the bytes, only the time to read them counts
+            }
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+        Method method;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, but running on "
+                                                    + System.getProperty("java.version"), e);
+        }
+        return (ExecutorService) method.invoke(null);
+    }
+}
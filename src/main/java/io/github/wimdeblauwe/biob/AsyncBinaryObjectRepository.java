@@ -0,0 +1,44 @@
+package io.github.wimdeblauwe.biob;
+
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link BinaryObjectRepository} that uses an {@link AsyncBinaryObjectStorage}.
+ */
+public class AsyncBinaryObjectRepository<E, T> {
+    private final BinaryObjectIdSupplier<T> binaryObjectIdSupplier;
+    private final BinaryObjectIdToFilePathFunction<E, T> binaryObjectIdToFilePathFunction;
+    private final AsyncBinaryObjectStorage storage;
+
+    public AsyncBinaryObjectRepository(BinaryObjectIdSupplier<T> binaryObjectIdSupplier,
+                                       BinaryObjectIdToFilePathFunction<E, T> binaryObjectIdToFilePathFunction,
+                                       AsyncBinaryObjectStorage storage) {
+        this.binaryObjectIdSupplier = binaryObjectIdSupplier;
+        this.binaryObjectIdToFilePathFunction = binaryObjectIdToFilePathFunction;
+        this.storage = storage;
+    }
+
+    public CompletableFuture<T> store(E entity, BinaryObjectMetadata metadata, InputStream inputStream) {
+        T t = binaryObjectIdSupplier.get();
+        return storage.store(binaryObjectIdToFilePathFunction.apply(entity, t), metadata, inputStream)
+                      .thenApply(ignored -> t);
+    }
+
+    public CompletableFuture<Optional<BinaryObject>> retrieve(E entity, T id) {
+        return storage.retrieve(binaryObjectIdToFilePathFunction.apply(entity, id));
+    }
+
+    public CompletableFuture<Optional<BinaryObjectMetadata>> getMetadata(E entity, T id) {
+        return storage.getMetadata(binaryObjectIdToFilePathFunction.apply(entity, id));
+    }
+
+    public CompletableFuture<Boolean> hasBinaryObject(E entity, T id) {
+        return storage.hasBinaryObject(binaryObjectIdToFilePathFunction.apply(entity, id));
+    }
+
+    public CompletableFuture<Void> delete(E entity, T id) {
+        return storage.delete(binaryObjectIdToFilePathFunction.apply(entity, id));
+    }
+}
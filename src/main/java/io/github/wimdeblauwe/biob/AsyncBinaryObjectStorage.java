@@ -0,0 +1,24 @@
+package io.github.wimdeblauwe.biob;
+
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link BinaryObjectStorage}. All methods return immediately and
+ * complete the returned future when the operation is done. Failures complete the future exceptionally,
+ * typically with a {@link BinaryObjectStorageException}.
+ *
+ * @see AsyncBinaryObjectStorageAdapter to use any {@link BinaryObjectStorage} asynchronously
+ */
+public interface AsyncBinaryObjectStorage {
+    CompletableFuture<Void> store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream);
+
+    CompletableFuture<Optional<BinaryObject>> retrieve(String filePath);
+
+    CompletableFuture<Optional<BinaryObjectMetadata>> getMetadata(String filePath);
+
+    CompletableFuture<Boolean> hasBinaryObject(String filePath);
+
+    CompletableFuture<Void> delete(String filePath);
+}
@@ -0,0 +1,46 @@
+package io.github.wimdeblauwe.biob;
+
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncBinaryObjectStorage} that runs the operations of a blocking {@link BinaryObjectStorage}
+ * on an {@link Executor}.
+ */
+public class AsyncBinaryObjectStorageAdapter implements AsyncBinaryObjectStorage {
+    private final BinaryObjectStorage storage;
+    private final Executor executor;
+
+    public AsyncBinaryObjectStorageAdapter(BinaryObjectStorage storage, Executor executor) {
+        this.storage = Objects.requireNonNull(storage, "storage should not be null");
+        this.executor = Objects.requireNonNull(executor, "executor should not be null");
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        return CompletableFuture.runAsync(() -> storage.store(filePath, metadata, inputStream), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BinaryObject>> retrieve(String filePath) {
+        return CompletableFuture.supplyAsync(() -> storage.retrieve(filePath), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BinaryObjectMetadata>> getMetadata(String filePath) {
+        return CompletableFuture.supplyAsync(() -> storage.getMetadata(filePath), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasBinaryObject(String filePath) {
+        return CompletableFuture.supplyAsync(() -> storage.hasBinaryObject(filePath), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String filePath) {
+        return CompletableFuture.runAsync(() -> storage.delete(filePath), executor);
+    }
+}
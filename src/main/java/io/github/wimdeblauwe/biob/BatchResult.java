@@ -0,0 +1,92 @@
+package io.github.wimdeblauwe.biob;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+/**
+ * The result of a single item of a batch operation: either the value of the operation or the exception
+ * that made the operation fail for that item.
+ *
+ * @param <T> the type of the value
+ */
+public final class BatchResult<T> {
+    private final T value;
+    private final RuntimeException failure;
+
+    private BatchResult(T value, RuntimeException failure) {
+        this.value = value;
+        this.failure = failure;
+    }
+
+    public static <T> BatchResult<T> success(T value) {
+        return new BatchResult<>(value, null);
+    }
+
+    public static <T> BatchResult<T> failure(RuntimeException failure) {
+        return new BatchResult<>(null, Objects.requireNonNull(failure, "failure should not be null"));
+    }
+
+    /**
+     * Applies the operation to each key in turn and collects the results in the iteration order of the keys.
+     * A failing key does not stop the remaining keys from being processed. A key that occurs more than once is
+     * only processed the first time, as its result would replace the earlier one.
+     */
+    public static <K, T> Map<K, BatchResult<T>> collect(Collection<K> keys, Function<K, T> operation) {
+        Map<K, BatchResult<T>> results = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (!results.containsKey(key)) {
+                results.put(key, of(key, operation));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Applies the operation to the key and captures its outcome.
+     */
+    public static <K, T> BatchResult<T> of(K key, Function<K, T> operation) {
+        try {
+            return success(operation.apply(key));
+        } catch (RuntimeException e) {
+            return failure(e);
+        }
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * @return the value of the operation
+     * @throws NoSuchElementException when the operation failed
+     */
+    public T getValue() {
+        if (failure != null) {
+            throw new NoSuchElementException("The operation failed: " + failure.getMessage());
+        }
+        return value;
+    }
+
+    /**
+     * @return the exception that made the operation fail, or {@code null} when it succeeded
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", BatchResult.class.getSimpleName() + "[", "]");
+        if (isSuccess()) {
+            joiner.add("value=" + value);
+        } else {
+            joiner.add("failure=" + failure);
+        }
+        return joiner.toString();
+    }
+}
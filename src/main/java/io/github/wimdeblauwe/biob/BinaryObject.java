@@ -1,6 +1,12 @@
 package io.github.wimdeblauwe.biob;
 
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.StringJoiner;
 
 public class BinaryObject {
@@ -20,9 +26,35 @@ public class BinaryObject {
         return metadata;
     }
 
+    /**
+     * Returns a channel to read the bytes of this binary object. Reading from the channel or from
+     * the {@link #getInputStream() input stream} consumes the same bytes, so only one of them should be used.
+     * Closing the channel closes the input stream.
+     *
+     * @return the channel
+     */
+    public ReadableByteChannel getChannel() {
+        return Channels.newChannel(inputStream);
+    }
+
+    /**
+     * Writes all remaining bytes of this binary object to the given channel. Storages override this to
+     * avoid copying the bytes through intermediate buffers where possible, e.g. by using
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}.
+     * <p>
+     * This method does not close the binary object, nor the target channel.
+     *
+     * @param target the channel to write to
+     * @return the number of bytes written
+     * @throws IOException when the bytes could not be read or written
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        return ByteStreams.copy(Channels.newChannel(inputStream), target);
+    }
+
     @Override
     public String toString() {
-        return new StringJoiner(", ", BinaryObject.class.getSimpleName() + "[", "]")
+        return new StringJoiner(", ", getClass().getSimpleName() + "[", "]")
                 .add("inputStream=" + inputStream)
                 .add("metadata=" + metadata)
                 .toString();
@@ -1,17 +1,24 @@
 package io.github.wimdeblauwe.biob;
 
 import java.util.Objects;
+import java.util.Optional;
 import java.util.StringJoiner;
 
 public class BinaryObjectMetadata {
     private final long fileSize;
     private final String originalFilename;
     private final String contentType;
+    private final Checksum checksum;
 
     public BinaryObjectMetadata(long fileSize, String originalFilename, String contentType) {
+        this(fileSize, originalFilename, contentType, null);
+    }
+
+    public BinaryObjectMetadata(long fileSize, String originalFilename, String contentType, Checksum checksum) {
         this.fileSize = fileSize;
         this.originalFilename = originalFilename;
         this.contentType = contentType;
+        this.checksum = checksum;
     }
 
     public long getFileSize() {
@@ -26,6 +33,17 @@ public class BinaryObjectMetadata {
         return contentType;
     }
 
+    /**
+     * @return the checksum of the bytes, if the storage calculated one or it was given when storing
+     */
+    public Optional<Checksum> getChecksum() {
+        return Optional.ofNullable(checksum);
+    }
+
+    public BinaryObjectMetadata withChecksum(Checksum checksum) {
+        return new BinaryObjectMetadata(fileSize, originalFilename, contentType, checksum);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -37,12 +55,13 @@ public class BinaryObjectMetadata {
         BinaryObjectMetadata metadata = (BinaryObjectMetadata) o;
         return fileSize == metadata.fileSize &&
                 Objects.equals(originalFilename, metadata.originalFilename) &&
-                Objects.equals(contentType, metadata.contentType);
+                Objects.equals(contentType, metadata.contentType) &&
+                Objects.equals(checksum, metadata.checksum);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(fileSize, originalFilename, contentType);
+        return Objects.hash(fileSize, originalFilename, contentType, checksum);
     }
 
     @Override
@@ -51,6 +70,7 @@ public class BinaryObjectMetadata {
                 .add("fileSize=" + fileSize)
                 .add("originalFilename='" + originalFilename + "'")
                 .add("contentType='" + contentType + "'")
+                .add("checksum=" + checksum)
                 .toString();
     }
 }
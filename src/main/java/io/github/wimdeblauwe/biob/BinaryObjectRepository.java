@@ -1,6 +1,13 @@
 package io.github.wimdeblauwe.biob;
 
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class BinaryObjectRepository<E, T> {
@@ -26,6 +33,14 @@ public class BinaryObjectRepository<E, T> {
         return storage.retrieve(binaryObjectIdToFilePathFunction.apply(entity, id));
     }
 
+    public Optional<BinaryObject> retrieve(E entity, T id, long offset, long length) {
+        return storage.retrieve(binaryObjectIdToFilePathFunction.apply(entity, id), offset, length);
+    }
+
+    public Optional<Long> transferTo(E entity, T id, WritableByteChannel target) {
+        return storage.transferTo(binaryObjectIdToFilePathFunction.apply(entity, id), target);
+    }
+
     public Optional<BinaryObjectMetadata> getMetadata(E entity, T id) {
         return storage.getMetadata(binaryObjectIdToFilePathFunction.apply(entity, id));
     }
@@ -37,4 +52,91 @@ public class BinaryObjectRepository<E, T> {
     public void delete(E entity, T id) {
         storage.delete(binaryObjectIdToFilePathFunction.apply(entity, id));
     }
+
+    /**
+     * Starts a multipart upload of a new binary object. See
+     * {@link BinaryObjectStorage#initiateMultipartUpload(String, BinaryObjectMetadata)}.
+     *
+     * @return the id of the binary object and the id of the upload
+     */
+    public MultipartUpload<T> initiateMultipartUpload(E entity, BinaryObjectMetadata metadata) {
+        T t = binaryObjectIdSupplier.get();
+        String uploadId = storage.initiateMultipartUpload(binaryObjectIdToFilePathFunction.apply(entity, t), metadata);
+        return new MultipartUpload<>(t, uploadId);
+    }
+
+    public void uploadPart(String uploadId, int partNumber, InputStream inputStream) {
+        storage.uploadPart(uploadId, partNumber, inputStream);
+    }
+
+    public List<UploadedPart> listParts(String uploadId) {
+        return storage.listParts(uploadId);
+    }
+
+    public void completeMultipartUpload(String uploadId) {
+        storage.completeMultipartUpload(uploadId);
+    }
+
+    public void abortMultipartUpload(String uploadId) {
+        storage.abortMultipartUpload(uploadId);
+    }
+
+    /**
+     * Aborts the multipart uploads that have been idle for at least the given time. See
+     * {@link BinaryObjectStorage#expireMultipartUploads(Duration)}.
+     *
+     * @return the number of aborted uploads
+     */
+    public int expireMultipartUploads(Duration maximumIdleTime) {
+        return storage.expireMultipartUploads(maximumIdleTime);
+    }
+
+    /**
+     * Stores multiple new binary objects, each under a newly generated id. See
+     * {@link BinaryObjectStorage#storeAll(Collection)}.
+     *
+     * @param binaryObjects the metadata and bytes of each binary object to store
+     * @return the result for each generated id, in the order of the given binary objects
+     */
+    public Map<T, BatchResult<Void>> storeAll(E entity, Collection<BinaryObject> binaryObjects) {
+        Map<T, String> filePaths = new LinkedHashMap<>();
+        List<BinaryObjectStoreRequest> requests = new ArrayList<>(binaryObjects.size());
+        for (BinaryObject binaryObject : binaryObjects) {
+            T t = binaryObjectIdSupplier.get();
+            String filePath = binaryObjectIdToFilePathFunction.apply(entity, t);
+            filePaths.put(t, filePath);
+            requests.add(new BinaryObjectStoreRequest(filePath, binaryObject.getMetadata(),
+                                                      binaryObject.getInputStream()));
+        }
+        return toIds(filePaths, storage.storeAll(requests));
+    }
+
+    public Map<T, BatchResult<Optional<BinaryObject>>> retrieveAll(E entity, Collection<T> ids) {
+        Map<T, String> filePaths = toFilePaths(entity, ids);
+        return toIds(filePaths, storage.retrieveAll(filePaths.values()));
+    }
+
+    public Map<T, BatchResult<Optional<BinaryObjectMetadata>>> getMetadataAll(E entity, Collection<T> ids) {
+        Map<T, String> filePaths = toFilePaths(entity, ids);
+        return toIds(filePaths, storage.getMetadataAll(filePaths.values()));
+    }
+
+    public Map<T, BatchResult<Void>> deleteAll(E entity, Collection<T> ids) {
+        Map<T, String> filePaths = toFilePaths(entity, ids);
+        return toIds(filePaths, storage.deleteAll(filePaths.values()));
+    }
+
+    private Map<T, String> toFilePaths(E entity, Collection<T> ids) {
+        Map<T, String> filePaths = new LinkedHashMap<>();
+        for (T id : ids) {
+            filePaths.put(id, binaryObjectIdToFilePathFunction.apply(entity, id));
+        }
+        return filePaths;
+    }
+
+    private <R> Map<T, BatchResult<R>> toIds(Map<T, String> filePaths, Map<String, BatchResult<R>> results) {
+        Map<T, BatchResult<R>> resultsById = new LinkedHashMap<>();
+        filePaths.forEach((id, filePath) -> resultsById.put(id, results.get(filePath)));
+        return resultsById;
+    }
 }
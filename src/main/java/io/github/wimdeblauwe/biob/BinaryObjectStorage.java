@@ -1,16 +1,223 @@
 package io.github.wimdeblauwe.biob;
 
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BinaryObjectStorage {
     void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream);
 
     Optional<BinaryObject> retrieve(String filePath);
 
+    /**
+     * Retrieves a range of the bytes of the binary object at the given path, e.g. to serve an HTTP range request.
+     * If the range extends beyond the end of the binary object, only the available bytes are returned.
+     * <p>
+     * The metadata of the returned binary object is the metadata of the complete binary object.
+     * <p>
+     * The default implementation skips the bytes before the offset. Storages override this when they
+     * can start reading at the offset directly.
+     *
+     * @param filePath the path of the binary object
+     * @param offset   the index of the first byte to return
+     * @param length   the maximum number of bytes to return
+     * @return the binary object, or an empty optional if there is no binary object at the path
+     */
+    default Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        Preconditions.checkArgument(offset >= 0, "offset should not be negative: %s", offset);
+        Preconditions.checkArgument(length >= 0, "length should not be negative: %s", length);
+        return retrieve(filePath).map(binaryObject -> {
+            InputStream inputStream = binaryObject.getInputStream();
+            try {
+                ByteStreams.skipFully(inputStream, offset);
+            } catch (EOFException e) {
+                // The offset is beyond the end of the binary object, so the range is empty
+            } catch (IOException e) {
+                throw new BinaryObjectStorageException("Unable to retrieve binary object at path " + filePath, e);
+            }
+            return new BinaryObject(ByteStreams.limit(inputStream, length), binaryObject.getMetadata());
+        });
+    }
+
     Optional<BinaryObjectMetadata> getMetadata(String filePath);
 
     boolean hasBinaryObject(String filePath);
 
     void delete(String filePath);
+
+    /**
+     * Lists the binary objects whose path starts with the given prefix. The stream is lazy, so it can be used to
+     * page through millions of binary objects without keeping them all in memory. Binary objects that are stored
+     * or deleted while the stream is consumed may or may not be included.
+     * <p>
+     * The stream can hold resources such as open directories, so it should be closed, e.g. with a
+     * try-with-resources statement. The order of the binary objects depends on the storage.
+     *
+     * @param prefix the prefix of the paths, or an empty string to list all binary objects
+     * @return the path and metadata of each binary object
+     * @throws UnsupportedOperationException if the storage can not list its binary objects
+     */
+    default Stream<BinaryObjectSummary> list(String prefix) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support listing");
+    }
+
+    /**
+     * Starts an upload of a binary object in parts, so a large binary object can be uploaded in parallel and an
+     * interrupted upload can be resumed by uploading only the missing parts. The binary object only becomes
+     * visible when the upload is {@link #completeMultipartUpload(String) completed}.
+     *
+     * @param filePath the path of the binary object
+     * @param metadata the metadata of the binary object
+     * @return the id of the upload
+     * @throws UnsupportedOperationException if the storage does not support multipart uploads
+     */
+    default String initiateMultipartUpload(String filePath, BinaryObjectMetadata metadata) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support multipart uploads");
+    }
+
+    /**
+     * Uploads a part of a multipart upload. Parts can be uploaded concurrently and in any order. Uploading a part
+     * number again replaces the previous bytes of that part.
+     *
+     * @param uploadId    the id of the upload
+     * @param partNumber  the number of the part, starting at 1. The parts are joined in the order of their number.
+     * @param inputStream the bytes of the part
+     * @throws NoSuchUploadException if the upload does not exist
+     */
+    default void uploadPart(String uploadId, int partNumber, InputStream inputStream) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support multipart uploads");
+    }
+
+    /**
+     * Lists the parts that were received completely, e.g. to find out which parts to upload again after the
+     * connection was lost.
+     *
+     * @param uploadId the id of the upload
+     * @return the parts, ordered by part number
+     * @throws NoSuchUploadException if the upload does not exist
+     */
+    default List<UploadedPart> listParts(String uploadId) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support multipart uploads");
+    }
+
+    /**
+     * Joins the uploaded parts into the binary object, replacing an existing binary object at the same path.
+     *
+     * @param uploadId the id of the upload
+     * @throws NoSuchUploadException if the upload does not exist
+     */
+    default void completeMultipartUpload(String uploadId) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support multipart uploads");
+    }
+
+    /**
+     * Discards a multipart upload and its parts. Does nothing if the upload does not exist.
+     *
+     * @param uploadId the id of the upload
+     */
+    default void abortMultipartUpload(String uploadId) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support multipart uploads");
+    }
+
+    /**
+     * Aborts the multipart uploads that did not receive a part for the given time, e.g. because the client gave
+     * up.
+     *
+     * @param maximumIdleTime the time after the last activity after which an upload is aborted
+     * @return the number of aborted uploads
+     */
+    default int expireMultipartUploads(Duration maximumIdleTime) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support multipart uploads");
+    }
+
+    /**
+     * Stores multiple binary objects. Each binary object gets its own result, so a failure to store one of them
+     * does not affect the others. The default implementation stores them one after the other.
+     * <p>
+     * The results are keyed by file path, so each file path may only occur once in the requests.
+     *
+     * @param requests the binary objects to store
+     * @return the result for each file path, in the order of the requests
+     * @throws IllegalArgumentException if a file path occurs more than once, in which case nothing is stored
+     */
+    default Map<String, BatchResult<Void>> storeAll(Collection<BinaryObjectStoreRequest> requests) {
+        BinaryObjectStoreRequest.checkDistinctFilePaths(requests);
+        Map<String, BatchResult<Void>> results = new LinkedHashMap<>();
+        for (BinaryObjectStoreRequest request : requests) {
+            results.put(request.getFilePath(), BatchResult.of(request, r -> {
+                store(r.getFilePath(), r.getMetadata(), r.getInputStream());
+                return null;
+            }));
+        }
+        return results;
+    }
+
+    /**
+     * Retrieves multiple binary objects. The default implementation retrieves them one after the other.
+     * A path that occurs more than once is retrieved once, so each returned binary object needs to be closed.
+     *
+     * @param filePaths the paths of the binary objects
+     * @return the result for each distinct file path, in the order of the given paths
+     */
+    default Map<String, BatchResult<Optional<BinaryObject>>> retrieveAll(Collection<String> filePaths) {
+        return BatchResult.collect(filePaths, this::retrieve);
+    }
+
+    /**
+     * Retrieves the metadata of multiple binary objects. The default implementation retrieves them one after
+     * the other.
+     *
+     * @param filePaths the paths of the binary objects
+     * @return the result for each file path, in the order of the given paths
+     */
+    default Map<String, BatchResult<Optional<BinaryObjectMetadata>>> getMetadataAll(Collection<String> filePaths) {
+        return BatchResult.collect(filePaths, this::getMetadata);
+    }
+
+    /**
+     * Deletes multiple binary objects. The default implementation deletes them one after the other.
+     *
+     * @param filePaths the paths of the binary objects
+     * @return the result for each file path, in the order of the given paths
+     */
+    default Map<String, BatchResult<Void>> deleteAll(Collection<String> filePaths) {
+        return BatchResult.collect(filePaths, filePath -> {
+            delete(filePath);
+            return null;
+        });
+    }
+
+    /**
+     * Writes the bytes of the binary object at the given path to the channel, using
+     * {@link BinaryObject#transferTo(WritableByteChannel)} so storages can avoid copying the bytes
+     * through user-space buffers.
+     *
+     * @param filePath the path of the binary object
+     * @param target   the channel to write to. It is not closed by this method.
+     * @return the number of bytes written, or an empty optional if there is no binary object at the path
+     */
+    default Optional<Long> transferTo(String filePath, WritableByteChannel target) {
+        return retrieve(filePath).map(binaryObject -> {
+            try {
+                try {
+                    return binaryObject.transferTo(target);
+                } finally {
+                    binaryObject.getInputStream().close();
+                }
+            } catch (IOException e) {
+                throw new BinaryObjectStorageException("Unable to transfer binary object at path " + filePath, e);
+            }
+        });
+    }
 }
@@ -1,6 +1,10 @@
 package io.github.wimdeblauwe.biob;
 
 public class BinaryObjectStorageException extends RuntimeException {
+    public BinaryObjectStorageException(String message) {
+        super(message);
+    }
+
     public BinaryObjectStorageException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,62 @@
+package io.github.wimdeblauwe.biob;
+
+import com.google.common.base.Preconditions;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * A single binary object to store as part of
+ * {@link BinaryObjectStorage#storeAll(java.util.Collection)}.
+ */
+public class BinaryObjectStoreRequest {
+    private final String filePath;
+    private final BinaryObjectMetadata metadata;
+    private final InputStream inputStream;
+
+    public BinaryObjectStoreRequest(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        this.filePath = Objects.requireNonNull(filePath, "filePath should not be null");
+        this.metadata = Objects.requireNonNull(metadata, "metadata should not be null");
+        this.inputStream = Objects.requireNonNull(inputStream, "inputStream should not be null");
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public BinaryObjectMetadata getMetadata() {
+        return metadata;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Checks that no file path occurs twice, as the results of
+     * {@link BinaryObjectStorage#storeAll(Collection)} are keyed by file path. Storages that implement
+     * {@code storeAll} themselves call this before storing anything.
+     *
+     * @throws IllegalArgumentException if a file path occurs more than once
+     */
+    public static void checkDistinctFilePaths(Collection<BinaryObjectStoreRequest> requests) {
+        Set<String> filePaths = new HashSet<>();
+        for (BinaryObjectStoreRequest request : requests) {
+            Preconditions.checkArgument(filePaths.add(request.getFilePath()),
+                                        "filePath should only occur once in the requests: %s",
+                                        request.getFilePath());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", BinaryObjectStoreRequest.class.getSimpleName() + "[", "]")
+                .add("filePath='" + filePath + "'")
+                .add("metadata=" + metadata)
+                .toString();
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.wimdeblauwe.biob;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * The path and metadata of a stored binary object, as returned by {@link BinaryObjectStorage#list(String)}.
+ */
+public final class BinaryObjectSummary {
+    private final String filePath;
+    private final BinaryObjectMetadata metadata;
+
+    public BinaryObjectSummary(String filePath, BinaryObjectMetadata metadata) {
+        this.filePath = Objects.requireNonNull(filePath, "filePath should not be null");
+        this.metadata = Objects.requireNonNull(metadata, "metadata should not be null");
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public BinaryObjectMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BinaryObjectSummary that = (BinaryObjectSummary) o;
+        return filePath.equals(that.filePath) && metadata.equals(that.metadata);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(filePath, metadata);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", BinaryObjectSummary.class.getSimpleName() + "[", "]")
+                .add("filePath='" + filePath + "'")
+                .add("metadata=" + metadata)
+                .toString();
+    }
+}
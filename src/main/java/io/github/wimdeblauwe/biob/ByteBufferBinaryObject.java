@@ -0,0 +1,49 @@
+package io.github.wimdeblauwe.biob;
+
+import io.github.wimdeblauwe.biob.io.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link BinaryObject} whose bytes are available in a {@link ByteBuffer}, e.g. because they are kept in
+ * memory or in a memory-mapped file.
+ */
+public class ByteBufferBinaryObject extends BinaryObject {
+    private final ByteBufferInputStream inputStream;
+
+    public ByteBufferBinaryObject(ByteBuffer buffer, BinaryObjectMetadata metadata) {
+        this(new ByteBufferInputStream(buffer), metadata);
+    }
+
+    /**
+     * Creates a binary object that reads its bytes from the given stream, e.g. a subclass of
+     * {@link ByteBufferInputStream} that releases the buffer when it is closed.
+     */
+    protected ByteBufferBinaryObject(ByteBufferInputStream inputStream, BinaryObjectMetadata metadata) {
+        super(inputStream, metadata);
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Returns a read-only view on the remaining bytes of this binary object. The returned buffer does
+     * not share its position with the input stream or with other calls to this method.
+     *
+     * @return the bytes of this binary object
+     */
+    public ByteBuffer getByteBuffer() {
+        return inputStream.remainingBuffer();
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = inputStream.remainingBuffer();
+        long count = 0;
+        while (buffer.hasRemaining()) {
+            count += target.write(buffer);
+        }
+        inputStream.skip(count);
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.wimdeblauwe.biob;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * The checksum of the bytes of a binary object, as a lowercase hexadecimal string.
+ */
+public final class Checksum {
+    private final ChecksumAlgorithm algorithm;
+    private final String value;
+
+    public Checksum(ChecksumAlgorithm algorithm, String value) {
+        this.algorithm = Objects.requireNonNull(algorithm, "algorithm should not be null");
+        this.value = Objects.requireNonNull(value, "value should not be null");
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Checksum checksum = (Checksum) o;
+        return algorithm == checksum.algorithm && value.equals(checksum.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(algorithm, value);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Checksum.class.getSimpleName() + "[", "]")
+                .add("algorithm=" + algorithm)
+                .add("value='" + value + "'")
+                .toString();
+    }
+}
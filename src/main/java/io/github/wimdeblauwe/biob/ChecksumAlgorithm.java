@@ -0,0 +1,28 @@
+package io.github.wimdeblauwe.biob;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * The algorithms that can be used for the {@link Checksum} of a binary object.
+ */
+public enum ChecksumAlgorithm {
+    /**
+     * CRC-32C, which is fast and detects accidental corruption such as flipped bits.
+     */
+    CRC32C(Hashing.crc32c()),
+    /**
+     * SHA-256, which is slower but also detects deliberate modification.
+     */
+    SHA256(Hashing.sha256());
+
+    private final HashFunction hashFunction;
+
+    ChecksumAlgorithm(HashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+}
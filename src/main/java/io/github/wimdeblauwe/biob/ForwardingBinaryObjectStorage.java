@@ -0,0 +1,111 @@
+package io.github.wimdeblauwe.biob;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} that forwards all calls to another storage. Subclasses override the
+ * methods they want to decorate.
+ */
+public abstract class ForwardingBinaryObjectStorage implements BinaryObjectStorage {
+    private final BinaryObjectStorage delegate;
+
+    protected ForwardingBinaryObjectStorage(BinaryObjectStorage delegate) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate should not be null");
+    }
+
+    protected BinaryObjectStorage getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        delegate.store(filePath, metadata, inputStream);
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        return delegate.retrieve(filePath);
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        return delegate.retrieve(filePath, offset, length);
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return delegate.getMetadata(filePath);
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return delegate.hasBinaryObject(filePath);
+    }
+
+    @Override
+    public void delete(String filePath) {
+        delegate.delete(filePath);
+    }
+
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        return delegate.list(prefix);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String filePath, BinaryObjectMetadata metadata) {
+        return delegate.initiateMultipartUpload(filePath, metadata);
+    }
+
+    @Override
+    public void uploadPart(String uploadId, int partNumber, InputStream inputStream) {
+        delegate.uploadPart(uploadId, partNumber, inputStream);
+    }
+
+    @Override
+    public List<UploadedPart> listParts(String uploadId) {
+        return delegate.listParts(uploadId);
+    }
+
+    @Override
+    public void completeMultipartUpload(String uploadId) {
+        delegate.completeMultipartUpload(uploadId);
+    }
+
+    @Override
+    public void abortMultipartUpload(String uploadId) {
+        delegate.abortMultipartUpload(uploadId);
+    }
+
+    @Override
+    public int expireMultipartUploads(Duration maximumIdleTime) {
+        return delegate.expireMultipartUploads(maximumIdleTime);
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> storeAll(Collection<BinaryObjectStoreRequest> requests) {
+        return delegate.storeAll(requests);
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObject>>> retrieveAll(Collection<String> filePaths) {
+        return delegate.retrieveAll(filePaths);
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObjectMetadata>>> getMetadataAll(Collection<String> filePaths) {
+        return delegate.getMetadataAll(filePaths);
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> deleteAll(Collection<String> filePaths) {
+        return delegate.deleteAll(filePaths);
+    }
+}
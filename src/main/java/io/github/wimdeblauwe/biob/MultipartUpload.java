@@ -0,0 +1,42 @@
+package io.github.wimdeblauwe.biob;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * A multipart upload that was started with
+ * {@link BinaryObjectRepository#initiateMultipartUpload(Object, BinaryObjectMetadata)}.
+ *
+ * @param <T> the type of the id of the binary object
+ */
+public final class MultipartUpload<T> {
+    private final T id;
+    private final String uploadId;
+
+    public MultipartUpload(T id, String uploadId) {
+        this.id = Objects.requireNonNull(id, "id should not be null");
+        this.uploadId = Objects.requireNonNull(uploadId, "uploadId should not be null");
+    }
+
+    /**
+     * @return the id of the binary object once the upload is completed
+     */
+    public T getId() {
+        return id;
+    }
+
+    /**
+     * @return the id to upload the parts with
+     */
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", MultipartUpload.class.getSimpleName() + "[", "]")
+                .add("id=" + id)
+                .add("uploadId='" + uploadId + "'")
+                .toString();
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.wimdeblauwe.biob;
+
+/**
+ * Thrown when a multipart upload does not exist, e.g. because it was completed, aborted or expired.
+ */
+public class NoSuchUploadException extends BinaryObjectStorageException {
+    public NoSuchUploadException(String uploadId) {
+        super("There is no multipart upload with id " + uploadId);
+    }
+}
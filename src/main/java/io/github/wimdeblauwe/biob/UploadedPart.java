@@ -0,0 +1,54 @@
+package io.github.wimdeblauwe.biob;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * A part of a multipart upload that was received completely, see
+ * {@link BinaryObjectStorage#listParts(String)}.
+ */
+public final class UploadedPart {
+    private final int partNumber;
+    private final long size;
+
+    public UploadedPart(int partNumber, long size) {
+        this.partNumber = partNumber;
+        this.size = size;
+    }
+
+    public int getPartNumber() {
+        return partNumber;
+    }
+
+    /**
+     * @return the number of bytes of the part
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        UploadedPart that = (UploadedPart) o;
+        return partNumber == that.partNumber && size == that.size;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(partNumber, size);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", UploadedPart.class.getSimpleName() + "[", "]")
+                .add("partNumber=" + partNumber)
+                .add("size=" + size)
+                .toString();
+    }
+}
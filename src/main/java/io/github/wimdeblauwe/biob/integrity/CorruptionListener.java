@@ -0,0 +1,16 @@
+package io.github.wimdeblauwe.biob.integrity;
+
+import java.io.IOException;
+
+/**
+ * Listener that is notified when a {@link Scrubber} finds a binary object that can not be verified.
+ */
+@FunctionalInterface
+public interface CorruptionListener {
+    /**
+     * @param filePath the path of the binary object
+     * @param cause    a {@link io.github.wimdeblauwe.biob.io.ChecksumMismatchException} if the bytes do not match
+     *                 the checksum, or the failure to read the bytes
+     */
+    void onCorruption(String filePath, IOException cause);
+}
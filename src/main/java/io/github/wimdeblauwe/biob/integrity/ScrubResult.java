@@ -0,0 +1,60 @@
+package io.github.wimdeblauwe.biob.integrity;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * The outcome of a single {@link Scrubber#scrub()} run.
+ */
+public final class ScrubResult {
+    private final long verifiedCount;
+    private final long verifiedBytes;
+    private final long skippedCount;
+    private final List<String> corruptFilePaths;
+
+    ScrubResult(long verifiedCount, long verifiedBytes, long skippedCount, List<String> corruptFilePaths) {
+        this.verifiedCount = verifiedCount;
+        this.verifiedBytes = verifiedBytes;
+        this.skippedCount = skippedCount;
+        this.corruptFilePaths = Collections.unmodifiableList(corruptFilePaths);
+    }
+
+    /**
+     * @return the number of binary objects whose bytes matched their checksum
+     */
+    public long getVerifiedCount() {
+        return verifiedCount;
+    }
+
+    /**
+     * @return the number of bytes that were read
+     */
+    public long getVerifiedBytes() {
+        return verifiedBytes;
+    }
+
+    /**
+     * @return the number of binary objects without a checksum, or that were deleted while scrubbing
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * @return the paths of the binary objects that did not match their checksum or could not be read
+     */
+    public List<String> getCorruptFilePaths() {
+        return corruptFilePaths;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", ScrubResult.class.getSimpleName() + "[", "]")
+                .add("verifiedCount=" + verifiedCount)
+                .add("verifiedBytes=" + verifiedBytes)
+                .add("skippedCount=" + skippedCount)
+                .add("corruptFilePaths=" + corruptFilePaths)
+                .toString();
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.wimdeblauwe.biob.integrity;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.io.ChecksumVerifyingInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Verifies the bytes of all binary objects in a storage against the checksum in their metadata, to find silent
+ * corruption of the storage device before the binary objects are needed. Binary objects without a checksum are
+ * skipped.
+ * <p>
+ * The binary objects are found with {@link BinaryObjectStorage#list(String)}, so the storage should support
+ * listing. The bytes are read at most at {@link Builder#bytesPerSecond(double)}, so scrubbing does not starve
+ * regular reads. The checksum is taken from the metadata of the retrieved binary object, so a binary object that is
+ * replaced while scrubbing is verified against its own checksum.
+ * <p>
+ * This class is thread-safe, but runs of {@link #scrub()} should not overlap.
+ */
+public class Scrubber {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BinaryObjectStorage storage;
+    private final String prefix;
+    private final RateLimiter rateLimiter;
+    private final CorruptionListener corruptionListener;
+    private final Consumer<? super RuntimeException> failureListener;
+
+    private Scrubber(Builder builder) {
+        this.storage = Objects.requireNonNull(builder.storage, "storage should not be null");
+        this.prefix = Objects.requireNonNull(builder.prefix, "prefix should not be null");
+        this.rateLimiter = builder.bytesPerSecond > 0 ? RateLimiter.create(builder.bytesPerSecond) : null;
+        this.corruptionListener = Objects.requireNonNull(builder.corruptionListener,
+                                                         "corruptionListener should not be null");
+        this.failureListener = Objects.requireNonNull(builder.failureListener, "failureListener should not be null");
+    }
+
+    public static Builder builder(BinaryObjectStorage storage) {
+        return new Builder(storage);
+    }
+
+    /**
+     * Verifies all binary objects once.
+     *
+     * @return the number of verified binary objects and the paths of the corrupt ones
+     */
+    public ScrubResult scrub() {
+        long verifiedCount = 0;
+        long verifiedBytes = 0;
+        long skippedCount = 0;
+        List<String> corruptFilePaths = new ArrayList<>();
+        try (Stream<BinaryObjectSummary> summaries = storage.list(prefix)) {
+            for (BinaryObjectSummary summary : (Iterable<BinaryObjectSummary>) summaries::iterator) {
+                if (!summary.getMetadata().getChecksum().isPresent()) {
+                    skippedCount++;
+                    continue;
+                }
+                try {
+                    Optional<BinaryObject> binaryObject = storage.retrieve(summary.getFilePath());
+                    Optional<Checksum> checksum = binaryObject.flatMap(object -> object.getMetadata().getChecksum());
+                    if (!checksum.isPresent()) {
+                        skippedCount++;
+                        continue;
+                    }
+                    verifiedBytes += verify(binaryObject.get(), checksum.get());
+                    verifiedCount++;
+                } catch (IOException | BinaryObjectStorageException e) {
+                    // The storage can verify the checksum itself when the binary object is retrieved
+                    IOException cause = e instanceof IOException ? (IOException) e
+                            : e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e);
+                    corruptFilePaths.add(summary.getFilePath());
+                    corruptionListener.onCorruption(summary.getFilePath(), cause);
+                }
+            }
+        }
+        return new ScrubResult(verifiedCount, verifiedBytes, skippedCount, corruptFilePaths);
+    }
+
+    /**
+     * Runs {@link #scrub()} repeatedly, with the given delay between the end of a run and the start of the next.
+     * A run that fails is reported to the {@link Builder#failureListener(Consumer) failure listener}, and does
+     * not stop the next runs.
+     *
+     * @return the future to cancel the scrubbing
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executorService, Duration delay) {
+        Objects.requireNonNull(executorService, "executorService should not be null");
+        Objects.requireNonNull(delay, "delay should not be null");
+        return executorService.scheduleWithFixedDelay(() -> {
+            try {
+                scrub();
+            } catch (RuntimeException e) {
+                failureListener.accept(e);
+            }
+        }, delay.toMillis(), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private long verify(BinaryObject binaryObject, Checksum checksum) throws IOException {
+        long count = 0;
+        try (InputStream inputStream = new ChecksumVerifyingInputStream(binaryObject.getInputStream(), checksum)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                if (rateLimiter != null && read > 0) {
+                    rateLimiter.acquire(read);
+                }
+                count += read;
+            }
+        }
+        return count;
+    }
+
+    private static void reportUncaught(RuntimeException e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+    public static class Builder {
+        private final BinaryObjectStorage storage;
+        private String prefix = "";
+        private double bytesPerSecond;
+        private CorruptionListener corruptionListener = (filePath, cause) -> {
+        };
+        private Consumer<? super RuntimeException> failureListener = Scrubber::reportUncaught;
+
+        private Builder(BinaryObjectStorage storage) {
+            this.storage = storage;
+        }
+
+        /**
+         * Only verify the binary objects whose path starts with the prefix. Defaults to all binary objects.
+         */
+        public Builder prefix(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * The maximum number of bytes per second to read. Unlimited by default.
+         */
+        public Builder bytesPerSecond(double bytesPerSecond) {
+            Preconditions.checkArgument(bytesPerSecond > 0, "bytesPerSecond should be positive: %s", bytesPerSecond);
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Notified of each binary object that is found to be corrupt. Does nothing by default.
+         */
+        public Builder corruptionListener(CorruptionListener corruptionListener) {
+            this.corruptionListener = corruptionListener;
+            return this;
+        }
+
+        /**
+         * Notified when a scheduled run fails, for example because the storage can not be listed. Reports to the
+         * uncaught exception handler of the scrubbing thread by default.
+         */
+        public Builder failureListener(Consumer<? super RuntimeException> failureListener) {
+            this.failureListener = failureListener;
+            return this;
+        }
+
+        public Scrubber build() {
+            return new Scrubber(this);
+        }
+    }
+}
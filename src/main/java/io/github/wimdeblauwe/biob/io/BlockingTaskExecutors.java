@@ -0,0 +1,39 @@
+package io.github.wimdeblauwe.biob.io;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The default executors of the storages for tasks that block on I/O. On Java 21 and later, the multi-release jar
+ * replaces this class with a version that runs the tasks on virtual threads.
+ */
+public final class BlockingTaskExecutors {
+    private BlockingTaskExecutors() {
+    }
+
+    /**
+     * Returns the executor that is shared by the storages for short blocking tasks, such as the operations of a batch.
+     *
+     * @return the common {@link ForkJoinPool}
+     */
+    public static Executor shared() {
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Creates an executor that runs each task on its own daemon thread. Threads are reused when they become idle.
+     *
+     * @param namePrefix the prefix of the thread names, followed by a sequence number
+     * @return the executor
+     */
+    public static Executor newThreadPerTaskExecutor(String namePrefix) {
+        Objects.requireNonNull(namePrefix, "namePrefix should not be null");
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(namePrefix + "%d")
+                                                                       .setDaemon(true)
+                                                                       .build());
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.wimdeblauwe.biob.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * {@link InputStream} that reads the remaining bytes of a {@link ByteBuffer}.
+ * <p>
+ * The bytes are read straight from the buffer, so no copy is made when the buffer is a direct
+ * or memory-mapped buffer. The stream uses its own duplicate of the buffer, so the position and
+ * limit of the given buffer are never changed.
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = Objects.requireNonNull(buffer, "buffer should not be null").duplicate();
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        Objects.requireNonNull(bytes, "bytes should not be null");
+        if (offset < 0 || length < 0 || length > bytes.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        int count = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Returns a read-only view on the bytes that have not been read yet, without consuming them.
+     *
+     * @return the remaining bytes
+     */
+    public ByteBuffer remainingBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        buffer.mark();
+    }
+
+    @Override
+    public void reset() {
+        buffer.reset();
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.wimdeblauwe.biob.io;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+
+public final class ByteBufferUtils {
+    private ByteBufferUtils() {
+    }
+
+    /**
+     * Returns a view on a range of the remaining bytes of the buffer. If the range extends beyond the end of the
+     * buffer, the view only contains the available bytes. The position and limit of the given buffer are not changed.
+     *
+     * @param buffer the buffer
+     * @param offset the index of the first byte, relative to the position of the buffer
+     * @param length the maximum number of bytes
+     * @return the view
+     */
+    public static ByteBuffer slice(ByteBuffer buffer, long offset, long length) {
+        Preconditions.checkArgument(offset >= 0, "offset should not be negative: %s", offset);
+        Preconditions.checkArgument(length >= 0, "length should not be negative: %s", length);
+        ByteBuffer duplicate = buffer.duplicate();
+        // Clamped against the remaining bytes first, so an offset or length up to Long.MAX_VALUE does not overflow
+        int start = duplicate.position() + (int) Math.min(offset, duplicate.remaining());
+        int end = start + (int) Math.min(length, duplicate.limit() - start);
+        duplicate.position(start);
+        duplicate.limit(end);
+        return duplicate.slice();
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.wimdeblauwe.biob.io;
+
+import io.github.wimdeblauwe.biob.Checksum;
+
+import java.io.IOException;
+
+/**
+ * Signals that the bytes of a binary object do not match their checksum, e.g. because the storage device
+ * corrupted them.
+ */
+public class ChecksumMismatchException extends IOException {
+    private final Checksum expected;
+    private final Checksum actual;
+
+    public ChecksumMismatchException(Checksum expected, Checksum actual) {
+        super("Checksum mismatch: expected " + expected.getValue() + " but was " + actual.getValue());
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    public Checksum getExpected() {
+        return expected;
+    }
+
+    public Checksum getActual() {
+        return actual;
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.wimdeblauwe.biob.io;
+
+import com.google.common.hash.Hasher;
+import io.github.wimdeblauwe.biob.Checksum;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * {@link InputStream} that calculates the checksum of the bytes while they are read, and fails with a
+ * {@link ChecksumMismatchException} at the end of the stream when it differs from the expected checksum.
+ * The bytes that are read before the end are not verified yet, so a reader should only trust them once the
+ * stream is read completely.
+ */
+public class ChecksumVerifyingInputStream extends FilterInputStream {
+    private final Checksum expected;
+    private final Hasher hasher;
+    private boolean verified;
+    private ChecksumMismatchException mismatch;
+
+    public ChecksumVerifyingInputStream(InputStream inputStream, Checksum expected) {
+        super(Objects.requireNonNull(inputStream, "inputStream should not be null"));
+        this.expected = Objects.requireNonNull(expected, "expected should not be null");
+        this.hasher = expected.getAlgorithm().getHashFunction().newHasher();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            verify();
+        } else {
+            hasher.putByte((byte) value);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int count = in.read(bytes, offset, length);
+        if (count < 0) {
+            verify();
+        } else {
+            hasher.putBytes(bytes, offset, count);
+        }
+        return count;
+    }
+
+    /**
+     * Reads the skipped bytes, as they are part of the checksum.
+     */
+    @Override
+    public long skip(long count) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(count, 8192)];
+        long skipped = 0;
+        while (skipped < count) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void verify() throws ChecksumMismatchException {
+        if (!verified) {
+            verified = true;
+            Checksum actual = new Checksum(expected.getAlgorithm(), hasher.hash().toString());
+            if (!actual.equals(expected)) {
+                mismatch = new ChecksumMismatchException(expected, actual);
+            }
+        }
+        if (mismatch != null) {
+            throw mismatch;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package io.github.wimdeblauwe.biob.storage.caching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BatchResult;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectStoreRequest;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+import io.github.wimdeblauwe.biob.ForwardingBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.NoSuchUploadException;
+import io.github.wimdeblauwe.biob.io.ByteBufferUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link BinaryObjectStorage} that caches the metadata and the bytes of small binary objects of another storage
+ * in memory.
+ * <p>
+ * Cached entries expire after a configurable time to live and the cached bytes are bounded by a maximum total
+ * size. Storing or deleting a binary object through this storage invalidates its cached entries. Changes made
+ * directly on the underlying storage only become visible once the cached entries expire.
+ * <p>
+ * A binary object that is uploaded in parts is invalidated when its upload is completed through this storage.
+ * The path of an upload is only known when the upload was also initiated through this instance; completing any
+ * other upload, e.g. one that was initiated before a restart, invalidates all cached entries.
+ * <p>
+ * When multiple threads request the same uncached binary object at the same time, only one of them loads it
+ * from the underlying storage while the others wait for that result. A load that overlaps with a store or delete
+ * of the same path is never kept in the cache, so it cannot bring back the old version.
+ * <p>
+ * The cached bytes are bounded by what is actually read from the underlying storage, not by the file size in the
+ * metadata.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CachingBinaryObjectStorage extends ForwardingBinaryObjectStorage {
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+    private static final long DEFAULT_MAXIMUM_METADATA_ENTRIES = 10_000;
+    private static final long DEFAULT_MAXIMUM_PAYLOAD_CACHE_SIZE_IN_BYTES = 64 * 1024 * 1024;
+    private static final long DEFAULT_MAXIMUM_CACHED_PAYLOAD_SIZE_IN_BYTES = 256 * 1024;
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<String, CacheEntry<Optional<BinaryObjectMetadata>>> metadataCache;
+    private final Cache<String, CacheEntry<byte[]>> payloadCache;
+    // The loads in progress, so concurrent misses on a path load it once, see getFresh
+    private final ConcurrentMap<String, CompletableFuture<CacheEntry<Optional<BinaryObjectMetadata>>>> metadataLoads =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<CacheEntry<byte[]>>> payloadLoads =
+            new ConcurrentHashMap<>();
+    // Incremented on each invalidation of a path that maps to the stripe, see getFresh
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final long maximumCachedPayloadSizeInBytes;
+    private final ConcurrentMap<String, String> uploadFilePaths = new ConcurrentHashMap<>();
+
+    public CachingBinaryObjectStorage(BinaryObjectStorage delegate) {
+        this(delegate,
+             DEFAULT_TIME_TO_LIVE,
+             DEFAULT_MAXIMUM_METADATA_ENTRIES,
+             DEFAULT_MAXIMUM_PAYLOAD_CACHE_SIZE_IN_BYTES,
+             DEFAULT_MAXIMUM_CACHED_PAYLOAD_SIZE_IN_BYTES);
+    }
+
+    /**
+     * @param delegate                        the storage to cache
+     * @param timeToLive                      how long an entry stays cached after it was loaded
+     * @param maximumMetadataEntries          the maximum number of cached metadata entries
+     * @param maximumPayloadCacheSizeInBytes  the maximum total size of all cached bytes
+     * @param maximumCachedPayloadSizeInBytes binary objects larger than this are never cached, but always
+     *                                        retrieved from the underlying storage
+     */
+    public CachingBinaryObjectStorage(BinaryObjectStorage delegate,
+                                      Duration timeToLive,
+                                      long maximumMetadataEntries,
+                                      long maximumPayloadCacheSizeInBytes,
+                                      long maximumCachedPayloadSizeInBytes) {
+        super(delegate);
+        Objects.requireNonNull(timeToLive, "timeToLive should not be null");
+        this.maximumCachedPayloadSizeInBytes = maximumCachedPayloadSizeInBytes;
+        this.metadataCache = CacheBuilder.newBuilder()
+                                         .expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS)
+                                         .maximumSize(maximumMetadataEntries)
+                                         .recordStats()
+                                         .build();
+        // A single segment, as Guava divides the maximum weight over its segments
+        this.payloadCache = CacheBuilder.newBuilder()
+                                        .expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS)
+                                        .concurrencyLevel(1)
+                                        .maximumWeight(maximumPayloadCacheSizeInBytes)
+                                        .<String, CacheEntry<byte[]>>weigher((filePath, entry) -> entry.value.length)
+                                        .recordStats()
+                                        .build();
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        invalidate(filePath);
+        try {
+            super.store(filePath, metadata, inputStream);
+        } finally {
+            invalidate(filePath);
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        Optional<BinaryObjectMetadata> metadata = getMetadata(filePath);
+        if (!metadata.isPresent()) {
+            return Optional.empty();
+        }
+        if (metadata.get().getFileSize() > maximumCachedPayloadSizeInBytes) {
+            return super.retrieve(filePath);
+        }
+        Optional<ByteBuffer> payload;
+        try {
+            payload = getCachedPayload(filePath);
+        } catch (PayloadTooLargeException e) {
+            return super.retrieve(filePath);
+        }
+        return payload.map(buffer -> new ByteBufferBinaryObject(buffer, metadata.get()));
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        Optional<BinaryObjectMetadata> metadata = getMetadata(filePath);
+        if (!metadata.isPresent()) {
+            return Optional.empty();
+        }
+        if (metadata.get().getFileSize() > maximumCachedPayloadSizeInBytes) {
+            return super.retrieve(filePath, offset, length);
+        }
+        Optional<ByteBuffer> payload;
+        try {
+            payload = getCachedPayload(filePath);
+        } catch (PayloadTooLargeException e) {
+            return super.retrieve(filePath, offset, length);
+        }
+        return payload.map(buffer -> new ByteBufferBinaryObject(ByteBufferUtils.slice(buffer, offset, length),
+                                                                metadata.get()));
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return getFresh(metadataCache, metadataLoads, filePath, () -> getDelegate().getMetadata(filePath));
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return getMetadata(filePath).isPresent();
+    }
+
+    @Override
+    public void delete(String filePath) {
+        try {
+            super.delete(filePath);
+        } finally {
+            invalidate(filePath);
+        }
+    }
+
+    @Override
+    public String initiateMultipartUpload(String filePath, BinaryObjectMetadata metadata) {
+        String uploadId = super.initiateMultipartUpload(filePath, metadata);
+        uploadFilePaths.put(uploadId, filePath);
+        return uploadId;
+    }
+
+    @Override
+    public void completeMultipartUpload(String uploadId) {
+        String filePath = uploadFilePaths.get(uploadId);
+        try {
+            super.completeMultipartUpload(uploadId);
+            uploadFilePaths.remove(uploadId);
+        } finally {
+            if (filePath != null) {
+                invalidate(filePath);
+            } else {
+                invalidateAll();
+            }
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String uploadId) {
+        super.abortMultipartUpload(uploadId);
+        uploadFilePaths.remove(uploadId);
+    }
+
+    @Override
+    public int expireMultipartUploads(Duration maximumIdleTime) {
+        int count = super.expireMultipartUploads(maximumIdleTime);
+        uploadFilePaths.keySet().removeIf(uploadId -> {
+            try {
+                super.listParts(uploadId);
+                return false;
+            } catch (NoSuchUploadException e) {
+                return true;
+            }
+        });
+        return count;
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> storeAll(Collection<BinaryObjectStoreRequest> requests) {
+        requests.forEach(request -> invalidate(request.getFilePath()));
+        try {
+            return super.storeAll(requests);
+        } finally {
+            requests.forEach(request -> invalidate(request.getFilePath()));
+        }
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObject>>> retrieveAll(Collection<String> filePaths) {
+        return BatchResult.collect(filePaths, this::retrieve);
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObjectMetadata>>> getMetadataAll(Collection<String> filePaths) {
+        return BatchResult.collect(filePaths, this::getMetadata);
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> deleteAll(Collection<String> filePaths) {
+        try {
+            return super.deleteAll(filePaths);
+        } finally {
+            filePaths.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Removes the cached entries for the given path, so the next call goes to the underlying storage.
+     *
+     * @param filePath the path of the binary object
+     */
+    public void invalidate(String filePath) {
+        generations.incrementAndGet(generationStripe(filePath));
+        metadataLoads.remove(filePath);
+        payloadLoads.remove(filePath);
+        metadataCache.invalidate(filePath);
+        payloadCache.invalidate(filePath);
+    }
+
+    /**
+     * Removes all cached entries, so the next calls go to the underlying storage.
+     */
+    public void invalidateAll() {
+        for (int stripe = 0; stripe < GENERATION_STRIPES; stripe++) {
+            generations.incrementAndGet(stripe);
+        }
+        metadataLoads.clear();
+        payloadLoads.clear();
+        metadataCache.invalidateAll();
+        payloadCache.invalidateAll();
+    }
+
+    public CacheStats getMetadataCacheStats() {
+        return metadataCache.stats();
+    }
+
+    public CacheStats getPayloadCacheStats() {
+        return payloadCache.stats();
+    }
+
+    private Optional<ByteBuffer> getCachedPayload(String filePath) {
+        try {
+            byte[] bytes = getFresh(payloadCache, payloadLoads, filePath, () -> loadPayload(filePath));
+            return Optional.of(ByteBuffer.wrap(bytes));
+        } catch (BinaryObjectDeletedException e) {
+            // The binary object was deleted in the underlying storage after its metadata was cached
+            invalidate(filePath);
+            return Optional.empty();
+        }
+    }
+
+    private byte[] loadPayload(String filePath) {
+        BinaryObject binaryObject = super.retrieve(filePath).orElseThrow(BinaryObjectDeletedException::new);
+        byte[] bytes;
+        try (InputStream inputStream = binaryObject.getInputStream()) {
+            bytes = ByteStreams.toByteArray(ByteStreams.limit(inputStream, maximumCachedPayloadSizeInBytes + 1));
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to load binary object " + filePath + " into the cache", e);
+        }
+        if (bytes.length > maximumCachedPayloadSizeInBytes) {
+            // The metadata understated the file size
+            throw new PayloadTooLargeException();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the cached value, loading it if needed. The generation of the path is read before the underlying
+     * storage, so a value that was loaded while the path was invalidated is recognized as stale: it is removed
+     * from the cache and the value is loaded once more without caching it.
+     * <p>
+     * The load does not run inside {@link Cache#get(Object, java.util.concurrent.Callable)}, as Guava holds a
+     * monitor on the entry while loading, which pins a virtual thread to its carrier for the whole read. Instead,
+     * the first thread that misses registers a future in {@code loads} and the other threads wait for it.
+     */
+    private <V> V getFresh(Cache<String, CacheEntry<V>> cache,
+                           ConcurrentMap<String, CompletableFuture<CacheEntry<V>>> loads,
+                           String filePath,
+                           CacheLoad<V> load) {
+        int stripe = generationStripe(filePath);
+        CacheEntry<V> entry = cache.getIfPresent(filePath);
+        if (entry == null) {
+            entry = loadOnce(cache, loads, filePath, () -> new CacheEntry<>(generations.get(stripe), load.load()));
+        }
+        if (entry.generation == generations.get(stripe)) {
+            return entry.value;
+        }
+        cache.asMap().remove(filePath, entry);
+        return load.load();
+    }
+
+    private static int generationStripe(String filePath) {
+        return (filePath.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private static <V> CacheEntry<V> loadOnce(Cache<String, CacheEntry<V>> cache,
+                                              ConcurrentMap<String, CompletableFuture<CacheEntry<V>>> loads,
+                                              String filePath,
+                                              CacheLoad<CacheEntry<V>> load) {
+        CompletableFuture<CacheEntry<V>> future = new CompletableFuture<>();
+        CompletableFuture<CacheEntry<V>> running = loads.putIfAbsent(filePath, future);
+        if (running != null) {
+            return join(running);
+        }
+        try {
+            CacheEntry<V> entry = cache.getIfPresent(filePath);
+            if (entry == null) {
+                entry = load.load();
+                cache.put(filePath, entry);
+            }
+            future.complete(entry);
+            return entry;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(filePath, future);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new BinaryObjectStorageException("Unable to load binary object into the cache", cause);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CacheLoad<V> {
+        V load();
+    }
+
+    private static final class CacheEntry<V> {
+        private final long generation;
+        private final V value;
+
+        private CacheEntry(long generation, V value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
+    private static class BinaryObjectDeletedException extends RuntimeException {
+    }
+
+    private static class PayloadTooLargeException extends RuntimeException {
+    }
+}
@@ -0,0 +1,216 @@
+package io.github.wimdeblauwe.biob.storage.compressing;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BatchResult;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectStoreRequest;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.ForwardingBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.io.ChecksumVerifyingInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link BinaryObjectStorage} that compresses binary objects while they are stored in another storage, and
+ * decompresses them while they are read.
+ * <p>
+ * The {@link CompressionPolicy} decides per binary object whether it is compressed, usually based on its
+ * content type. The stored bytes start with a single header byte that tells whether the rest is compressed,
+ * so the policy can be changed without affecting binary objects that are already stored. The metadata is
+ * stored unchanged, so {@link BinaryObjectMetadata#getFileSize()} keeps reporting the original size.
+ * <p>
+ * Checksums do not survive compression: a checksum that is given when storing is verified against the
+ * uncompressed bytes, but it is not passed to the other storage, as that one only sees the compressed bytes.
+ * Any checksum that the other storage calculates over the compressed bytes is left out of the metadata returned
+ * by this storage, so it is never verified against the decompressed bytes.
+ * <p>
+ * Only binary objects stored through this storage can be retrieved through it.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CompressingBinaryObjectStorage extends ForwardingBinaryObjectStorage {
+    private static final int HEADER_STORED = 0;
+    private static final int HEADER_DEFLATED = 1;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final CompressionPolicy compressionPolicy;
+
+    /**
+     * Creates a storage that compresses text, JSON, XML and CSV with {@link CompressionLevel#FAST}.
+     *
+     * @param delegate the storage that holds the compressed bytes
+     */
+    public CompressingBinaryObjectStorage(BinaryObjectStorage delegate) {
+        this(delegate, CompressionPolicy.byContentType(CompressionLevel.FAST));
+    }
+
+    public CompressingBinaryObjectStorage(BinaryObjectStorage delegate, CompressionPolicy compressionPolicy) {
+        super(delegate);
+        this.compressionPolicy = Objects.requireNonNull(compressionPolicy, "compressionPolicy should not be null");
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        super.store(filePath, withoutChecksum(metadata), compress(metadata, inputStream));
+    }
+
+    /**
+     * The parts would be stored without the header byte and without compression, so multipart uploads are not
+     * supported.
+     */
+    @Override
+    public String initiateMultipartUpload(String filePath, BinaryObjectMetadata metadata) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support multipart uploads");
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        return super.retrieve(filePath)
+                    .map(binaryObject -> new BinaryObject(decompress(filePath, binaryObject.getInputStream()),
+                                                          withoutChecksum(binaryObject.getMetadata())));
+    }
+
+    /**
+     * Compressed bytes can not be read from an arbitrary offset, so this decompresses and skips the bytes
+     * before the offset.
+     */
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        Preconditions.checkArgument(offset >= 0, "offset should not be negative: %s", offset);
+        Preconditions.checkArgument(length >= 0, "length should not be negative: %s", length);
+        return retrieve(filePath).map(binaryObject -> {
+            InputStream inputStream = binaryObject.getInputStream();
+            try {
+                ByteStreams.skipFully(inputStream, offset);
+            } catch (EOFException e) {
+                // The offset is beyond the end of the binary object, so the range is empty
+            } catch (IOException e) {
+                throw new BinaryObjectStorageException("Unable to retrieve binary object at path " + filePath, e);
+            }
+            return new BinaryObject(ByteStreams.limit(inputStream, length), binaryObject.getMetadata());
+        });
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return super.getMetadata(filePath).map(CompressingBinaryObjectStorage::withoutChecksum);
+    }
+
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        return super.list(prefix).map(summary -> new BinaryObjectSummary(summary.getFilePath(),
+                                                                         withoutChecksum(summary.getMetadata())));
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> storeAll(Collection<BinaryObjectStoreRequest> requests) {
+        return super.storeAll(requests.stream()
+                                      .map(request -> new BinaryObjectStoreRequest(
+                                              request.getFilePath(),
+                                              withoutChecksum(request.getMetadata()),
+                                              compress(request.getMetadata(), request.getInputStream())))
+                                      .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObject>>> retrieveAll(Collection<String> filePaths) {
+        return BatchResult.collect(filePaths, this::retrieve);
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObjectMetadata>>> getMetadataAll(Collection<String> filePaths) {
+        return BatchResult.collect(filePaths, this::getMetadata);
+    }
+
+    private InputStream compress(BinaryObjectMetadata metadata, InputStream inputStream) {
+        if (metadata.getChecksum().isPresent()) {
+            inputStream = new ChecksumVerifyingInputStream(inputStream, metadata.getChecksum().get());
+        }
+        CompressionLevel level = compressionPolicy.getCompressionLevel(metadata);
+        if (level == null || level == CompressionLevel.NONE) {
+            return withHeader(HEADER_STORED, inputStream);
+        }
+        return withHeader(HEADER_DEFLATED, new CompressingInputStream(inputStream, level));
+    }
+
+    private static BinaryObjectMetadata withoutChecksum(BinaryObjectMetadata metadata) {
+        return metadata.getChecksum().isPresent() ? metadata.withChecksum(null) : metadata;
+    }
+
+    private static InputStream withHeader(int header, InputStream inputStream) {
+        return new SequenceInputStream(new ByteArrayInputStream(new byte[]{(byte) header}), inputStream);
+    }
+
+    private static InputStream decompress(String filePath, InputStream inputStream) {
+        try {
+            int header = inputStream.read();
+            switch (header) {
+                case HEADER_STORED:
+                    return inputStream;
+                case HEADER_DEFLATED:
+                    return new DecompressingInputStream(inputStream);
+                default:
+                    inputStream.close();
+                    throw new BinaryObjectStorageException("Binary object at path " + filePath
+                                                                   + " was not stored by a CompressingBinaryObjectStorage");
+            }
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to retrieve binary object at path " + filePath, e);
+        }
+    }
+
+    /**
+     * Releases the native memory of the deflater when the stream is closed.
+     */
+    private static class CompressingInputStream extends DeflaterInputStream {
+        CompressingInputStream(InputStream inputStream, CompressionLevel level) {
+            super(inputStream, new Deflater(level.getDeflaterLevel()), BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
+    /**
+     * Releases the native memory of the inflater when the stream is closed.
+     */
+    private static class DecompressingInputStream extends InflaterInputStream {
+        DecompressingInputStream(InputStream inputStream) {
+            super(inputStream, new Inflater(), BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
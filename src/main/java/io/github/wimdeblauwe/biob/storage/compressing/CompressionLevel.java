@@ -0,0 +1,32 @@
+package io.github.wimdeblauwe.biob.storage.compressing;
+
+import java.util.zip.Deflater;
+
+/**
+ * How much effort {@link CompressingBinaryObjectStorage} spends on compressing a binary object.
+ */
+public enum CompressionLevel {
+    /**
+     * Store the bytes as they are.
+     */
+    NONE(Deflater.NO_COMPRESSION),
+    /**
+     * Favour speed over size. A good default for data that is written often.
+     */
+    FAST(Deflater.BEST_SPEED),
+    DEFAULT(Deflater.DEFAULT_COMPRESSION),
+    /**
+     * Favour size over speed. A good choice for data that is written once and kept for a long time.
+     */
+    BEST(Deflater.BEST_COMPRESSION);
+
+    private final int deflaterLevel;
+
+    CompressionLevel(int deflaterLevel) {
+        this.deflaterLevel = deflaterLevel;
+    }
+
+    int getDeflaterLevel() {
+        return deflaterLevel;
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.wimdeblauwe.biob.storage.compressing;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+
+import java.util.Locale;
+
+/**
+ * Decides how a binary object is compressed by a {@link CompressingBinaryObjectStorage}.
+ */
+@FunctionalInterface
+public interface CompressionPolicy {
+
+    CompressionLevel getCompressionLevel(BinaryObjectMetadata metadata);
+
+    /**
+     * Compresses text, JSON, XML, CSV and JavaScript with the given level. Everything else, like JPEG, PNG or
+     * ZIP files, is usually already compressed and is stored as is.
+     *
+     * @param level the level to use for compressible content types
+     * @return the policy
+     */
+    static CompressionPolicy byContentType(CompressionLevel level) {
+        return metadata -> isCompressible(metadata.getContentType()) ? level : CompressionLevel.NONE;
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String mediaType = contentType.toLowerCase(Locale.ROOT);
+        int parametersIndex = mediaType.indexOf(';');
+        if (parametersIndex >= 0) {
+            mediaType = mediaType.substring(0, parametersIndex);
+        }
+        mediaType = mediaType.trim();
+        return mediaType.startsWith("text/")
+                || mediaType.endsWith("/json") || mediaType.endsWith("+json")
+                || mediaType.endsWith("/xml") || mediaType.endsWith("+xml")
+                || mediaType.equals("application/csv")
+                || mediaType.equals("application/javascript")
+                || mediaType.equals("application/x-ndjson");
+    }
+}
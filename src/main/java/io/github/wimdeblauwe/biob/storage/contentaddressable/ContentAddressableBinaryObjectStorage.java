@@ -0,0 +1,327 @@
+package io.github.wimdeblauwe.biob.storage.contentaddressable;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.util.concurrent.Striped;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} on the local filesystem that stores identical content only once.
+ * <p>
+ * While a binary object is written, its SHA-256 digest is calculated. The bytes are kept in a single blob per
+ * digest ({@code blobs/ab/cd/<digest>}) and each file path refers to its blob through a small reference file
+ * ({@code refs/<filePath>}) that also holds the metadata. A blob is deleted when the last file path that refers
+ * to it is deleted or overwritten.
+ * <p>
+ * The reference counts are kept in memory and are rebuilt from the reference files at construction time. Blobs
+ * without any reference (e.g. after a crash) are removed at that time.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ContentAddressableBinaryObjectStorage implements BinaryObjectStorage {
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path blobsPath;
+    private final Path referencesPath;
+    private final Path temporaryPath;
+    private final Striped<Lock> filePathLocks = Striped.lock(LOCK_STRIPES);
+    private final Striped<Lock> digestLocks = Striped.lock(LOCK_STRIPES);
+    private final ConcurrentMap<String, Long> referenceCounts = new ConcurrentHashMap<>();
+    private final AtomicLong referenceCount = new AtomicLong();
+    private final AtomicLong logicalBytes = new AtomicLong();
+    private final AtomicLong physicalBytes = new AtomicLong();
+
+    public ContentAddressableBinaryObjectStorage(Path basePath) {
+        Objects.requireNonNull(basePath, "basePath should not be null");
+        this.blobsPath = basePath.resolve("blobs");
+        this.referencesPath = basePath.resolve("refs");
+        this.temporaryPath = basePath.resolve("tmp");
+        try {
+            Files.createDirectories(blobsPath);
+            Files.createDirectories(referencesPath);
+            Files.createDirectories(temporaryPath);
+            rebuildReferenceCounts();
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to open content addressable storage at " + basePath, e);
+        }
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        Path temporaryFile = temporaryPath.resolve(UUID.randomUUID().toString());
+        try {
+            // Calculate the digest while the bytes are written, so the content is only read once
+            HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), inputStream);
+            long size = Files.copy(hashingInputStream, temporaryFile);
+            String digest = hashingInputStream.hash().toString();
+
+            Lock filePathLock = filePathLocks.get(filePath);
+            filePathLock.lock();
+            try {
+                Optional<Reference> previousReference = readReference(filePath);
+                Reference reference = new Reference(digest, size, metadata);
+                acquireBlob(digest, size, temporaryFile);
+                try {
+                    writeReference(filePath, reference);
+                } catch (IOException | RuntimeException e) {
+                    // Nothing refers to the blob yet, so give up the reference that was just taken
+                    try {
+                        releaseBlob(reference);
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw e;
+                }
+                if (previousReference.isPresent()) {
+                    releaseBlob(previousReference.get());
+                } else {
+                    referenceCount.incrementAndGet();
+                }
+            } finally {
+                filePathLock.unlock();
+            }
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to store inputStream at path " + filePath, e);
+        } finally {
+            try {
+                Files.deleteIfExists(temporaryFile);
+                inputStream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        try {
+            while (true) {
+                Optional<Reference> reference = readReference(filePath);
+                if (!reference.isPresent()) {
+                    return Optional.empty();
+                }
+                try {
+                    InputStream inputStream = Files.newInputStream(getBlobPath(reference.get().getDigest()));
+                    return Optional.of(new BinaryObject(inputStream, reference.get().getMetadata()));
+                } catch (NoSuchFileException e) {
+                    // The path was overwritten or deleted concurrently and its old blob was released, try again
+                }
+            }
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to retrieve binary object at path " + filePath, e);
+        }
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        try {
+            return readReference(filePath).map(Reference::getMetadata);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException(
+                    "Unable to retrieve metadata for binary object at path " + filePath, e);
+        }
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return Files.isRegularFile(referencesPath.resolve(filePath));
+    }
+
+    @Override
+    public void delete(String filePath) {
+        Lock filePathLock = filePathLocks.get(filePath);
+        filePathLock.lock();
+        try {
+            Optional<Reference> reference = readReference(filePath);
+            if (reference.isPresent()) {
+                Files.delete(referencesPath.resolve(filePath));
+                referenceCount.decrementAndGet();
+                releaseBlob(reference.get());
+            }
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to delete " + filePath, e);
+        } finally {
+            filePathLock.unlock();
+        }
+    }
+
+    /**
+     * Lists the binary objects with the prefix by walking the reference files, in no particular order.
+     */
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        Path directory = referencesPath.resolve(prefix.substring(0, prefix.lastIndexOf('/') + 1));
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        try {
+            return Files.walk(directory)
+                        .filter(Files::isRegularFile)
+                        .map(this::toFilePath)
+                        .filter(filePath -> filePath.startsWith(prefix))
+                        .map(filePath -> getMetadata(filePath).map(metadata -> new BinaryObjectSummary(filePath,
+                                                                                                     metadata)))
+                        .filter(Optional::isPresent)
+                        .map(Optional::get);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to list binary objects with prefix " + prefix, e);
+        }
+    }
+
+    private String toFilePath(Path referenceFile) {
+        StringJoiner joiner = new StringJoiner("/");
+        for (Path name : referencesPath.relativize(referenceFile)) {
+            joiner.add(name.toString());
+        }
+        return joiner.toString();
+    }
+
+    public DeduplicationStats getDeduplicationStats() {
+        return new DeduplicationStats(referenceCount.get(),
+                                      referenceCounts.size(),
+                                      logicalBytes.get(),
+                                      physicalBytes.get());
+    }
+
+    /**
+     * Adds a reference to the blob with the given digest. If there is no such blob yet, the temporary file
+     * becomes the blob.
+     */
+    private void acquireBlob(String digest, long size, Path temporaryFile) throws IOException {
+        Lock digestLock = digestLocks.get(digest);
+        digestLock.lock();
+        try {
+            Long count = referenceCounts.get(digest);
+            if (count == null) {
+                Path blobPath = getBlobPath(digest);
+                Files.createDirectories(blobPath.getParent());
+                Files.move(temporaryFile, blobPath, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                physicalBytes.addAndGet(size);
+                referenceCounts.put(digest, 1L);
+            } else {
+                referenceCounts.put(digest, count + 1);
+            }
+            logicalBytes.addAndGet(size);
+        } finally {
+            digestLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a reference to a blob and deletes the blob if that was the last reference.
+     */
+    private void releaseBlob(Reference reference) throws IOException {
+        String digest = reference.getDigest();
+        Lock digestLock = digestLocks.get(digest);
+        digestLock.lock();
+        try {
+            logicalBytes.addAndGet(-reference.getBlobSize());
+            Long count = referenceCounts.get(digest);
+            if (count == null || count <= 1) {
+                referenceCounts.remove(digest);
+                Files.deleteIfExists(getBlobPath(digest));
+                physicalBytes.addAndGet(-reference.getBlobSize());
+            } else {
+                referenceCounts.put(digest, count - 1);
+            }
+        } finally {
+            digestLock.unlock();
+        }
+    }
+
+    private Optional<Reference> readReference(String filePath) throws IOException {
+        Path referencePath = referencesPath.resolve(filePath);
+        if (!Files.isRegularFile(referencePath)) {
+            return Optional.empty();
+        }
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(referencePath))) {
+            return Optional.of(Reference.readFrom(inputStream));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void writeReference(String filePath, Reference reference) throws IOException {
+        Path referencePath = referencesPath.resolve(filePath);
+        Files.createDirectories(referencePath.getParent());
+        Path temporaryFile = temporaryPath.resolve(UUID.randomUUID().toString());
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temporaryFile))) {
+                reference.writeTo(outputStream);
+            }
+            Files.move(temporaryFile, referencePath, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private Path getBlobPath(String digest) {
+        return blobsPath.resolve(digest.substring(0, 2))
+                        .resolve(digest.substring(2, 4))
+                        .resolve(digest);
+    }
+
+    private void rebuildReferenceCounts() throws IOException {
+        try (Stream<Path> paths = Files.walk(referencesPath)) {
+            List<Path> referenceFiles = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+            for (Path referenceFile : referenceFiles) {
+                Reference reference;
+                try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(referenceFile))) {
+                    reference = Reference.readFrom(inputStream);
+                }
+                referenceCount.incrementAndGet();
+                logicalBytes.addAndGet(reference.getBlobSize());
+                if (referenceCounts.merge(reference.getDigest(), 1L, Long::sum) == 1L) {
+                    physicalBytes.addAndGet(reference.getBlobSize());
+                }
+            }
+        }
+
+        Set<String> referencedDigests = new HashSet<>(referenceCounts.keySet());
+        try (Stream<Path> paths = Files.walk(blobsPath)) {
+            List<Path> orphanedBlobs = paths.filter(Files::isRegularFile)
+                                            .filter(path -> !referencedDigests.contains(path.getFileName().toString()))
+                                            .collect(Collectors.toList());
+            for (Path orphanedBlob : orphanedBlobs) {
+                Files.deleteIfExists(orphanedBlob);
+            }
+        }
+
+        try (Stream<Path> paths = Files.list(temporaryPath)) {
+            for (Path temporaryFile : paths.collect(Collectors.toList())) {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+}
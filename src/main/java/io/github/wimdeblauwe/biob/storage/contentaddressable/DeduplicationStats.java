@@ -0,0 +1,69 @@
+package io.github.wimdeblauwe.biob.storage.contentaddressable;
+
+import java.util.StringJoiner;
+
+/**
+ * Snapshot of how much a {@link ContentAddressableBinaryObjectStorage} saves by storing identical content once.
+ */
+public class DeduplicationStats {
+    private final long referenceCount;
+    private final long blobCount;
+    private final long logicalBytes;
+    private final long physicalBytes;
+
+    public DeduplicationStats(long referenceCount, long blobCount, long logicalBytes, long physicalBytes) {
+        this.referenceCount = referenceCount;
+        this.blobCount = blobCount;
+        this.logicalBytes = logicalBytes;
+        this.physicalBytes = physicalBytes;
+    }
+
+    /**
+     * @return the number of stored binary objects
+     */
+    public long getReferenceCount() {
+        return referenceCount;
+    }
+
+    /**
+     * @return the number of distinct contents that are stored on disk
+     */
+    public long getBlobCount() {
+        return blobCount;
+    }
+
+    /**
+     * @return the total size of all stored binary objects, as if they were stored without deduplication
+     */
+    public long getLogicalBytes() {
+        return logicalBytes;
+    }
+
+    /**
+     * @return the total size of all distinct contents that are stored on disk
+     */
+    public long getPhysicalBytes() {
+        return physicalBytes;
+    }
+
+    public long getBytesSaved() {
+        return logicalBytes - physicalBytes;
+    }
+
+    /**
+     * @return the logical size divided by the physical size, or 1 if nothing is stored
+     */
+    public double getDeduplicationRatio() {
+        return physicalBytes == 0 ? 1.0 : (double) logicalBytes / physicalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", DeduplicationStats.class.getSimpleName() + "[", "]")
+                .add("referenceCount=" + referenceCount)
+                .add("blobCount=" + blobCount)
+                .add("logicalBytes=" + logicalBytes)
+                .add("physicalBytes=" + physicalBytes)
+                .toString();
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.wimdeblauwe.biob.storage.contentaddressable;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Maps a file path to the digest of the blob that holds its bytes. It is stored in a small file per file path.
+ */
+class Reference {
+    private static final int MAGIC = 0x42494F52; // "BIOR"
+    private static final byte VERSION_1 = 1;
+
+    private final String digest;
+    private final long blobSize;
+    private final BinaryObjectMetadata metadata;
+
+    Reference(String digest, long blobSize, BinaryObjectMetadata metadata) {
+        this.digest = digest;
+        this.blobSize = blobSize;
+        this.metadata = metadata;
+    }
+
+    String getDigest() {
+        return digest;
+    }
+
+    long getBlobSize() {
+        return blobSize;
+    }
+
+    BinaryObjectMetadata getMetadata() {
+        return metadata;
+    }
+
+    void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeByte(VERSION_1);
+        dataOutputStream.writeUTF(digest);
+        dataOutputStream.writeLong(blobSize);
+        dataOutputStream.writeLong(metadata.getFileSize());
+        writeNullableString(dataOutputStream, metadata.getOriginalFilename());
+        writeNullableString(dataOutputStream, metadata.getContentType());
+        dataOutputStream.flush();
+    }
+
+    static Reference readFrom(InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        int magic = dataInputStream.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a reference file, magic number was " + Integer.toHexString(magic));
+        }
+        byte version = dataInputStream.readByte();
+        if (version != VERSION_1) {
+            throw new IOException("Unsupported reference file version " + version);
+        }
+        String digest = dataInputStream.readUTF();
+        long blobSize = dataInputStream.readLong();
+        long fileSize = dataInputStream.readLong();
+        String originalFilename = readNullableString(dataInputStream);
+        String contentType = readNullableString(dataInputStream);
+        return new Reference(digest, blobSize, new BinaryObjectMetadata(fileSize, originalFilename, contentType));
+    }
+
+    private static void writeNullableString(DataOutputStream dataOutputStream, String value) throws IOException {
+        dataOutputStream.writeBoolean(value != null);
+        if (value != null) {
+            dataOutputStream.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream dataInputStream) throws IOException {
+        return dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
+    }
+}
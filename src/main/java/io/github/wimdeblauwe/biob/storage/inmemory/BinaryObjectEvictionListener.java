@@ -0,0 +1,12 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+
+/**
+ * Listener that is notified when a {@link BoundedInMemoryBinaryObjectStorage} evicts
+ * a binary object to stay within its maximum size.
+ */
+@FunctionalInterface
+public interface BinaryObjectEvictionListener {
+    void onEviction(String filePath, BinaryObjectMetadata metadata);
+}
@@ -0,0 +1,265 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+import io.github.wimdeblauwe.biob.io.ByteBufferUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} that keeps binary objects in memory up to a maximum number of bytes.
+ * <p>
+ * Each binary object is weighed by the length of its bytes. When storing a binary object would
+ * exceed the maximum size, binary objects are evicted in the order of the {@link EvictionPolicy}, least
+ * recently used by default. A binary object that is larger than the maximum size on its own is evicted right
+ * away, without evicting any other binary object. This makes this storage suitable as a hot-object tier in front
+ * of a slower storage.
+ * <p>
+ * This class is thread-safe. Reads run concurrently: they record their access in a queue, which is applied to
+ * the {@link EvictionPolicy} under the write lock by the next store, or by a read once the queue is long.
+ */
+public class BoundedInMemoryBinaryObjectStorage implements BinaryObjectStorage {
+    private static final int MAXIMUM_PENDING_ACCESSES = 1024;
+
+    private final long maximumSizeInBytes;
+    private final BinaryObjectEvictionListener evictionListener;
+    private final EvictionPolicy evictionPolicy;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, InMemoryBinaryObject> binaryObjects = new HashMap<>();
+    private final Queue<String> pendingAccesses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingAccessCount = new AtomicInteger();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private long sizeInBytes;
+    private long evictionCount;
+
+    public BoundedInMemoryBinaryObjectStorage(long maximumSizeInBytes) {
+        this(maximumSizeInBytes, (filePath, metadata) -> {
+        });
+    }
+
+    public BoundedInMemoryBinaryObjectStorage(long maximumSizeInBytes,
+                                              BinaryObjectEvictionListener evictionListener) {
+        this(maximumSizeInBytes, evictionListener, EvictionPolicy.leastRecentlyUsed());
+    }
+
+    /**
+     * @param evictionPolicy the policy of this storage only, see {@link EvictionPolicy}
+     */
+    public BoundedInMemoryBinaryObjectStorage(long maximumSizeInBytes,
+                                              BinaryObjectEvictionListener evictionListener,
+                                              EvictionPolicy evictionPolicy) {
+        Preconditions.checkArgument(maximumSizeInBytes >= 0, "maximumSizeInBytes should not be negative: %s",
+                                    maximumSizeInBytes);
+        this.maximumSizeInBytes = maximumSizeInBytes;
+        this.evictionListener = Objects.requireNonNull(evictionListener, "evictionListener should not be null");
+        this.evictionPolicy = Objects.requireNonNull(evictionPolicy, "evictionPolicy should not be null");
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        Objects.requireNonNull(filePath, "filePath should not be null");
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        Objects.requireNonNull(inputStream, "inputStream should not be null");
+        InMemoryBinaryObject binaryObject = null;
+        if (metadata.getFileSize() <= maximumSizeInBytes) {
+            try {
+                binaryObject = new InMemoryBinaryObject(ByteStreams.toByteArray(inputStream), metadata);
+            } catch (IOException e) {
+                throw new BinaryObjectStorageException("Unable to store inputStream under path " + filePath, e);
+            }
+        }
+
+        Map<String, BinaryObjectMetadata> evicted = new LinkedHashMap<>();
+        String unknownVictim = null;
+        lock.writeLock().lock();
+        try {
+            drainPendingAccesses();
+            remove(filePath);
+            if (binaryObject == null || binaryObject.getBytes().length > maximumSizeInBytes) {
+                // Too large on its own: keeping it even for a moment would evict all other binary objects
+                evicted.put(filePath, metadata);
+                evictionCount++;
+            } else {
+                binaryObjects.put(filePath, binaryObject);
+                sizeInBytes += binaryObject.getBytes().length;
+                evictionPolicy.recordInsert(filePath, binaryObject.getBytes().length);
+                while (sizeInBytes > maximumSizeInBytes) {
+                    String victim = evictionPolicy.selectVictim();
+                    InMemoryBinaryObject victimObject = remove(victim);
+                    if (victimObject == null) {
+                        unknownVictim = victim;
+                        break;
+                    }
+                    evicted.put(victim, victimObject.getMetadata());
+                    evictionCount++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Outside the lock, so a slow listener does not block the other threads
+        evicted.forEach(evictionListener::onEviction);
+        if (unknownVictim != null) {
+            throw new IllegalStateException("The eviction policy selected " + unknownVictim
+                                                    + ", which is not stored");
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        return lookup(filePath).map(binaryObject -> new ByteBufferBinaryObject(
+                ByteBuffer.wrap(binaryObject.getBytes()), binaryObject.getMetadata()));
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        return lookup(filePath).map(binaryObject -> new ByteBufferBinaryObject(
+                ByteBufferUtils.slice(ByteBuffer.wrap(binaryObject.getBytes()), offset, length),
+                binaryObject.getMetadata()));
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return lookup(filePath).map(InMemoryBinaryObject::getMetadata);
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        lock.readLock().lock();
+        try {
+            return binaryObjects.containsKey(filePath);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String filePath) {
+        lock.writeLock().lock();
+        try {
+            remove(filePath);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the binary objects with the prefix that are currently kept in memory, in no particular order.
+     * Listing does not count as access for the eviction order.
+     */
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        List<BinaryObjectSummary> summaries = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            binaryObjects.forEach((filePath, binaryObject) -> {
+                if (filePath.startsWith(prefix)) {
+                    summaries.add(new BinaryObjectSummary(filePath, binaryObject.getMetadata()));
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return summaries.stream();
+    }
+
+    /**
+     * Returns the total number of bytes of all binary objects currently kept in memory.
+     *
+     * @return the size in bytes
+     */
+    public long getSizeInBytes() {
+        lock.readLock().lock();
+        try {
+            return sizeInBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of this storage. Hits and misses are counted
+     * by {@link #retrieve(String)} and {@link #getMetadata(String)}.
+     *
+     * @return a snapshot of the statistics
+     */
+    public EvictionStats getStats() {
+        lock.readLock().lock();
+        try {
+            return new EvictionStats(hitCount.sum(), missCount.sum(), evictionCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Optional<InMemoryBinaryObject> lookup(String filePath) {
+        InMemoryBinaryObject binaryObject;
+        lock.readLock().lock();
+        try {
+            binaryObject = binaryObjects.get(filePath);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (binaryObject == null) {
+            missCount.increment();
+            return Optional.empty();
+        }
+        hitCount.increment();
+        pendingAccesses.add(filePath);
+        if (pendingAccessCount.incrementAndGet() > MAXIMUM_PENDING_ACCESSES && lock.writeLock().tryLock()) {
+            try {
+                drainPendingAccesses();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return Optional.of(binaryObject);
+    }
+
+    /**
+     * Applies the accesses of the reads to the eviction policy. Needs the write lock.
+     */
+    private void drainPendingAccesses() {
+        String filePath;
+        while ((filePath = pendingAccesses.poll()) != null) {
+            pendingAccessCount.decrementAndGet();
+            // The binary object may have been removed since it was read
+            if (binaryObjects.containsKey(filePath)) {
+                evictionPolicy.recordAccess(filePath);
+            }
+        }
+    }
+
+    private InMemoryBinaryObject remove(String filePath) {
+        InMemoryBinaryObject binaryObject = binaryObjects.remove(filePath);
+        if (binaryObject != null) {
+            sizeInBytes -= binaryObject.getBytes().length;
+            evictionPolicy.recordRemoval(filePath);
+        }
+        return binaryObject;
+    }
+}
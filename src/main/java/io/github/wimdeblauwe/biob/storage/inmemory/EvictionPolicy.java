@@ -0,0 +1,50 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+/**
+ * Decides which binary object a {@link BoundedInMemoryBinaryObjectStorage} evicts when it is full.
+ * <p>
+ * The storage calls all methods while holding its lock, so implementations do not need to be thread-safe. An
+ * instance keeps state about the binary objects of one storage and should not be shared between storages.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called when a binary object is stored, also when it replaces one at the same path.
+     *
+     * @param filePath the path of the binary object
+     * @param weight   the number of bytes of the binary object
+     */
+    void recordInsert(String filePath, long weight);
+
+    /**
+     * Called when a binary object is retrieved or its metadata is read.
+     */
+    void recordAccess(String filePath);
+
+    /**
+     * Called when a binary object is deleted or evicted.
+     */
+    void recordRemoval(String filePath);
+
+    /**
+     * Selects the next binary object to evict. Only called while the storage holds at least one binary object.
+     *
+     * @return the path of a binary object that was inserted and not yet removed
+     */
+    String selectVictim();
+
+    /**
+     * @return a policy that evicts the binary object that was not accessed for the longest time
+     */
+    static EvictionPolicy leastRecentlyUsed() {
+        return new LeastRecentlyUsedEvictionPolicy();
+    }
+
+    /**
+     * @return a policy that evicts the binary object with the fewest accesses since it was stored, the least
+     * recently stored one first when there is a tie
+     */
+    static EvictionPolicy leastFrequentlyUsed() {
+        return new LeastFrequentlyUsedEvictionPolicy();
+    }
+}
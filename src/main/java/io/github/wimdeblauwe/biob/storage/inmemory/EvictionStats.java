@@ -0,0 +1,56 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import java.util.StringJoiner;
+
+/**
+ * Snapshot of the hit, miss and eviction counters of a {@link BoundedInMemoryBinaryObjectStorage}.
+ */
+public final class EvictionStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+
+    public EvictionStats(long hitCount, long missCount, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * @return the number of lookups that found a binary object
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that did not find a binary object
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of binary objects that were evicted to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the fraction of lookups that found a binary object, or 1.0 when there were no lookups
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", EvictionStats.class.getSimpleName() + "[", "]")
+                .add("hitCount=" + hitCount)
+                .add("missCount=" + missCount)
+                .add("evictionCount=" + evictionCount)
+                .toString();
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+
+/**
+ * The bytes and metadata of a binary object that is kept in memory.
+ */
+class InMemoryBinaryObject {
+    private final byte[] bytes;
+    private final BinaryObjectMetadata metadata;
+
+    InMemoryBinaryObject(byte[] bytes, BinaryObjectMetadata metadata) {
+        this.bytes = bytes;
+        this.metadata = metadata;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    BinaryObjectMetadata getMetadata() {
+        return metadata;
+    }
+}
@@ -1,22 +1,48 @@
 package io.github.wimdeblauwe.biob.storage.inmemory;
 
+import com.google.common.base.Preconditions;
 import com.google.common.io.ByteStreams;
 import io.github.wimdeblauwe.biob.BinaryObject;
 import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
 import io.github.wimdeblauwe.biob.BinaryObjectStorage;
 import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+import io.github.wimdeblauwe.biob.NoSuchUploadException;
+import io.github.wimdeblauwe.biob.UploadedPart;
+import io.github.wimdeblauwe.biob.io.ByteBufferUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
 
+/**
+ * {@link BinaryObjectStorage} that keeps all binary objects in memory.
+ * <p>
+ * This class is thread-safe. Reads never block, writes only contend with writes to the same path and
+ * a {@link #store(String, BinaryObjectMetadata, InputStream)} replaces the bytes and the metadata of
+ * an existing binary object in a single atomic step.
+ * <p>
+ * The binary objects are kept sorted by path, so {@link #list(String)} returns them in that order and only
+ * visits the paths with the prefix.
+ * <p>
+ * Multipart uploads keep their parts in memory until they are completed.
+ */
 public class InMemoryBinaryObjectStorage implements BinaryObjectStorage {
 
-    private final Map<String, InMemoryBinaryObject> binaryObjects = new HashMap<>();
+    private final ConcurrentNavigableMap<String, InMemoryBinaryObject> binaryObjects = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, InMemoryUpload> uploads = new ConcurrentHashMap<>();
 
     @Override
     public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
@@ -25,6 +51,7 @@ public class InMemoryBinaryObjectStorage implements BinaryObjectStorage {
             Objects.requireNonNull(metadata, "metadata should not be null");
             Objects.requireNonNull(inputStream, "inputStream should not be null");
 
+            // Read the stream before touching the map so concurrent readers never see a partial object
             binaryObjects.put(filePath, new InMemoryBinaryObject(ByteStreams.toByteArray(inputStream), metadata));
         } catch (IOException e) {
             throw new BinaryObjectStorageException("Unable to store inputStream under path " + filePath, e);
@@ -35,8 +62,20 @@ public class InMemoryBinaryObjectStorage implements BinaryObjectStorage {
     public Optional<BinaryObject> retrieve(String filePath) {
         InMemoryBinaryObject binaryObject = binaryObjects.get(filePath);
         if (binaryObject != null) {
-            return Optional.of(new BinaryObject(new ByteArrayInputStream(binaryObject.getBytes()),
-                                                binaryObject.getMetadata()));
+            return Optional.of(new ByteBufferBinaryObject(ByteBuffer.wrap(binaryObject.getBytes()),
+                                                          binaryObject.getMetadata()));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        InMemoryBinaryObject binaryObject = binaryObjects.get(filePath);
+        if (binaryObject != null) {
+            return Optional.of(new ByteBufferBinaryObject(
+                    ByteBufferUtils.slice(ByteBuffer.wrap(binaryObject.getBytes()), offset, length),
+                    binaryObject.getMetadata()));
         } else {
             return Optional.empty();
         }
@@ -62,21 +101,74 @@ public class InMemoryBinaryObjectStorage implements BinaryObjectStorage {
         binaryObjects.remove(filePath);
     }
 
-    private static class InMemoryBinaryObject {
-        private byte[] bytes;
-        private BinaryObjectMetadata metadata;
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        // All paths that start with the prefix sort between the prefix and the prefix followed by the highest char
+        return binaryObjects.subMap(prefix, prefix + Character.MAX_VALUE)
+                            .entrySet()
+                            .stream()
+                            .map(entry -> new BinaryObjectSummary(entry.getKey(), entry.getValue().getMetadata()));
+    }
 
-        InMemoryBinaryObject(byte[] bytes, BinaryObjectMetadata metadata) {
-            this.bytes = bytes;
-            this.metadata = metadata;
+    @Override
+    public String initiateMultipartUpload(String filePath, BinaryObjectMetadata metadata) {
+        Objects.requireNonNull(filePath, "filePath should not be null");
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new InMemoryUpload(filePath, metadata));
+        return uploadId;
+    }
+
+    @Override
+    public void uploadPart(String uploadId, int partNumber, InputStream inputStream) {
+        Preconditions.checkArgument(partNumber >= 1, "partNumber should be positive: %s", partNumber);
+        Objects.requireNonNull(inputStream, "inputStream should not be null");
+        InMemoryUpload upload = getUpload(uploadId);
+        try {
+            upload.putPart(partNumber, ByteStreams.toByteArray(inputStream));
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to store part " + partNumber + " of upload " + uploadId, e);
+        }
+    }
+
+    @Override
+    public List<UploadedPart> listParts(String uploadId) {
+        return getUpload(uploadId).getParts();
+    }
+
+    @Override
+    public void completeMultipartUpload(String uploadId) {
+        InMemoryUpload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            throw new NoSuchUploadException(uploadId);
         }
+        binaryObjects.put(upload.getFilePath(), new InMemoryBinaryObject(upload.join(), upload.getMetadata()));
+    }
 
-        byte[] getBytes() {
-            return bytes;
+    @Override
+    public void abortMultipartUpload(String uploadId) {
+        uploads.remove(uploadId);
+    }
+
+    @Override
+    public int expireMultipartUploads(Duration maximumIdleTime) {
+        long now = System.nanoTime();
+        int count = 0;
+        for (Map.Entry<String, InMemoryUpload> entry : uploads.entrySet()) {
+            if (now - entry.getValue().getLastActivityNanos() >= maximumIdleTime.toNanos()
+                    && uploads.remove(entry.getKey(), entry.getValue())) {
+                count++;
+            }
         }
+        return count;
+    }
 
-        BinaryObjectMetadata getMetadata() {
-            return metadata;
+    private InMemoryUpload getUpload(String uploadId) {
+        InMemoryUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new NoSuchUploadException(uploadId);
         }
+        return upload;
     }
 }
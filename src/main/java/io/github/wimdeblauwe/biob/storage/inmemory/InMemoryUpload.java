@@ -0,0 +1,65 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.UploadedPart;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * A multipart upload of {@link InMemoryBinaryObjectStorage} that is not completed yet.
+ */
+class InMemoryUpload {
+    private final String filePath;
+    private final BinaryObjectMetadata metadata;
+    private final ConcurrentNavigableMap<Integer, byte[]> parts = new ConcurrentSkipListMap<>();
+    private volatile long lastActivityNanos = System.nanoTime();
+
+    InMemoryUpload(String filePath, BinaryObjectMetadata metadata) {
+        this.filePath = filePath;
+        this.metadata = metadata;
+    }
+
+    String getFilePath() {
+        return filePath;
+    }
+
+    BinaryObjectMetadata getMetadata() {
+        return metadata;
+    }
+
+    long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    void putPart(int partNumber, byte[] bytes) {
+        parts.put(partNumber, bytes);
+        lastActivityNanos = System.nanoTime();
+    }
+
+    List<UploadedPart> getParts() {
+        return parts.entrySet()
+                    .stream()
+                    .map(entry -> new UploadedPart(entry.getKey(), entry.getValue().length))
+                    .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the bytes of all parts, in the order of their number
+     */
+    byte[] join() {
+        int size = 0;
+        for (byte[] part : parts.values()) {
+            size = Math.addExact(size, part.length);
+        }
+        byte[] bytes = new byte[size];
+        int position = 0;
+        for (byte[] part : parts.values()) {
+            System.arraycopy(part, 0, bytes, position, part.length);
+            position += part.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * See {@link EvictionPolicy#leastFrequentlyUsed()}.
+ */
+class LeastFrequentlyUsedEvictionPolicy implements EvictionPolicy {
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> evictionOrder = new TreeSet<>(
+            Comparator.<Entry>comparingLong(entry -> entry.accessCount)
+                    .thenComparingLong(entry -> entry.insertSequence));
+    private long nextInsertSequence;
+
+    @Override
+    public void recordInsert(String filePath, long weight) {
+        recordRemoval(filePath);
+        // Storing counts as the first access, so a new binary object does not lose a tie against an older one
+        Entry entry = new Entry(filePath, nextInsertSequence++);
+        entries.put(filePath, entry);
+        evictionOrder.add(entry);
+    }
+
+    @Override
+    public void recordAccess(String filePath) {
+        Entry entry = entries.get(filePath);
+        if (entry != null) {
+            evictionOrder.remove(entry);
+            entry.accessCount++;
+            evictionOrder.add(entry);
+        }
+    }
+
+    @Override
+    public void recordRemoval(String filePath) {
+        Entry entry = entries.remove(filePath);
+        if (entry != null) {
+            evictionOrder.remove(entry);
+        }
+    }
+
+    @Override
+    public String selectVictim() {
+        return evictionOrder.first().filePath;
+    }
+
+    private static final class Entry {
+        private final String filePath;
+        private final long insertSequence;
+        private long accessCount;
+
+        private Entry(String filePath, long insertSequence) {
+            this.filePath = filePath;
+            this.insertSequence = insertSequence;
+            this.accessCount = 1;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * See {@link EvictionPolicy#leastRecentlyUsed()}.
+ */
+class LeastRecentlyUsedEvictionPolicy implements EvictionPolicy {
+    // Iterates from the least to the most recently used path
+    private final Set<String> filePaths = new LinkedHashSet<>();
+
+    @Override
+    public void recordInsert(String filePath, long weight) {
+        recordAccess(filePath);
+    }
+
+    @Override
+    public void recordAccess(String filePath) {
+        filePaths.remove(filePath);
+        filePaths.add(filePath);
+    }
+
+    @Override
+    public void recordRemoval(String filePath) {
+        filePaths.remove(filePath);
+    }
+
+    @Override
+    public String selectVictim() {
+        return filePaths.iterator().next();
+    }
+}
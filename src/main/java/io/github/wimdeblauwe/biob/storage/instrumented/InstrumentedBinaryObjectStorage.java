@@ -0,0 +1,392 @@
+package io.github.wimdeblauwe.biob.storage.instrumented;
+
+import io.github.wimdeblauwe.biob.BatchResult;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectStoreRequest;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.ForwardingBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.UploadedPart;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} that reports the latency, the errors, the number of running calls and the bytes
+ * read and written of every operation of another storage to {@link StorageMetrics}.
+ * <p>
+ * The latency of {@link #retrieve(String)} is the time to open the binary object; the bytes out are reported
+ * when its input stream is closed. The latency of {@link #list(String)} is the time until its stream is closed.
+ * For {@link #store(String, BinaryObjectMetadata, InputStream)}, the time spent waiting for the input stream of
+ * the caller is reported separately, so a slow client can be told apart from a slow backend. The same goes for
+ * {@link #uploadPart(String, int, InputStream)}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class InstrumentedBinaryObjectStorage extends ForwardingBinaryObjectStorage {
+    private final String backend;
+    private final StorageMetrics metrics;
+    private final Map<StorageOperation, AtomicInteger> inFlight = new EnumMap<>(StorageOperation.class);
+
+    /**
+     * Uses the simple class name of the delegate as the name of the backend.
+     */
+    public InstrumentedBinaryObjectStorage(BinaryObjectStorage delegate, StorageMetrics metrics) {
+        this(delegate, delegate.getClass().getSimpleName(), metrics);
+    }
+
+    /**
+     * @param delegate the storage to instrument
+     * @param backend  the name of the backend that is passed with every measurement
+     * @param metrics  receives the measurements
+     */
+    public InstrumentedBinaryObjectStorage(BinaryObjectStorage delegate, String backend, StorageMetrics metrics) {
+        super(delegate);
+        this.backend = Objects.requireNonNull(backend, "backend should not be null");
+        this.metrics = Objects.requireNonNull(metrics, "metrics should not be null");
+        for (StorageOperation operation : StorageOperation.values()) {
+            AtomicInteger count = new AtomicInteger();
+            inFlight.put(operation, count);
+            metrics.registerInFlightGauge(backend, operation, count::get);
+        }
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        MeteredInputStream meteredInputStream = new MeteredInputStream(inputStream, StorageOperation.STORE, true);
+        try {
+            instrument(StorageOperation.STORE, () -> {
+                super.store(filePath, metadata, meteredInputStream);
+                return null;
+            });
+        } finally {
+            meteredInputStream.report();
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        return instrument(StorageOperation.RETRIEVE, () -> super.retrieve(filePath))
+                .map(binaryObject -> meter(binaryObject, StorageOperation.RETRIEVE));
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        return instrument(StorageOperation.RETRIEVE_RANGE, () -> super.retrieve(filePath, offset, length))
+                .map(binaryObject -> meter(binaryObject, StorageOperation.RETRIEVE_RANGE));
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return instrument(StorageOperation.GET_METADATA, () -> super.getMetadata(filePath));
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return instrument(StorageOperation.HAS_BINARY_OBJECT, () -> super.hasBinaryObject(filePath));
+    }
+
+    @Override
+    public void delete(String filePath) {
+        instrument(StorageOperation.DELETE, () -> {
+            super.delete(filePath);
+            return null;
+        });
+    }
+
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        AtomicInteger count = inFlight.get(StorageOperation.LIST);
+        count.incrementAndGet();
+        long start = System.nanoTime();
+        Stream<BinaryObjectSummary> stream;
+        try {
+            stream = super.list(prefix);
+        } catch (RuntimeException | Error e) {
+            count.decrementAndGet();
+            metrics.recordError(backend, StorageOperation.LIST, causeOf(e));
+            metrics.recordLatency(backend, StorageOperation.LIST, System.nanoTime() - start, false);
+            throw e;
+        }
+        AtomicBoolean closed = new AtomicBoolean();
+        return stream.onClose(() -> {
+            if (closed.compareAndSet(false, true)) {
+                count.decrementAndGet();
+                metrics.recordLatency(backend, StorageOperation.LIST, System.nanoTime() - start, true);
+            }
+        });
+    }
+
+    @Override
+    public String initiateMultipartUpload(String filePath, BinaryObjectMetadata metadata) {
+        return instrument(StorageOperation.INITIATE_MULTIPART_UPLOAD,
+                          () -> super.initiateMultipartUpload(filePath, metadata));
+    }
+
+    @Override
+    public void uploadPart(String uploadId, int partNumber, InputStream inputStream) {
+        MeteredInputStream meteredInputStream = new MeteredInputStream(inputStream, StorageOperation.UPLOAD_PART, true);
+        try {
+            instrument(StorageOperation.UPLOAD_PART, () -> {
+                super.uploadPart(uploadId, partNumber, meteredInputStream);
+                return null;
+            });
+        } finally {
+            meteredInputStream.report();
+        }
+    }
+
+    @Override
+    public List<UploadedPart> listParts(String uploadId) {
+        return instrument(StorageOperation.LIST_PARTS, () -> super.listParts(uploadId));
+    }
+
+    @Override
+    public void completeMultipartUpload(String uploadId) {
+        instrument(StorageOperation.COMPLETE_MULTIPART_UPLOAD, () -> {
+            super.completeMultipartUpload(uploadId);
+            return null;
+        });
+    }
+
+    @Override
+    public void abortMultipartUpload(String uploadId) {
+        instrument(StorageOperation.ABORT_MULTIPART_UPLOAD, () -> {
+            super.abortMultipartUpload(uploadId);
+            return null;
+        });
+    }
+
+    @Override
+    public int expireMultipartUploads(Duration maximumIdleTime) {
+        return instrument(StorageOperation.EXPIRE_MULTIPART_UPLOADS,
+                          () -> super.expireMultipartUploads(maximumIdleTime));
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> storeAll(Collection<BinaryObjectStoreRequest> requests) {
+        List<MeteredInputStream> meteredInputStreams = new ArrayList<>(requests.size());
+        List<BinaryObjectStoreRequest> meteredRequests = new ArrayList<>(requests.size());
+        for (BinaryObjectStoreRequest request : requests) {
+            MeteredInputStream meteredInputStream = new MeteredInputStream(request.getInputStream(),
+                                                                           StorageOperation.STORE_ALL,
+                                                                           true);
+            meteredInputStreams.add(meteredInputStream);
+            meteredRequests.add(new BinaryObjectStoreRequest(request.getFilePath(),
+                                                             request.getMetadata(),
+                                                             meteredInputStream));
+        }
+        try {
+            return recordFailures(StorageOperation.STORE_ALL,
+                                  instrument(StorageOperation.STORE_ALL, () -> super.storeAll(meteredRequests)));
+        } finally {
+            meteredInputStreams.forEach(MeteredInputStream::report);
+        }
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObject>>> retrieveAll(Collection<String> filePaths) {
+        Map<String, BatchResult<Optional<BinaryObject>>> results = new LinkedHashMap<>();
+        recordFailures(StorageOperation.RETRIEVE_ALL,
+                       instrument(StorageOperation.RETRIEVE_ALL, () -> super.retrieveAll(filePaths)))
+                .forEach((filePath, result) -> results.put(filePath, result.isSuccess()
+                        ? BatchResult.success(result.getValue().map(
+                                binaryObject -> meter(binaryObject, StorageOperation.RETRIEVE_ALL)))
+                        : result));
+        return results;
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObjectMetadata>>> getMetadataAll(Collection<String> filePaths) {
+        return recordFailures(StorageOperation.GET_METADATA_ALL,
+                              instrument(StorageOperation.GET_METADATA_ALL, () -> super.getMetadataAll(filePaths)));
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> deleteAll(Collection<String> filePaths) {
+        return recordFailures(StorageOperation.DELETE_ALL,
+                              instrument(StorageOperation.DELETE_ALL, () -> super.deleteAll(filePaths)));
+    }
+
+    @Override
+    public Optional<Long> transferTo(String filePath, WritableByteChannel target) {
+        Optional<Long> transferred = instrument(StorageOperation.TRANSFER_TO,
+                                                () -> getDelegate().transferTo(filePath, target));
+        transferred.ifPresent(bytes -> metrics.recordBytesOut(backend, StorageOperation.TRANSFER_TO, bytes));
+        return transferred;
+    }
+
+    private <T> T instrument(StorageOperation operation, Supplier<T> call) {
+        AtomicInteger count = inFlight.get(operation);
+        count.incrementAndGet();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } catch (RuntimeException | Error e) {
+            metrics.recordError(backend, operation, causeOf(e));
+            throw e;
+        } finally {
+            count.decrementAndGet();
+            metrics.recordLatency(backend, operation, System.nanoTime() - start, success);
+        }
+    }
+
+    private <T> Map<String, BatchResult<T>> recordFailures(StorageOperation operation,
+                                                           Map<String, BatchResult<T>> results) {
+        for (BatchResult<T> result : results.values()) {
+            if (!result.isSuccess()) {
+                metrics.recordError(backend, operation, causeOf(result.getFailure()));
+            }
+        }
+        return results;
+    }
+
+    private BinaryObject meter(BinaryObject binaryObject, StorageOperation operation) {
+        return new MeteredBinaryObject(binaryObject,
+                                       new MeteredInputStream(binaryObject.getInputStream(), operation, false));
+    }
+
+    private static Throwable causeOf(Throwable e) {
+        if (e instanceof BinaryObjectStorageException && e.getCause() != null) {
+            return e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Counts the bytes that are read and the time spent reading them. The bytes are reported once, when the stream
+     * is closed or when the operation ends, whichever comes first: some storages close the stream they store.
+     */
+    private class MeteredInputStream extends FilterInputStream {
+        private final StorageOperation operation;
+        private final boolean inbound;
+        private long byteCount;
+        private long readNanos;
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        /**
+         * @param inbound whether the bytes flow from the caller into the storage, rather than out of it
+         */
+        private MeteredInputStream(InputStream in, StorageOperation operation, boolean inbound) {
+            super(in);
+            this.operation = operation;
+            this.inbound = inbound;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                int b = super.read();
+                if (b >= 0) {
+                    byteCount++;
+                }
+                return b;
+            } catch (IOException e) {
+                metrics.recordError(backend, operation, e);
+                throw e;
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    byteCount += read;
+                }
+                return read;
+            } catch (IOException e) {
+                metrics.recordError(backend, operation, e);
+                throw e;
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            byteCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                report();
+            }
+        }
+
+        private void addBytes(long bytes) {
+            byteCount += bytes;
+        }
+
+        private void report() {
+            if (!reported.compareAndSet(false, true)) {
+                return;
+            }
+            if (inbound) {
+                metrics.recordBytesIn(backend, operation, byteCount, readNanos);
+            } else {
+                metrics.recordBytesOut(backend, operation, byteCount);
+            }
+        }
+    }
+
+    /**
+     * Binary object that reads through a {@link MeteredInputStream}, while keeping the efficient
+     * {@link BinaryObject#transferTo(WritableByteChannel)} of the original binary object.
+     */
+    private static class MeteredBinaryObject extends BinaryObject {
+        private final BinaryObject binaryObject;
+        private final MeteredInputStream meteredInputStream;
+
+        private MeteredBinaryObject(BinaryObject binaryObject, MeteredInputStream meteredInputStream) {
+            super(meteredInputStream, binaryObject.getMetadata());
+            this.binaryObject = binaryObject;
+            this.meteredInputStream = meteredInputStream;
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target) throws IOException {
+            long transferred = binaryObject.transferTo(target);
+            meteredInputStream.addBytes(transferred);
+            return transferred;
+        }
+    }
+}
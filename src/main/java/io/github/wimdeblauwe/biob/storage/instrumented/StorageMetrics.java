@@ -0,0 +1,69 @@
+package io.github.wimdeblauwe.biob.storage.instrumented;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Receives the measurements of an {@link InstrumentedBinaryObjectStorage}. Implement this interface to forward
+ * them to a metrics library such as Micrometer or Dropwizard Metrics; this library does not depend on any of them.
+ * <p>
+ * Every measurement is tagged with the name of the backend and the operation. All methods do nothing by default,
+ * so an implementation only needs to override the measurements it is interested in. The methods are called
+ * from the threads that use the storage, so implementations need to be thread-safe and fast.
+ */
+public interface StorageMetrics {
+    /**
+     * Called once for each operation when the instrumented storage is created.
+     *
+     * @param backend   the name of the backend
+     * @param operation the operation
+     * @param inFlight  returns the number of calls of the operation that are currently running
+     */
+    default void registerInFlightGauge(String backend, StorageOperation operation, IntSupplier inFlight) {
+    }
+
+    /**
+     * Records how long a call took, e.g. in a histogram or a timer.
+     *
+     * @param backend       the name of the backend
+     * @param operation     the operation
+     * @param durationNanos the duration of the call in nanoseconds
+     * @param success       whether the call completed without an exception
+     */
+    default void recordLatency(String backend, StorageOperation operation, long durationNanos, boolean success) {
+    }
+
+    /**
+     * Records a failed call, or a failed item of a batch call.
+     *
+     * @param backend   the name of the backend
+     * @param operation the operation
+     * @param cause     the exception. When a {@link io.github.wimdeblauwe.biob.BinaryObjectStorageException}
+     *                  wraps another exception, this is the wrapped exception, e.g. the
+     *                  {@link java.io.IOException} of the disk.
+     */
+    default void recordError(String backend, StorageOperation operation, Throwable cause) {
+    }
+
+    /**
+     * Records the bytes that were read from the input stream of the caller while storing binary objects.
+     *
+     * @param backend   the name of the backend
+     * @param operation the operation
+     * @param bytes     the number of bytes that were read
+     * @param readNanos the time spent waiting for the input stream of the caller, which is part of the latency
+     *                  of the call
+     */
+    default void recordBytesIn(String backend, StorageOperation operation, long bytes, long readNanos) {
+    }
+
+    /**
+     * Records the bytes that were returned by a retrieved binary object. This is called when the input stream
+     * of the binary object is closed.
+     *
+     * @param backend   the name of the backend
+     * @param operation the operation
+     * @param bytes     the number of bytes that were read by the caller
+     */
+    default void recordBytesOut(String backend, StorageOperation operation, long bytes) {
+    }
+}
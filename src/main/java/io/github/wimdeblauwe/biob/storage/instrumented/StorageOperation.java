@@ -0,0 +1,39 @@
+package io.github.wimdeblauwe.biob.storage.instrumented;
+
+/**
+ * The operations of {@link io.github.wimdeblauwe.biob.BinaryObjectStorage} that are reported to
+ * {@link StorageMetrics}.
+ */
+public enum StorageOperation {
+    STORE("store"),
+    RETRIEVE("retrieve"),
+    RETRIEVE_RANGE("retrieveRange"),
+    GET_METADATA("getMetadata"),
+    HAS_BINARY_OBJECT("hasBinaryObject"),
+    DELETE("delete"),
+    LIST("list"),
+    STORE_ALL("storeAll"),
+    RETRIEVE_ALL("retrieveAll"),
+    GET_METADATA_ALL("getMetadataAll"),
+    DELETE_ALL("deleteAll"),
+    TRANSFER_TO("transferTo"),
+    INITIATE_MULTIPART_UPLOAD("initiateMultipartUpload"),
+    UPLOAD_PART("uploadPart"),
+    LIST_PARTS("listParts"),
+    COMPLETE_MULTIPART_UPLOAD("completeMultipartUpload"),
+    ABORT_MULTIPART_UPLOAD("abortMultipartUpload"),
+    EXPIRE_MULTIPART_UPLOADS("expireMultipartUploads");
+
+    private final String tagValue;
+
+    StorageOperation(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    /**
+     * @return the name of the operation as it is used in metric tags, e.g. {@code getMetadata}
+     */
+    public String getTagValue() {
+        return tagValue;
+    }
+}
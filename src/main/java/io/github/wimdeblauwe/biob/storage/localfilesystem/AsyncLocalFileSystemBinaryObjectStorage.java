@@ -0,0 +1,236 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import io.github.wimdeblauwe.biob.AsyncBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link AsyncBinaryObjectStorage} that stores binary objects on the local filesystem, in the same layout as
+ * {@link LocalFileSystemBinaryObjectStorage}.
+ * <p>
+ * Only {@link #store(String, BinaryObjectMetadata, InputStream)} is truly asynchronous: it writes the file with an
+ * {@link AsynchronousFileChannel}, and while a chunk is being written, the next chunk is already read from the input
+ * stream. Reading the input stream of the caller still blocks a thread of the executor, so a slow caller occupies it
+ * for the duration of the store. Like {@link LocalFileSystemBinaryObjectStorage}, it writes to a temporary file that
+ * is moved into place once it is complete.
+ * <p>
+ * The other operations run the blocking {@link LocalFileSystemBinaryObjectStorage} on the configured executor, so
+ * they only free the calling thread.
+ */
+public class AsyncLocalFileSystemBinaryObjectStorage implements AsyncBinaryObjectStorage {
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final LocalFileSystemBinaryObjectStorage storage;
+    private final ExecutorService executorService;
+    private final int chunkSize;
+
+    public AsyncLocalFileSystemBinaryObjectStorage(LocalFileSystemBinaryObjectStorage storage,
+                                                   ExecutorService executorService) {
+        this(storage, executorService, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param storage         the storage that determines the layout on disk and handles the metadata
+     * @param executorService the executor that runs the blocking parts and the completion of the file writes
+     * @param chunkSize       the number of bytes that are read from the input stream and written at once
+     */
+    public AsyncLocalFileSystemBinaryObjectStorage(LocalFileSystemBinaryObjectStorage storage,
+                                                   ExecutorService executorService,
+                                                   int chunkSize) {
+        this.storage = Objects.requireNonNull(storage, "storage should not be null");
+        this.executorService = Objects.requireNonNull(executorService, "executorService should not be null");
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize should be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        Path targetPath = storage.resolve(filePath);
+        AtomicReference<Path> temporaryFile = new AtomicReference<>();
+        InputStream checksummingInputStream = storage.checksumming(inputStream);
+        return CompletableFuture.supplyAsync(() -> open(targetPath, temporaryFile), executorService)
+                                .thenCompose(channel -> writeAll(channel, checksummingInputStream)
+                                        .whenComplete((ignored, throwable) -> closeQuietly(channel)))
+                                .thenRunAsync(() -> {
+                                    try {
+                                        storage.publish(filePath, temporaryFile.get(), targetPath,
+                                                        storage.withChecksum(metadata, checksummingInputStream));
+                                    } catch (IOException e) {
+                                        throw new CompletionException(e);
+                                    }
+                                }, executorService)
+                                .handle((ignored, throwable) -> {
+                                    closeQuietly(inputStream);
+                                    if (temporaryFile.get() != null) {
+                                        deleteQuietly(temporaryFile.get());
+                                    }
+                                    if (throwable != null) {
+                                        throw new CompletionException(new BinaryObjectStorageException(
+                                                "Unable to store inputStream at path " + targetPath, unwrap(throwable)));
+                                    }
+                                    return null;
+                                });
+    }
+
+    @Override
+    public CompletableFuture<Optional<BinaryObject>> retrieve(String filePath) {
+        return CompletableFuture.supplyAsync(() -> storage.retrieve(filePath), executorService);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BinaryObjectMetadata>> getMetadata(String filePath) {
+        return CompletableFuture.supplyAsync(() -> storage.getMetadata(filePath), executorService);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasBinaryObject(String filePath) {
+        return CompletableFuture.supplyAsync(() -> storage.hasBinaryObject(filePath), executorService);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String filePath) {
+        return CompletableFuture.runAsync(() -> storage.delete(filePath), executorService);
+    }
+
+    /**
+     * Opens a new temporary file next to the target path. It is moved to the target path once it is completely
+     * written.
+     */
+    private AsynchronousFileChannel open(Path targetPath, AtomicReference<Path> temporaryFile) {
+        try {
+            temporaryFile.set(storage.createTemporaryFile(targetPath));
+            return AsynchronousFileChannel.open(temporaryFile.get(),
+                                                EnumSet.of(StandardOpenOption.WRITE),
+                                                executorService);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private CompletableFuture<Void> writeAll(AsynchronousFileChannel channel, InputStream inputStream) {
+        ByteBuffer first = ByteBuffer.allocate(chunkSize);
+        ByteBuffer second = ByteBuffer.allocate(chunkSize);
+        try {
+            readChunk(inputStream, first);
+        } catch (CompletionException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return writeChunks(channel, inputStream, 0, first, second);
+    }
+
+    /**
+     * Writes the filled buffer at the given position and reads the next chunk into the spare buffer while
+     * the write is in progress. The buffers swap roles for the next chunk.
+     */
+    private CompletableFuture<Void> writeChunks(AsynchronousFileChannel channel,
+                                                InputStream inputStream,
+                                                long position,
+                                                ByteBuffer filled,
+                                                ByteBuffer spare) {
+        if (!filled.hasRemaining()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int size = filled.remaining();
+        CompletableFuture<Void> write = writeFully(channel, filled, position);
+        try {
+            readChunk(inputStream, spare);
+        } catch (CompletionException e) {
+            return write.thenCompose(ignored -> {
+                throw e;
+            });
+        }
+        // Continue asynchronously, so a write that completes immediately does not grow the stack
+        return write.thenComposeAsync(ignored -> {
+            filled.clear();
+            return writeChunks(channel, inputStream, position + size, spare, filled);
+        }, executorService);
+    }
+
+    private static CompletableFuture<Void> writeFully(AsynchronousFileChannel channel,
+                                                      ByteBuffer buffer,
+                                                      long position) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        channel.write(buffer, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer count, Long writePosition) {
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer, writePosition + count, writePosition + count, this);
+                } else {
+                    future.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable, Long writePosition) {
+                future.completeExceptionally(throwable);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fills the buffer from the input stream until it is full or the end of the stream is reached,
+     * and flips it so it is ready to be written.
+     */
+    private static void readChunk(InputStream inputStream, ByteBuffer buffer) {
+        try {
+            byte[] array = buffer.array();
+            int position = 0;
+            while (position < array.length) {
+                int count = inputStream.read(array, position, array.length - position);
+                if (count < 0) {
+                    break;
+                }
+                position += count;
+            }
+            buffer.position(0);
+            buffer.limit(position);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return unwrap(throwable.getCause());
+        }
+        return throwable;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import com.google.common.hash.HashCode;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Compact binary encoding of {@link BinaryObjectMetadata}.
+ * <p>
+ * The format starts with a magic number and a version byte, so it can evolve while older
+ * files remain readable. Version 1 stores the file size, followed by the original filename
+ * and the content type as length-prefixed UTF-8 strings (a length of -1 means {@code null}).
+ * Version 2 is only written for metadata with a checksum, and adds the ordinal of its
+ * {@link ChecksumAlgorithm} and its length-prefixed bytes.
+ */
+final class BinaryMetadataFormat {
+    static final String FILE_SUFFIX = "-metadata.bin";
+    static final String LEGACY_FILE_SUFFIX = "-metadata.properties";
+
+    private static final int MAGIC = 0x42494F42; // "BIOB"
+    private static final byte VERSION_1 = 1;
+    private static final byte VERSION_2 = 2;
+
+    private BinaryMetadataFormat() {
+    }
+
+    static void write(BinaryObjectMetadata metadata, OutputStream outputStream) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(MAGIC);
+        Checksum checksum = metadata.getChecksum().orElse(null);
+        dataOutputStream.writeByte(checksum != null ? VERSION_2 : VERSION_1);
+        dataOutputStream.writeLong(metadata.getFileSize());
+        writeString(dataOutputStream, metadata.getOriginalFilename());
+        writeString(dataOutputStream, metadata.getContentType());
+        if (checksum != null) {
+            byte[] bytes = HashCode.fromString(checksum.getValue()).asBytes();
+            dataOutputStream.writeByte(checksum.getAlgorithm().ordinal());
+            dataOutputStream.writeInt(bytes.length);
+            dataOutputStream.write(bytes);
+        }
+        dataOutputStream.flush();
+    }
+
+    static BinaryObjectMetadata read(InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        int magic = dataInputStream.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a binary metadata file, magic number was " + Integer.toHexString(magic));
+        }
+        byte version = dataInputStream.readByte();
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IOException("Unsupported binary metadata version " + version);
+        }
+        long fileSize = dataInputStream.readLong();
+        String originalFilename = readString(dataInputStream);
+        String contentType = readString(dataInputStream);
+        Checksum checksum = null;
+        if (version == VERSION_2) {
+            int algorithm = dataInputStream.readUnsignedByte();
+            if (algorithm >= ChecksumAlgorithm.values().length) {
+                throw new IOException("Unsupported checksum algorithm " + algorithm);
+            }
+            byte[] bytes = new byte[dataInputStream.readInt()];
+            dataInputStream.readFully(bytes);
+            checksum = new Checksum(ChecksumAlgorithm.values()[algorithm], HashCode.fromBytes(bytes).toString());
+        }
+        return new BinaryObjectMetadata(fileSize, originalFilename, contentType, checksum);
+    }
+
+    /**
+     * Reads metadata in the {@code java.util.Properties} format that was used before the binary format existed.
+     */
+    static BinaryObjectMetadata readLegacy(InputStream inputStream) throws IOException {
+        Properties properties = new Properties();
+        properties.load(inputStream);
+
+        return new BinaryObjectMetadata(Long.parseLong(properties.getProperty("fileSize")),
+                                        properties.getProperty("originalFilename"),
+                                        properties.getProperty("contentType"));
+    }
+
+    private static void writeString(DataOutputStream dataOutputStream, String value) throws IOException {
+        if (value == null) {
+            dataOutputStream.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            dataOutputStream.writeInt(bytes.length);
+            dataOutputStream.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream dataInputStream) throws IOException {
+        int length = dataInputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        dataInputStream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
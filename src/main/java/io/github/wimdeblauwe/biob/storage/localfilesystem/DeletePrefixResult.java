@@ -0,0 +1,55 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * The outcome of {@link LocalFileSystemBinaryObjectStorage#deletePrefix(String)}: how many files were deleted and
+ * which files or directories could not be deleted.
+ */
+public final class DeletePrefixResult {
+    private final long deletedFileCount;
+    private final Map<Path, IOException> failures;
+
+    DeletePrefixResult(long deletedFileCount, Map<Path, IOException> failures) {
+        this.deletedFileCount = deletedFileCount;
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    /**
+     * @return the number of files that were deleted, including metadata files
+     */
+    public long getDeletedFileCount() {
+        return deletedFileCount;
+    }
+
+    /**
+     * @return the files and directories that could not be deleted, with the reason. A directory that still
+     * contains such a file is not listed itself.
+     */
+    public Map<Path, IOException> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    DeletePrefixResult plus(DeletePrefixResult other) {
+        Map<Path, IOException> allFailures = new LinkedHashMap<>(failures);
+        allFailures.putAll(other.failures);
+        return new DeletePrefixResult(deletedFileCount + other.deletedFileCount, allFailures);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", DeletePrefixResult.class.getSimpleName() + "[", "]")
+                .add("deletedFileCount=" + deletedFileCount)
+                .add("failures=" + failures)
+                .toString();
+    }
+}
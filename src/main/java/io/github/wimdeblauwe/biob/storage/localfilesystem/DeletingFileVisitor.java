@@ -3,34 +3,40 @@ package io.github.wimdeblauwe.biob.storage.localfilesystem;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 
 /**
- * Class to delete all files in a directory recursively.
+ * Class to delete all files in a directory recursively. Files that no longer exist are skipped, all other
+ * failures are rethrown.
  */
 class DeletingFileVisitor extends SimpleFileVisitor<Path> {
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
             throws IOException {
-        if (attributes.isRegularFile()) {
-            Files.delete(file);
-        }
+        Files.deleteIfExists(file);
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult postVisitDirectory(Path directory, IOException ioe)
             throws IOException {
-        Files.delete(directory);
+        if (ioe != null && !(ioe instanceof NoSuchFileException)) {
+            throw ioe;
+        }
+        Files.deleteIfExists(directory);
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException ioe)
             throws IOException {
-        return FileVisitResult.CONTINUE;
+        if (ioe instanceof NoSuchFileException) {
+            return FileVisitResult.CONTINUE;
+        }
+        throw ioe;
     }
 }
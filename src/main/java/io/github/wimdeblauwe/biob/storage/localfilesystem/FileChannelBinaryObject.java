@@ -0,0 +1,114 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link BinaryObject} that reads (a range of) a file with positional {@link FileChannel} reads.
+ * {@link #transferTo(WritableByteChannel)} uses {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * which lets the operating system copy the bytes directly to the target (e.g. via {@code sendfile}) without
+ * passing through user-space buffers.
+ */
+class FileChannelBinaryObject extends BinaryObject {
+    private final FileChannelInputStream inputStream;
+
+    private FileChannelBinaryObject(FileChannelInputStream inputStream, BinaryObjectMetadata metadata) {
+        super(inputStream, metadata);
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Opens a range of the given file. If the range extends beyond the end of the file, only the
+     * available bytes are read.
+     */
+    static FileChannelBinaryObject open(Path path, long offset, long length,
+                                        BinaryObjectMetadata metadata) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long start = Math.min(offset, size);
+            long end = start + Math.min(length, size - start);
+            return new FileChannelBinaryObject(new FileChannelInputStream(channel, start, end), metadata);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target) throws IOException {
+        return inputStream.transferTo(target);
+    }
+
+    private static class FileChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        FileChannelInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            int count = read(bytes, 0, 1);
+            return count < 0 ? -1 : bytes[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position));
+            int count = channel.read(buffer, position);
+            if (count > 0) {
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long count = Math.max(0, Math.min(n, end - position));
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+
+        long transferTo(WritableByteChannel target) throws IOException {
+            long start = position;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
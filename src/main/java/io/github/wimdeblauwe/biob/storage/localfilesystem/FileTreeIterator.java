@@ -0,0 +1,105 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily iterates over the regular files below a directory, keeping only one open {@link DirectoryStream} per
+ * level, so memory use depends on the depth of the tree and not on the number of files. Directories that are
+ * deleted while iterating are skipped.
+ */
+final class FileTreeIterator implements Iterator<Path>, AutoCloseable {
+    private final Predicate<Path> directoryFilter;
+    private final Deque<DirectoryStream<Path>> directoryStreams = new ArrayDeque<>();
+    private final Deque<Iterator<Path>> iterators = new ArrayDeque<>();
+    private Path next;
+
+    private FileTreeIterator(Path directory, Predicate<Path> directoryFilter) {
+        this.directoryFilter = directoryFilter;
+        open(directory);
+    }
+
+    /**
+     * @param directory       the directory to start from
+     * @param directoryFilter whether to descend into a subdirectory
+     * @return the regular files below the directory. The stream should be closed to close the open directories.
+     */
+    static Stream<Path> walk(Path directory, Predicate<Path> directoryFilter) {
+        FileTreeIterator iterator = new FileTreeIterator(directory, directoryFilter);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                            .onClose(iterator::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !iterators.isEmpty()) {
+            Iterator<Path> iterator = iterators.peek();
+            if (!iterator.hasNext()) {
+                closeCurrent();
+                continue;
+            }
+            Path path = iterator.next();
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (directoryFilter.test(path)) {
+                    open(path);
+                }
+            } else if (Files.isRegularFile(path)) {
+                next = path;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Path result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        while (!directoryStreams.isEmpty()) {
+            closeCurrent();
+        }
+    }
+
+    private void open(Path directory) {
+        try {
+            DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory);
+            directoryStreams.push(directoryStream);
+            iterators.push(directoryStream.iterator());
+        } catch (NoSuchFileException e) {
+            // Deleted in the meantime
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeCurrent() {
+        iterators.pop();
+        try {
+            directoryStreams.pop().close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package io.github.wimdeblauwe.biob.storage.localfilesystem;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 final class FileUtils {
     private FileUtils() {
@@ -32,4 +34,22 @@ final class FileUtils {
         }
     }
 
+    /**
+     * Forces the contents of the given file or directory to the storage device. Forcing a directory makes
+     * files that were created in or moved into it durable. Platforms that can not open a directory (e.g.
+     * Windows) do not need this, so failures to force a directory are ignored.
+     *
+     * @param path the file or directory to force
+     * @throws IOException when the file could not be forced
+     */
+    static void fsync(Path path) throws IOException {
+        boolean directory = Files.isDirectory(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!directory) {
+                throw e;
+            }
+        }
+    }
 }
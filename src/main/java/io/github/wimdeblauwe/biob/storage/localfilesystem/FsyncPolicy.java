@@ -0,0 +1,23 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+/**
+ * Determines when {@link LocalFileSystemBinaryObjectStorage} forces written files to the storage device.
+ */
+public enum FsyncPolicy {
+    /**
+     * Never force files. The operating system writes them out eventually, so binary objects that were stored
+     * just before a power failure or operating system crash can be lost. Writes are still atomic: after a crash,
+     * a binary object is either completely there or not at all.
+     */
+    NONE,
+    /**
+     * Force the files of each binary object before {@code store} returns.
+     */
+    PER_FILE,
+    /**
+     * Like {@link #PER_FILE}, {@code store} returns once the binary object is durable, but the files of binary
+     * objects that are stored at the same time are forced together by one thread. Each directory is only forced
+     * once per group, which makes concurrent stores into the same directory cheaper.
+     */
+    BATCHED
+}
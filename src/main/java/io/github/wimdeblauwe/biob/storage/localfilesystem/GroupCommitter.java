@@ -0,0 +1,104 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Forces files to the storage device in groups. The first thread that asks to force files while no group is
+ * being forced becomes the leader: it forces the files of all threads that are waiting at that time, while
+ * new requests wait for the next group.
+ * <p>
+ * Waiting threads block on a {@link ReentrantLock} condition instead of a monitor, so a virtual thread that waits
+ * for its group does not pin its carrier thread.
+ */
+class GroupCommitter {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition groupForced = lock.newCondition();
+    private List<Request> pendingRequests = new ArrayList<>();
+    private boolean forcing;
+
+    /**
+     * Forces the given files and directories and waits until they are durable.
+     *
+     * @param paths the files and directories to force
+     * @throws IOException when one of the files of the group could not be forced
+     */
+    void force(Collection<Path> paths) throws IOException {
+        Request request = new Request(paths);
+        List<Request> group;
+        lock.lock();
+        try {
+            pendingRequests.add(request);
+            while (forcing && !request.done) {
+                waitForGroup();
+            }
+            if (request.done) {
+                request.throwIfFailed();
+                return;
+            }
+            forcing = true;
+            group = pendingRequests;
+            pendingRequests = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+
+        IOException failure = null;
+        try {
+            Set<Path> distinctPaths = new LinkedHashSet<>();
+            for (Request groupRequest : group) {
+                distinctPaths.addAll(groupRequest.paths);
+            }
+            for (Path path : distinctPaths) {
+                FileUtils.fsync(path);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            lock.lock();
+            try {
+                for (Request groupRequest : group) {
+                    groupRequest.failure = failure;
+                    groupRequest.done = true;
+                }
+                forcing = false;
+                groupForced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        request.throwIfFailed();
+    }
+
+    private void waitForGroup() throws IOException {
+        try {
+            groupForced.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for files to be forced", e);
+        }
+    }
+
+    private static class Request {
+        private final Collection<Path> paths;
+        private boolean done;
+        private IOException failure;
+
+        Request(Collection<Path> paths) {
+            this.paths = paths;
+        }
+
+        void throwIfFailed() throws IOException {
+            if (failure != null) {
+                throw new IOException("Unable to force files to the storage device", failure);
+            }
+        }
+    }
+}
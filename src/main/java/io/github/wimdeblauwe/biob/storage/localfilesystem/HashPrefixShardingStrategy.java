@@ -0,0 +1,67 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link ShardingStrategy} that inserts directories named after the hash of the file path right before the
+ * file name. With a depth of 2 and a width of 2, {@code users/1/images/1} is stored at
+ * {@code users/1/images/ab/cd/1}, so each directory has at most 256 subdirectories.
+ * <p>
+ * The hash is the SHA-256 of the complete file path, so the layout does not change between versions or JVMs.
+ */
+public final class HashPrefixShardingStrategy implements ShardingStrategy {
+    private static final int MAXIMUM_HASH_CHARACTERS = 64;
+
+    private final int depth;
+    private final int width;
+
+    /**
+     * @param depth the number of directory levels to insert
+     * @param width the number of hexadecimal characters in the name of each directory, so each level has
+     *              at most {@code 16^width} directories
+     */
+    public HashPrefixShardingStrategy(int depth, int width) {
+        Preconditions.checkArgument(depth > 0, "depth should be positive: %s", depth);
+        Preconditions.checkArgument(width > 0, "width should be positive: %s", width);
+        Preconditions.checkArgument(depth * width <= MAXIMUM_HASH_CHARACTERS,
+                                    "depth * width should be at most %s", MAXIMUM_HASH_CHARACTERS);
+        this.depth = depth;
+        this.width = width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public String toShardedPath(String filePath) {
+        String hash = Hashing.sha256().hashString(filePath, StandardCharsets.UTF_8).toString();
+        int fileNameIndex = filePath.lastIndexOf('/') + 1;
+        StringBuilder builder = new StringBuilder(filePath.length() + depth * (width + 1));
+        builder.append(filePath, 0, fileNameIndex);
+        for (int level = 0; level < depth; level++) {
+            builder.append(hash, level * width, (level + 1) * width).append('/');
+        }
+        return builder.append(filePath, fileNameIndex, filePath.length()).toString();
+    }
+
+    @Override
+    public String toFilePath(String shardedPath) {
+        int fileNameIndex = shardedPath.lastIndexOf('/') + 1;
+        int shardIndex = fileNameIndex - depth * (width + 1);
+        Preconditions.checkArgument(shardIndex >= 0, "%s is not a sharded path", shardedPath);
+        return shardedPath.substring(0, shardIndex) + shardedPath.substring(fileNameIndex);
+    }
+
+    @Override
+    public String toString() {
+        return "HashPrefixShardingStrategy[depth=" + depth + ", width=" + width + "]";
+    }
+}
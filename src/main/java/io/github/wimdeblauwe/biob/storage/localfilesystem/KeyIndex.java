@@ -0,0 +1,169 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory index of the file paths of all binary objects in a {@link LocalFileSystemBinaryObjectStorage}.
+ */
+abstract class KeyIndex {
+    private static final int MAGIC = 0x42494F4B; // "BIOK"
+    private static final byte VERSION_1 = 1;
+
+    static KeyIndex create(KeyIndexType type, long expectedInsertions, double falsePositiveProbability) {
+        switch (type) {
+            case EXACT:
+                return new Exact();
+            case BLOOM_FILTER:
+                return new Bloom(BloomFilter.create(funnel(), expectedInsertions, falsePositiveProbability));
+            default:
+                throw new IllegalArgumentException("Unknown key index type " + type);
+        }
+    }
+
+    abstract KeyIndexType getType();
+
+    abstract void add(String filePath);
+
+    /**
+     * Removes the file path and all file paths below it, as deleting a path deletes the directory with
+     * that name too.
+     */
+    abstract void remove(String filePath);
+
+    /**
+     * @return {@code false} if there is certainly no binary object with the given path
+     */
+    abstract boolean mightContain(String filePath);
+
+    /**
+     * @return {@code true} if {@link #mightContain(String)} is never wrong
+     */
+    abstract boolean isExact();
+
+    abstract void writeContents(DataOutputStream output) throws IOException;
+
+    void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION_1);
+        output.writeByte(getType().ordinal());
+        writeContents(output);
+        output.flush();
+    }
+
+    static KeyIndex readFrom(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        int magic = input.readInt();
+        byte version = input.readByte();
+        if (magic != MAGIC || version != VERSION_1) {
+            throw new IOException("Not a key index snapshot");
+        }
+        KeyIndexType type = KeyIndexType.values()[input.readByte()];
+        switch (type) {
+            case EXACT:
+                Exact exact = new Exact();
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    exact.add(input.readUTF());
+                }
+                return exact;
+            case BLOOM_FILTER:
+                return new Bloom(BloomFilter.readFrom(input, funnel()));
+            default:
+                throw new IOException("Unknown key index type " + type);
+        }
+    }
+
+    private static Funnel<CharSequence> funnel() {
+        return Funnels.stringFunnel(StandardCharsets.UTF_8);
+    }
+
+    private static final class Exact extends KeyIndex {
+        private final NavigableSet<String> filePaths = new ConcurrentSkipListSet<>();
+
+        @Override
+        KeyIndexType getType() {
+            return KeyIndexType.EXACT;
+        }
+
+        @Override
+        void add(String filePath) {
+            filePaths.add(filePath);
+        }
+
+        @Override
+        void remove(String filePath) {
+            filePaths.remove(filePath);
+            // All paths below the directory, as '0' is the character after '/'
+            filePaths.subSet(filePath + "/", filePath + "0").clear();
+        }
+
+        @Override
+        boolean mightContain(String filePath) {
+            return filePaths.contains(filePath);
+        }
+
+        @Override
+        boolean isExact() {
+            return true;
+        }
+
+        @Override
+        void writeContents(DataOutputStream output) throws IOException {
+            Object[] snapshot = filePaths.toArray();
+            output.writeInt(snapshot.length);
+            for (Object filePath : snapshot) {
+                output.writeUTF((String) filePath);
+            }
+        }
+    }
+
+    private static final class Bloom extends KeyIndex {
+        private final BloomFilter<CharSequence> bloomFilter;
+
+        Bloom(BloomFilter<CharSequence> bloomFilter) {
+            this.bloomFilter = bloomFilter;
+        }
+
+        @Override
+        KeyIndexType getType() {
+            return KeyIndexType.BLOOM_FILTER;
+        }
+
+        @Override
+        void add(String filePath) {
+            bloomFilter.put(filePath);
+        }
+
+        @Override
+        void remove(String filePath) {
+            // A Bloom filter can not forget a path, so lookups of deleted paths go to the filesystem
+        }
+
+        @Override
+        boolean mightContain(String filePath) {
+            return bloomFilter.mightContain(filePath);
+        }
+
+        @Override
+        boolean isExact() {
+            return false;
+        }
+
+        @Override
+        void writeContents(DataOutputStream output) throws IOException {
+            bloomFilter.writeTo(output);
+        }
+    }
+}
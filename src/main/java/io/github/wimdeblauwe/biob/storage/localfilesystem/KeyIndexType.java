@@ -0,0 +1,19 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+/**
+ * The kind of in-memory index of file paths that {@link LocalFileSystemBinaryObjectStorage} uses to answer
+ * lookups of binary objects that do not exist without accessing the filesystem.
+ */
+public enum KeyIndexType {
+    /**
+     * Keep all file paths in memory. Lookups of both existing and missing binary objects are answered from
+     * memory.
+     */
+    EXACT,
+    /**
+     * Keep a Bloom filter of the file paths. It needs only a few bytes per binary object, and answers most
+     * lookups of missing binary objects from memory. Deleted binary objects stay in the filter until the
+     * index is rebuilt at the next start.
+     */
+    BLOOM_FILTER
+}
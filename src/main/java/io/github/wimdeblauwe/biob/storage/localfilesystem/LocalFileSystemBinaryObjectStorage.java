@@ -1,48 +1,190 @@
 package io.github.wimdeblauwe.biob.storage.localfilesystem;
 
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Striped;
+import io.github.wimdeblauwe.biob.BatchResult;
 import io.github.wimdeblauwe.biob.BinaryObject;
 import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
 import io.github.wimdeblauwe.biob.BinaryObjectStorage;
 import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectStoreRequest;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+import io.github.wimdeblauwe.biob.NoSuchUploadException;
+import io.github.wimdeblauwe.biob.UploadedPart;
+import io.github.wimdeblauwe.biob.io.BlockingTaskExecutors;
+import io.github.wimdeblauwe.biob.io.ByteBufferUtils;
+import io.github.wimdeblauwe.biob.io.ChecksumMismatchException;
+import io.github.wimdeblauwe.biob.io.ChecksumVerifyingInputStream;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * {@link BinaryObjectStorage} that stores binary objects as files on the local filesystem.
+ * <p>
+ * Next to each file, the metadata is stored in a compact binary file ({@code <name>-metadata.bin}).
+ * Metadata files in the older {@code <name>-metadata.properties} format are still read and are migrated
+ * to the binary format the first time they are read, or all at once via {@link #migrateMetadata()}.
+ * <p>
+ * When the metadata index is enabled (see {@link Builder#metadataIndex(boolean)}), all metadata that is
+ * stored or read is also kept in memory, so repeated metadata lookups never need to open a file. The index is
+ * changed under the same lock as the files, and {@link #list(String)} does not add to it. This assumes no other
+ * process modifies the files under the base path.
+ * <p>
+ * Binary objects and their metadata are first written to temporary files ({@code .biob-tmp-*}) that are then
+ * atomically moved into place, so readers never see partially written files and existing binary objects can
+ * be overwritten. Before they are moved into place, both files get a name that is derived from the path
+ * ({@code .biob-tmp-publish-<name>}), which marks the store as committed. Readers of this storage wait while the
+ * two files are moved, so they never combine the metadata of one version with the bytes of another. The
+ * {@link FsyncPolicy} determines whether the files are also forced to the storage device. After a crash,
+ * {@link #recover()} finishes the committed stores, and removes leftover temporary files and metadata files
+ * without a binary object.
+ * <p>
+ * A {@link ShardingStrategy} (see {@link Builder#shardingStrategy(ShardingStrategy)}) can spread the files over
+ * more directories than the file paths imply. To change the strategy of an existing storage, configure the old
+ * one as {@link Builder#previousShardingStrategy(ShardingStrategy)}: binary objects that are not found at their
+ * new location are then looked up at their old location, and {@link #reshard()} moves them while the storage
+ * stays in use.
+ * <p>
+ * With {@link Builder#memoryMappedReads(long)}, recently read files are kept memory-mapped and
+ * {@link #retrieve(String)} returns a {@link io.github.wimdeblauwe.biob.ByteBufferBinaryObject} that reads from
+ * the mapping, so rereading a file needs no system calls for the bytes.
+ * <p>
+ * With {@link Builder#keyIndex(KeyIndexType)}, the file paths of all binary objects are indexed in memory, so
+ * looking up a binary object that does not exist needs no filesystem access. The index is built by scanning the
+ * base path when the storage is built, unless a snapshot that was written with {@link #saveKeyIndex()} is found.
+ * <p>
+ * {@link #deletePrefix(String)} deletes large trees of binary objects in parallel. With
+ * {@link #deletePrefixAsync(String)}, the tree is first moved to a trash directory ({@code .biob-trash}) and then
+ * deleted in the background.
+ * <p>
+ * With {@link Builder#checksumAlgorithm(ChecksumAlgorithm)}, the checksum of each binary object is calculated while
+ * it is written and stored in its metadata. {@link Builder#verifyChecksums(boolean)} makes {@link #retrieve(String)}
+ * verify it while the binary object is read. See {@link io.github.wimdeblauwe.biob.integrity.Scrubber} to verify
+ * all binary objects in the background.
+ * <p>
+ * The parts of multipart uploads are kept in {@code .biob-uploads} until the upload is completed. Completing an
+ * upload joins the parts without copying them through this process. Uploads that are abandoned by their client
+ * can be removed with {@link #expireMultipartUploads(Duration)}.
+ */
 public class LocalFileSystemBinaryObjectStorage implements BinaryObjectStorage {
+    private static final String TEMPORARY_FILE_PREFIX = ".biob-tmp-";
+    private static final String PUBLISH_FILE_PREFIX = TEMPORARY_FILE_PREFIX + "publish-";
+    private static final String KEY_INDEX_FILE_NAME = ".biob-key-index";
+    private static final String TRASH_DIRECTORY_NAME = ".biob-trash";
 
     private final Path basePath;
+    private final ConcurrentNavigableMap<String, BinaryObjectMetadata> metadataIndex;
+    private final int batchParallelism;
+    private final Executor batchExecutor;
+    private final FsyncPolicy fsyncPolicy;
+    private final GroupCommitter groupCommitter = new GroupCommitter();
+    private final ShardingStrategy shardingStrategy;
+    private final ShardingStrategy previousShardingStrategy;
+    private final Striped<ReadWriteLock> filePathLocks = Striped.readWriteLock(64);
+    private final MappedFileCache mappedFileCache;
+    private final KeyIndex keyIndex;
+    private volatile boolean keyIndexSnapshotValid;
+    private final ParallelDeleter deleter;
+    private final ChecksumAlgorithm checksumAlgorithm;
+    private final boolean verifyChecksums;
+    private final MultipartUploads uploads;
 
     public LocalFileSystemBinaryObjectStorage(Path basePath) {
-        this.basePath = Objects.requireNonNull(basePath, "basePath should not be null");
+        this(builder(basePath));
+    }
+
+    private LocalFileSystemBinaryObjectStorage(Builder builder) {
+        this.basePath = Objects.requireNonNull(builder.basePath, "basePath should not be null");
+        this.metadataIndex = builder.metadataIndex ? new ConcurrentSkipListMap<>() : null;
+        this.batchParallelism = builder.batchParallelism;
+        this.batchExecutor = Objects.requireNonNull(builder.batchExecutor, "batchExecutor should not be null");
+        this.fsyncPolicy = Objects.requireNonNull(builder.fsyncPolicy, "fsyncPolicy should not be null");
+        this.shardingStrategy = Objects.requireNonNull(builder.shardingStrategy,
+                                                       "shardingStrategy should not be null");
+        this.previousShardingStrategy = builder.previousShardingStrategy;
+        this.mappedFileCache = builder.maximumMappedBytes > 0
+                ? new MappedFileCache(builder.maximumMappedBytes)
+                : null;
+        this.checksumAlgorithm = builder.checksumAlgorithm;
+        this.verifyChecksums = builder.verifyChecksums;
+        this.uploads = new MultipartUploads(basePath);
+        this.deleter = new ParallelDeleter(Objects.requireNonNull(builder.deletionPool,
+                                                                  "deletionPool should not be null"),
+                                           this::invalidateMapping);
+        if (builder.recoverOnStartup) {
+            recover();
+        }
+        this.keyIndex = builder.keyIndexType != null
+                ? loadKeyIndex(builder.keyIndexType, builder.expectedInsertions, builder.falsePositiveProbability)
+                : null;
+    }
+
+    public static Builder builder(Path basePath) {
+        return new Builder(basePath);
     }
 
     @Override
     public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
-        Path targetPath = this.basePath.resolve(filePath);
+        Path targetPath = resolve(filePath);
+        Path temporaryFile = null;
         try {
-            File file = targetPath.toFile();
-            File parentFile = file.getParentFile();
-            parentFile.mkdirs();
-
-            Files.copy(inputStream, targetPath);
-
-            Properties properties = new Properties();
-            properties.setProperty("fileSize", String.valueOf(metadata.getFileSize()));
-            properties.setProperty("originalFilename", metadata.getOriginalFilename());
-            properties.setProperty("contentType", metadata.getContentType());
-
-            File metadataFile = getMetadataFile(targetPath);
-            try (FileOutputStream outputStream = new FileOutputStream(metadataFile)) {
-                properties.store(outputStream, "");
+            temporaryFile = createTemporaryFile(targetPath);
+            InputStream checksummingInputStream = checksumming(inputStream);
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteStreams.copy(Channels.newChannel(checksummingInputStream), channel);
             }
+
+            publish(filePath, temporaryFile, targetPath, withChecksum(metadata, checksummingInputStream));
         } catch (IOException e) {
             throw new BinaryObjectStorageException("Unable to store inputStream at path " + targetPath, e);
         } finally {
             try {
+                if (temporaryFile != null) {
+                    Files.deleteIfExists(temporaryFile);
+                }
                 inputStream.close();
             } catch (IOException e) {
                 // ignore
@@ -52,65 +194,1313 @@ public class LocalFileSystemBinaryObjectStorage implements BinaryObjectStorage {
 
     @Override
     public Optional<BinaryObject> retrieve(String filePath) {
-        Path targetPath = this.basePath.resolve(filePath);
-        if (targetPath.toFile().exists()) {
+        return retrieve(filePath, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        Preconditions.checkArgument(offset >= 0, "offset should not be negative: %s", offset);
+        Preconditions.checkArgument(length >= 0, "length should not be negative: %s", length);
+        if (isCertainlyMissing(filePath)) {
+            return Optional.empty();
+        }
+        Lock lock = readLockFilePath(filePath);
+        try {
+            Path targetPath = resolveExisting(filePath);
+            if (!targetPath.toFile().exists()) {
+                return Optional.empty();
+            }
             try {
-                InputStream inputStream = Files.newInputStream(targetPath);
-                BinaryObjectMetadata metadata = loadMetadata(targetPath);
-                return Optional.of(new BinaryObject(inputStream, metadata));
+                BinaryObjectMetadata metadata = loadMetadata(filePath, targetPath);
+                Checksum checksum = verifyChecksums && offset == 0 && length >= metadata.getFileSize()
+                        ? metadata.getChecksum().orElse(null)
+                        : null;
+                if (mappedFileCache != null && mappedFileCache.isMappable(metadata.getFileSize())) {
+                    return Optional.of(retrieveMapped(targetPath, offset, length, metadata, checksum));
+                }
+                BinaryObject binaryObject = FileChannelBinaryObject.open(targetPath, offset, length, metadata);
+                if (checksum != null) {
+                    binaryObject = new BinaryObject(new ChecksumVerifyingInputStream(binaryObject.getInputStream(),
+                                                                                     checksum),
+                                                    metadata);
+                }
+                return Optional.of(binaryObject);
             } catch (IOException e) {
                 throw new BinaryObjectStorageException(
                         "Unable to retrieve binary object at path " + targetPath, e);
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private BinaryObject retrieveMapped(Path targetPath, long offset, long length, BinaryObjectMetadata metadata,
+                                        Checksum checksum) throws IOException {
+        MappedFileCache.MappedFile mappedFile = mappedFileCache.acquire(targetPath);
+        try {
+            ByteBuffer buffer = ByteBufferUtils.slice(mappedFile.getBuffer(), offset, length);
+            if (checksum != null) {
+                // The bytes are in memory already, so verify them before handing out the buffer
+                verifyChecksum(buffer, checksum);
+            }
+            return new MappedFileBinaryObject(buffer, metadata, mappedFile);
+        } catch (IOException | RuntimeException e) {
+            mappedFile.release();
+            throw e;
+        }
+    }
+
+    private static void verifyChecksum(ByteBuffer buffer, Checksum expected) throws ChecksumMismatchException {
+        Checksum actual = new Checksum(expected.getAlgorithm(),
+                                       expected.getAlgorithm().getHashFunction().hashBytes(buffer.duplicate()).toString());
+        if (!actual.equals(expected)) {
+            throw new ChecksumMismatchException(expected, actual);
         }
-        return Optional.empty();
+    }
+
+    /**
+     * Wraps the stream to calculate the checksum of the bytes that are stored, if checksums are enabled.
+     */
+    InputStream checksumming(InputStream inputStream) {
+        return checksumAlgorithm != null
+                ? new HashingInputStream(checksumAlgorithm.getHashFunction(), inputStream)
+                : inputStream;
+    }
+
+    /**
+     * Adds the checksum that was calculated while the {@link #checksumming(InputStream) checksumming} stream was
+     * read to the metadata. When the metadata already has a checksum of the same algorithm, e.g. one that the
+     * client calculated before uploading, the bytes should match it.
+     */
+    BinaryObjectMetadata withChecksum(BinaryObjectMetadata metadata, InputStream checksummingInputStream)
+            throws ChecksumMismatchException {
+        if (!(checksummingInputStream instanceof HashingInputStream)) {
+            return metadata;
+        }
+        Checksum checksum = new Checksum(checksumAlgorithm,
+                                         ((HashingInputStream) checksummingInputStream).hash().toString());
+        Optional<Checksum> expected = metadata.getChecksum();
+        if (expected.isPresent() && expected.get().getAlgorithm() == checksumAlgorithm
+                && !expected.get().equals(checksum)) {
+            throw new ChecksumMismatchException(expected.get(), checksum);
+        }
+        return metadata.withChecksum(checksum);
     }
 
     @Override
     public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
-        Path targetPath = this.basePath.resolve(filePath);
-        if (targetPath.toFile().exists()) {
-            try {
-                BinaryObjectMetadata metadata = loadMetadata(targetPath);
+        if (metadataIndex != null) {
+            BinaryObjectMetadata metadata = metadataIndex.get(filePath);
+            if (metadata != null) {
                 return Optional.of(metadata);
+            }
+        }
+        if (isCertainlyMissing(filePath)) {
+            return Optional.empty();
+        }
+        Lock lock = readLockFilePath(filePath);
+        try {
+            Path targetPath = resolveExisting(filePath);
+            if (!targetPath.toFile().exists()) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(loadMetadata(filePath, targetPath));
             } catch (IOException e) {
                 throw new BinaryObjectStorageException(
                         "Unable to retrieve metadata for binary object at path " + targetPath, e);
             }
+        } finally {
+            lock.unlock();
         }
-        return Optional.empty();
     }
 
     @Override
     public boolean hasBinaryObject(String filePath) {
-        return this.basePath.resolve(filePath).toFile().exists();
-    }
-
-    private BinaryObjectMetadata loadMetadata(Path targetPath) throws IOException {
-        Properties properties = new Properties();
-        try (FileInputStream inputStream = new FileInputStream(getMetadataFile(targetPath))) {
-            properties.load(inputStream);
+        if (metadataIndex != null && metadataIndex.containsKey(filePath)) {
+            return true;
+        }
+        if (isCertainlyMissing(filePath)) {
+            return false;
         }
+        return resolveExisting(filePath).toFile().exists();
+    }
 
-        return new BinaryObjectMetadata(Long.valueOf(properties.getProperty("fileSize")),
-                                        properties.getProperty("originalFilename"),
-                                        properties.getProperty("contentType"));
+    private boolean isCertainlyMissing(String filePath) {
+        return keyIndex != null && !keyIndex.mightContain(filePath);
     }
 
     @Override
     public void delete(String filePath) {
+        Lock lock = lockFilePath(filePath);
         try {
-            Path targetPath = this.basePath.resolve(filePath);
-            FileUtils.deleteDirectory(targetPath);
-            FileUtils.deleteDirectory(getMetadataFile(targetPath).toPath());
+            removeFromMetadataIndex(filePath);
+            deleteFiles(resolve(filePath));
+            Path previousPath = resolvePrevious(filePath);
+            if (previousPath != null) {
+                deleteFiles(previousPath);
+            }
+            removeFromKeyIndex(filePath);
         } catch (IOException e) {
             throw new BinaryObjectStorageException("Unable to delete " + filePath, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the binary object at the given path and all binary objects below it, like
+     * {@link #delete(String)}, but deletes the subdirectories in parallel on the
+     * {@link Builder#deletionPool(ForkJoinPool) deletion pool}. Failures do not stop the deletion of the other
+     * files, they are reported in the result instead.
+     *
+     * @param prefix the path of the binary object or directory to delete
+     * @return the number of deleted files and the failures
+     */
+    public DeletePrefixResult deletePrefix(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        Preconditions.checkArgument(!prefix.isEmpty(), "prefix should not be empty");
+        Lock lock = lockFilePath(prefix);
+        try {
+            removeFromMetadataIndex(prefix);
+            DeletePrefixResult result = new DeletePrefixResult(0, Collections.emptyMap());
+            for (Path path : getPrefixPaths(prefix)) {
+                result = result.plus(deleter.delete(path));
+            }
+            // Again, as the binary objects below the prefix have their own locks and could be read meanwhile
+            removeFromMetadataIndex(prefix);
+            if (result.isSuccessful()) {
+                removeFromKeyIndex(prefix);
+            }
+            return result;
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to delete " + prefix, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the binary object at the given path and all binary objects below it disappear immediately, by moving
+     * them to the trash directory, and deletes them in the background like {@link #deletePrefix(String)}. Files
+     * that are still in the trash directory when the process stops are deleted by {@link #recover()}.
+     *
+     * @param prefix the path of the binary object or directory to delete
+     * @return a future that completes with the number of deleted files and the failures
+     */
+    public CompletableFuture<DeletePrefixResult> deletePrefixAsync(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        Preconditions.checkArgument(!prefix.isEmpty(), "prefix should not be empty");
+        Path trashDirectory = basePath.resolve(TRASH_DIRECTORY_NAME).resolve(UUID.randomUUID().toString());
+        Lock lock = lockFilePath(prefix);
+        try {
+            removeFromMetadataIndex(prefix);
+            Files.createDirectories(trashDirectory);
+            int number = 0;
+            for (Path path : getPrefixPaths(prefix)) {
+                if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.move(path, trashDirectory.resolve(String.valueOf(number++)), StandardCopyOption.ATOMIC_MOVE);
+                    if (mappedFileCache != null) {
+                        mappedFileCache.invalidateAll(path);
+                    }
+                }
+            }
+            // Again, as the binary objects below the prefix have their own locks and could be read meanwhile
+            removeFromMetadataIndex(prefix);
+            removeFromKeyIndex(prefix);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to delete " + prefix, e);
+        } finally {
+            lock.unlock();
+        }
+        return CompletableFuture.supplyAsync(() -> deleter.delete(trashDirectory), deleter.getPool());
+    }
+
+    /**
+     * @return the files and directories that hold the binary object at the given path and the binary objects
+     * below it
+     */
+    private List<Path> getPrefixPaths(String prefix) {
+        List<Path> targetPaths = new ArrayList<>();
+        targetPaths.add(resolve(prefix));
+        Path previousPath = resolvePrevious(prefix);
+        if (previousPath != null) {
+            targetPaths.add(previousPath);
+        }
+        List<Path> paths = new ArrayList<>();
+        for (Path targetPath : targetPaths) {
+            paths.add(targetPath);
+            paths.add(getMetadataFile(targetPath));
+            paths.add(getLegacyMetadataFile(targetPath));
+        }
+        // A sharding strategy only moves the binary objects, the directories below the prefix keep its path
+        Path directory = basePath.resolve(prefix);
+        if (!paths.contains(directory)) {
+            paths.add(directory);
+        }
+        return paths;
+    }
+
+    private void removeFromMetadataIndex(String filePath) {
+        if (metadataIndex != null) {
+            metadataIndex.remove(filePath);
+            // All paths below the directory, as '0' is the character after '/'
+            metadataIndex.subMap(filePath + "/", filePath + "0").clear();
+        }
+    }
+
+    private void removeFromKeyIndex(String filePath) throws IOException {
+        if (keyIndex != null) {
+            // Change the index first, so a concurrent saveKeyIndex either includes the change or is invalidated
+            keyIndex.remove(filePath);
+            invalidateKeyIndexSnapshot();
+        }
+    }
+
+    private void deleteFiles(Path targetPath) throws IOException {
+        invalidateMapping(targetPath);
+        FileUtils.deleteDirectory(targetPath);
+        FileUtils.deleteDirectory(getMetadataFile(targetPath));
+        FileUtils.deleteDirectory(getLegacyMetadataFile(targetPath));
+    }
+
+    /**
+     * Lists the binary objects with the prefix by walking the directories below the directory part of the
+     * prefix, without keeping the walked paths in memory. The binary objects are returned in no particular order.
+     */
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        Path directory = basePath.resolve(prefix.substring(0, prefix.lastIndexOf('/') + 1));
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        return FileTreeIterator.walk(directory, path -> !isInternalDirectory(path))
+                               .filter(LocalFileSystemBinaryObjectStorage::isPayloadFile)
+                               .map(file -> toSummary(file, prefix))
+                               .filter(Objects::nonNull);
+    }
+
+    private BinaryObjectSummary toSummary(Path file, String prefix) {
+        String filePath = toStoredFilePath(toRelativePath(file));
+        if (filePath == null || !filePath.startsWith(prefix)) {
+            return null;
+        }
+        Lock lock = readLockFilePath(filePath);
+        try {
+            return new BinaryObjectSummary(filePath, readMetadata(file));
+        } catch (NoSuchFileException e) {
+            // Deleted in the meantime
+            return null;
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to retrieve metadata for binary object at path " + file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String initiateMultipartUpload(String filePath, BinaryObjectMetadata metadata) {
+        Objects.requireNonNull(filePath, "filePath should not be null");
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        try {
+            return uploads.initiate(filePath, metadata);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to start multipart upload for path " + filePath, e);
+        }
+    }
+
+    @Override
+    public void uploadPart(String uploadId, int partNumber, InputStream inputStream) {
+        Preconditions.checkArgument(partNumber >= 1, "partNumber should be positive: %s", partNumber);
+        Objects.requireNonNull(inputStream, "inputStream should not be null");
+        try {
+            uploads.writePart(uploadId, partNumber, inputStream);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to store part " + partNumber + " of multipart upload "
+                                                           + uploadId, e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public List<UploadedPart> listParts(String uploadId) {
+        try {
+            return uploads.listParts(uploadId);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to list the parts of multipart upload " + uploadId, e);
+        }
+    }
+
+    /**
+     * Joins the parts by appending them to the file of the first part with positional transfers, which the
+     * operating system can do without copying the bytes through this process. The bytes of the first part are
+     * not copied at all. When a {@link Builder#checksumAlgorithm(ChecksumAlgorithm) checksum algorithm} is
+     * configured, all parts are read once to calculate the checksum.
+     */
+    @Override
+    public void completeMultipartUpload(String uploadId) {
+        Lock uploadLock = uploads.lock(uploadId);
+        try {
+            MultipartUploads.Upload upload = uploads.read(uploadId);
+            List<Path> partFiles = uploads.getPartFiles(uploadId);
+            BinaryObjectMetadata metadata = upload.getMetadata();
+            if (checksumAlgorithm != null) {
+                try (InputStream checksummingInputStream = checksumming(openParts(partFiles))) {
+                    ByteStreams.exhaust(checksummingInputStream);
+                    metadata = withChecksum(metadata, checksummingInputStream);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            Path targetPath = resolve(upload.getFilePath());
+            if (partFiles.isEmpty()) {
+                Path temporaryFile = createTemporaryFile(targetPath);
+                try {
+                    publish(upload.getFilePath(), temporaryFile, targetPath, metadata);
+                } finally {
+                    Files.deleteIfExists(temporaryFile);
+                }
+            } else {
+                Path firstPartFile = partFiles.get(0);
+                long firstPartSize = Files.size(firstPartFile);
+                try {
+                    appendParts(firstPartFile, partFiles.subList(1, partFiles.size()));
+                    Files.createDirectories(targetPath.getParent());
+                    publish(upload.getFilePath(), firstPartFile, targetPath, metadata);
+                } catch (IOException | RuntimeException e) {
+                    // Restore the first part, so the upload can be completed again
+                    if (Files.exists(firstPartFile)) {
+                        try (FileChannel channel = FileChannel.open(firstPartFile, StandardOpenOption.WRITE)) {
+                            channel.truncate(firstPartSize);
+                        }
+                    }
+                    throw e;
+                }
+            }
+            uploads.delete(uploadId);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to complete multipart upload " + uploadId, e);
+        } finally {
+            uploadLock.unlock();
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String uploadId) {
+        Lock uploadLock = uploads.lock(uploadId);
+        try {
+            uploads.delete(uploadId);
+        } catch (NoSuchUploadException e) {
+            // Nothing to abort
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to abort multipart upload " + uploadId, e);
+        } finally {
+            uploadLock.unlock();
+        }
+    }
+
+    @Override
+    public int expireMultipartUploads(Duration maximumIdleTime) {
+        Objects.requireNonNull(maximumIdleTime, "maximumIdleTime should not be null");
+        try {
+            return uploads.expire(maximumIdleTime);
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to expire the multipart uploads under " + basePath, e);
+        }
+    }
+
+    private static void appendParts(Path targetFile, List<Path> partFiles) throws IOException {
+        try (FileChannel target = FileChannel.open(targetFile, StandardOpenOption.WRITE)) {
+            long position = target.size();
+            for (Path partFile : partFiles) {
+                try (FileChannel source = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                    long size = source.size();
+                    long transferred = 0;
+                    while (transferred < size) {
+                        long count = target.transferFrom(source, position + transferred, size - transferred);
+                        if (count == 0) {
+                            throw new EOFException("Part " + partFile + " became shorter while it was joined");
+                        }
+                        transferred += count;
+                    }
+                    position += size;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a stream over the bytes of all parts, that opens each part only when it is reached
+     */
+    private static InputStream openParts(List<Path> partFiles) throws IOException {
+        Iterator<Path> iterator = partFiles.iterator();
+        try {
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    try {
+                        return Files.newInputStream(iterator.next());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> storeAll(Collection<BinaryObjectStoreRequest> requests) {
+        BinaryObjectStoreRequest.checkDistinctFilePaths(requests);
+        return runBatch(requests, BinaryObjectStoreRequest::getFilePath, request -> {
+            store(request.getFilePath(), request.getMetadata(), request.getInputStream());
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObject>>> retrieveAll(Collection<String> filePaths) {
+        return runBatch(filePaths, Function.identity(), this::retrieve);
+    }
+
+    @Override
+    public Map<String, BatchResult<Optional<BinaryObjectMetadata>>> getMetadataAll(Collection<String> filePaths) {
+        return runBatch(filePaths, Function.identity(), this::getMetadata);
+    }
+
+    @Override
+    public Map<String, BatchResult<Void>> deleteAll(Collection<String> filePaths) {
+        return runBatch(filePaths, Function.identity(), filePath -> {
+            delete(filePath);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the operation for all items with bounded parallelism. Items in the same parent directory are
+     * handled together by one task, so each task works in a single directory while different directories
+     * are processed in parallel. An item whose path occurs more than once is only run for its first occurrence,
+     * as the results are keyed by path: a second retrieve would leave an open binary object behind.
+     */
+    private <I, R> Map<String, BatchResult<R>> runBatch(Collection<I> items,
+                                                         Function<I, String> filePathFunction,
+                                                         Function<I, R> operation) {
+        Map<String, I> distinctItems = new LinkedHashMap<>();
+        for (I item : items) {
+            distinctItems.putIfAbsent(filePathFunction.apply(item), item);
+        }
+        Map<Path, List<I>> itemsByDirectory = new LinkedHashMap<>();
+        for (Map.Entry<String, I> entry : distinctItems.entrySet()) {
+            Path parent = resolve(entry.getKey()).getParent();
+            itemsByDirectory.computeIfAbsent(parent, directory -> new ArrayList<>()).add(entry.getValue());
+        }
+
+        int laneCount = Math.max(1, Math.min(batchParallelism, itemsByDirectory.size()));
+        List<List<I>> lanes = new ArrayList<>();
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new ArrayList<>());
+        }
+        int directoryNumber = 0;
+        for (List<I> directoryItems : itemsByDirectory.values()) {
+            lanes.get(directoryNumber++ % laneCount).addAll(directoryItems);
+        }
+
+        Map<String, BatchResult<R>> results = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] futures = lanes.stream()
+                                              .map(lane -> CompletableFuture.runAsync(() -> {
+                                                  for (I item : lane) {
+                                                      results.put(filePathFunction.apply(item),
+                                                                  BatchResult.of(item, operation));
+                                                  }
+                                              }, batchExecutor))
+                                              .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+
+        Map<String, BatchResult<R>> orderedResults = new LinkedHashMap<>();
+        for (String filePath : distinctItems.keySet()) {
+            orderedResults.put(filePath, results.get(filePath));
+        }
+        return orderedResults;
+    }
+
+    /**
+     * Converts all metadata files in the legacy {@code .properties} format under the base path to the
+     * binary format.
+     *
+     * @return the number of metadata files that were migrated
+     */
+    public int migrateMetadata() {
+        if (!Files.isDirectory(basePath)) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(basePath)) {
+            List<Path> legacyMetadataFiles = paths.filter(path -> path.getFileName().toString()
+                                                                      .endsWith(BinaryMetadataFormat.LEGACY_FILE_SUFFIX))
+                                                  .collect(Collectors.toList());
+            for (Path legacyMetadataFile : legacyMetadataFiles) {
+                String name = legacyMetadataFile.getFileName().toString();
+                Path targetPath = legacyMetadataFile.resolveSibling(
+                        name.substring(0, name.length() - BinaryMetadataFormat.LEGACY_FILE_SUFFIX.length()));
+                String filePath = toStoredFilePath(toRelativePath(targetPath));
+                // Locked, so a binary object that is stored in the meantime does not get its old metadata back
+                Lock lock = filePath != null ? readLockFilePath(filePath) : null;
+                try {
+                    migrateLegacyMetadata(targetPath);
+                } finally {
+                    if (lock != null) {
+                        lock.unlock();
+                    }
+                }
+            }
+            return legacyMetadataFiles.size();
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to migrate metadata files under " + basePath, e);
         }
     }
 
-    private File getMetadataFile(Path targetPath) {
+    /**
+     * Finishes the stores that were committed but not yet moved into place when the process stopped. Then
+     * removes the temporary files and the metadata files without a binary object that are left behind when
+     * the process stops while a binary object is being stored, and the files in the trash directory that
+     * {@link #deletePrefixAsync(String)} did not delete yet. This should only be called while no binary
+     * objects are being stored, e.g. at startup (see {@link Builder#recoverOnStartup(boolean)}).
+     *
+     * @return the number of files that were moved into place or removed
+     */
+    public int recover() {
+        if (!Files.isDirectory(basePath)) {
+            return 0;
+        }
+        DeletePrefixResult trashResult = deleter.delete(basePath.resolve(TRASH_DIRECTORY_NAME));
+        if (!trashResult.isSuccessful()) {
+            throw new BinaryObjectStorageException("Unable to empty the trash directory under " + basePath
+                                                           + ": " + trashResult.getFailures());
+        }
+        try {
+            int publishedFileCount = finishPublishes();
+            List<Path> leftoverFiles;
+            try (Stream<Path> paths = Files.walk(basePath)) {
+                leftoverFiles = paths.filter(Files::isRegularFile)
+                                     .filter(this::isLeftoverFile)
+                                     .collect(Collectors.toList());
+            }
+            for (Path leftoverFile : leftoverFiles) {
+                Files.deleteIfExists(leftoverFile);
+            }
+            return (int) trashResult.getDeletedFileCount() + publishedFileCount + leftoverFiles.size();
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to recover the files under " + basePath, e);
+        }
+    }
+
+    /**
+     * Moves the files of committed stores into place, see {@link #publish(String, Path, Path, BinaryObjectMetadata)}.
+     *
+     * @return the number of files that were moved
+     */
+    private int finishPublishes() throws IOException {
+        List<Path> publishFiles;
+        try (Stream<Path> paths = Files.walk(basePath)) {
+            publishFiles = paths.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PUBLISH_FILE_PREFIX) && !name.endsWith(BinaryMetadataFormat.FILE_SUFFIX);
+            }).collect(Collectors.toList());
+        }
+        int count = 0;
+        for (Path publishFile : publishFiles) {
+            Path targetPath = publishFile.resolveSibling(
+                    publishFile.getFileName().toString().substring(PUBLISH_FILE_PREFIX.length()));
+            Path publishMetadataFile = getMetadataFile(publishFile);
+            if (Files.exists(publishMetadataFile)) {
+                Files.move(publishMetadataFile, getMetadataFile(targetPath), StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                count++;
+            }
+            Files.move(publishFile, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(getLegacyMetadataFile(targetPath));
+            count++;
+        }
+        return count;
+    }
+
+    private boolean isLeftoverFile(Path path) {
+        String name = path.getFileName().toString();
+        if (name.startsWith(TEMPORARY_FILE_PREFIX)) {
+            return true;
+        }
+        for (String suffix : Arrays.asList(BinaryMetadataFormat.FILE_SUFFIX, BinaryMetadataFormat.LEGACY_FILE_SUFFIX)) {
+            if (name.endsWith(suffix) && name.length() > suffix.length()) {
+                Path targetPath = path.resolveSibling(name.substring(0, name.length() - suffix.length()));
+                return !Files.exists(targetPath);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves all binary objects that are still stored according to the previous sharding strategy to their
+     * location according to the current strategy. The storage can be used while this runs. Directories that
+     * become empty are left in place.
+     *
+     * @return the number of binary objects that were moved
+     * @throws IllegalStateException if no previous sharding strategy is configured
+     */
+    public int reshard() {
+        if (previousShardingStrategy == null) {
+            throw new IllegalStateException("No previous sharding strategy is configured");
+        }
+        if (!Files.isDirectory(basePath)) {
+            return 0;
+        }
+        AtomicInteger moved = new AtomicInteger();
+        try {
+            // Files are moved and deleted while walking, so files that disappear in the meantime are skipped
+            Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    return isInternalDirectory(directory) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (isPayloadFile(file) && reshard(file)) {
+                        moved.incrementAndGet();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    if (e instanceof NoSuchFileException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw e;
+                }
+            });
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to reshard the files under " + basePath, e);
+        }
+        return moved.get();
+    }
+
+    private boolean reshard(Path file) throws IOException {
+        String shardedPath = toRelativePath(file);
+        if (shardingStrategy != ShardingStrategy.none() && toFilePath(shardingStrategy, shardedPath) != null) {
+            // Already stored according to the current strategy. Every path matches when the current
+            // strategy is none, so then the previous strategy decides.
+            return false;
+        }
+        String filePath = toFilePath(previousShardingStrategy, shardedPath);
+        return filePath != null && moveToCurrentShard(filePath, file);
+    }
+
+    /**
+     * @return the file path of the binary object that the strategy stores at the given path, or {@code null}
+     * if it would not store any binary object there
+     */
+    private static String toFilePath(ShardingStrategy strategy, String shardedPath) {
+        try {
+            String filePath = strategy.toFilePath(shardedPath);
+            return strategy.toShardedPath(filePath).equals(shardedPath) ? filePath : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the file path of the binary object that is stored at the given path, taking into account that it
+     * might still be stored according to the previous sharding strategy, or {@code null} if no binary object
+     * would be stored there
+     */
+    private String toStoredFilePath(String shardedPath) {
+        if (previousShardingStrategy != null
+                && (shardingStrategy == ShardingStrategy.none() || toFilePath(shardingStrategy, shardedPath) == null)) {
+            String filePath = toFilePath(previousShardingStrategy, shardedPath);
+            if (filePath != null) {
+                return filePath;
+            }
+        }
+        return toFilePath(shardingStrategy, shardedPath);
+    }
+
+    private boolean moveToCurrentShard(String filePath, Path previousPath) throws IOException {
+        Lock lock = lockFilePath(filePath);
+        try {
+            if (!Files.exists(previousPath)) {
+                return false;
+            }
+            Path targetPath = resolve(filePath);
+            if (targetPath.equals(previousPath)) {
+                return false;
+            }
+            if (Files.exists(targetPath)) {
+                // The binary object was stored again since the resharding started
+                deleteFiles(previousPath);
+                return false;
+            }
+            Files.createDirectories(targetPath.getParent());
+            // Copy the metadata first, so readers that still find the binary object at its previous location
+            // also still find its metadata there
+            for (Path metadataFile : Arrays.asList(getMetadataFile(previousPath),
+                                                   getLegacyMetadataFile(previousPath))) {
+                if (Files.exists(metadataFile)) {
+                    Files.copy(metadataFile, targetPath.resolveSibling(metadataFile.getFileName()),
+                               StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(previousPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            invalidateMapping(previousPath);
+            force(targetPath.getParent());
+            Files.deleteIfExists(getMetadataFile(previousPath));
+            Files.deleteIfExists(getLegacyMetadataFile(previousPath));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isPayloadFile(Path path) {
+        String name = path.getFileName().toString();
+        return !name.startsWith(".biob")
+                && !name.endsWith(BinaryMetadataFormat.FILE_SUFFIX)
+                && !name.endsWith(BinaryMetadataFormat.LEGACY_FILE_SUFFIX);
+    }
+
+    /**
+     * @return whether the directory holds files of the storage itself instead of binary objects, e.g. the trash
+     */
+    private boolean isInternalDirectory(Path directory) {
+        return !directory.equals(basePath) && directory.getFileName().toString().startsWith(".biob");
+    }
+
+    private String toRelativePath(Path path) {
+        StringJoiner joiner = new StringJoiner("/");
+        for (Path name : basePath.relativize(path)) {
+            joiner.add(name.toString());
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * @return the statistics of the cache of memory-mapped files, or an empty optional if memory-mapped reads
+     * are not enabled
+     */
+    public Optional<CacheStats> getMappedFileCacheStats() {
+        return Optional.ofNullable(mappedFileCache).map(MappedFileCache::stats);
+    }
+
+    /**
+     * @return the total size of the memory mappings that are cached or still being read from
+     */
+    public long getMappedBytes() {
+        return mappedFileCache != null ? mappedFileCache.getMappedBytes() : 0;
+    }
+
+    private void invalidateMapping(Path targetPath) {
+        if (mappedFileCache != null) {
+            mappedFileCache.invalidate(targetPath);
+        }
+    }
+
+    Path resolve(String filePath) {
+        return this.basePath.resolve(shardingStrategy.toShardedPath(filePath));
+    }
+
+    /**
+     * @return the path of the file of the binary object according to the previous sharding strategy, or
+     * {@code null} if there is no previous strategy or it stores the binary object at the same path
+     */
+    private Path resolvePrevious(String filePath) {
+        if (previousShardingStrategy == null) {
+            return null;
+        }
+        Path previousPath = basePath.resolve(previousShardingStrategy.toShardedPath(filePath));
+        return previousPath.equals(resolve(filePath)) ? null : previousPath;
+    }
+
+    /**
+     * @return the path of the file of the binary object, taking into account that it might not have been moved
+     * to its location according to the current sharding strategy yet
+     */
+    private Path resolveExisting(String filePath) {
+        Path targetPath = resolve(filePath);
+        if (previousShardingStrategy == null || Files.exists(targetPath)) {
+            return targetPath;
+        }
+        Path previousPath = resolvePrevious(filePath);
+        return previousPath != null && Files.exists(previousPath) ? previousPath : targetPath;
+    }
+
+    /**
+     * Locks the file path exclusively, to change its files.
+     */
+    private Lock lockFilePath(String filePath) {
+        Lock lock = filePathLocks.get(filePath).writeLock();
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Locks the file path against changes, to read its metadata and open its file as one consistent pair.
+     */
+    private Lock readLockFilePath(String filePath) {
+        Lock lock = filePathLocks.get(filePath).readLock();
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Writes the key index to a snapshot file under the base path, so the next storage that is built on the
+     * base path does not need to scan it. The snapshot is deleted as soon as a binary object is stored or
+     * deleted, so this should be called when the storage is no longer used, e.g. at shutdown.
+     *
+     * @throws IllegalStateException if the key index is not enabled
+     */
+    public void saveKeyIndex() {
+        if (keyIndex == null) {
+            throw new IllegalStateException("The key index is not enabled");
+        }
+        Path snapshotFile = basePath.resolve(KEY_INDEX_FILE_NAME);
+        Path temporaryFile = getTemporaryFile(snapshotFile);
+        try {
+            Files.createDirectories(basePath);
+            // Set the flag first, so a store or delete that runs concurrently removes the snapshot again
+            keyIndexSnapshotValid = true;
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temporaryFile))) {
+                keyIndex.writeTo(outputStream);
+            }
+            FileUtils.fsync(temporaryFile);
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            if (!keyIndexSnapshotValid) {
+                Files.deleteIfExists(snapshotFile);
+            }
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to save the key index under " + basePath, e);
+        } finally {
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void invalidateKeyIndexSnapshot() throws IOException {
+        if (keyIndexSnapshotValid) {
+            keyIndexSnapshotValid = false;
+            Files.deleteIfExists(basePath.resolve(KEY_INDEX_FILE_NAME));
+        }
+    }
+
+    /**
+     * Reads the key index from its snapshot if there is one of the right type, or builds it by scanning the
+     * base path otherwise. The snapshot is deleted, as it is outdated as soon as the storage is changed.
+     */
+    private KeyIndex loadKeyIndex(KeyIndexType type, long expectedInsertions, double falsePositiveProbability) {
+        Path snapshotFile = basePath.resolve(KEY_INDEX_FILE_NAME);
+        try {
+            if (Files.isRegularFile(snapshotFile)) {
+                try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(snapshotFile))) {
+                    KeyIndex snapshot = KeyIndex.readFrom(inputStream);
+                    if (snapshot.getType() == type) {
+                        return snapshot;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // An unreadable snapshot is ignored, the index is rebuilt from the files instead
+                } finally {
+                    Files.deleteIfExists(snapshotFile);
+                }
+            }
+            KeyIndex index = KeyIndex.create(type, expectedInsertions, falsePositiveProbability);
+            if (Files.isDirectory(basePath)) {
+                scanKeys(index);
+            }
+            return index;
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to build the key index for " + basePath, e);
+        }
+    }
+
+    private void scanKeys(KeyIndex index) throws IOException {
+        Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                return isInternalDirectory(directory) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (isPayloadFile(file)) {
+                    // While resharding, a file can be at the location of either strategy
+                    String shardedPath = toRelativePath(file);
+                    for (ShardingStrategy strategy : Arrays.asList(shardingStrategy, previousShardingStrategy)) {
+                        String filePath = strategy != null ? toFilePath(strategy, shardedPath) : null;
+                        if (filePath != null) {
+                            index.add(filePath);
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Creates an empty temporary file in the directory of the given target path, creating the directory
+     * if needed.
+     */
+    Path createTemporaryFile(Path targetPath) throws IOException {
+        Files.createDirectories(targetPath.getParent());
+        return Files.createFile(getTemporaryFile(targetPath));
+    }
+
+    /**
+     * Moves the completely written temporary file to the target path, together with the metadata.
+     * <p>
+     * The two files are first renamed to their publish names, which commits the store: after a crash,
+     * {@link #recover()} moves them into place. A crash before that leaves the previous version intact.
+     */
+    void publish(String filePath, Path temporaryFile, Path targetPath, BinaryObjectMetadata metadata)
+            throws IOException {
+        Path metadataFile = getMetadataFile(targetPath);
+        Path temporaryMetadataFile = writeTemporaryMetadata(targetPath, metadata);
+        Path publishFile = getPublishFile(targetPath);
+        Path publishMetadataFile = getMetadataFile(publishFile);
+        Lock lock = lockFilePath(filePath);
+        try {
+            if (keyIndex != null) {
+                // Index the path before the file becomes visible, so the index never misses an existing file.
+                // Then invalidate the snapshot, so a concurrent saveKeyIndex either includes it or is discarded.
+                keyIndex.add(filePath);
+                invalidateKeyIndexSnapshot();
+            }
+            force(temporaryFile, temporaryMetadataFile);
+            // The metadata first: recover() only finishes a publish when the binary object has its publish name
+            Files.move(temporaryMetadataFile, publishMetadataFile, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temporaryFile, publishFile, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                force(targetPath.getParent());
+            } catch (IOException | RuntimeException e) {
+                // Not committed, give the caller its temporary file back
+                if (Files.exists(publishFile)) {
+                    Files.move(publishFile, temporaryFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.deleteIfExists(publishMetadataFile);
+                throw e;
+            }
+            Files.move(publishMetadataFile, metadataFile, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            Files.move(publishFile, targetPath, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            invalidateMapping(targetPath);
+            Files.deleteIfExists(getLegacyMetadataFile(targetPath));
+            force(targetPath.getParent());
+            Path previousPath = resolvePrevious(filePath);
+            if (previousPath != null) {
+                deleteFiles(previousPath);
+            }
+            if (metadataIndex != null) {
+                metadataIndex.put(filePath, metadata);
+            }
+        } finally {
+            lock.unlock();
+            Files.deleteIfExists(temporaryMetadataFile);
+        }
+    }
+
+    /**
+     * Reads the metadata, migrating it when it is in the legacy format, and adds it to the metadata index. The
+     * caller should hold the {@link #readLockFilePath(String) read lock}, so the metadata is not replaced or
+     * deleted in the meantime.
+     */
+    private BinaryObjectMetadata loadMetadata(String filePath, Path targetPath) throws IOException {
+        BinaryObjectMetadata metadata;
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(getMetadataFile(targetPath)))) {
+            metadata = BinaryMetadataFormat.read(inputStream);
+        } catch (NoSuchFileException e) {
+            metadata = migrateLegacyMetadata(targetPath);
+        }
+
+        if (metadataIndex != null) {
+            metadataIndex.put(filePath, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Reads the metadata in either format, without changing any file or the metadata index.
+     */
+    private BinaryObjectMetadata readMetadata(Path targetPath) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(getMetadataFile(targetPath)))) {
+            return BinaryMetadataFormat.read(inputStream);
+        } catch (NoSuchFileException e) {
+            try (InputStream inputStream = Files.newInputStream(getLegacyMetadataFile(targetPath))) {
+                return BinaryMetadataFormat.readLegacy(inputStream);
+            }
+        }
+    }
+
+    private BinaryObjectMetadata migrateLegacyMetadata(Path targetPath) throws IOException {
+        Path legacyMetadataFile = getLegacyMetadataFile(targetPath);
+        BinaryObjectMetadata metadata;
+        try (InputStream inputStream = Files.newInputStream(legacyMetadataFile)) {
+            metadata = BinaryMetadataFormat.readLegacy(inputStream);
+        } catch (NoSuchFileException e) {
+            // Another thread migrated the metadata in the meantime
+            try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(getMetadataFile(targetPath)))) {
+                return BinaryMetadataFormat.read(inputStream);
+            }
+        }
+        writeMetadata(targetPath, metadata);
+        Files.deleteIfExists(legacyMetadataFile);
+        return metadata;
+    }
+
+    private void writeMetadata(Path targetPath, BinaryObjectMetadata metadata) throws IOException {
+        // Write to a temporary file first, so readers never see a partially written metadata file
+        Path temporaryFile = writeTemporaryMetadata(targetPath, metadata);
+        try {
+            force(temporaryFile);
+            Files.move(temporaryFile, getMetadataFile(targetPath), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            force(targetPath.getParent());
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private Path writeTemporaryMetadata(Path targetPath, BinaryObjectMetadata metadata) throws IOException {
+        Path temporaryFile = getTemporaryFile(targetPath);
+        try (OutputStream outputStream = new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+            BinaryMetadataFormat.write(metadata, outputStream);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        return temporaryFile;
+    }
+
+    private void force(Path... paths) throws IOException {
+        switch (fsyncPolicy) {
+            case PER_FILE:
+                for (Path path : paths) {
+                    FileUtils.fsync(path);
+                }
+                break;
+            case BATCHED:
+                groupCommitter.force(Arrays.asList(paths));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Path getTemporaryFile(Path targetPath) {
+        return targetPath.resolveSibling(TEMPORARY_FILE_PREFIX + UUID.randomUUID());
+    }
+
+    private static Path getPublishFile(Path targetPath) {
+        return targetPath.resolveSibling(PUBLISH_FILE_PREFIX + targetPath.getFileName());
+    }
+
+    private Path getMetadataFile(Path targetPath) {
         String name = targetPath.getName(targetPath.getNameCount() - 1).toString();
 
-        return targetPath.resolveSibling(name + "-metadata.properties").toFile();
+        return targetPath.resolveSibling(name + BinaryMetadataFormat.FILE_SUFFIX);
+    }
+
+    private Path getLegacyMetadataFile(Path targetPath) {
+        String name = targetPath.getName(targetPath.getNameCount() - 1).toString();
+
+        return targetPath.resolveSibling(name + BinaryMetadataFormat.LEGACY_FILE_SUFFIX);
+    }
+
+    public static class Builder {
+        private final Path basePath;
+        private boolean metadataIndex;
+        private int batchParallelism = Runtime.getRuntime().availableProcessors();
+        private Executor batchExecutor = BlockingTaskExecutors.shared();
+        private FsyncPolicy fsyncPolicy = FsyncPolicy.NONE;
+        private boolean recoverOnStartup;
+        private ShardingStrategy shardingStrategy = ShardingStrategy.none();
+        private ShardingStrategy previousShardingStrategy;
+        private long maximumMappedBytes;
+        private KeyIndexType keyIndexType;
+        private long expectedInsertions = 1_000_000;
+        private double falsePositiveProbability = 0.01;
+        private ForkJoinPool deletionPool = ForkJoinPool.commonPool();
+        private ChecksumAlgorithm checksumAlgorithm;
+        private boolean verifyChecksums;
+
+        private Builder(Path basePath) {
+            this.basePath = basePath;
+        }
+
+        /**
+         * Keep the metadata of all stored and retrieved binary objects in memory. Disabled by default.
+         */
+        public Builder metadataIndex(boolean metadataIndex) {
+            this.metadataIndex = metadataIndex;
+            return this;
+        }
+
+        /**
+         * The maximum number of directories that batch operations work on in parallel.
+         * Defaults to the number of available processors.
+         */
+        public Builder batchParallelism(int batchParallelism) {
+            if (batchParallelism <= 0) {
+                throw new IllegalArgumentException("batchParallelism should be positive: " + batchParallelism);
+            }
+            this.batchParallelism = batchParallelism;
+            return this;
+        }
+
+        /**
+         * The executor that runs batch operations. Defaults to the common {@link ForkJoinPool}, or to a virtual thread
+         * per task on Java 21 and later.
+         */
+        public Builder batchExecutor(Executor batchExecutor) {
+            this.batchExecutor = batchExecutor;
+            return this;
+        }
+
+        /**
+         * When written files are forced to the storage device. Defaults to {@link FsyncPolicy#NONE}.
+         */
+        public Builder fsyncPolicy(FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        /**
+         * Run {@link LocalFileSystemBinaryObjectStorage#recover()} when the storage is built. Disabled by default.
+         */
+        public Builder recoverOnStartup(boolean recoverOnStartup) {
+            this.recoverOnStartup = recoverOnStartup;
+            return this;
+        }
+
+        /**
+         * Where the files of the binary objects are stored. Defaults to {@link ShardingStrategy#none()}, which
+         * stores each binary object at its file path.
+         */
+        public Builder shardingStrategy(ShardingStrategy shardingStrategy) {
+            this.shardingStrategy = shardingStrategy;
+            return this;
+        }
+
+        /**
+         * The sharding strategy that was used before, while existing binary objects are moved to the new
+         * strategy with {@link LocalFileSystemBinaryObjectStorage#reshard()}. Not set by default.
+         */
+        public Builder previousShardingStrategy(ShardingStrategy previousShardingStrategy) {
+            this.previousShardingStrategy = previousShardingStrategy;
+            return this;
+        }
+
+        /**
+         * Serve reads from memory-mapped files, keeping the mappings of recently read files up to the given total
+         * size. Files larger than 1/16 of that size are read without a mapping. Disabled by default.
+         * <p>
+         * The mapping of a file stays valid while its binary objects are read, even when it is overwritten or
+         * deleted in the meantime. On Windows, a mapped file can not be overwritten or deleted, so this should
+         * only be used there for files that never change.
+         *
+         * @param maximumMappedBytes the maximum total size of the cached mappings, or 0 to disable
+         */
+        public Builder memoryMappedReads(long maximumMappedBytes) {
+            if (maximumMappedBytes < 0) {
+                throw new IllegalArgumentException("maximumMappedBytes should not be negative: " + maximumMappedBytes);
+            }
+            this.maximumMappedBytes = maximumMappedBytes;
+            return this;
+        }
+
+        /**
+         * Index the file paths of all binary objects in memory, so lookups of binary objects that do not exist
+         * are answered without accessing the filesystem. This assumes no other process modifies the files under
+         * the base path. Disabled by default.
+         */
+        public Builder keyIndex(KeyIndexType keyIndexType) {
+            this.keyIndexType = keyIndexType;
+            return this;
+        }
+
+        /**
+         * The size of the Bloom filter for {@link KeyIndexType#BLOOM_FILTER}. When more binary objects are stored
+         * than expected, more lookups of missing binary objects need to access the filesystem. Defaults to
+         * 1,000,000 binary objects with a false positive probability of 1%.
+         */
+        public Builder bloomFilterSizing(long expectedInsertions, double falsePositiveProbability) {
+            if (expectedInsertions <= 0) {
+                throw new IllegalArgumentException("expectedInsertions should be positive: " + expectedInsertions);
+            }
+            if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+                throw new IllegalArgumentException(
+                        "falsePositiveProbability should be between 0 and 1: " + falsePositiveProbability);
+            }
+            this.expectedInsertions = expectedInsertions;
+            this.falsePositiveProbability = falsePositiveProbability;
+            return this;
+        }
+
+        /**
+         * The pool that deletes the directories of {@link LocalFileSystemBinaryObjectStorage#deletePrefix(String)}
+         * in parallel. Its parallelism bounds the number of directories that are deleted at the same time.
+         * Defaults to the common {@link ForkJoinPool}.
+         */
+        public Builder deletionPool(ForkJoinPool deletionPool) {
+            this.deletionPool = deletionPool;
+            return this;
+        }
+
+        /**
+         * Calculate the checksum of each binary object while it is stored and keep it in its metadata. When the
+         * given metadata already has a checksum of this algorithm, storing fails if the bytes do not match it.
+         * Not set by default.
+         */
+        public Builder checksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+            this.checksumAlgorithm = checksumAlgorithm;
+            return this;
+        }
+
+        /**
+         * Verify the checksum of binary objects that have one while they are retrieved completely. The input stream
+         * then fails with a {@link ChecksumMismatchException} at its end if the bytes are corrupt. Memory-mapped
+         * binary objects are verified before they are returned. Disabled by default.
+         */
+        public Builder verifyChecksums(boolean verifyChecksums) {
+            this.verifyChecksums = verifyChecksums;
+            return this;
+        }
+
+        public LocalFileSystemBinaryObjectStorage build() {
+            return new LocalFileSystemBinaryObjectStorage(this);
+        }
     }
 }
@@ -0,0 +1,36 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+import io.github.wimdeblauwe.biob.io.ByteBufferInputStream;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ByteBufferBinaryObject} that reads from a memory-mapped file. Closing the input stream releases the
+ * reference on the mapping.
+ */
+class MappedFileBinaryObject extends ByteBufferBinaryObject {
+
+    MappedFileBinaryObject(ByteBuffer buffer, BinaryObjectMetadata metadata, MappedFileCache.MappedFile mappedFile) {
+        super(new ReleasingInputStream(buffer, mappedFile), metadata);
+    }
+
+    private static class ReleasingInputStream extends ByteBufferInputStream {
+        private final MappedFileCache.MappedFile mappedFile;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingInputStream(ByteBuffer buffer, MappedFileCache.MappedFile mappedFile) {
+            super(buffer);
+            this.mappedFile = mappedFile;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                mappedFile.release();
+            }
+        }
+    }
+}
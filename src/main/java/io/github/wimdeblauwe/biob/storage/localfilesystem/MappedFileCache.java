@@ -0,0 +1,149 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps memory mappings of recently read files, bounded by the total size of the mapped files.
+ * <p>
+ * Each mapping is reference counted: the cache holds one reference and each binary object that reads from it
+ * holds one until its input stream is closed. A mapping that is evicted stays usable until the last reader
+ * releases it; after that, the mapping is left to the garbage collector. It is never unmapped explicitly, as
+ * callers may still hold a buffer that was obtained from it.
+ */
+class MappedFileCache {
+    private final Cache<Path, MappedFile> cache;
+    private final long maximumFileSize;
+    private final AtomicLong mappedBytes = new AtomicLong();
+
+    MappedFileCache(long maximumMappedBytes) {
+        // Guava divides the maximum weight over its segments, so a single file should stay well below it
+        this.maximumFileSize = maximumMappedBytes / 16;
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumWeight(maximumMappedBytes)
+                                 .<Path, MappedFile>weigher((path, mappedFile) -> mappedFile.getWeight())
+                                 .removalListener((RemovalListener<Path, MappedFile>) notification ->
+                                         notification.getValue().release())
+                                 .recordStats()
+                                 .build();
+    }
+
+    /**
+     * @return whether a file of the given size is served from a mapping
+     */
+    boolean isMappable(long fileSize) {
+        // A single mapping can not be larger than a ByteBuffer, whatever the budget
+        return fileSize <= maximumFileSize && fileSize <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the mapping of the given file, mapping it if needed. The caller needs to
+     * {@link MappedFile#release() release} it when it is done.
+     * <p>
+     * The file is mapped outside of the cache, as Guava holds a monitor on the entry while it loads, which would
+     * pin a virtual thread to its carrier. Concurrent misses may map the same file; all but one drop their mapping.
+     */
+    MappedFile acquire(Path path) throws IOException {
+        while (true) {
+            MappedFile mappedFile = cache.getIfPresent(path);
+            if (mappedFile == null) {
+                MappedFile mapped = map(path);
+                mappedFile = cache.asMap().putIfAbsent(path, mapped);
+                if (mappedFile == null) {
+                    mappedFile = mapped;
+                } else {
+                    mapped.release();
+                }
+            }
+            if (mappedFile.retain()) {
+                return mappedFile;
+            }
+            // Released between the lookup and now, so it is no longer in the cache
+            cache.asMap().remove(path, mappedFile);
+        }
+    }
+
+    void invalidate(Path path) {
+        cache.invalidate(path);
+    }
+
+    /**
+     * Invalidates the mappings of all files below the given directory.
+     */
+    void invalidateAll(Path directory) {
+        cache.asMap().keySet().removeIf(path -> path.startsWith(directory));
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return the total size of all mappings that are still referenced by the cache or by a reader
+     */
+    long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    private MappedFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedFile(buffer);
+        }
+    }
+
+    final class MappedFile {
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final int size;
+        private volatile MappedByteBuffer buffer;
+
+        private MappedFile(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.size = buffer.capacity();
+            mappedBytes.addAndGet(size);
+        }
+
+        /**
+         * @return a read-only view on the complete file
+         */
+        MappedByteBuffer getBuffer() {
+            return (MappedByteBuffer) buffer.asReadOnlyBuffer();
+        }
+
+        private int getWeight() {
+            return Math.max(1, size);
+        }
+
+        private boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Releases one reference. When the last reference is released, the mapping is dropped.
+         */
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                buffer = null;
+                mappedBytes.addAndGet(-size);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Striped;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.NoSuchUploadException;
+import io.github.wimdeblauwe.biob.UploadedPart;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps the multipart uploads of a {@link LocalFileSystemBinaryObjectStorage} in {@code .biob-uploads/<uploadId>}:
+ * an {@code upload} file with the path and metadata of the binary object, and a {@code part-<number>} file per
+ * uploaded part.
+ * <p>
+ * Parts are written to a temporary file first, so a part file is always complete. Each upload has a lock that is
+ * held while a part is moved into place and while the upload is completed or aborted, so a part is never added to
+ * an upload that is being completed.
+ */
+class MultipartUploads {
+    static final String DIRECTORY_NAME = ".biob-uploads";
+    private static final String UPLOAD_FILE_NAME = "upload";
+    private static final String PART_FILE_PREFIX = "part-";
+    private static final String TEMPORARY_FILE_PREFIX = ".biob-tmp-";
+
+    private final Path directory;
+    private final Striped<Lock> uploadLocks = Striped.lock(64);
+
+    MultipartUploads(Path basePath) {
+        this.directory = basePath.resolve(DIRECTORY_NAME);
+    }
+
+    String initiate(String filePath, BinaryObjectMetadata metadata) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Path uploadDirectory = directory.resolve(uploadId);
+        Files.createDirectories(uploadDirectory);
+        Path temporaryFile = uploadDirectory.resolve(TEMPORARY_FILE_PREFIX + UUID.randomUUID());
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+            byte[] filePathBytes = filePath.getBytes(StandardCharsets.UTF_8);
+            outputStream.writeInt(filePathBytes.length);
+            outputStream.write(filePathBytes);
+            BinaryMetadataFormat.write(metadata, outputStream);
+        }
+        Files.move(temporaryFile, uploadDirectory.resolve(UPLOAD_FILE_NAME), StandardCopyOption.ATOMIC_MOVE);
+        return uploadId;
+    }
+
+    Upload read(String uploadId) throws IOException {
+        Path uploadDirectory = getUploadDirectory(uploadId);
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(uploadDirectory.resolve(UPLOAD_FILE_NAME))))) {
+            byte[] filePathBytes = new byte[inputStream.readInt()];
+            inputStream.readFully(filePathBytes);
+            return new Upload(new String(filePathBytes, StandardCharsets.UTF_8),
+                              BinaryMetadataFormat.read(inputStream));
+        } catch (NoSuchFileException e) {
+            throw new NoSuchUploadException(uploadId);
+        }
+    }
+
+    void writePart(String uploadId, int partNumber, InputStream inputStream) throws IOException {
+        Path uploadDirectory = getUploadDirectory(uploadId);
+        Path temporaryFile = uploadDirectory.resolve(TEMPORARY_FILE_PREFIX + UUID.randomUUID());
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE_NEW,
+                                                        StandardOpenOption.WRITE)) {
+                ByteStreams.copy(Channels.newChannel(inputStream), channel);
+            } catch (NoSuchFileException e) {
+                throw new NoSuchUploadException(uploadId);
+            }
+            Lock lock = uploadLocks.get(uploadId);
+            lock.lock();
+            try {
+                if (!Files.exists(uploadDirectory.resolve(UPLOAD_FILE_NAME))) {
+                    throw new NoSuchUploadException(uploadId);
+                }
+                Files.move(temporaryFile, getPartFile(uploadDirectory, partNumber), StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                // The time of the directory tells when the upload was last active
+                Files.setLastModifiedTime(uploadDirectory, FileTime.fromMillis(System.currentTimeMillis()));
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    List<UploadedPart> listParts(String uploadId) throws IOException {
+        Path uploadDirectory = getUploadDirectory(uploadId);
+        List<UploadedPart> parts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadDirectory, PART_FILE_PREFIX + "*")) {
+            for (Path file : files) {
+                parts.add(new UploadedPart(getPartNumber(file), Files.size(file)));
+            }
+        } catch (NoSuchFileException e) {
+            throw new NoSuchUploadException(uploadId);
+        }
+        parts.sort(Comparator.comparingInt(UploadedPart::getPartNumber));
+        return parts;
+    }
+
+    /**
+     * @return the part files of the upload, in the order of their number
+     */
+    List<Path> getPartFiles(String uploadId) throws IOException {
+        Path uploadDirectory = getUploadDirectory(uploadId);
+        List<Path> partFiles = new ArrayList<>();
+        for (UploadedPart part : listParts(uploadId)) {
+            partFiles.add(getPartFile(uploadDirectory, part.getPartNumber()));
+        }
+        return partFiles;
+    }
+
+    /**
+     * Locks the upload against adding parts, completing and aborting it.
+     */
+    Lock lock(String uploadId) {
+        Lock lock = uploadLocks.get(uploadId);
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Deletes the upload and its parts. The caller should hold the {@link #lock(String) lock} of the upload.
+     */
+    void delete(String uploadId) throws IOException {
+        Path uploadDirectory = getUploadDirectory(uploadId);
+        // Remove the upload file first, so the upload no longer exists even if deleting a part fails
+        Files.deleteIfExists(uploadDirectory.resolve(UPLOAD_FILE_NAME));
+        if (Files.exists(uploadDirectory)) {
+            FileUtils.deleteDirectory(uploadDirectory);
+        }
+    }
+
+    /**
+     * Deletes the uploads that were not changed for the given time.
+     *
+     * @return the number of deleted uploads
+     */
+    int expire(Duration maximumIdleTime) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        long oldestAllowedMillis = System.currentTimeMillis() - maximumIdleTime.toMillis();
+        List<String> uploadIds = new ArrayList<>();
+        try (DirectoryStream<Path> uploadDirectories = Files.newDirectoryStream(directory)) {
+            for (Path uploadDirectory : uploadDirectories) {
+                if (Files.getLastModifiedTime(uploadDirectory).toMillis() <= oldestAllowedMillis) {
+                    uploadIds.add(uploadDirectory.getFileName().toString());
+                }
+            }
+        }
+        for (String uploadId : uploadIds) {
+            Lock lock = lock(uploadId);
+            try {
+                delete(uploadId);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return uploadIds.size();
+    }
+
+    private Path getUploadDirectory(String uploadId) {
+        Objects.requireNonNull(uploadId, "uploadId should not be null");
+        // Only accept ids that were generated here, so an id can not point outside of the uploads directory
+        try {
+            if (!UUID.fromString(uploadId).toString().equals(uploadId)) {
+                throw new NoSuchUploadException(uploadId);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new NoSuchUploadException(uploadId);
+        }
+        return directory.resolve(uploadId);
+    }
+
+    private static Path getPartFile(Path uploadDirectory, int partNumber) {
+        return uploadDirectory.resolve(PART_FILE_PREFIX + partNumber);
+    }
+
+    private static int getPartNumber(Path partFile) {
+        return Integer.parseInt(partFile.getFileName().toString().substring(PART_FILE_PREFIX.length()));
+    }
+
+    static final class Upload {
+        private final String filePath;
+        private final BinaryObjectMetadata metadata;
+
+        private Upload(String filePath, BinaryObjectMetadata metadata) {
+            this.filePath = filePath;
+            this.metadata = metadata;
+        }
+
+        String getFilePath() {
+            return filePath;
+        }
+
+        BinaryObjectMetadata getMetadata() {
+            return metadata;
+        }
+    }
+}
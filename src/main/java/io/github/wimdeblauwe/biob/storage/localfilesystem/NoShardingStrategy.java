@@ -0,0 +1,23 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+final class NoShardingStrategy implements ShardingStrategy {
+    static final NoShardingStrategy INSTANCE = new NoShardingStrategy();
+
+    private NoShardingStrategy() {
+    }
+
+    @Override
+    public String toShardedPath(String filePath) {
+        return filePath;
+    }
+
+    @Override
+    public String toFilePath(String shardedPath) {
+        return shardedPath;
+    }
+
+    @Override
+    public String toString() {
+        return "NoShardingStrategy";
+    }
+}
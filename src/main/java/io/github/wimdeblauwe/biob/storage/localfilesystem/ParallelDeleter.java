@@ -0,0 +1,118 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Deletes directory trees with one fork-join task per directory, so subdirectories are deleted in parallel.
+ * A directory is deleted by the task that completes last below it, so no thread waits for its subdirectories
+ * and deep trees do not need a deep call stack. Files that disappear while deleting are ignored; all other
+ * failures are collected in the {@link DeletePrefixResult}.
+ */
+final class ParallelDeleter {
+    private final ForkJoinPool pool;
+    private final Consumer<Path> deletedFileListener;
+
+    ParallelDeleter(ForkJoinPool pool, Consumer<Path> deletedFileListener) {
+        this.pool = pool;
+        this.deletedFileListener = deletedFileListener;
+    }
+
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Deletes the file or the directory with everything in it, if it exists.
+     */
+    DeletePrefixResult delete(Path path) {
+        Map<Path, IOException> failures = new ConcurrentHashMap<>();
+        AtomicLong deletedFileCount = new AtomicLong();
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            pool.invoke(new DirectoryDeletion(null, path, failures, deletedFileCount));
+        } else {
+            deleteFile(path, failures, deletedFileCount);
+        }
+        return new DeletePrefixResult(deletedFileCount.get(), failures);
+    }
+
+    private boolean deleteFile(Path file, Map<Path, IOException> failures, AtomicLong deletedFileCount) {
+        try {
+            if (Files.deleteIfExists(file)) {
+                deletedFileCount.incrementAndGet();
+                deletedFileListener.accept(file);
+            }
+            return true;
+        } catch (IOException e) {
+            failures.put(file, e);
+            return false;
+        }
+    }
+
+    private final class DirectoryDeletion extends CountedCompleter<Void> {
+        private final Path directory;
+        private final Map<Path, IOException> failures;
+        private final AtomicLong deletedFileCount;
+        private volatile boolean failed;
+
+        DirectoryDeletion(DirectoryDeletion parent, Path directory, Map<Path, IOException> failures,
+                          AtomicLong deletedFileCount) {
+            super(parent);
+            this.directory = directory;
+            this.failures = failures;
+            this.deletedFileCount = deletedFileCount;
+        }
+
+        @Override
+        public void compute() {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        addToPendingCount(1);
+                        new DirectoryDeletion(this, entry, failures, deletedFileCount).fork();
+                    } else if (!deleteFile(entry, failures, deletedFileCount)) {
+                        failed = true;
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted in the meantime
+            } catch (IOException e) {
+                failures.put(directory, e);
+                failed = true;
+            } catch (DirectoryIteratorException e) {
+                failures.put(directory, e.getCause());
+                failed = true;
+            }
+            tryComplete();
+        }
+
+        /**
+         * Called once this directory and all its subdirectories are processed.
+         */
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if (!failed) {
+                try {
+                    Files.deleteIfExists(directory);
+                } catch (IOException e) {
+                    failures.put(directory, e);
+                    failed = true;
+                }
+            }
+            if (failed && getCompleter() != null) {
+                ((DirectoryDeletion) getCompleter()).failed = true;
+            }
+        }
+    }
+}
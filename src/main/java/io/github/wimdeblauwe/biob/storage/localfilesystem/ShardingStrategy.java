@@ -0,0 +1,36 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+/**
+ * Determines where {@link LocalFileSystemBinaryObjectStorage} puts the file for a file path, e.g. to spread
+ * binary objects over more directories so no directory gets too many entries.
+ */
+public interface ShardingStrategy {
+
+    /**
+     * @param filePath the file path of a binary object
+     * @return the path of its file, relative to the base path of the storage
+     */
+    String toShardedPath(String filePath);
+
+    /**
+     * The reverse of {@link #toShardedPath(String)}.
+     *
+     * @param shardedPath the path of a file relative to the base path of the storage
+     * @return the file path of the binary object stored in that file
+     */
+    String toFilePath(String shardedPath);
+
+    /**
+     * @return the strategy that stores each binary object at its file path, which is the default
+     */
+    static ShardingStrategy none() {
+        return NoShardingStrategy.INSTANCE;
+    }
+
+    /**
+     * @return a {@link HashPrefixShardingStrategy} with the given depth and width
+     */
+    static ShardingStrategy hashPrefix(int depth, int width) {
+        return new HashPrefixShardingStrategy(depth, width);
+    }
+}
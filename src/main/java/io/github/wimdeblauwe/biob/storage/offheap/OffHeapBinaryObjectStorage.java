@@ -0,0 +1,215 @@
+package io.github.wimdeblauwe.biob.storage.offheap;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+import io.github.wimdeblauwe.biob.io.ByteBufferInputStream;
+import io.github.wimdeblauwe.biob.io.ByteBufferUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} that keeps the bytes of all binary objects in direct (off-heap) memory.
+ * <p>
+ * Only the index of file paths and the {@link BinaryObjectMetadata} are kept on the Java heap, so
+ * storing large amounts of data does not increase garbage collection pauses. The {@link InputStream}
+ * returned from {@link #retrieve(String)} reads straight from the off-heap memory without copying it
+ * onto the heap first.
+ * <p>
+ * The bytes are kept in direct buffers of at most 1 MB each, so a binary object never needs more direct
+ * memory than its size plus one buffer while it is stored, and the file size in the metadata is only a hint.
+ * <p>
+ * The off-heap memory of a binary object is released when it is deleted or replaced and no
+ * retrieved stream refers to it anymore. Use {@code -XX:MaxDirectMemorySize} to limit the total
+ * amount of direct memory the JVM may allocate.
+ * <p>
+ * This class is thread-safe.
+ */
+public class OffHeapBinaryObjectStorage implements BinaryObjectStorage {
+    private static final int DEFAULT_INITIAL_CAPACITY = 8192;
+    // Also bounds what a wrong or hostile size hint reserves before the bytes were read
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final ConcurrentNavigableMap<String, OffHeapBinaryObject> binaryObjects = new ConcurrentSkipListMap<>();
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        try {
+            Objects.requireNonNull(filePath, "filePath should not be null");
+            Objects.requireNonNull(metadata, "metadata should not be null");
+            Objects.requireNonNull(inputStream, "inputStream should not be null");
+
+            List<ByteBuffer> chunks = readIntoDirectBuffers(inputStream, metadata);
+            binaryObjects.put(filePath, new OffHeapBinaryObject(chunks, metadata));
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to store inputStream under path " + filePath, e);
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        OffHeapBinaryObject binaryObject = binaryObjects.get(filePath);
+        if (binaryObject != null) {
+            return Optional.of(binaryObject.toBinaryObject(0, Long.MAX_VALUE));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        OffHeapBinaryObject binaryObject = binaryObjects.get(filePath);
+        if (binaryObject != null) {
+            return Optional.of(binaryObject.toBinaryObject(offset, length));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        OffHeapBinaryObject binaryObject = binaryObjects.get(filePath);
+        if (binaryObject != null) {
+            return Optional.of(binaryObject.getMetadata());
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return binaryObjects.containsKey(filePath);
+    }
+
+    @Override
+    public void delete(String filePath) {
+        binaryObjects.remove(filePath);
+    }
+
+    /**
+     * Lists the binary objects with the prefix in the order of their paths.
+     */
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        return binaryObjects.subMap(prefix, prefix + Character.MAX_VALUE)
+                            .entrySet()
+                            .stream()
+                            .map(entry -> new BinaryObjectSummary(entry.getKey(), entry.getValue().getMetadata()));
+    }
+
+    /**
+     * Returns the total number of off-heap bytes used by all binary objects in this storage.
+     *
+     * @return the size in bytes
+     */
+    public long getSizeInBytes() {
+        return binaryObjects.values().stream()
+                            .mapToLong(OffHeapBinaryObject::getSize)
+                            .sum();
+    }
+
+    private static List<ByteBuffer> readIntoDirectBuffers(InputStream inputStream,
+                                                          BinaryObjectMetadata metadata) throws IOException {
+        // The file size in the metadata is only used as a hint, the actual stream length is what is stored
+        long expectedRemaining = metadata.getFileSize();
+        List<ByteBuffer> chunks = new ArrayList<>();
+        long size = 0;
+        ReadableByteChannel channel = Channels.newChannel(inputStream);
+        ByteBuffer probe = ByteBuffer.allocate(1);
+        while (true) {
+            // Only allocate a chunk when the stream really has more bytes
+            probe.clear();
+            if (channel.read(probe) < 0) {
+                break;
+            }
+            int capacity = expectedRemaining > 0
+                    ? (int) Math.min(expectedRemaining, CHUNK_SIZE)
+                    : (int) Math.min(Math.max(size, DEFAULT_INITIAL_CAPACITY), CHUNK_SIZE);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(capacity);
+            probe.flip();
+            chunk.put(probe);
+            while (chunk.hasRemaining() && channel.read(chunk) >= 0) {
+                // Fill the chunk
+            }
+            chunk.flip();
+            if (chunk.remaining() < chunk.capacity()) {
+                // The stream ended before the chunk was full, release the unused part of the chunk
+                ByteBuffer trimmed = ByteBuffer.allocateDirect(chunk.remaining());
+                trimmed.put(chunk);
+                trimmed.flip();
+                chunk = trimmed;
+            }
+            chunks.add(chunk.asReadOnlyBuffer());
+            size += chunk.remaining();
+            expectedRemaining -= chunk.remaining();
+        }
+        return chunks;
+    }
+
+    private static class OffHeapBinaryObject {
+        private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+
+        private final List<ByteBuffer> chunks;
+        private final BinaryObjectMetadata metadata;
+
+        OffHeapBinaryObject(List<ByteBuffer> chunks, BinaryObjectMetadata metadata) {
+            this.chunks = chunks;
+            this.metadata = metadata;
+        }
+
+        long getSize() {
+            return chunks.stream().mapToLong(ByteBuffer::remaining).sum();
+        }
+
+        BinaryObjectMetadata getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * Returns the range of the bytes, read straight from the chunks that hold it.
+         */
+        BinaryObject toBinaryObject(long offset, long length) {
+            List<ByteBuffer> slices = new ArrayList<>();
+            long skip = offset;
+            long remaining = length;
+            for (ByteBuffer chunk : chunks) {
+                if (remaining == 0) {
+                    break;
+                }
+                if (skip >= chunk.remaining()) {
+                    skip -= chunk.remaining();
+                    continue;
+                }
+                ByteBuffer slice = ByteBufferUtils.slice(chunk, skip, remaining);
+                slices.add(slice);
+                remaining -= slice.remaining();
+                skip = 0;
+            }
+            if (slices.size() <= 1) {
+                return new ByteBufferBinaryObject(slices.isEmpty() ? EMPTY : slices.get(0), metadata);
+            }
+            List<InputStream> inputStreams = new ArrayList<>(slices.size());
+            for (ByteBuffer slice : slices) {
+                inputStreams.add(new ByteBufferInputStream(slice));
+            }
+            return new BinaryObject(new SequenceInputStream(Collections.enumeration(inputStreams)), metadata);
+        }
+    }
+}
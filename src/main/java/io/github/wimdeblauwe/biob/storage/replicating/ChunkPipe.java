@@ -0,0 +1,114 @@
+package io.github.wimdeblauwe.biob.storage.replicating;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream that reads the chunks that another thread hands over, so one source stream can be read by several
+ * replicas at the same time. At most a few chunks are queued, so the writer waits for the slowest reader instead of
+ * buffering the whole binary object.
+ */
+class ChunkPipe extends InputStream {
+    private static final byte[] END = new byte[0];
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<byte[]> chunks;
+    private volatile IOException failure;
+    private byte[] current;
+    private int position;
+
+    ChunkPipe(int capacity) {
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Queues a chunk. The chunk should not be changed afterwards.
+     *
+     * @return whether the chunk was queued before the timeout
+     */
+    boolean offer(byte[] chunk, long timeout, TimeUnit unit) throws InterruptedException {
+        return chunks.offer(chunk, timeout, unit);
+    }
+
+    /**
+     * Queues the end of the stream.
+     *
+     * @return whether the end was queued before the timeout
+     */
+    boolean offerEnd(long timeout, TimeUnit unit) throws InterruptedException {
+        return chunks.offer(END, timeout, unit);
+    }
+
+    /**
+     * Makes the reader fail with the given exception, without waiting for room in the queue.
+     */
+    void abort(IOException failure) {
+        this.failure = failure;
+    }
+
+    boolean isAborted() {
+        return failure != null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current != null ? current.length - position : 0;
+    }
+
+    /**
+     * @return whether there are bytes left in the current chunk, waiting for the next chunk if needed
+     */
+    private boolean nextChunk() throws IOException {
+        while (current == null || position == current.length) {
+            if (current == END) {
+                return false;
+            }
+            current = take();
+            position = 0;
+        }
+        return true;
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            while (true) {
+                if (failure != null) {
+                    throw new IOException("Stopped reading the binary object", failure);
+                }
+                byte[] chunk = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (chunk != null) {
+                    return chunk;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next chunk");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.wimdeblauwe.biob.storage.replicating;
+
+import java.util.StringJoiner;
+
+/**
+ * The outcome of a single {@link ReplicatingBinaryObjectStorage#repair()} run.
+ */
+public final class RepairResult {
+    private final long checkedCount;
+    private final long repairedCount;
+    private final long failedCount;
+
+    RepairResult(long checkedCount, long repairedCount, long failedCount) {
+        this.checkedCount = checkedCount;
+        this.repairedCount = repairedCount;
+        this.failedCount = failedCount;
+    }
+
+    /**
+     * @return the number of binary objects that were checked
+     */
+    public long getCheckedCount() {
+        return checkedCount;
+    }
+
+    /**
+     * @return the number of missing replicas that were copied
+     */
+    public long getRepairedCount() {
+        return repairedCount;
+    }
+
+    /**
+     * @return the number of missing replicas that could not be copied
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", RepairResult.class.getSimpleName() + "[", "]")
+                .add("checkedCount=" + checkedCount)
+                .add("repairedCount=" + repairedCount)
+                .add("failedCount=" + failedCount)
+                .toString();
+    }
+}
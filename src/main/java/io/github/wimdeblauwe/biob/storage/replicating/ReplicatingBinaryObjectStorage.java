@@ -0,0 +1,594 @@
+package io.github.wimdeblauwe.biob.storage.replicating;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Striped;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.io.BlockingTaskExecutors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} that keeps a copy of every binary object in each of several storages, e.g. on
+ * different disks.
+ * <p>
+ * Storing reads the input stream once and hands each chunk to all replicas in parallel, so the binary object is
+ * never buffered completely. The call returns as soon as {@link Builder#writeQuorum(int)} replicas have stored it.
+ * When a replica fails while at least one other succeeds, its copy is deleted, so it can not serve an outdated
+ * version; {@link #repair()} copies the missing replicas again. A replica that falls more than
+ * {@link Builder#maximumLag(int)} chunks behind is dropped from the store the same way, as long as enough other
+ * replicas remain for the write quorum, so one slow replica does not hold up the others.
+ * <p>
+ * With a write quorum below the number of replicas, the remaining replicas may still be writing when the store
+ * returns. Until they finish, a read that goes to one of them can still see the previous version, or find no
+ * binary object at all.
+ * <p>
+ * Reading asks the replica with the fewest running reads first. When it does not have the binary object or fails,
+ * the next replica is asked. With {@link Builder#hedgeAfter(Duration)}, the next replica is also asked when the
+ * previous one did not answer in time, and the first answer wins.
+ * <p>
+ * {@link #delete(String)} deletes all replicas and fails if any of them fails. {@link #list(String)} combines the
+ * listings of all replicas and keeps the paths it has returned in memory to skip duplicates.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ReplicatingBinaryObjectStorage implements BinaryObjectStorage {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAXIMUM_LAG = 16;
+    private static final long OFFER_MILLIS = 100;
+    private static final long NO_HEDGING = -1;
+
+    private final List<Replica> replicas;
+    private final int writeQuorum;
+    private final int maximumLag;
+    private final long hedgeAfterNanos;
+    private final Executor executor;
+    // Semaphores instead of locks, as a store releases its path when the slowest replica finishes on another thread
+    private final Striped<Semaphore> filePathLocks = Striped.semaphore(64, 1);
+
+    private ReplicatingBinaryObjectStorage(Builder builder) {
+        if (builder.replicas.size() < 2) {
+            throw new IllegalArgumentException("At least 2 replicas are needed, but got " + builder.replicas.size());
+        }
+        this.replicas = builder.replicas.stream().map(Replica::new).collect(Collectors.toList());
+        this.writeQuorum = builder.writeQuorum > 0 ? builder.writeQuorum : replicas.size();
+        if (writeQuorum > replicas.size()) {
+            throw new IllegalArgumentException("writeQuorum should not be more than the number of replicas: "
+                                                       + writeQuorum + " > " + replicas.size());
+        }
+        this.maximumLag = builder.maximumLag;
+        this.hedgeAfterNanos = builder.hedgeAfter != null ? builder.hedgeAfter.toNanos() : NO_HEDGING;
+        this.executor = builder.executor != null
+                        ? builder.executor
+                        : BlockingTaskExecutors.newThreadPerTaskExecutor("biob-replication-");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        Objects.requireNonNull(filePath, "filePath should not be null");
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        Objects.requireNonNull(inputStream, "inputStream should not be null");
+
+        Semaphore lock = filePathLocks.get(filePath);
+        lock.acquireUninterruptibly();
+        List<ReplicaWrite> writes = new ArrayList<>(replicas.size());
+        try {
+            for (Replica replica : replicas) {
+                writes.add(new ReplicaWrite(replica, filePath, metadata));
+            }
+        } finally {
+            CompletableFuture.allOf(writes.stream().map(write -> write.future).toArray(CompletableFuture[]::new))
+                             .whenComplete((result, e) -> {
+                                 try {
+                                     deleteFailedReplicas(filePath, writes);
+                                 } finally {
+                                     lock.release();
+                                 }
+                             });
+        }
+
+        try (InputStream source = inputStream) {
+            pump(source, writes);
+        } catch (IOException e) {
+            writes.forEach(write -> write.pipe.abort(e));
+            throw new BinaryObjectStorageException("Unable to store inputStream under path " + filePath, e);
+        } catch (InterruptedException e) {
+            writes.forEach(write -> write.pipe.abort(new IOException("Interrupted")));
+            Thread.currentThread().interrupt();
+            throw new BinaryObjectStorageException("Interrupted while storing binary object at path " + filePath, e);
+        } catch (RuntimeException | Error e) {
+            // Otherwise the replicas wait for the next chunk forever and the path stays locked
+            writes.forEach(write -> write.pipe.abort(new IOException(e)));
+            throw e;
+        }
+        awaitWriteQuorum(filePath, writes);
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        return readFromReplicas(filePath,
+                                storage -> storage.retrieve(filePath),
+                                ReplicatingBinaryObjectStorage::closeQuietly);
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        return readFromReplicas(filePath,
+                                storage -> storage.retrieve(filePath, offset, length),
+                                ReplicatingBinaryObjectStorage::closeQuietly);
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return readFromReplicas(filePath, storage -> storage.getMetadata(filePath), metadata -> {
+        });
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return readFromReplicas(filePath,
+                                storage -> storage.hasBinaryObject(filePath) ? Optional.of(Boolean.TRUE)
+                                        : Optional.<Boolean>empty(),
+                                found -> {
+                                })
+                .isPresent();
+    }
+
+    @Override
+    public void delete(String filePath) {
+        Semaphore lock = filePathLocks.get(filePath);
+        lock.acquireUninterruptibly();
+        try {
+            List<CompletableFuture<Void>> deletes = new ArrayList<>(replicas.size());
+            for (Replica replica : replicas) {
+                deletes.add(CompletableFuture.runAsync(() -> replica.storage.delete(filePath), executor));
+            }
+            BinaryObjectStorageException failure = null;
+            for (CompletableFuture<Void> delete : deletes) {
+                try {
+                    delete.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new BinaryObjectStorageException(
+                                "Unable to delete all replicas of binary object at path " + filePath, e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BinaryObjectStorageException(
+                            "Interrupted while deleting binary object at path " + filePath, e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        Set<String> listedFilePaths = ConcurrentHashMap.newKeySet();
+        return replicas.stream()
+                       .flatMap(replica -> replica.storage.list(prefix))
+                       .filter(summary -> listedFilePaths.add(summary.getFilePath()));
+    }
+
+    /**
+     * Copies every binary object to the replicas that miss it. A replica can miss a binary object when it failed
+     * while storing it, or when it was replaced by an empty storage.
+     *
+     * @return the number of checked binary objects and copied replicas
+     */
+    public RepairResult repair() {
+        long checkedCount = 0;
+        long repairedCount = 0;
+        long failedCount = 0;
+        try (Stream<BinaryObjectSummary> summaries = list("")) {
+            for (BinaryObjectSummary summary : (Iterable<BinaryObjectSummary>) summaries::iterator) {
+                String filePath = summary.getFilePath();
+                checkedCount++;
+                Semaphore lock = filePathLocks.get(filePath);
+                lock.acquireUninterruptibly();
+                try {
+                    List<Replica> missing = new ArrayList<>();
+                    Replica source = null;
+                    for (Replica replica : replicas) {
+                        if (replica.storage.hasBinaryObject(filePath)) {
+                            source = source != null ? source : replica;
+                        } else {
+                            missing.add(replica);
+                        }
+                    }
+                    if (source == null) {
+                        // Deleted since it was listed
+                        continue;
+                    }
+                    for (Replica target : missing) {
+                        try {
+                            if (copy(filePath, source, target)) {
+                                repairedCount++;
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            failedCount++;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failedCount++;
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        return new RepairResult(checkedCount, repairedCount, failedCount);
+    }
+
+    /**
+     * Runs {@link #repair()} repeatedly, with the given delay between the end of a run and the start of the next.
+     *
+     * @return the future to cancel the repairs
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executorService, Duration delay) {
+        Objects.requireNonNull(executorService, "executorService should not be null");
+        Objects.requireNonNull(delay, "delay should not be null");
+        return executorService.scheduleWithFixedDelay(this::repair, delay.toMillis(), delay.toMillis(),
+                                                      TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the source stream in chunks and hands each chunk to all replicas that are still writing. A replica
+     * whose queue stays full for a while is dropped when the others can still make the write quorum, and waited
+     * for otherwise.
+     */
+    private void pump(InputStream inputStream, List<ReplicaWrite> writes) throws IOException, InterruptedException {
+        while (true) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int read = ByteStreams.read(inputStream, chunk, 0, CHUNK_SIZE);
+            if (read < CHUNK_SIZE) {
+                chunk = Arrays.copyOf(chunk, read);
+            }
+            if (read > 0) {
+                for (ReplicaWrite write : writes) {
+                    if (!write.isActive() || write.pipe.offer(chunk, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                    if (writes.stream().filter(ReplicaWrite::isActive).count() > writeQuorum) {
+                        write.pipe.abort(new IOException("The replica fell more than " + maximumLag
+                                                                 + " chunks behind"));
+                    } else {
+                        write.send(chunk);
+                    }
+                }
+            }
+            if (read < CHUNK_SIZE) {
+                break;
+            }
+        }
+        for (ReplicaWrite write : writes) {
+            write.end();
+        }
+    }
+
+    private void awaitWriteQuorum(String filePath, List<ReplicaWrite> writes) {
+        CompletableFuture<Void> quorum = new CompletableFuture<>();
+        AtomicInteger successCount = new AtomicInteger();
+        AtomicInteger failureCount = new AtomicInteger();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        int tolerableFailures = replicas.size() - writeQuorum;
+        for (ReplicaWrite write : writes) {
+            write.future.whenComplete((result, e) -> {
+                if (e == null) {
+                    if (successCount.incrementAndGet() == writeQuorum) {
+                        quorum.complete(null);
+                    }
+                } else {
+                    failures.add(unwrap(e));
+                    if (failureCount.incrementAndGet() == tolerableFailures + 1) {
+                        quorum.completeExceptionally(failures.get(0));
+                    }
+                }
+            });
+        }
+        try {
+            quorum.get();
+        } catch (ExecutionException e) {
+            BinaryObjectStorageException exception = new BinaryObjectStorageException(
+                    "Unable to store binary object at path " + filePath + " on " + writeQuorum + " of "
+                            + replicas.size() + " replicas", e.getCause());
+            failures.stream().filter(failure -> failure != e.getCause()).forEach(exception::addSuppressed);
+            throw exception;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BinaryObjectStorageException("Interrupted while storing binary object at path " + filePath, e);
+        }
+    }
+
+    /**
+     * Deletes the copies of the replicas that failed, when another replica has the new version. Otherwise, the
+     * failed replicas could keep serving the previous version.
+     */
+    private void deleteFailedReplicas(String filePath, List<ReplicaWrite> writes) {
+        boolean anySucceeded = writes.stream().anyMatch(write -> !write.future.isCompletedExceptionally());
+        if (!anySucceeded) {
+            return;
+        }
+        for (ReplicaWrite write : writes) {
+            if (write.future.isCompletedExceptionally()) {
+                try {
+                    write.replica.storage.delete(filePath);
+                } catch (RuntimeException e) {
+                    // The replica is failing anyway; the next repair retries
+                }
+            }
+        }
+    }
+
+    private <T> Optional<T> readFromReplicas(String filePath,
+                                             Function<BinaryObjectStorage, Optional<T>> call,
+                                             Consumer<T> discard) {
+        List<Replica> leastLoadedFirst = new ArrayList<>(replicas);
+        leastLoadedFirst.sort(Comparator.comparingInt(replica -> replica.runningReads.get()));
+        HedgedRead<T> read = new HedgedRead<>(call, discard);
+        try {
+            for (int i = 0; i < leastLoadedFirst.size(); i++) {
+                if (i > 0 && read.awaitAnswer()) {
+                    break;
+                }
+                read.start(leastLoadedFirst.get(i));
+            }
+            return read.getResult();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BinaryObjectStorageException("Interrupted while reading binary object at path " + filePath, e);
+        } catch (ExecutionException e) {
+            throw new BinaryObjectStorageException("Unable to read binary object at path " + filePath
+                                                           + " from any replica", e.getCause());
+        }
+    }
+
+    private static boolean copy(String filePath, Replica source, Replica target) throws IOException {
+        Optional<BinaryObject> binaryObject = source.storage.retrieve(filePath);
+        if (!binaryObject.isPresent()) {
+            return false;
+        }
+        try (InputStream inputStream = binaryObject.get().getInputStream()) {
+            target.storage.store(filePath, binaryObject.get().getMetadata(), inputStream);
+        }
+        return true;
+    }
+
+    private static void closeQuietly(BinaryObject binaryObject) {
+        try {
+            binaryObject.getInputStream().close();
+        } catch (IOException e) {
+            // Nobody reads this binary object
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static final class Replica {
+        private final BinaryObjectStorage storage;
+        private final AtomicInteger runningReads = new AtomicInteger();
+
+        private Replica(BinaryObjectStorage storage) {
+            this.storage = storage;
+        }
+    }
+
+    /**
+     * Stores the binary object in one replica, reading it from a {@link ChunkPipe}.
+     */
+    private final class ReplicaWrite {
+        private final Replica replica;
+        private final ChunkPipe pipe = new ChunkPipe(maximumLag);
+        private final CompletableFuture<Void> future;
+
+        private ReplicaWrite(Replica replica, String filePath, BinaryObjectMetadata metadata) {
+            this.replica = replica;
+            this.future = CompletableFuture.runAsync(() -> replica.storage.store(filePath, metadata, pipe), executor);
+        }
+
+        /**
+         * @return whether the replica still takes chunks, i.e. it did not fail and was not dropped
+         */
+        private boolean isActive() {
+            return !future.isDone() && !pipe.isAborted();
+        }
+
+        /**
+         * Waits until the replica takes the chunk, unless it stopped writing.
+         */
+        private void send(byte[] chunk) throws InterruptedException {
+            while (isActive() && !pipe.offer(chunk, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Wait for the replica to catch up
+            }
+        }
+
+        private void end() throws InterruptedException {
+            while (isActive() && !pipe.offerEnd(OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Wait for the replica to catch up
+            }
+        }
+    }
+
+    /**
+     * Asks replicas one after the other until one has an answer. Each attempt that ends without an answer, or that
+     * takes longer than the hedge delay, lets the next attempt start.
+     */
+    private final class HedgedRead<T> {
+        private final Function<BinaryObjectStorage, Optional<T>> call;
+        private final Consumer<T> discard;
+        private final CompletableFuture<Optional<T>> result = new CompletableFuture<>();
+        private final Semaphore finishedAttempts = new Semaphore(0);
+        private final AtomicInteger remainingAttempts = new AtomicInteger(replicas.size());
+        private final List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+
+        private HedgedRead(Function<BinaryObjectStorage, Optional<T>> call, Consumer<T> discard) {
+            this.call = call;
+            this.discard = discard;
+        }
+
+        private void start(Replica replica) {
+            replica.runningReads.incrementAndGet();
+            try {
+                executor.execute(() -> attempt(replica));
+            } catch (RejectedExecutionException e) {
+                replica.runningReads.decrementAndGet();
+                finish(e);
+            }
+        }
+
+        /**
+         * @return whether the result is known
+         */
+        private boolean awaitAnswer() throws InterruptedException {
+            if (hedgeAfterNanos == NO_HEDGING) {
+                finishedAttempts.acquire();
+            } else {
+                finishedAttempts.tryAcquire(hedgeAfterNanos, TimeUnit.NANOSECONDS);
+            }
+            return result.isDone();
+        }
+
+        private Optional<T> getResult() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        private void attempt(Replica replica) {
+            RuntimeException failure = null;
+            try {
+                Optional<T> value = call.apply(replica.storage);
+                if (value.isPresent() && !result.complete(value)) {
+                    // Another replica answered first
+                    discard.accept(value.get());
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                replica.runningReads.decrementAndGet();
+            }
+            finish(failure);
+        }
+
+        private void finish(RuntimeException failure) {
+            if (failure != null) {
+                failures.add(failure);
+            }
+            if (remainingAttempts.decrementAndGet() == 0 && !result.isDone()) {
+                if (failures.isEmpty()) {
+                    result.complete(Optional.empty());
+                } else {
+                    // A failing replica might have the binary object, so its absence is not certain
+                    RuntimeException exception = failures.get(0);
+                    failures.stream().skip(1).forEach(exception::addSuppressed);
+                    result.completeExceptionally(exception);
+                }
+            }
+            finishedAttempts.release();
+        }
+    }
+
+    public static class Builder {
+        private final List<BinaryObjectStorage> replicas = new ArrayList<>();
+        private int writeQuorum;
+        private int maximumLag = DEFAULT_MAXIMUM_LAG;
+        private Duration hedgeAfter;
+        private Executor executor;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a replica. Reads prefer replicas in the order they are added when they are equally loaded.
+         */
+        public Builder replica(BinaryObjectStorage storage) {
+            replicas.add(Objects.requireNonNull(storage, "storage should not be null"));
+            return this;
+        }
+
+        /**
+         * The number of replicas that need to store a binary object before
+         * {@link #store(String, BinaryObjectMetadata, InputStream)} returns. Defaults to all replicas.
+         */
+        public Builder writeQuorum(int writeQuorum) {
+            if (writeQuorum < 1) {
+                throw new IllegalArgumentException("writeQuorum should be positive: " + writeQuorum);
+            }
+            this.writeQuorum = writeQuorum;
+            return this;
+        }
+
+        /**
+         * The number of chunks of 64 KB that a replica can fall behind the source while storing. A replica that
+         * stays further behind for 100 ms is dropped from the store and left for {@link #repair()}, unless it is
+         * needed for the write quorum. Defaults to 16.
+         */
+        public Builder maximumLag(int maximumLag) {
+            Preconditions.checkArgument(maximumLag > 0, "maximumLag should be positive: %s", maximumLag);
+            this.maximumLag = maximumLag;
+            return this;
+        }
+
+        /**
+         * Also asks the next replica when a replica did not answer a read within the given time. By default, the
+         * next replica is only asked when the previous one does not have the binary object or fails.
+         */
+        public Builder hedgeAfter(Duration hedgeAfter) {
+            this.hedgeAfter = Objects.requireNonNull(hedgeAfter, "hedgeAfter should not be null");
+            return this;
+        }
+
+        /**
+         * The executor that runs the writes and reads of the replicas. Each store needs a thread per replica at the
+         * same time, so this should not be a small fixed pool. Defaults to a cached thread pool of daemon threads,
+         * or to a virtual thread per task on Java 21 and later.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor should not be null");
+            return this;
+        }
+
+        public ReplicatingBinaryObjectStorage build() {
+            return new ReplicatingBinaryObjectStorage(this);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.wimdeblauwe.biob.storage.segment;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.io.ByteBufferInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of the index of a {@link SegmentBinaryObjectStorage}, so it does not need to read all segments at
+ * startup. It also records the size of each segment at the time of the snapshot: records that were appended
+ * later are read from the segments.
+ * <p>
+ * Version 2 adds a flag after the metadata of each record, followed by the checksum if the flag is set.
+ */
+final class IndexSnapshot {
+    static final String FILE_NAME = "index.snapshot";
+    private static final int MAGIC = 0x42494F49; // "BIOI"
+    private static final byte VERSION_1 = 1;
+    private static final byte VERSION_2 = 2;
+
+    private final Map<Integer, Long> segmentSizes;
+    private final List<SegmentRecord> records;
+
+    IndexSnapshot(Map<Integer, Long> segmentSizes, List<SegmentRecord> records) {
+        this.segmentSizes = segmentSizes;
+        this.records = records;
+    }
+
+    /**
+     * @return the size of each segment at the time of the snapshot, by segment id
+     */
+    Map<Integer, Long> getSegmentSizes() {
+        return segmentSizes;
+    }
+
+    List<SegmentRecord> getRecords() {
+        return records;
+    }
+
+    void writeTo(Path file) throws IOException {
+        Path temporaryFile = file.resolveSibling(".biob-tmp-" + file.getFileName());
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporaryFile)))) {
+                output.writeInt(MAGIC);
+                output.writeByte(VERSION_2);
+                output.writeInt(segmentSizes.size());
+                for (Map.Entry<Integer, Long> entry : segmentSizes.entrySet()) {
+                    output.writeInt(entry.getKey());
+                    output.writeLong(entry.getValue());
+                }
+                output.writeInt(records.size());
+                for (SegmentRecord record : records) {
+                    output.writeUTF(record.getFilePath());
+                    SegmentRecord.writeMetadata(output, record.getMetadata());
+                    Checksum checksum = record.getMetadata().getChecksum().orElse(null);
+                    output.writeBoolean(checksum != null);
+                    if (checksum != null) {
+                        SegmentRecord.writeChecksum(output, checksum);
+                    }
+                    output.writeInt(record.getSegmentId());
+                    output.writeLong(record.getOffset());
+                    output.writeInt(record.getLength());
+                    output.writeLong(record.getPayloadOffset());
+                    output.writeInt(record.getPayloadLength());
+                }
+            }
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Reads the snapshot from a memory mapping of the file, so it is not copied through an extra buffer.
+     */
+    static IndexSnapshot readFrom(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new ByteBufferInputStream(buffer)));
+        int magic = input.readInt();
+        byte version = input.readByte();
+        if (magic != MAGIC || (version != VERSION_1 && version != VERSION_2)) {
+            throw new IOException(file + " is not an index snapshot");
+        }
+        int segmentCount = input.readInt();
+        Map<Integer, Long> segmentSizes = new LinkedHashMap<>();
+        for (int i = 0; i < segmentCount; i++) {
+            segmentSizes.put(input.readInt(), input.readLong());
+        }
+        int recordCount = input.readInt();
+        List<SegmentRecord> records = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            String filePath = input.readUTF();
+            BinaryObjectMetadata metadata = SegmentRecord.readMetadata(input);
+            if (version == VERSION_2 && input.readBoolean()) {
+                metadata = SegmentRecord.withChecksum(metadata, SegmentRecord.readChecksum(input));
+            }
+            records.add(new SegmentRecord(SegmentRecord.PUT,
+                                          filePath,
+                                          metadata,
+                                          input.readInt(),
+                                          input.readLong(),
+                                          input.readInt(),
+                                          input.readLong(),
+                                          input.readInt()));
+        }
+        return new IndexSnapshot(segmentSizes, records);
+    }
+}
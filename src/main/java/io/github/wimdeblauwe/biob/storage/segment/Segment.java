@@ -0,0 +1,292 @@
+package io.github.wimdeblauwe.biob.storage.segment;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A segment file that records are appended to. Only the active segment of a
+ * {@link SegmentBinaryObjectStorage} is appended to, all other segments are read-only.
+ * <p>
+ * All threads share one {@link FileChannel}, which the JDK closes when a thread is interrupted while it uses the
+ * channel. The channel is then opened again, so an interrupt only affects the thread that was interrupted: its
+ * operation is retried and its interrupt flag is restored afterwards.
+ */
+final class Segment implements Closeable {
+    static final int HEADER_SIZE = 5;
+    private static final int MAGIC = 0x42494F53; // "BIOS"
+    private static final byte VERSION_1 = 1;
+    private static final String FILE_PREFIX = "segment-";
+    private static final String FILE_SUFFIX = ".dat";
+
+    private final int id;
+    private final Path path;
+    private final AtomicLong size;
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final ReentrantLock reopenLock = new ReentrantLock();
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+
+    private Segment(int id, Path path, FileChannel channel, long size) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.size = new AtomicLong(size);
+    }
+
+    static Segment create(Path directory, int id) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION_1).flip();
+        writeFully(channel, header, 0);
+        return new Segment(id, path, channel, HEADER_SIZE);
+    }
+
+    static Segment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            int magic = header.getInt();
+            byte version = header.get();
+            if (magic != MAGIC || version != VERSION_1) {
+                throw new IOException(path + " is not a segment file");
+            }
+            return new Segment(parseId(path), path, channel, channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+
+    static int parseId(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    private static String fileName(int id) {
+        return String.format("%s%010d%s", FILE_PREFIX, id, FILE_SUFFIX);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    long getSize() {
+        return size.get();
+    }
+
+    /**
+     * @return the number of bytes of the records that are still in the index
+     */
+    long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    void addLiveBytes(long delta) {
+        liveBytes.addAndGet(delta);
+    }
+
+    /**
+     * @return the fraction of the records in this segment that is no longer needed
+     */
+    double getGarbageRatio() {
+        long recordBytes = size.get() - HEADER_SIZE;
+        return recordBytes == 0 ? 0 : 1.0 - (double) liveBytes.get() / recordBytes;
+    }
+
+    /**
+     * Appends the record at the end of the segment. Only one thread may append at the same time.
+     *
+     * @return the position of the record
+     */
+    long append(ByteBuffer record) throws IOException {
+        long position = size.get();
+        int length = record.remaining();
+        // Write the complete record again when a retry follows a partial write
+        useChannel(current -> writeFully(current, record.duplicate(), position));
+        record.position(record.limit());
+        size.addAndGet(length);
+        return position;
+    }
+
+    /**
+     * Reads bytes at the given position until the buffer is full.
+     *
+     * @throws ClosedChannelException if this segment was closed, e.g. because it was compacted
+     */
+    void read(ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        useChannel(current -> {
+            buffer.position(start);
+            readFully(current, buffer, position);
+        });
+    }
+
+    /**
+     * Reads all records from the given position on. Reading stops at the first record that is incomplete or
+     * has the wrong checksum, which happens when the process stopped while the record was written.
+     *
+     * @return the position right after the last valid record
+     */
+    long scan(long position, RecordVisitor visitor) throws IOException {
+        long end = withChannel(FileChannel::size);
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(SegmentRecord.LENGTH_SIZE);
+        while (position + SegmentRecord.LENGTH_SIZE + SegmentRecord.CHECKSUM_SIZE <= end) {
+            lengthBuffer.clear();
+            read(lengthBuffer, position);
+            int bodyLength = lengthBuffer.getInt(0);
+            long recordEnd = position + SegmentRecord.LENGTH_SIZE + bodyLength + SegmentRecord.CHECKSUM_SIZE;
+            if (bodyLength <= 0 || recordEnd > end) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate((int) (recordEnd - position));
+            read(record, position);
+            byte[] bytes = record.array();
+            int checksum = record.getInt(bytes.length - SegmentRecord.CHECKSUM_SIZE);
+            if (checksum != SegmentRecord.checksum(bytes, SegmentRecord.LENGTH_SIZE, bodyLength)) {
+                break;
+            }
+            SegmentRecord segmentRecord = SegmentRecord.decode(
+                    id, position,
+                    new DataInputStream(new ByteArrayInputStream(bytes, SegmentRecord.LENGTH_SIZE, bodyLength)),
+                    bodyLength);
+            record.flip();
+            visitor.visit(segmentRecord, record);
+            position = recordEnd;
+        }
+        return position;
+    }
+
+    /**
+     * Removes everything after the given position, e.g. an incomplete record.
+     */
+    void truncate(long newSize) throws IOException {
+        useChannel(current -> current.truncate(newSize));
+        size.set(newSize);
+    }
+
+    void force() throws IOException {
+        useChannel(current -> current.force(false));
+    }
+
+    @Override
+    public void close() throws IOException {
+        reopenLock.lock();
+        try {
+            closed = true;
+            channel.close();
+        } finally {
+            reopenLock.unlock();
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    private void useChannel(ChannelAction action) throws IOException {
+        withChannel(current -> {
+            action.run(current);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the call on the channel, opening the channel again if it was closed by an interrupt of this or another
+     * thread rather than by {@link #close()}.
+     */
+    private <T> T withChannel(ChannelCall<T> call) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                FileChannel current = channel;
+                try {
+                    return call.call(current);
+                } catch (ClosedChannelException e) {
+                    if (closed) {
+                        throw e;
+                    }
+                    if (e instanceof ClosedByInterruptException) {
+                        // Clear the flag for the retry, it is restored below
+                        interrupted |= Thread.interrupted();
+                    }
+                    reopen(current);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void reopen(FileChannel closedChannel) throws IOException {
+        reopenLock.lock();
+        try {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (channel == closedChannel) {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        } finally {
+            reopenLock.unlock();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of segment at position " + position);
+            }
+            position += count;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChannelCall<T> {
+        T call(FileChannel channel) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ChannelAction {
+        void run(FileChannel channel) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        /**
+         * @param record the decoded record
+         * @param bytes  the complete record as it is stored in the segment
+         */
+        void visit(SegmentRecord record, ByteBuffer bytes) throws IOException;
+    }
+}
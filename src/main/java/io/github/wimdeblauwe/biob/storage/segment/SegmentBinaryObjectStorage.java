@@ -0,0 +1,569 @@
+package io.github.wimdeblauwe.biob.storage.segment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} that appends binary objects and their metadata to large segment files, which
+ * suits a lot of small binary objects better than one file per binary object.
+ * <p>
+ * An index in memory maps each file path to the position of its bytes, so a read is a single positional read.
+ * When the storage is closed, the index is written to a snapshot file that is memory-mapped at the next start,
+ * so only the records appended after the snapshot need to be read from the segments.
+ * <p>
+ * Deleting or overwriting a binary object leaves its old record in its segment. {@link #compact()} copies the
+ * remaining records of segments that consist mostly of such garbage to the active segment and removes the old
+ * segments. Configure {@link Builder#compactionSchedule(ScheduledExecutorService, Duration)} to run it in
+ * the background.
+ * <p>
+ * The bytes of a binary object are buffered in memory before they are appended, so binary objects can be at most
+ * {@link Builder#maximumObjectSize(int)} bytes.
+ * <p>
+ * This class is thread-safe.
+ */
+public class SegmentBinaryObjectStorage implements BinaryObjectStorage, Closeable {
+    private static final long DEFAULT_MAXIMUM_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_MAXIMUM_OBJECT_SIZE = 1024 * 1024;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    private final Path directory;
+    private final long maximumSegmentSize;
+    private final int maximumObjectSize;
+    private final double compactionThreshold;
+    private final boolean syncOnWrite;
+    private final ConcurrentNavigableMap<String, SegmentRecord> index = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ScheduledFuture<?> compactionTask;
+    private volatile Segment activeSegment;
+    private volatile boolean closed;
+
+    public SegmentBinaryObjectStorage(Path directory) {
+        this(builder(directory));
+    }
+
+    private SegmentBinaryObjectStorage(Builder builder) {
+        this.directory = Objects.requireNonNull(builder.directory, "directory should not be null");
+        this.maximumSegmentSize = builder.maximumSegmentSize;
+        this.maximumObjectSize = builder.maximumObjectSize;
+        this.compactionThreshold = builder.compactionThreshold;
+        this.syncOnWrite = builder.syncOnWrite;
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            closeSegments();
+            throw new BinaryObjectStorageException("Unable to open segment storage at " + directory, e);
+        }
+        if (builder.compactionExecutor != null) {
+            long intervalInMillis = builder.compactionInterval.toMillis();
+            this.compactionTask = builder.compactionExecutor.scheduleWithFixedDelay(this::compactInBackground,
+                                                                                    intervalInMillis,
+                                                                                    intervalInMillis,
+                                                                                    TimeUnit.MILLISECONDS);
+        } else {
+            this.compactionTask = null;
+        }
+    }
+
+    public static Builder builder(Path directory) {
+        return new Builder(directory);
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        Objects.requireNonNull(filePath, "filePath should not be null");
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        try {
+            byte[] payload = readPayload(filePath, inputStream);
+            SegmentRecord.Encoded encoded = SegmentRecord.encode(SegmentRecord.PUT, filePath, metadata, payload);
+            append(encoded.getRecord(), encoded.getBuffer());
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to store inputStream under path " + filePath, e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        return retrieve(filePath, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        Preconditions.checkArgument(offset >= 0, "offset should not be negative: %s", offset);
+        Preconditions.checkArgument(length >= 0, "length should not be negative: %s", length);
+        while (true) {
+            ensureOpen();
+            SegmentRecord record = index.get(filePath);
+            if (record == null) {
+                return Optional.empty();
+            }
+            Segment segment = segments.get(record.getSegmentId());
+            if (segment == null) {
+                // The segment was compacted, so the index points to the new location of the record by now
+                continue;
+            }
+            long start = Math.min(offset, record.getPayloadLength());
+            int count = (int) Math.min(length, record.getPayloadLength() - start);
+            ByteBuffer buffer = ByteBuffer.allocate(count);
+            try {
+                segment.read(buffer, record.getPayloadOffset() + start);
+            } catch (ClosedChannelException e) {
+                if (segments.get(record.getSegmentId()) != segment) {
+                    // The segment was compacted while it was read, look up the new location of the record
+                    continue;
+                }
+                throw new BinaryObjectStorageException("Unable to retrieve binary object at path " + filePath, e);
+            } catch (IOException e) {
+                throw new BinaryObjectStorageException("Unable to retrieve binary object at path " + filePath, e);
+            }
+            buffer.flip();
+            return Optional.of(new ByteBufferBinaryObject(buffer, record.getMetadata()));
+        }
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return Optional.ofNullable(index.get(filePath)).map(SegmentRecord::getMetadata);
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return index.containsKey(filePath);
+    }
+
+    @Override
+    public void delete(String filePath) {
+        if (!index.containsKey(filePath)) {
+            return;
+        }
+        try {
+            SegmentRecord.Encoded encoded = SegmentRecord.encode(SegmentRecord.DELETE, filePath, null,
+                                                                 new byte[0]);
+            append(encoded.getRecord(), encoded.getBuffer());
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to delete " + filePath, e);
+        }
+    }
+
+    /**
+     * Lists the binary objects with the prefix in the order of their paths, straight from the index.
+     */
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        return index.subMap(prefix, prefix + Character.MAX_VALUE)
+                    .entrySet()
+                    .stream()
+                    .map(entry -> new BinaryObjectSummary(entry.getKey(), entry.getValue().getMetadata()));
+    }
+
+    /**
+     * Copies the remaining records of segments whose fraction of garbage is at least the compaction threshold
+     * to the active segment and removes those segments.
+     *
+     * @return the number of segments that were removed
+     */
+    public int compact() {
+        compactionLock.lock();
+        try {
+            ensureOpen();
+            int compacted = 0;
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment != activeSegment && segment.getGarbageRatio() >= compactionThreshold) {
+                    compact(segment);
+                    compacted++;
+                }
+            }
+            if (compacted > 0) {
+                checkpoint();
+            }
+            return compacted;
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to compact segments in " + directory, e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the index to the snapshot file, so the next start does not need to read the segments.
+     */
+    public void checkpoint() {
+        try {
+            IndexSnapshot snapshot;
+            writeLock.lock();
+            try {
+                ensureOpen();
+                activeSegment.force();
+                Map<Integer, Long> segmentSizes = new LinkedHashMap<>();
+                for (Segment segment : segments.values()) {
+                    segmentSizes.put(segment.getId(), segment.getSize());
+                }
+                snapshot = new IndexSnapshot(segmentSizes, new ArrayList<>(index.values()));
+            } finally {
+                writeLock.unlock();
+            }
+            snapshot.writeTo(directory.resolve(IndexSnapshot.FILE_NAME));
+        } catch (IOException e) {
+            throw new BinaryObjectStorageException("Unable to write index snapshot in " + directory, e);
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the total size of all segment files
+     */
+    public long getSizeInBytes() {
+        return segments.values().stream().mapToLong(Segment::getSize).sum();
+    }
+
+    /**
+     * Stops the background compaction, writes the index snapshot and closes the segment files.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+        }
+        compactionLock.lock();
+        try {
+            checkpoint();
+            writeLock.lock();
+            try {
+                closed = true;
+                closeSegments();
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void append(SegmentRecord record, ByteBuffer buffer) throws IOException {
+        writeLock.lock();
+        try {
+            ensureOpen();
+            if (record.getType() == SegmentRecord.DELETE && !index.containsKey(record.getFilePath())) {
+                return;
+            }
+            Segment segment = getActiveSegment(buffer.remaining());
+            SegmentRecord written = record.movedTo(segment.getId(), segment.append(buffer));
+            if (syncOnWrite) {
+                segment.force();
+            }
+            apply(written);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Updates the index with a record that was appended or read from a segment.
+     */
+    private void apply(SegmentRecord record) {
+        SegmentRecord previous;
+        if (record.getType() == SegmentRecord.PUT) {
+            previous = index.put(record.getFilePath(), record);
+            addLiveBytes(record, record.getLength());
+        } else {
+            previous = index.remove(record.getFilePath());
+        }
+        if (previous != null) {
+            addLiveBytes(previous, -previous.getLength());
+        }
+    }
+
+    private void addLiveBytes(SegmentRecord record, long delta) {
+        Segment segment = segments.get(record.getSegmentId());
+        if (segment != null) {
+            segment.addLiveBytes(delta);
+        }
+    }
+
+    /**
+     * Returns the segment to append a record of the given size to. A new segment is started when the record
+     * does not fit in the active segment anymore.
+     */
+    private Segment getActiveSegment(int recordSize) throws IOException {
+        Segment segment = activeSegment;
+        if (segment.getSize() > Segment.HEADER_SIZE && segment.getSize() + recordSize > maximumSegmentSize) {
+            segment.force();
+            segment = Segment.create(directory, segment.getId() + 1);
+            segments.put(segment.getId(), segment);
+            activeSegment = segment;
+        }
+        return segment;
+    }
+
+    private void compact(Segment segment) throws IOException {
+        long end = segment.scan(Segment.HEADER_SIZE, (record, bytes) -> {
+            writeLock.lock();
+            try {
+                ensureOpen();
+                if (isLive(record) || isStillNeeded(record, segment)) {
+                    Segment target = getActiveSegment(bytes.remaining());
+                    SegmentRecord copy = record.movedTo(target.getId(), target.append(bytes));
+                    if (copy.getType() == SegmentRecord.PUT) {
+                        index.put(copy.getFilePath(), copy);
+                        target.addLiveBytes(copy.getLength());
+                        segment.addLiveBytes(-copy.getLength());
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        });
+        if (end < segment.getSize()) {
+            // Deleting the segment would lose the records after the damage
+            throw new IOException("Segment " + segment.getId() + " is damaged at offset " + end);
+        }
+        // The copies need to be durable before the originals are removed
+        activeSegment.force();
+        writeLock.lock();
+        try {
+            segments.remove(segment.getId());
+        } finally {
+            writeLock.unlock();
+        }
+        segment.delete();
+    }
+
+    private boolean isLive(SegmentRecord record) {
+        if (record.getType() != SegmentRecord.PUT) {
+            return false;
+        }
+        SegmentRecord current = index.get(record.getFilePath());
+        return current != null
+                && current.getSegmentId() == record.getSegmentId()
+                && current.getOffset() == record.getOffset();
+    }
+
+    /**
+     * A tombstone is still needed while an older segment might contain the record it deletes, unless the
+     * binary object was stored again since then.
+     */
+    private boolean isStillNeeded(SegmentRecord record, Segment segment) {
+        return record.getType() == SegmentRecord.DELETE
+                && !index.containsKey(record.getFilePath())
+                && segments.firstKey() < segment.getId();
+    }
+
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            // Try again at the next run, a failing compaction should not stop the scheduled task
+        }
+    }
+
+    private byte[] readPayload(String filePath, InputStream inputStream) throws IOException {
+        byte[] payload = ByteStreams.toByteArray(ByteStreams.limit(inputStream, maximumObjectSize + 1L));
+        if (payload.length > maximumObjectSize) {
+            throw new BinaryObjectStorageException("Binary object at path " + filePath + " is larger than "
+                                                           + maximumObjectSize + " bytes");
+        }
+        return payload;
+    }
+
+    private void open() throws IOException {
+        List<Path> segmentFiles;
+        try (Stream<Path> paths = Files.list(directory)) {
+            segmentFiles = paths.filter(Segment::isSegmentFile)
+                                .sorted()
+                                .collect(Collectors.toList());
+        }
+        for (Path segmentFile : segmentFiles) {
+            Segment segment = Segment.open(segmentFile);
+            segments.put(segment.getId(), segment);
+        }
+
+        IndexSnapshot snapshot = readSnapshot();
+        int lastSegmentId = segments.isEmpty() ? 0 : segments.lastKey();
+        for (Segment segment : segments.values()) {
+            long position = Segment.HEADER_SIZE;
+            if (snapshot != null && snapshot.getSegmentSizes().containsKey(segment.getId())) {
+                position = snapshot.getSegmentSizes().get(segment.getId());
+            }
+            long end = segment.scan(position, (record, bytes) -> apply(record));
+            if (end < segment.getSize()) {
+                if (segment.getId() != lastSegmentId) {
+                    // Only the last segment is appended to, so a bad record in an older one is damage, not a
+                    // torn write. Truncating it would silently drop all records after it.
+                    throw new IOException("Segment " + segment.getId() + " is damaged at offset " + end);
+                }
+                // The process stopped while this record was written
+                segment.truncate(end);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            Segment segment = Segment.create(directory, 1);
+            segments.put(segment.getId(), segment);
+        }
+        activeSegment = segments.lastEntry().getValue();
+    }
+
+    /**
+     * Loads the index from the snapshot, if there is one that matches the segments.
+     *
+     * @return the snapshot, or {@code null} if the segments need to be read from the start
+     */
+    private IndexSnapshot readSnapshot() {
+        IndexSnapshot snapshot;
+        try {
+            snapshot = IndexSnapshot.readFrom(directory.resolve(IndexSnapshot.FILE_NAME));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // A damaged snapshot only makes the start slower
+            return null;
+        }
+        for (Map.Entry<Integer, Long> entry : snapshot.getSegmentSizes().entrySet()) {
+            Segment segment = segments.get(entry.getKey());
+            if (segment == null || segment.getSize() < entry.getValue()) {
+                return null;
+            }
+        }
+        int lastSnapshotSegment = snapshot.getSegmentSizes().keySet().stream().mapToInt(Integer::intValue)
+                                          .max().orElse(0);
+        for (Integer segmentId : segments.keySet()) {
+            if (segmentId <= lastSnapshotSegment && !snapshot.getSegmentSizes().containsKey(segmentId)) {
+                return null;
+            }
+        }
+        for (SegmentRecord record : snapshot.getRecords()) {
+            apply(record);
+        }
+        return snapshot;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The segment storage at " + directory + " is closed");
+        }
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    public static class Builder {
+        private final Path directory;
+        private long maximumSegmentSize = DEFAULT_MAXIMUM_SEGMENT_SIZE;
+        private int maximumObjectSize = DEFAULT_MAXIMUM_OBJECT_SIZE;
+        private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+        private boolean syncOnWrite;
+        private ScheduledExecutorService compactionExecutor;
+        private Duration compactionInterval;
+
+        private Builder(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * The size at which a new segment file is started. Defaults to 64 MB.
+         */
+        public Builder maximumSegmentSize(long maximumSegmentSize) {
+            Preconditions.checkArgument(maximumSegmentSize > Segment.HEADER_SIZE,
+                                        "maximumSegmentSize should be larger than %s: %s",
+                                        Segment.HEADER_SIZE, maximumSegmentSize);
+            this.maximumSegmentSize = maximumSegmentSize;
+            return this;
+        }
+
+        /**
+         * The maximum size of a binary object. Defaults to 1 MB.
+         */
+        public Builder maximumObjectSize(int maximumObjectSize) {
+            Preconditions.checkArgument(maximumObjectSize >= 0, "maximumObjectSize should not be negative: %s",
+                                        maximumObjectSize);
+            this.maximumObjectSize = maximumObjectSize;
+            return this;
+        }
+
+        /**
+         * The fraction of garbage from which a segment is compacted. Defaults to 0.5.
+         */
+        public Builder compactionThreshold(double compactionThreshold) {
+            Preconditions.checkArgument(compactionThreshold > 0 && compactionThreshold <= 1,
+                                        "compactionThreshold should be between 0 and 1: %s", compactionThreshold);
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * Force each record to the storage device before {@code store} or {@code delete} returns. Disabled by
+         * default.
+         */
+        public Builder syncOnWrite(boolean syncOnWrite) {
+            this.syncOnWrite = syncOnWrite;
+            return this;
+        }
+
+        /**
+         * Run {@link SegmentBinaryObjectStorage#compact()} with the given interval on the given executor. The
+         * executor is not shut down when the storage is closed. Not set by default.
+         */
+        public Builder compactionSchedule(ScheduledExecutorService compactionExecutor, Duration interval) {
+            this.compactionExecutor = Objects.requireNonNull(compactionExecutor,
+                                                             "compactionExecutor should not be null");
+            this.compactionInterval = Objects.requireNonNull(interval, "interval should not be null");
+            return this;
+        }
+
+        public SegmentBinaryObjectStorage build() {
+            return new SegmentBinaryObjectStorage(this);
+        }
+    }
+}
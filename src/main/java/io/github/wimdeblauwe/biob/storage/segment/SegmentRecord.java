@@ -0,0 +1,229 @@
+package io.github.wimdeblauwe.biob.storage.segment;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A record in a segment file: either a binary object that was stored, or a tombstone for a binary object
+ * that was deleted.
+ * <p>
+ * On disk, a record is an {@code int} with the length of the body, the body and the CRC32C of the body. The body
+ * holds the type, the file path, the metadata (only for stored binary objects) and the bytes of the binary
+ * object. The index keeps the {@code PUT} records, so a read only needs the position of the bytes.
+ * <p>
+ * A stored binary object whose metadata has a checksum is written with the type {@code PUT_WITH_CHECKSUM}, which
+ * adds the ordinal of the {@link ChecksumAlgorithm} and the length-prefixed checksum bytes after the metadata.
+ * Records of segments that were written before checksums existed stay readable.
+ */
+final class SegmentRecord {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    // Only on disk: it is decoded as a PUT record
+    private static final byte PUT_WITH_CHECKSUM = 3;
+    static final int LENGTH_SIZE = 4;
+    static final int CHECKSUM_SIZE = 4;
+
+    private final byte type;
+    private final String filePath;
+    private final BinaryObjectMetadata metadata;
+    private final int segmentId;
+    private final long offset;
+    private final int length;
+    private final long payloadOffset;
+    private final int payloadLength;
+
+    SegmentRecord(byte type,
+                  String filePath,
+                  BinaryObjectMetadata metadata,
+                  int segmentId,
+                  long offset,
+                  int length,
+                  long payloadOffset,
+                  int payloadLength) {
+        this.type = type;
+        this.filePath = filePath;
+        this.metadata = metadata;
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.length = length;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+    }
+
+    byte getType() {
+        return type;
+    }
+
+    String getFilePath() {
+        return filePath;
+    }
+
+    BinaryObjectMetadata getMetadata() {
+        return metadata;
+    }
+
+    int getSegmentId() {
+        return segmentId;
+    }
+
+    /**
+     * @return the position of the record in its segment file
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of bytes the record takes in its segment file
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the position of the bytes of the binary object in the segment file
+     */
+    long getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * @return the same record at another position, e.g. after it was copied by a compaction
+     */
+    SegmentRecord movedTo(int newSegmentId, long newOffset) {
+        return new SegmentRecord(type, filePath, metadata, newSegmentId, newOffset, length,
+                                 newOffset + (payloadOffset - offset), payloadLength);
+    }
+
+    /**
+     * Encodes a record. The returned record has no position yet, so its offsets are relative to the start of
+     * the record. Use {@link #movedTo(int, long)} once it is written.
+     */
+    static Encoded encode(byte type, String filePath, BinaryObjectMetadata metadata, byte[] payload)
+            throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(header);
+        Checksum checksum = type == PUT ? metadata.getChecksum().orElse(null) : null;
+        output.writeByte(checksum != null ? PUT_WITH_CHECKSUM : type);
+        output.writeUTF(filePath);
+        if (type == PUT) {
+            writeMetadata(output, metadata);
+        }
+        if (checksum != null) {
+            writeChecksum(output, checksum);
+        }
+        output.writeInt(payload.length);
+        output.flush();
+
+        int bodyLength = header.size() + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_SIZE + bodyLength + CHECKSUM_SIZE);
+        buffer.putInt(bodyLength);
+        buffer.put(header.toByteArray());
+        buffer.put(payload);
+        buffer.putInt(checksum(buffer.array(), LENGTH_SIZE, bodyLength));
+        buffer.flip();
+        SegmentRecord record = new SegmentRecord(type, filePath, metadata, 0, 0, buffer.remaining(),
+                                                 LENGTH_SIZE + header.size(), payload.length);
+        return new Encoded(record, buffer);
+    }
+
+    /**
+     * Decodes the body of a record that starts at the given offset.
+     */
+    static SegmentRecord decode(int segmentId, long offset, DataInput body, int bodyLength) throws IOException {
+        byte storedType = body.readByte();
+        byte type = storedType == PUT_WITH_CHECKSUM ? PUT : storedType;
+        String filePath = body.readUTF();
+        BinaryObjectMetadata metadata = type == PUT ? readMetadata(body) : null;
+        if (storedType == PUT_WITH_CHECKSUM) {
+            metadata = withChecksum(metadata, readChecksum(body));
+        }
+        int payloadLength = body.readInt();
+        int headerLength = bodyLength - payloadLength;
+        return new SegmentRecord(type, filePath, metadata, segmentId, offset,
+                                 LENGTH_SIZE + bodyLength + CHECKSUM_SIZE,
+                                 offset + LENGTH_SIZE + headerLength, payloadLength);
+    }
+
+    static int checksum(byte[] bytes, int offset, int length) {
+        return Hashing.crc32c().hashBytes(bytes, offset, length).asInt();
+    }
+
+    static void writeMetadata(DataOutput output, BinaryObjectMetadata metadata) throws IOException {
+        output.writeLong(metadata.getFileSize());
+        writeNullableString(output, metadata.getOriginalFilename());
+        writeNullableString(output, metadata.getContentType());
+    }
+
+    static BinaryObjectMetadata readMetadata(DataInput input) throws IOException {
+        long fileSize = input.readLong();
+        String originalFilename = readNullableString(input);
+        String contentType = readNullableString(input);
+        return new BinaryObjectMetadata(fileSize, originalFilename, contentType);
+    }
+
+    static void writeChecksum(DataOutput output, Checksum checksum) throws IOException {
+        byte[] bytes = HashCode.fromString(checksum.getValue()).asBytes();
+        output.writeByte(checksum.getAlgorithm().ordinal());
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    static Checksum readChecksum(DataInput input) throws IOException {
+        int algorithm = input.readUnsignedByte();
+        if (algorithm >= ChecksumAlgorithm.values().length) {
+            throw new IOException("Unsupported checksum algorithm " + algorithm);
+        }
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new Checksum(ChecksumAlgorithm.values()[algorithm], HashCode.fromBytes(bytes).toString());
+    }
+
+    static BinaryObjectMetadata withChecksum(BinaryObjectMetadata metadata, Checksum checksum) {
+        return new BinaryObjectMetadata(metadata.getFileSize(), metadata.getOriginalFilename(),
+                                        metadata.getContentType(), checksum);
+    }
+
+    private static void writeNullableString(DataOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    static final class Encoded {
+        private final SegmentRecord record;
+        private final ByteBuffer buffer;
+
+        private Encoded(SegmentRecord record, ByteBuffer buffer) {
+            this.record = record;
+            this.buffer = buffer;
+        }
+
+        SegmentRecord getRecord() {
+            return record;
+        }
+
+        ByteBuffer getBuffer() {
+            return buffer;
+        }
+    }
+}
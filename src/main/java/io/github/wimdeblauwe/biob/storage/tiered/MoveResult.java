@@ -0,0 +1,48 @@
+package io.github.wimdeblauwe.biob.storage.tiered;
+
+import java.util.StringJoiner;
+
+/**
+ * The outcome of a single {@link TieredBinaryObjectStorage#moveObjects()} run.
+ */
+public final class MoveResult {
+    private final long promotedCount;
+    private final long demotedCount;
+    private final long failedCount;
+
+    MoveResult(long promotedCount, long demotedCount, long failedCount) {
+        this.promotedCount = promotedCount;
+        this.demotedCount = demotedCount;
+        this.failedCount = failedCount;
+    }
+
+    /**
+     * @return the number of binary objects that were moved to a faster tier
+     */
+    public long getPromotedCount() {
+        return promotedCount;
+    }
+
+    /**
+     * @return the number of binary objects that were moved to a slower tier
+     */
+    public long getDemotedCount() {
+        return demotedCount;
+    }
+
+    /**
+     * @return the number of binary objects that could not be moved. They stay in their tier.
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", MoveResult.class.getSimpleName() + "[", "]")
+                .add("promotedCount=" + promotedCount)
+                .add("demotedCount=" + demotedCount)
+                .add("failedCount=" + failedCount)
+                .toString();
+    }
+}
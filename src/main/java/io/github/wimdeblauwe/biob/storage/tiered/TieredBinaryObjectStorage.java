@@ -0,0 +1,506 @@
+package io.github.wimdeblauwe.biob.storage.tiered;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Striped;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorage;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link BinaryObjectStorage} that spreads binary objects over two or more storages, ordered from the fastest
+ * (e.g. memory or SSD) to the slowest and largest (e.g. HDD). Each binary object is kept in exactly one tier.
+ * <p>
+ * New binary objects go to the fastest tier that has room for them. {@link #moveObjects()},
+ * which is meant to run in the background with {@link #schedule(ScheduledExecutorService, Duration)}, then:
+ * <ul>
+ * <li>demotes binary objects that were not accessed for {@link Builder#demoteAfter(Duration)} to the next
+ * slower tier;</li>
+ * <li>demotes the least recently accessed binary objects of a tier that is above its high watermark, until it
+ * is below its low watermark;</li>
+ * <li>promotes binary objects that were retrieved at least {@link Builder#promotionThreshold(int)} times since
+ * the previous run to the fastest tier that has room.</li>
+ * </ul>
+ * The tier and metadata of every binary object are kept in memory, so {@link #hasBinaryObject(String)},
+ * {@link #getMetadata(String)} and {@link #list(String)} do not access any tier. This index is built when the
+ * storage is created by listing all tiers, so every tier should support {@link BinaryObjectStorage#list(String)}.
+ * The tiers should only be changed through this storage and should not evict binary objects on their own, such as
+ * {@link io.github.wimdeblauwe.biob.storage.inmemory.BoundedInMemoryBinaryObjectStorage} does.
+ * <p>
+ * This class is thread-safe.
+ */
+public class TieredBinaryObjectStorage implements BinaryObjectStorage {
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private final List<Tier> tiers;
+    private final int promotionThreshold;
+    private final long demoteAfterNanos;
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final Ticker ticker;
+    private final ConcurrentNavigableMap<String, Location> locations = new ConcurrentSkipListMap<>();
+    private final Set<String> promotionCandidates = ConcurrentHashMap.newKeySet();
+    private final Striped<Lock> filePathLocks = Striped.lock(64);
+    private final Lock moveLock = new ReentrantLock();
+
+    private TieredBinaryObjectStorage(Builder builder) {
+        if (builder.tiers.size() < 2) {
+            throw new IllegalArgumentException("At least 2 tiers are needed, but got " + builder.tiers.size());
+        }
+        if (builder.lowWatermark > builder.highWatermark) {
+            throw new IllegalArgumentException("lowWatermark should not be above highWatermark: "
+                                                       + builder.lowWatermark + " > " + builder.highWatermark);
+        }
+        this.tiers = new ArrayList<>(builder.tiers);
+        this.promotionThreshold = builder.promotionThreshold;
+        this.demoteAfterNanos = builder.demoteAfter != null ? builder.demoteAfter.toNanos() : UNBOUNDED;
+        this.highWatermark = builder.highWatermark;
+        this.lowWatermark = builder.lowWatermark;
+        this.ticker = Objects.requireNonNull(builder.ticker, "ticker should not be null");
+        loadLocations();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+        Objects.requireNonNull(filePath, "filePath should not be null");
+        Objects.requireNonNull(metadata, "metadata should not be null");
+        Objects.requireNonNull(inputStream, "inputStream should not be null");
+
+        Lock lock = filePathLocks.get(filePath);
+        lock.lock();
+        try {
+            Location previous = locations.get(filePath);
+            int tierIndex = selectTier(Math.max(0, metadata.getFileSize()), 1.0, tiers.size() - 1);
+            if (previous != null && previous.tierIndex < tierIndex) {
+                // The copy in the fastest tier wins when the index is loaded, so the previous version is deleted
+                // first. Otherwise it would come back if the storage stopped before deleting it.
+                Tier previousTier = tiers.get(previous.tierIndex);
+                previousTier.storage.delete(filePath);
+                locations.remove(filePath);
+                previousTier.usedBytes.addAndGet(-previous.metadata.getFileSize());
+                previous = null;
+            }
+            BinaryObjectStorage storage = tiers.get(tierIndex).storage;
+            storage.store(filePath, metadata, inputStream);
+            // The tier can add to the metadata, e.g. a checksum
+            BinaryObjectMetadata storedMetadata = storage.getMetadata(filePath).orElse(metadata);
+            tiers.get(tierIndex).usedBytes.addAndGet(storedMetadata.getFileSize());
+            locations.put(filePath, new Location(tierIndex, storedMetadata, ticker.read()));
+            if (previous != null) {
+                Tier previousTier = tiers.get(previous.tierIndex);
+                previousTier.usedBytes.addAndGet(-previous.metadata.getFileSize());
+                if (previous.tierIndex != tierIndex) {
+                    previousTier.storage.delete(filePath);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath) {
+        return retrieve(filePath, storage -> storage.retrieve(filePath));
+    }
+
+    @Override
+    public Optional<BinaryObject> retrieve(String filePath, long offset, long length) {
+        return retrieve(filePath, storage -> storage.retrieve(filePath, offset, length));
+    }
+
+    @Override
+    public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+        return Optional.ofNullable(locations.get(filePath)).map(location -> location.metadata);
+    }
+
+    @Override
+    public boolean hasBinaryObject(String filePath) {
+        return locations.containsKey(filePath);
+    }
+
+    @Override
+    public void delete(String filePath) {
+        Lock lock = filePathLocks.get(filePath);
+        lock.lock();
+        try {
+            Location location = locations.get(filePath);
+            if (location == null) {
+                return;
+            }
+            Tier tier = tiers.get(location.tierIndex);
+            tier.storage.delete(filePath);
+            locations.remove(filePath);
+            tier.usedBytes.addAndGet(-location.metadata.getFileSize());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Stream<BinaryObjectSummary> list(String prefix) {
+        Objects.requireNonNull(prefix, "prefix should not be null");
+        // All paths that start with the prefix sort between the prefix and the prefix followed by the highest char
+        return locations.subMap(prefix, prefix + Character.MAX_VALUE)
+                        .entrySet()
+                        .stream()
+                        .map(entry -> new BinaryObjectSummary(entry.getKey(), entry.getValue().metadata));
+    }
+
+    /**
+     * @return the index of the tier that holds the binary object, where 0 is the fastest tier
+     */
+    public OptionalInt getTierIndex(String filePath) {
+        Location location = locations.get(filePath);
+        return location != null ? OptionalInt.of(location.tierIndex) : OptionalInt.empty();
+    }
+
+    /**
+     * @return the total size of the binary objects in the given tier
+     */
+    public long getUsedBytes(int tierIndex) {
+        return tiers.get(tierIndex).usedBytes.get();
+    }
+
+    /**
+     * Demotes and promotes binary objects between the tiers once. Runs do not overlap: a second caller waits for
+     * the running one to finish.
+     *
+     * @return the number of binary objects that were moved
+     */
+    public MoveResult moveObjects() {
+        // Not synchronized, as a virtual thread would pin its carrier thread while the objects are copied
+        moveLock.lock();
+        try {
+            return moveObjectsOnce();
+        } finally {
+            moveLock.unlock();
+        }
+    }
+
+    private MoveResult moveObjectsOnce() {
+        long promotedCount = 0;
+        long demotedCount = 0;
+        long failedCount = 0;
+        long now = ticker.read();
+
+        // From the fastest tier down, so binary objects demoted to a full tier can move on in the same run
+        for (int tierIndex = 0; tierIndex < tiers.size() - 1; tierIndex++) {
+            Tier tier = tiers.get(tierIndex);
+            long highWatermarkBytes = watermark(tier, highWatermark);
+            long lowWatermarkBytes = watermark(tier, lowWatermark);
+            boolean aboveHighWatermark = tier.usedBytes.get() > highWatermarkBytes;
+            for (Map.Entry<String, Location> entry : getLeastRecentlyAccessedFirst(tierIndex)) {
+                Location location = entry.getValue();
+                boolean idle = now - location.lastAccessNanos >= demoteAfterNanos;
+                boolean overCapacity = aboveHighWatermark && tier.usedBytes.get() > lowWatermarkBytes;
+                if (!idle && !overCapacity) {
+                    // The remaining binary objects were accessed more recently
+                    break;
+                }
+                try {
+                    if (move(entry.getKey(), location, tierIndex + 1)) {
+                        demotedCount++;
+                    }
+                } catch (RuntimeException e) {
+                    failedCount++;
+                }
+            }
+        }
+
+        Iterator<String> candidates = promotionCandidates.iterator();
+        while (candidates.hasNext()) {
+            String filePath = candidates.next();
+            candidates.remove();
+            Location location = locations.get(filePath);
+            if (location == null || location.tierIndex == 0) {
+                continue;
+            }
+            int tierIndex = selectTier(location.metadata.getFileSize(), highWatermark, location.tierIndex);
+            if (tierIndex == location.tierIndex) {
+                continue;
+            }
+            try {
+                if (move(filePath, location, tierIndex)) {
+                    promotedCount++;
+                }
+            } catch (RuntimeException e) {
+                failedCount++;
+            }
+        }
+
+        // Promotion is based on the accesses since the previous run
+        locations.values().forEach(location -> location.accessCount.set(0));
+        return new MoveResult(promotedCount, demotedCount, failedCount);
+    }
+
+    /**
+     * Runs {@link #moveObjects()} repeatedly, with the given delay between the end of a run and the start of the
+     * next.
+     *
+     * @return the future to cancel the moving
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executorService, Duration delay) {
+        Objects.requireNonNull(executorService, "executorService should not be null");
+        Objects.requireNonNull(delay, "delay should not be null");
+        return executorService.scheduleWithFixedDelay(this::moveObjects, delay.toMillis(), delay.toMillis(),
+                                                      TimeUnit.MILLISECONDS);
+    }
+
+    private Optional<BinaryObject> retrieve(String filePath, TierCall call) {
+        Location location = locations.get(filePath);
+        if (location == null) {
+            return Optional.empty();
+        }
+        location.lastAccessNanos = ticker.read();
+        if (location.tierIndex > 0 && location.accessCount.incrementAndGet() >= promotionThreshold) {
+            promotionCandidates.add(filePath);
+        }
+        // Open the binary object under the lock, so it is not moved to another tier in between
+        Lock lock = filePathLocks.get(filePath);
+        lock.lock();
+        try {
+            Location current = locations.get(filePath);
+            if (current == null) {
+                return Optional.empty();
+            }
+            return call.retrieve(tiers.get(current.tierIndex).storage);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the fastest tier, up to the given one, where a binary object of the given size fits below the given
+     * fraction of the capacity. The last tier is unbounded.
+     */
+    private int selectTier(long size, double fraction, int slowestTierIndex) {
+        for (int tierIndex = 0; tierIndex < slowestTierIndex; tierIndex++) {
+            Tier tier = tiers.get(tierIndex);
+            if (tier.usedBytes.get() + size <= watermark(tier, fraction)) {
+                return tierIndex;
+            }
+        }
+        return slowestTierIndex;
+    }
+
+    private List<Map.Entry<String, Location>> getLeastRecentlyAccessedFirst(int tierIndex) {
+        return locations.entrySet()
+                        .stream()
+                        .filter(entry -> entry.getValue().tierIndex == tierIndex)
+                        .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccessNanos))
+                        .collect(Collectors.toList());
+    }
+
+    /**
+     * Copies the binary object to the target tier and then deletes it from its current tier.
+     *
+     * @return whether the binary object was moved. It is not moved when it was stored or deleted since
+     * {@code expected} was read.
+     */
+    private boolean move(String filePath, Location expected, int targetTierIndex) {
+        Lock lock = filePathLocks.get(filePath);
+        lock.lock();
+        try {
+            if (locations.get(filePath) != expected) {
+                return false;
+            }
+            Tier source = tiers.get(expected.tierIndex);
+            Tier target = tiers.get(targetTierIndex);
+            long size = expected.metadata.getFileSize();
+            Optional<BinaryObject> binaryObject = source.storage.retrieve(filePath);
+            if (!binaryObject.isPresent()) {
+                // Deleted directly from the tier
+                locations.remove(filePath, expected);
+                source.usedBytes.addAndGet(-size);
+                return false;
+            }
+            try (InputStream inputStream = binaryObject.get().getInputStream()) {
+                target.storage.store(filePath, expected.metadata, inputStream);
+            } catch (IOException e) {
+                throw new BinaryObjectStorageException("Unable to move binary object at path " + filePath, e);
+            }
+            target.usedBytes.addAndGet(size);
+            locations.put(filePath, new Location(targetTierIndex, expected.metadata, expected.lastAccessNanos));
+            source.storage.delete(filePath);
+            source.usedBytes.addAndGet(-size);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Builds the index from the tiers. A binary object that is found in more than one tier, because the storage
+     * stopped while moving or storing it, is kept in the fastest one. Both copies are then the same version: a
+     * move copies the binary object unchanged, and a store only leaves the previous version behind in a slower
+     * tier.
+     */
+    private void loadLocations() {
+        long now = ticker.read();
+        for (int tierIndex = tiers.size() - 1; tierIndex >= 0; tierIndex--) {
+            Tier tier = tiers.get(tierIndex);
+            List<BinaryObjectSummary> summaries;
+            try (Stream<BinaryObjectSummary> stream = tier.storage.list("")) {
+                summaries = stream.collect(Collectors.toList());
+            }
+            for (BinaryObjectSummary summary : summaries) {
+                Location previous = locations.put(summary.getFilePath(),
+                                                  new Location(tierIndex, summary.getMetadata(), now));
+                tier.usedBytes.addAndGet(summary.getMetadata().getFileSize());
+                if (previous != null) {
+                    Tier previousTier = tiers.get(previous.tierIndex);
+                    previousTier.storage.delete(summary.getFilePath());
+                    previousTier.usedBytes.addAndGet(-previous.metadata.getFileSize());
+                }
+            }
+        }
+    }
+
+    private static long watermark(Tier tier, double fraction) {
+        return tier.capacityInBytes == UNBOUNDED ? UNBOUNDED : (long) (tier.capacityInBytes * fraction);
+    }
+
+    @FunctionalInterface
+    private interface TierCall {
+        Optional<BinaryObject> retrieve(BinaryObjectStorage storage);
+    }
+
+    private static final class Tier {
+        private final BinaryObjectStorage storage;
+        private final long capacityInBytes;
+        private final AtomicLong usedBytes = new AtomicLong();
+
+        private Tier(BinaryObjectStorage storage, long capacityInBytes) {
+            this.storage = storage;
+            this.capacityInBytes = capacityInBytes;
+        }
+    }
+
+    private static final class Location {
+        private final int tierIndex;
+        private final BinaryObjectMetadata metadata;
+        private final AtomicInteger accessCount = new AtomicInteger();
+        private volatile long lastAccessNanos;
+
+        private Location(int tierIndex, BinaryObjectMetadata metadata, long lastAccessNanos) {
+            this.tierIndex = tierIndex;
+            this.metadata = metadata;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+
+    public static class Builder {
+        private final List<Tier> tiers = new ArrayList<>();
+        private int promotionThreshold = 2;
+        private Duration demoteAfter;
+        private double highWatermark = 0.9;
+        private double lowWatermark = 0.75;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a tier without a capacity limit. Tiers are added from the fastest to the slowest; the capacity of
+         * the last tier is ignored, as there is no slower tier to demote to.
+         */
+        public Builder tier(BinaryObjectStorage storage) {
+            return tier(storage, UNBOUNDED);
+        }
+
+        /**
+         * Adds a tier that holds binary objects up to the given total size. Tiers are added from the fastest to
+         * the slowest.
+         */
+        public Builder tier(BinaryObjectStorage storage, long capacityInBytes) {
+            Objects.requireNonNull(storage, "storage should not be null");
+            if (capacityInBytes < 0) {
+                throw new IllegalArgumentException("capacityInBytes should not be negative: " + capacityInBytes);
+            }
+            tiers.add(new Tier(storage, capacityInBytes));
+            return this;
+        }
+
+        /**
+         * The number of retrievals between two runs of {@link #moveObjects()} that makes a binary object move to a
+         * faster tier. Defaults to 2.
+         */
+        public Builder promotionThreshold(int promotionThreshold) {
+            if (promotionThreshold < 1) {
+                throw new IllegalArgumentException("promotionThreshold should be positive: " + promotionThreshold);
+            }
+            this.promotionThreshold = promotionThreshold;
+            return this;
+        }
+
+        /**
+         * Demotes binary objects that were not stored or retrieved for the given time. By default, binary objects
+         * are only demoted when a tier is above its high watermark.
+         */
+        public Builder demoteAfter(Duration demoteAfter) {
+            this.demoteAfter = Objects.requireNonNull(demoteAfter, "demoteAfter should not be null");
+            return this;
+        }
+
+        /**
+         * The fractions of the capacity of a tier above which binary objects are demoted and down to which they
+         * are demoted. New binary objects can fill a tier up to its capacity, promoted binary objects only up to
+         * the high watermark. Defaults to 0.9 and 0.75.
+         */
+        public Builder watermarks(double highWatermark, double lowWatermark) {
+            if (highWatermark <= 0 || highWatermark > 1 || lowWatermark < 0 || lowWatermark > 1) {
+                throw new IllegalArgumentException("Watermarks should be fractions between 0 and 1: "
+                                                           + highWatermark + ", " + lowWatermark);
+            }
+            this.highWatermark = highWatermark;
+            this.lowWatermark = lowWatermark;
+            return this;
+        }
+
+        /**
+         * The time source to determine how long ago binary objects were accessed. Defaults to
+         * {@link Ticker#systemTicker()}.
+         */
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * Creates the storage and builds its index by listing all tiers.
+         */
+        public TieredBinaryObjectStorage build() {
+            return new TieredBinaryObjectStorage(this);
+        }
+    }
+}
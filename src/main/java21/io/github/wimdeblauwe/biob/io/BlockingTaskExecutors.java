@@ -0,0 +1,39 @@
+package io.github.wimdeblauwe.biob.io;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The default executors of the storages for tasks that block on I/O. This is the Java 21 version of the class, which
+ * runs each task on its own virtual thread, so a blocked task does not hold on to a platform thread.
+ */
+public final class BlockingTaskExecutors {
+    private static final ExecutorService SHARED = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                            .name("biob-", 0)
+                                                                                            .factory());
+
+    private BlockingTaskExecutors() {
+    }
+
+    /**
+     * Returns the executor that is shared by the storages for short blocking tasks, such as the operations of a batch.
+     *
+     * @return an executor that starts a virtual thread per task
+     */
+    public static Executor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates an executor that runs each task on its own virtual thread.
+     *
+     * @param namePrefix the prefix of the thread names, followed by a sequence number
+     * @return the executor
+     */
+    public static Executor newThreadPerTaskExecutor(String namePrefix) {
+        Objects.requireNonNull(namePrefix, "namePrefix should not be null");
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
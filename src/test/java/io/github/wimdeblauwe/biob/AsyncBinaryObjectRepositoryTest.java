@@ -0,0 +1,62 @@
+package io.github.wimdeblauwe.biob;
+
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncBinaryObjectRepositoryTest {
+
+    private ExecutorService executorService;
+    private AsyncBinaryObjectRepository<Long, UUID> repository;
+
+    @BeforeEach
+    void setUp() {
+        executorService = Executors.newFixedThreadPool(2);
+        repository = new AsyncBinaryObjectRepository<>(UUID::randomUUID,
+                                                       (userId, uuid) -> userId + "/images/" + uuid,
+                                                       new AsyncBinaryObjectStorageAdapter(
+                                                               new InMemoryBinaryObjectStorage(), executorService));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        UUID id = repository.store(1L, createExampleMetadata(), createExampleInputStream()).join();
+
+        assertThat(repository.retrieve(1L, id).join()).hasValueSatisfying(binaryObject -> {
+            assertThat(binaryObject.getInputStream()).hasSameContentAs(createExampleInputStream());
+            assertThat(binaryObject.getMetadata()).isEqualTo(createExampleMetadata());
+        });
+        assertThat(repository.getMetadata(1L, id).join()).hasValue(createExampleMetadata());
+        assertThat(repository.hasBinaryObject(123L, id).join()).isFalse();
+    }
+
+    @Test
+    void testDelete() {
+        UUID id = repository.store(1L, createExampleMetadata(), createExampleInputStream()).join();
+
+        repository.delete(1L, id).join();
+
+        assertThat(repository.hasBinaryObject(1L, id).join()).isFalse();
+    }
+
+    private ByteArrayInputStream createExampleInputStream() {
+        return new ByteArrayInputStream(new byte[]{1, 2, 3});
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3L, "test.png", "image/png");
+    }
+}
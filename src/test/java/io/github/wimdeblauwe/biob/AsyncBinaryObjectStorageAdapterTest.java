@@ -0,0 +1,69 @@
+package io.github.wimdeblauwe.biob;
+
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncBinaryObjectStorageAdapterTest {
+
+    private ExecutorService executorService;
+    private InMemoryBinaryObjectStorage delegate;
+    private AsyncBinaryObjectStorageAdapter storage;
+
+    @BeforeEach
+    void setUp() {
+        executorService = Executors.newFixedThreadPool(2);
+        delegate = new InMemoryBinaryObjectStorage();
+        storage = new AsyncBinaryObjectStorageAdapter(delegate, executorService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3})).join();
+
+        assertThat(storage.retrieve("images/1").join())
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+        assertThat(delegate.hasBinaryObject("images/1")).isTrue();
+    }
+
+    @Test
+    void testGetMetadataAndHasBinaryObject() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3})).join();
+
+        assertThat(storage.getMetadata("images/1").join()).hasValue(createExampleMetadata());
+        assertThat(storage.hasBinaryObject("images/1").join()).isTrue();
+        assertThat(storage.getMetadata("unknown/path/1").join()).isEmpty();
+        assertThat(storage.hasBinaryObject("unknown/path/1").join()).isFalse();
+    }
+
+    @Test
+    void testDelete() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3})).join();
+
+        storage.delete("images/1").join();
+
+        assertThat(storage.hasBinaryObject("images/1").join()).isFalse();
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
+    }
+}
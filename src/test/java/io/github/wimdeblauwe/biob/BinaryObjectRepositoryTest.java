@@ -4,9 +4,16 @@ import org.junit.jupiter.api.Test;
 import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class BinaryObjectRepositoryTest {
 
@@ -30,6 +37,41 @@ class BinaryObjectRepositoryTest {
         assertThat(storage.hasBinaryObject("1/images/" + id)).isTrue();
     }
 
+    @Test
+    void testRetrieveRange() {
+        InMemoryBinaryObjectStorage storage = new InMemoryBinaryObjectStorage();
+        BinaryObjectRepository<User, UUID> repository = new BinaryObjectRepository<>(UUID::randomUUID,
+                                                                                     (user, uuid) -> user
+                                                                                             .getId() + "/images/" + uuid
+                                                                                             .toString(),
+                                                                                     storage);
+        User user = new User(1L);
+        UUID id = repository.store(user,
+                                   createExampleMetadata(),
+                                   createExampleInputStream());
+        assertThat(repository.retrieve(user, id, 1, 2)).hasValueSatisfying(binaryObject -> {
+            assertThat(binaryObject.getInputStream()).hasSameContentAs(new ByteArrayInputStream(new byte[]{2, 3}));
+            assertThat(binaryObject.getMetadata()).isEqualTo(createExampleMetadata());
+        });
+    }
+
+    @Test
+    void testTransferTo() {
+        InMemoryBinaryObjectStorage storage = new InMemoryBinaryObjectStorage();
+        BinaryObjectRepository<User, UUID> repository = new BinaryObjectRepository<>(UUID::randomUUID,
+                                                                                     (user, uuid) -> user
+                                                                                             .getId() + "/images/" + uuid
+                                                                                             .toString(),
+                                                                                     storage);
+        User user = new User(1L);
+        UUID id = repository.store(user,
+                                   createExampleMetadata(),
+                                   createExampleInputStream());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        assertThat(repository.transferTo(user, id, Channels.newChannel(outputStream))).hasValue(3L);
+        assertThat(outputStream.toByteArray()).containsExactly(1, 2, 3);
+    }
+
     @Test
     void testGetMetadata() {
         InMemoryBinaryObjectStorage storage = new InMemoryBinaryObjectStorage();
@@ -111,6 +153,94 @@ class BinaryObjectRepositoryTest {
     }
 
 
+    @Test
+    void testStoreAll() {
+        InMemoryBinaryObjectStorage storage = new InMemoryBinaryObjectStorage();
+        BinaryObjectRepository<User, UUID> repository = new BinaryObjectRepository<>(UUID::randomUUID,
+                                                                                     (user, uuid) -> user
+                                                                                             .getId() + "/images/" + uuid
+                                                                                             .toString(),
+                                                                                     storage);
+        User user = new User(1L);
+
+        Map<UUID, BatchResult<Void>> results = repository.storeAll(user, Arrays.asList(
+                new BinaryObject(createExampleInputStream(), createExampleMetadata()),
+                new BinaryObject(createExampleInputStream(), createExampleMetadata())));
+
+        assertThat(results).hasSize(2);
+        assertThat(results.values()).allMatch(BatchResult::isSuccess);
+        for (UUID id : results.keySet()) {
+            assertThat(repository.retrieve(user, id))
+                    .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                            .hasSameContentAs(createExampleInputStream()));
+        }
+    }
+
+    @Test
+    void testGetMetadataAllAndDeleteAll() {
+        InMemoryBinaryObjectStorage storage = new InMemoryBinaryObjectStorage();
+        BinaryObjectRepository<User, UUID> repository = new BinaryObjectRepository<>(UUID::randomUUID,
+                                                                                     (user, uuid) -> user
+                                                                                             .getId() + "/images/" + uuid
+                                                                                             .toString(),
+                                                                                     storage);
+        User user = new User(1L);
+        UUID id1 = repository.store(user, createExampleMetadata(), createExampleInputStream());
+        UUID id2 = repository.store(user, createExampleMetadata(), createExampleInputStream());
+        UUID unknownId = UUID.randomUUID();
+
+        Map<UUID, BatchResult<Optional<BinaryObjectMetadata>>> metadata =
+                repository.getMetadataAll(user, Arrays.asList(id1, id2, unknownId));
+        assertThat(metadata.keySet()).containsExactly(id1, id2, unknownId);
+        assertThat(metadata.get(id1).getValue()).hasValue(createExampleMetadata());
+        assertThat(metadata.get(unknownId).getValue()).isEmpty();
+
+        Map<UUID, BatchResult<Void>> deleteResults = repository.deleteAll(user, Arrays.asList(id1, id2));
+        assertThat(deleteResults.values()).allMatch(BatchResult::isSuccess);
+        assertThat(repository.hasBinaryObject(user, id1)).isFalse();
+        assertThat(repository.hasBinaryObject(user, id2)).isFalse();
+    }
+
+    @Test
+    void testMultipartUpload() {
+        InMemoryBinaryObjectStorage storage = new InMemoryBinaryObjectStorage();
+        BinaryObjectRepository<User, UUID> repository = new BinaryObjectRepository<>(UUID::randomUUID,
+                                                                                     (user, uuid) -> user
+                                                                                             .getId() + "/images/" + uuid
+                                                                                             .toString(),
+                                                                                     storage);
+        User user = new User(1L);
+        MultipartUpload<UUID> upload = repository.initiateMultipartUpload(user, createExampleMetadata());
+        repository.uploadPart(upload.getUploadId(), 2, new ByteArrayInputStream(new byte[]{3}));
+        repository.uploadPart(upload.getUploadId(), 1, new ByteArrayInputStream(new byte[]{1, 2}));
+        assertThat(repository.listParts(upload.getUploadId())).hasSize(2);
+        assertThat(repository.retrieve(user, upload.getId())).isEmpty();
+
+        repository.completeMultipartUpload(upload.getUploadId());
+
+        assertThat(repository.retrieve(user, upload.getId())).hasValueSatisfying(binaryObject -> {
+            assertThat(binaryObject.getInputStream()).hasSameContentAs(createExampleInputStream());
+            assertThat(binaryObject.getMetadata()).isEqualTo(createExampleMetadata());
+        });
+    }
+
+    @Test
+    void testExpireMultipartUploads() {
+        InMemoryBinaryObjectStorage storage = new InMemoryBinaryObjectStorage();
+        BinaryObjectRepository<User, UUID> repository = new BinaryObjectRepository<>(UUID::randomUUID,
+                                                                                     (user, uuid) -> user
+                                                                                             .getId() + "/images/" + uuid
+                                                                                             .toString(),
+                                                                                     storage);
+        User user = new User(1L);
+        MultipartUpload<UUID> upload = repository.initiateMultipartUpload(user, createExampleMetadata());
+
+        assertThat(repository.expireMultipartUploads(Duration.ofHours(1))).isZero();
+        assertThat(repository.expireMultipartUploads(Duration.ZERO)).isEqualTo(1);
+        assertThatThrownBy(() -> repository.listParts(upload.getUploadId()))
+                .isInstanceOf(NoSuchUploadException.class);
+    }
+
     private ByteArrayInputStream createExampleInputStream() {
         return new ByteArrayInputStream(new byte[]{1, 2, 3});
     }
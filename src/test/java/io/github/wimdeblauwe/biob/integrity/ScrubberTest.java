@@ -0,0 +1,134 @@
+package io.github.wimdeblauwe.biob.integrity;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.ForwardingBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.io.ChecksumMismatchException;
+import io.github.wimdeblauwe.biob.storage.localfilesystem.LocalFileSystemBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScrubberTest {
+
+    @TempDir
+    Path basePath;
+    private LocalFileSystemBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                                                    .build();
+    }
+
+    @Test
+    void testScrubFindsCorruptBinaryObjects() throws Exception {
+        new LocalFileSystemBinaryObjectStorage(basePath).store("images/0", createExampleMetadata(),
+                                                                new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Files.write(basePath.resolve("images/2"), new byte[]{1, 2, 4});
+        Map<String, IOException> corruptions = new ConcurrentHashMap<>();
+
+        ScrubResult result = Scrubber.builder(storage)
+                                     .corruptionListener(corruptions::put)
+                                     .build()
+                                     .scrub();
+
+        assertThat(result.getVerifiedCount()).isEqualTo(1);
+        assertThat(result.getVerifiedBytes()).isEqualTo(3);
+        assertThat(result.getSkippedCount()).isEqualTo(1);
+        assertThat(result.getCorruptFilePaths()).containsExactly("images/2");
+        assertThat(corruptions.get("images/2")).isInstanceOf(ChecksumMismatchException.class);
+    }
+
+    @Test
+    void testScrubReportsCorruptionFoundByStorage() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Files.write(basePath.resolve("images/1"), new byte[]{1, 2, 4});
+        LocalFileSystemBinaryObjectStorage verifyingStorage =
+                LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                  .verifyChecksums(true)
+                                                  .memoryMappedReads(1024 * 1024)
+                                                  .build();
+
+        ScrubResult result = Scrubber.builder(verifyingStorage).build().scrub();
+
+        assertThat(result.getCorruptFilePaths()).containsExactly("images/1");
+    }
+
+    @Test
+    void testScrubIsRateLimited() {
+        for (int i = 0; i < 3; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[1000]));
+        }
+
+        long start = System.nanoTime();
+        ScrubResult result = Scrubber.builder(storage)
+                                     .prefix("images/")
+                                     .bytesPerSecond(2000)
+                                     .build()
+                                     .scrub();
+
+        assertThat(result.getVerifiedBytes()).isEqualTo(3000);
+        assertThat(System.nanoTime() - start).isGreaterThan(800_000_000L);
+    }
+
+    @Test
+    void testScheduledScrubKeepsRunningAfterFailure() throws Exception {
+        AtomicInteger listCount = new AtomicInteger();
+        ForwardingBinaryObjectStorage failingStorage = new ForwardingBinaryObjectStorage(storage) {
+            @Override
+            public Stream<BinaryObjectSummary> list(String prefix) {
+                if (listCount.incrementAndGet() == 1) {
+                    throw new BinaryObjectStorageException("Unable to list");
+                }
+                return super.list(prefix);
+            }
+        };
+        List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Scrubber.builder(failingStorage)
+                    .failureListener(failures::add)
+                    .build()
+                    .schedule(executorService, Duration.ofMillis(10));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (listCount.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertThat(listCount.get()).isGreaterThanOrEqualTo(2);
+        assertThat(failures).hasSize(1)
+                            .first()
+                            .isInstanceOf(BinaryObjectStorageException.class);
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
+    }
+}
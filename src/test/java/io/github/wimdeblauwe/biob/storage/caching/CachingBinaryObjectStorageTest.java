@@ -0,0 +1,287 @@
+package io.github.wimdeblauwe.biob.storage.caching;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingBinaryObjectStorageTest {
+
+    private CountingBinaryObjectStorage delegate;
+    private CachingBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new CountingBinaryObjectStorage();
+        storage = new CachingBinaryObjectStorage(delegate, Duration.ofMinutes(1), 100, 1024, 10);
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+    }
+
+    @Test
+    void testRetrieveIfNotKnown() {
+        Optional<BinaryObject> optional = storage.retrieve("unknown/path/1");
+        assertThat(optional).isEmpty();
+    }
+
+    @Test
+    void testRepeatedCallsAreServedFromCache() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+            assertThat(storage.hasBinaryObject("images/1")).isTrue();
+            assertThat(storage.retrieve("images/1"))
+                    .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                            .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        }
+
+        assertThat(delegate.getMetadataCount.get()).isEqualTo(1);
+        assertThat(delegate.retrieveCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testRetrieveRange() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", new BinaryObjectMetadata(20, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20}));
+
+        assertThat(storage.retrieve("images/1", 1, 1))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{2})));
+        assertThat(storage.retrieve("images/2", 18, 5))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{19, 20})));
+    }
+
+    @Test
+    void testLargeBinaryObjectsAreNotCached() {
+        storage.store("images/1", new BinaryObjectMetadata(20, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(new byte[20]));
+
+        storage.retrieve("images/1");
+        storage.retrieve("images/1");
+
+        assertThat(delegate.retrieveCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testBinaryObjectsLargerThanTheirMetadataAreNotCached() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[20]));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[20])));
+        assertThat(storage.retrieve("images/1", 15, 10))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[5])));
+        assertThat(storage.retrieve("images/1")).isPresent();
+        assertThat(storage.getPayloadCacheStats().hitCount()).isZero();
+    }
+
+    @Test
+    void testLoadOverlappingStoreIsNotCached() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch storeDone = new CountDownLatch(1);
+        delegate.afterGetMetadata = () -> {
+            loadStarted.countDown();
+            try {
+                storeDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        BinaryObjectMetadata newMetadata = new BinaryObjectMetadata(2, "other.jpg", "image/jpg");
+        try {
+            Future<Optional<BinaryObjectMetadata>> load = executorService.submit(() -> storage.getMetadata("images/1"));
+            assertThat(loadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            delegate.afterGetMetadata = null;
+            storage.store("images/1", newMetadata, new ByteArrayInputStream(new byte[]{4, 5}));
+            storeDone.countDown();
+            assertThat(load.get(10, TimeUnit.SECONDS)).isPresent();
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertThat(storage.getMetadata("images/1")).hasValue(newMetadata);
+    }
+
+    @Test
+    void testStoreInvalidatesCache() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.retrieve("images/1");
+
+        BinaryObjectMetadata newMetadata = new BinaryObjectMetadata(2, "other.jpg", "image/jpg");
+        storage.store("images/1", newMetadata, new ByteArrayInputStream(new byte[]{4, 5}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5}));
+                                        assertThat(binaryObject.getMetadata()).isEqualTo(newMetadata);
+                                    });
+    }
+
+    @Test
+    void testDeleteInvalidatesCache() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+
+        storage.delete("images/1");
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.retrieve("images/1")).isEmpty();
+    }
+
+    @Test
+    void testDeleteAllInvalidatesCache() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("images/2")).isTrue();
+
+        storage.deleteAll(Arrays.asList("images/1", "images/2"));
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testRetrieveWhenDeletedInUnderlyingStorage() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+
+        delegate.delete("images/1");
+
+        assertThat(storage.retrieve("images/1")).isEmpty();
+    }
+
+    @Test
+    void testConcurrentMissesAreLoadedOnce() throws Exception {
+        delegate.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        delegate.slowDown = true;
+
+        int threadCount = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            CountDownLatch startSignal = new CountDownLatch(1);
+            List<Future<Optional<BinaryObject>>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executorService.submit(() -> {
+                    startSignal.await();
+                    return storage.retrieve("images/1");
+                }));
+            }
+            startSignal.countDown();
+            for (Future<Optional<BinaryObject>> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS)).isPresent();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertThat(delegate.getMetadataCount.get()).isEqualTo(1);
+        assertThat(delegate.retrieveCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testCompletedMultipartUploadInvalidatesCache() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(4, "other.jpg", "image/jpg");
+        String uploadId = storage.initiateMultipartUpload("images/1", metadata);
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{4, 5, 6, 7}));
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(storage.getMetadata("images/1")).hasValue(metadata);
+        assertThat(delegate.getMetadataCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testCompletingUnknownMultipartUploadInvalidatesWholeCache() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+
+        // Initiated before this storage was created, e.g. before a restart
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(4, "other.jpg", "image/jpg");
+        String uploadId = delegate.initiateMultipartUpload("images/1", metadata);
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{4, 5, 6, 7}));
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(storage.getMetadata("images/1")).hasValue(metadata);
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
+    }
+
+    private static class CountingBinaryObjectStorage extends InMemoryBinaryObjectStorage {
+        private final AtomicInteger getMetadataCount = new AtomicInteger();
+        private final AtomicInteger retrieveCount = new AtomicInteger();
+        private volatile boolean slowDown;
+        private volatile Runnable afterGetMetadata;
+
+        @Override
+        public Optional<BinaryObject> retrieve(String filePath) {
+            retrieveCount.incrementAndGet();
+            sleepIfSlowedDown();
+            return super.retrieve(filePath);
+        }
+
+        @Override
+        public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+            getMetadataCount.incrementAndGet();
+            sleepIfSlowedDown();
+            Optional<BinaryObjectMetadata> metadata = super.getMetadata(filePath);
+            Runnable action = afterGetMetadata;
+            if (action != null) {
+                action.run();
+            }
+            return metadata;
+        }
+
+        private void sleepIfSlowedDown() {
+            if (slowDown) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.wimdeblauwe.biob.storage.compressing;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BatchResult;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectStoreRequest;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.localfilesystem.LocalFileSystemBinaryObjectStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressingBinaryObjectStorageTest {
+
+    private InMemoryBinaryObjectStorage delegate;
+    private CompressingBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new InMemoryBinaryObjectStorage();
+        storage = new CompressingBinaryObjectStorage(delegate);
+    }
+
+    @Test
+    void testTextIsCompressed() throws IOException {
+        byte[] bytes = createCsv();
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(bytes.length, "export.csv", "text/csv");
+        storage.store("exports/1", metadata, new ByteArrayInputStream(bytes));
+
+        assertThat(storedSize("exports/1")).isLessThan(bytes.length / 4);
+        assertThat(Arrays.equals(readAll("exports/1"), bytes)).isTrue();
+        assertThat(storage.getMetadata("exports/1")).hasValueSatisfying(
+                storedMetadata -> assertThat(storedMetadata.getFileSize()).isEqualTo(bytes.length));
+        assertThat(storage.retrieve("exports/1")).hasValueSatisfying(
+                binaryObject -> assertThat(binaryObject.getMetadata()).isEqualTo(metadata));
+    }
+
+    @Test
+    void testJsonWithCharsetIsCompressed() throws IOException {
+        byte[] bytes = createCsv();
+        storage.store("exports/1",
+                      new BinaryObjectMetadata(bytes.length, "export.json", "application/json; charset=UTF-8"),
+                      new ByteArrayInputStream(bytes));
+
+        assertThat(storedSize("exports/1")).isLessThan(bytes.length / 4);
+        assertThat(Arrays.equals(readAll("exports/1"), bytes)).isTrue();
+    }
+
+    @Test
+    void testImagesAreNotCompressed() throws IOException {
+        byte[] bytes = createCsv();
+        storage.store("images/1", new BinaryObjectMetadata(bytes.length, "image.jpg", "image/jpeg"),
+                      new ByteArrayInputStream(bytes));
+
+        assertThat(storedSize("images/1")).isEqualTo(bytes.length + 1);
+        assertThat(Arrays.equals(readAll("images/1"), bytes)).isTrue();
+    }
+
+    @Test
+    void testCustomPolicy() throws IOException {
+        storage = new CompressingBinaryObjectStorage(delegate, metadata -> CompressionLevel.BEST);
+        byte[] bytes = createCsv();
+        storage.store("archives/1", new BinaryObjectMetadata(bytes.length, "archive.zip", "application/zip"),
+                      new ByteArrayInputStream(bytes));
+
+        assertThat(storedSize("archives/1")).isLessThan(bytes.length / 4);
+        assertThat(Arrays.equals(readAll("archives/1"), bytes)).isTrue();
+    }
+
+    @Test
+    void testRetrieveRange() throws IOException {
+        byte[] bytes = createCsv();
+        storage.store("exports/1", new BinaryObjectMetadata(bytes.length, "export.csv", "text/csv"),
+                      new ByteArrayInputStream(bytes));
+
+        Optional<BinaryObject> range = storage.retrieve("exports/1", 1000, 10);
+
+        assertThat(range).isPresent();
+        try (InputStream inputStream = range.get().getInputStream()) {
+            assertThat(ByteStreams.toByteArray(inputStream)).isEqualTo(Arrays.copyOfRange(bytes, 1000, 1010));
+        }
+        assertThat(storage.retrieve("unknown", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void testStoreAllAndRetrieveAll() throws IOException {
+        byte[] bytes = createCsv();
+        Map<String, BatchResult<Void>> storeResults = storage.storeAll(Arrays.asList(
+                new BinaryObjectStoreRequest("exports/1", new BinaryObjectMetadata(bytes.length, "1.csv", "text/csv"),
+                                             new ByteArrayInputStream(bytes)),
+                new BinaryObjectStoreRequest("images/1", new BinaryObjectMetadata(3, "1.png", "image/png"),
+                                             new ByteArrayInputStream(new byte[]{1, 2, 3}))));
+
+        assertThat(storeResults.values()).allMatch(BatchResult::isSuccess);
+        assertThat(storedSize("exports/1")).isLessThan(bytes.length / 4);
+
+        Map<String, BatchResult<Optional<BinaryObject>>> retrieveResults =
+                storage.retrieveAll(Arrays.asList("exports/1", "images/1"));
+        try (InputStream inputStream = retrieveResults.get("images/1").getValue().get().getInputStream()) {
+            assertThat(ByteStreams.toByteArray(inputStream)).isEqualTo(new byte[]{1, 2, 3});
+        }
+        try (InputStream inputStream = retrieveResults.get("exports/1").getValue().get().getInputStream()) {
+            assertThat(Arrays.equals(ByteStreams.toByteArray(inputStream), bytes)).isTrue();
+        }
+    }
+
+    @Test
+    void testRetrieveIfNotStoredThroughThisStorage() {
+        delegate.store("other/1", new BinaryObjectMetadata(1, "1.bin", null), new ByteArrayInputStream(new byte[]{9}));
+
+        assertThatThrownBy(() -> storage.retrieve("other/1"))
+                .isInstanceOf(BinaryObjectStorageException.class);
+    }
+
+    @Test
+    void testIncompressibleDataRoundTrips() throws IOException {
+        byte[] bytes = new byte[100_000];
+        new Random(42).nextBytes(bytes);
+        storage.store("random/1", new BinaryObjectMetadata(bytes.length, "random.txt", "text/plain"),
+                      new ByteArrayInputStream(bytes));
+
+        assertThat(Arrays.equals(readAll("random/1"), bytes)).isTrue();
+    }
+
+    @Test
+    void testChecksumIsVerifiedAgainstUncompressedBytes(@TempDir Path basePath) throws IOException {
+        LocalFileSystemBinaryObjectStorage checksummingStorage =
+                LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                  .checksumAlgorithm(ChecksumAlgorithm.SHA256)
+                                                  .verifyChecksums(true)
+                                                  .build();
+        storage = new CompressingBinaryObjectStorage(checksummingStorage);
+        byte[] bytes = createCsv();
+        Checksum checksum = new Checksum(ChecksumAlgorithm.SHA256,
+                                         ChecksumAlgorithm.SHA256.getHashFunction().hashBytes(bytes).toString());
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(bytes.length, "export.csv", "text/csv");
+
+        storage.store("exports/1", metadata.withChecksum(checksum), new ByteArrayInputStream(bytes));
+        assertThatThrownBy(() -> storage.store("exports/2", metadata.withChecksum(checksum),
+                                               new ByteArrayInputStream(createCsv(), 1, bytes.length - 1)))
+                .isInstanceOf(BinaryObjectStorageException.class);
+
+        assertThat(Arrays.equals(readAll("exports/1"), bytes)).isTrue();
+        assertThat(storage.getMetadata("exports/1")).hasValue(metadata);
+        assertThat(storage.hasBinaryObject("exports/2")).isFalse();
+    }
+
+    @Test
+    void testMultipartUploadIsNotSupported() {
+        assertThatThrownBy(() -> storage.initiateMultipartUpload("export/1", new BinaryObjectMetadata(1, "1.csv", null)))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private long storedSize(String filePath) throws IOException {
+        try (InputStream inputStream = delegate.retrieve(filePath).get().getInputStream()) {
+            return ByteStreams.exhaust(inputStream);
+        }
+    }
+
+    private byte[] readAll(String filePath) throws IOException {
+        try (InputStream inputStream = storage.retrieve(filePath).get().getInputStream()) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    private static byte[] createCsv() {
+        StringBuilder builder = new StringBuilder("id,name,description\n");
+        for (int i = 0; i < 2000; i++) {
+            builder.append(i).append(",name-").append(i).append(',').append(Strings.repeat("lorem ipsum ", 3))
+                   .append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.wimdeblauwe.biob.storage.contentaddressable;
+
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentAddressableBinaryObjectStorageTest {
+
+    @TempDir
+    Path basePath;
+    private ContentAddressableBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new ContentAddressableBinaryObjectStorage(basePath);
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+    }
+
+    @Test
+    void testRetrieveIfNotKnown() {
+        assertThat(storage.retrieve("unknown/path/1")).isEmpty();
+        assertThat(storage.getMetadata("unknown/path/1")).isEmpty();
+        assertThat(storage.hasBinaryObject("unknown/path/1")).isFalse();
+    }
+
+    @Test
+    void testIdenticalContentIsStoredOnce() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", new BinaryObjectMetadata(3, "other.png", "image/png"),
+                      new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/3", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+
+        assertThat(countBlobs()).isEqualTo(2);
+        DeduplicationStats stats = storage.getDeduplicationStats();
+        assertThat(stats.getReferenceCount()).isEqualTo(3);
+        assertThat(stats.getBlobCount()).isEqualTo(2);
+        assertThat(stats.getLogicalBytes()).isEqualTo(9);
+        assertThat(stats.getPhysicalBytes()).isEqualTo(6);
+        assertThat(stats.getBytesSaved()).isEqualTo(3);
+        assertThat(stats.getDeduplicationRatio()).isEqualTo(1.5);
+        assertThat(storage.getMetadata("images/2")).hasValueSatisfying(
+                metadata -> assertThat(metadata.getOriginalFilename()).isEqualTo("other.png"));
+    }
+
+    @Test
+    void testDeleteKeepsBlobWhileStillReferenced() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.delete("images/1");
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.retrieve("images/2"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        assertThat(countBlobs()).isEqualTo(1);
+
+        storage.delete("images/2");
+
+        assertThat(countBlobs()).isEqualTo(0);
+        assertThat(storage.getDeduplicationStats().getLogicalBytes()).isEqualTo(0);
+        assertThat(storage.getDeduplicationStats().getPhysicalBytes()).isEqualTo(0);
+    }
+
+    @Test
+    void testFailedStoreReleasesBlob() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        // The reference can not be written, as "images/1" is a file and not a directory
+        assertThatThrownBy(() -> storage.store("images/1/thumbnail", createExampleMetadata(),
+                                               new ByteArrayInputStream(new byte[]{4, 5, 6})))
+                .isInstanceOf(BinaryObjectStorageException.class);
+
+        assertThat(countBlobs()).isEqualTo(1);
+        assertThat(storage.getDeduplicationStats().getLogicalBytes()).isEqualTo(3);
+        assertThat(storage.getDeduplicationStats().getPhysicalBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void testDeleteIfNotKnown() {
+        storage.delete("unknown/path/1");
+
+        assertThat(storage.getDeduplicationStats().getReferenceCount()).isEqualTo(0);
+    }
+
+    @Test
+    void testOverwriteReleasesPreviousBlob() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+
+        assertThat(countBlobs()).isEqualTo(1);
+        assertThat(storage.getDeduplicationStats().getReferenceCount()).isEqualTo(1);
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5, 6})));
+    }
+
+    @Test
+    void testReferenceCountsAreRebuiltOnStartup() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Path orphanedBlob = basePath.resolve("blobs/00/00/0000");
+        Files.createDirectories(orphanedBlob.getParent());
+        Files.write(orphanedBlob, new byte[]{7});
+
+        ContentAddressableBinaryObjectStorage reopened = new ContentAddressableBinaryObjectStorage(basePath);
+
+        assertThat(orphanedBlob).doesNotExist();
+        DeduplicationStats stats = reopened.getDeduplicationStats();
+        assertThat(stats.getReferenceCount()).isEqualTo(2);
+        assertThat(stats.getBlobCount()).isEqualTo(1);
+        assertThat(stats.getBytesSaved()).isEqualTo(3);
+
+        reopened.delete("images/1");
+        assertThat(countBlobs()).isEqualTo(1);
+        reopened.delete("images/2");
+        assertThat(countBlobs()).isEqualTo(0);
+    }
+
+    private long countBlobs() throws IOException {
+        try (Stream<Path> paths = Files.walk(basePath.resolve("blobs"))) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void testList() {
+        for (String filePath : new String[]{"videos/1", "images/2", "images/1", "images-old/1"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries).containsExactlyInAnyOrder(new BinaryObjectSummary("images/1", createExampleMetadata()),
+                                                 new BinaryObjectSummary("images/2", createExampleMetadata()));
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath))
+                    .containsExactlyInAnyOrder("images-old/1", "images/1", "images/2");
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries).hasSize(4);
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("documents/")) {
+            assertThat(summaries).isEmpty();
+        }
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "my-image.png", "image/png");
+    }
+}
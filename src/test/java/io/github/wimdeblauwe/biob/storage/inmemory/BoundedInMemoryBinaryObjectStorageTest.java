@@ -0,0 +1,281 @@
+package io.github.wimdeblauwe.biob.storage.inmemory;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedInMemoryBinaryObjectStorageTest {
+
+    private BoundedInMemoryBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new BoundedInMemoryBinaryObjectStorage(1024);
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+    }
+
+    @Test
+    void testRetrieveIfNotKnown() {
+        Optional<BinaryObject> optional = storage.retrieve("unknown/path/1");
+        assertThat(optional).isEmpty();
+    }
+
+    @Test
+    void testGetMetadata() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+    }
+
+    @Test
+    void testHasBinaryObject() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("unknown/path/1")).isFalse();
+    }
+
+    @Test
+    void testDelete() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.delete("images/1");
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testEvictsWhenMaximumSizeIsExceeded() {
+        List<String> evictedPaths = new ArrayList<>();
+        storage = new BoundedInMemoryBinaryObjectStorage(500, (filePath, metadata) -> evictedPaths.add(filePath));
+
+        for (int i = 0; i < 20; i++) {
+            storage.store("images/" + i, new BinaryObjectMetadata(100, "test.jpg", "image/jpg"),
+                          new ByteArrayInputStream(new byte[100]));
+        }
+
+        assertThat(storage.getSizeInBytes()).isLessThanOrEqualTo(500);
+        assertThat(storage.hasBinaryObject("images/19")).isTrue();
+        assertThat(evictedPaths).isNotEmpty()
+                                .doesNotContain("images/19");
+        assertThat(storage.getStats().getEvictionCount()).isEqualTo(evictedPaths.size());
+    }
+
+    @Test
+    void testKeepsBinaryObjectCloseToMaximumSize() {
+        storage = new BoundedInMemoryBinaryObjectStorage(1000);
+
+        storage.store("images/1", new BinaryObjectMetadata(990, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(new byte[990]));
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.getSizeInBytes()).isEqualTo(990);
+    }
+
+    @Test
+    void testEvictsBinaryObjectLargerThanMaximumSize() {
+        List<String> evictedPaths = new ArrayList<>();
+        storage = new BoundedInMemoryBinaryObjectStorage(100, (filePath, metadata) -> evictedPaths.add(filePath));
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.store("images/2", new BinaryObjectMetadata(101, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(new byte[101]));
+
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(evictedPaths).containsExactly("images/2");
+        assertThat(storage.getSizeInBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void testBinaryObjectLargerThanItsMetadataDoesNotEvictOthers() {
+        List<String> evictedPaths = new ArrayList<>();
+        storage = new BoundedInMemoryBinaryObjectStorage(100, (filePath, metadata) -> evictedPaths.add(filePath));
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+
+        // Replacing a binary object with one that is too large removes the old version too
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[101]));
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+        assertThat(evictedPaths).containsExactly("images/2");
+        assertThat(storage.getSizeInBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void testEvictionPolicyThatSelectsUnknownPath() {
+        storage = new BoundedInMemoryBinaryObjectStorage(100, (filePath, metadata) -> {
+        }, new EvictionPolicy() {
+            @Override
+            public void recordInsert(String filePath, long weight) {
+            }
+
+            @Override
+            public void recordAccess(String filePath) {
+            }
+
+            @Override
+            public void recordRemoval(String filePath) {
+            }
+
+            @Override
+            public String selectVictim() {
+                return "unknown/path/1";
+            }
+        });
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[60]));
+
+        assertThatThrownBy(() -> storage.store("images/2", createExampleMetadata(),
+                                               new ByteArrayInputStream(new byte[60])))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("unknown/path/1");
+    }
+
+    @Test
+    void testConcurrentReadsRecordAccesses() throws Exception {
+        storage = new BoundedInMemoryBinaryObjectStorage(300);
+        for (int i = 1; i <= 3; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[100]));
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        assertThat(storage.retrieve("images/" + (i % 2 == 0 ? 1 : 3))).isPresent();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        storage.store("images/4", createExampleMetadata(), new ByteArrayInputStream(new byte[100]));
+
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+        assertThat(storage.getStats().getHitCount()).isEqualTo(40_000);
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        storage = new BoundedInMemoryBinaryObjectStorage(300);
+        for (int i = 1; i <= 3; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[100]));
+        }
+
+        storage.retrieve("images/1");
+        storage.store("images/4", createExampleMetadata(), new ByteArrayInputStream(new byte[100]));
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testEvictsLeastFrequentlyUsed() {
+        List<String> evictedPaths = new ArrayList<>();
+        storage = new BoundedInMemoryBinaryObjectStorage(300, (filePath, metadata) -> evictedPaths.add(filePath),
+                                                         EvictionPolicy.leastFrequentlyUsed());
+        for (int i = 1; i <= 3; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[100]));
+        }
+        storage.retrieve("images/1");
+        storage.retrieve("images/1");
+        storage.getMetadata("images/3");
+        storage.retrieve("images/3");
+
+        storage.store("images/4", createExampleMetadata(), new ByteArrayInputStream(new byte[100]));
+
+        assertThat(evictedPaths).containsExactly("images/2");
+    }
+
+    @Test
+    void testReplaceUpdatesSize() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[100]));
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[40]));
+
+        assertThat(storage.getSizeInBytes()).isEqualTo(40);
+        storage.delete("images/1");
+        assertThat(storage.getSizeInBytes()).isZero();
+    }
+
+    @Test
+    void testDeleteDoesNotNotifyEvictionListener() {
+        List<String> evictedPaths = new ArrayList<>();
+        storage = new BoundedInMemoryBinaryObjectStorage(500, (filePath, metadata) -> evictedPaths.add(filePath));
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.delete("images/1");
+
+        assertThat(evictedPaths).isEmpty();
+    }
+
+    @Test
+    void testStats() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.retrieve("images/1");
+        storage.getMetadata("images/1");
+        storage.retrieve("unknown/path/1");
+
+        assertThat(storage.getStats().getHitCount()).isEqualTo(2);
+        assertThat(storage.getStats().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testList() {
+        for (String filePath : new String[]{"videos/1", "images/2", "images/1", "images-old/1"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries).containsExactlyInAnyOrder(new BinaryObjectSummary("images/1", createExampleMetadata()),
+                                                 new BinaryObjectSummary("images/2", createExampleMetadata()));
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath))
+                    .containsExactlyInAnyOrder("images-old/1", "images/1", "images/2");
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries).hasSize(4);
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("documents/")) {
+            assertThat(summaries).isEmpty();
+        }
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
+    }
+}
@@ -2,13 +2,33 @@ package io.github.wimdeblauwe.biob.storage.inmemory;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import io.github.wimdeblauwe.biob.BatchResult;
 import io.github.wimdeblauwe.biob.BinaryObject;
 import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.BinaryObjectStoreRequest;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+import io.github.wimdeblauwe.biob.NoSuchUploadException;
+import io.github.wimdeblauwe.biob.UploadedPart;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class InMemoryBinaryObjectStorageTest {
 
@@ -72,6 +92,235 @@ class InMemoryBinaryObjectStorageTest {
         assertThat(storage.hasBinaryObject("unknown/path/1")).isFalse();
     }
 
+    @Test
+    void testRetrieveRange() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+
+        assertThat(storage.retrieve("images/1", 1, 3))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{2, 3, 4})));
+        assertThat(storage.retrieve("images/1", 3, 10))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5})));
+        assertThat(storage.retrieve("unknown/path/1", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void testRetrieveRangeUpToMaximumLength() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+
+        assertThat(storage.retrieve("images/1", 2, Long.MAX_VALUE))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{3, 4, 5})));
+        assertThat(storage.retrieve("images/1", Long.MAX_VALUE, Long.MAX_VALUE))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void testTransferTo() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        assertThat(storage.transferTo("images/1", Channels.newChannel(outputStream))).hasValue(3L);
+
+        assertThat(outputStream.toByteArray()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void testRetrieveExposesByteBuffer() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> {
+                    assertThat(binaryObject).isInstanceOf(ByteBufferBinaryObject.class);
+                    assertThat(((ByteBufferBinaryObject) binaryObject).getByteBuffer().remaining()).isEqualTo(3);
+                    assertThat(((ByteBufferBinaryObject) binaryObject).getByteBuffer().isReadOnly()).isTrue();
+                });
+    }
+
+    @Test
+    void testBatchOperations() {
+        Map<String, BatchResult<Void>> storeResults = storage.storeAll(Arrays.asList(
+                new BinaryObjectStoreRequest("images/1", createExampleMetadata(),
+                                             new ByteArrayInputStream(new byte[]{1, 2, 3})),
+                new BinaryObjectStoreRequest("images/2", createExampleMetadata(),
+                                             new ByteArrayInputStream(new byte[]{1, 2, 3}))));
+        assertThat(storeResults).containsOnlyKeys("images/1", "images/2");
+        assertThat(storeResults.values()).allMatch(BatchResult::isSuccess);
+
+        assertThat(storage.getMetadataAll(Arrays.asList("images/1", "unknown/path/1")))
+                .hasEntrySatisfying("images/1", result -> assertThat(result.getValue()).hasValue(createExampleMetadata()))
+                .hasEntrySatisfying("unknown/path/1", result -> assertThat(result.getValue()).isEmpty());
+
+        storage.deleteAll(Arrays.asList("images/1", "images/2"));
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testStoreAllRejectsDuplicateFilePaths() {
+        assertThatThrownBy(() -> storage.storeAll(Arrays.asList(
+                new BinaryObjectStoreRequest("images/1", createExampleMetadata(),
+                                             new ByteArrayInputStream(new byte[]{1, 2, 3})),
+                new BinaryObjectStoreRequest("images/1", createExampleMetadata(),
+                                             new ByteArrayInputStream(new byte[]{4, 5, 6})))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testDelete() {
+        storage.store("images/1", createExampleMetadata(),
+                      new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.delete("images/1");
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testConcurrentStoresDoNotLoseUpdates() throws Exception {
+        int threadCount = 16;
+        int storesPerThread = 1000;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            CountDownLatch startSignal = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threadCount; thread++) {
+                int threadNumber = thread;
+                futures.add(executorService.submit(() -> {
+                    startSignal.await();
+                    for (int i = 0; i < storesPerThread; i++) {
+                        storage.store("thread-" + threadNumber + "/" + i, createExampleMetadata(),
+                                      new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                        storage.retrieve("thread-" + threadNumber + "/" + (i / 2));
+                    }
+                    return null;
+                }));
+            }
+            startSignal.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        for (int thread = 0; thread < threadCount; thread++) {
+            for (int i = 0; i < storesPerThread; i++) {
+                assertThat(storage.hasBinaryObject("thread-" + thread + "/" + i)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentOverwritesReplaceBytesAndMetadataAtomically() throws Exception {
+        int writerCount = 8;
+        int readerCount = 8;
+        int iterations = 2000;
+        storage.store("images/1", createMetadata(1), new ByteArrayInputStream(createBytes(1)));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(writerCount + readerCount);
+        try {
+            CountDownLatch startSignal = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < writerCount; writer++) {
+                int size = writer + 1;
+                futures.add(executorService.submit(() -> {
+                    startSignal.await();
+                    for (int i = 0; i < iterations; i++) {
+                        storage.store("images/1", createMetadata(size), new ByteArrayInputStream(createBytes(size)));
+                    }
+                    return null;
+                }));
+            }
+            for (int reader = 0; reader < readerCount; reader++) {
+                futures.add(executorService.submit(() -> {
+                    startSignal.await();
+                    for (int i = 0; i < iterations; i++) {
+                        BinaryObject binaryObject = storage.retrieve("images/1").orElseThrow(IllegalStateException::new);
+                        int size = (int) binaryObject.getMetadata().getFileSize();
+                        assertThat(binaryObject.getInputStream())
+                                .hasSameContentAs(new ByteArrayInputStream(createBytes(size)));
+                    }
+                    return null;
+                }));
+            }
+            startSignal.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private BinaryObjectMetadata createMetadata(int size) {
+        return new BinaryObjectMetadata(size, "test-" + size + ".bin", "application/octet-stream");
+    }
+
+    private byte[] createBytes(int size) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) size);
+        return bytes;
+    }
+
+    @Test
+    void testList() {
+        for (String filePath : new String[]{"videos/1", "images/2", "images/1", "images-old/1"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries).containsExactly(new BinaryObjectSummary("images/1", createExampleMetadata()),
+                                                 new BinaryObjectSummary("images/2", createExampleMetadata()));
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath))
+                    .containsExactly("images-old/1", "images/1", "images/2");
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries).hasSize(4);
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("documents/")) {
+            assertThat(summaries).isEmpty();
+        }
+    }
+
+    @Test
+    void testMultipartUpload() {
+        String uploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        storage.uploadPart(uploadId, 2, new ByteArrayInputStream(new byte[]{3}));
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2}));
+
+        assertThat(storage.listParts(uploadId)).containsExactly(new UploadedPart(1, 2), new UploadedPart(2, 1));
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                            assertThat(binaryObject.getInputStream())
+                                                    .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        assertThatThrownBy(() -> storage.listParts(uploadId)).isInstanceOf(NoSuchUploadException.class);
+    }
+
+    @Test
+    void testAbortAndExpireMultipartUploads() {
+        String abortedUploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        String expiredUploadId = storage.initiateMultipartUpload("images/2", createExampleMetadata());
+
+        storage.abortMultipartUpload(abortedUploadId);
+        assertThat(storage.expireMultipartUploads(Duration.ofHours(1))).isZero();
+        assertThat(storage.expireMultipartUploads(Duration.ZERO)).isEqualTo(1);
+
+        assertThatThrownBy(() -> storage.completeMultipartUpload(abortedUploadId))
+                .isInstanceOf(NoSuchUploadException.class);
+        assertThatThrownBy(() -> storage.uploadPart(expiredUploadId, 1, new ByteArrayInputStream(new byte[]{1})))
+                .isInstanceOf(NoSuchUploadException.class);
+    }
+
     private BinaryObjectMetadata createExampleMetadata() {
         return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
     }
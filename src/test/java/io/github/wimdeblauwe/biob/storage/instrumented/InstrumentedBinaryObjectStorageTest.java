@@ -0,0 +1,238 @@
+package io.github.wimdeblauwe.biob.storage.instrumented;
+
+import io.github.wimdeblauwe.biob.BatchResult;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import io.github.wimdeblauwe.biob.storage.localfilesystem.LocalFileSystemBinaryObjectStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InstrumentedBinaryObjectStorageTest {
+
+    private RecordingStorageMetrics metrics;
+    private InstrumentedBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new RecordingStorageMetrics();
+        storage = new InstrumentedBinaryObjectStorage(new InMemoryBinaryObjectStorage(), metrics);
+    }
+
+    @Test
+    void testBackendDefaultsToClassName() {
+        assertThat(storage.getBackend()).isEqualTo("InMemoryBinaryObjectStorage");
+        assertThat(metrics.gauges).containsOnlyKeys(StorageOperation.values());
+    }
+
+    @Test
+    void testStoreRecordsLatencyAndBytesIn() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(metrics.latencies).containsExactly("InMemoryBinaryObjectStorage store true");
+        assertThat(metrics.bytesIn).containsExactly("store 3");
+        assertThat(metrics.errors).isEmpty();
+    }
+
+    @Test
+    void testMultipartUploadIsRecorded() {
+        String uploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2}));
+        storage.uploadPart(uploadId, 2, new ByteArrayInputStream(new byte[]{3}));
+        assertThat(storage.listParts(uploadId)).hasSize(2);
+        storage.completeMultipartUpload(uploadId);
+        storage.abortMultipartUpload(uploadId);
+        storage.expireMultipartUploads(Duration.ofMinutes(1));
+
+        assertThat(metrics.latencies).containsExactly(
+                "InMemoryBinaryObjectStorage initiateMultipartUpload true",
+                "InMemoryBinaryObjectStorage uploadPart true",
+                "InMemoryBinaryObjectStorage uploadPart true",
+                "InMemoryBinaryObjectStorage listParts true",
+                "InMemoryBinaryObjectStorage completeMultipartUpload true",
+                "InMemoryBinaryObjectStorage abortMultipartUpload true",
+                "InMemoryBinaryObjectStorage expireMultipartUploads true");
+        assertThat(metrics.bytesIn).containsExactly("uploadPart 2", "uploadPart 1");
+    }
+
+    @Test
+    void testStoreRecordsBytesInWhenDelegateClosesStream(@TempDir Path basePath) {
+        storage = new InstrumentedBinaryObjectStorage(new LocalFileSystemBinaryObjectStorage(basePath), metrics);
+
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(metrics.bytesIn).containsExactly("store 3");
+        assertThat(metrics.bytesOut).isEmpty();
+    }
+
+    @Test
+    void testRetrieveRecordsBytesOutWhenClosed() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        Optional<BinaryObject> binaryObject = storage.retrieve("images/1");
+        assertThat(binaryObject).isPresent();
+        assertThat(metrics.bytesOut).isEmpty();
+        try (InputStream inputStream = binaryObject.get().getInputStream()) {
+            assertThat(inputStream).hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        assertThat(metrics.latencies).contains("InMemoryBinaryObjectStorage retrieve true");
+        assertThat(metrics.bytesOut).containsExactly("retrieve 3");
+    }
+
+    @Test
+    void testRetrieveRangeAndRetrieveAll() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.retrieve("images/1", 1, 1).get().getInputStream().close();
+        Map<String, BatchResult<Optional<BinaryObject>>> results =
+                storage.retrieveAll(Arrays.asList("images/1", "images/2"));
+        try (InputStream inputStream = results.get("images/1").getValue().get().getInputStream()) {
+            assertThat(inputStream).hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        assertThat(results.get("images/2").getValue()).isEmpty();
+        assertThat(metrics.bytesOut).containsExactly("retrieveRange 0", "retrieveAll 3");
+    }
+
+    @Test
+    void testErrorsAreRecordedByCause() {
+        IOException cause = new IOException("Disk full");
+        storage = new InstrumentedBinaryObjectStorage(new InMemoryBinaryObjectStorage() {
+            @Override
+            public void delete(String filePath) {
+                throw new BinaryObjectStorageException("Unable to delete " + filePath, cause);
+            }
+        }, "failing", metrics);
+
+        assertThatThrownBy(() -> storage.delete("images/1")).hasCause(cause);
+        Map<String, BatchResult<Void>> results = storage.deleteAll(Collections.singletonList("images/1"));
+
+        assertThat(results.get("images/1").isSuccess()).isFalse();
+        assertThat(metrics.latencies).containsExactly("failing delete false", "failing deleteAll true");
+        assertThat(metrics.errors).containsExactly("delete IOException", "deleteAll IOException");
+    }
+
+    @Test
+    void testReadErrorsAreRecorded() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage = new InstrumentedBinaryObjectStorage(new InMemoryBinaryObjectStorage() {
+            @Override
+            public Optional<BinaryObject> retrieve(String filePath) {
+                return Optional.of(new BinaryObject(new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Corrupt");
+                    }
+                }, createExampleMetadata()));
+            }
+        }, metrics);
+
+        InputStream inputStream = storage.retrieve("images/1").get().getInputStream();
+
+        assertThatThrownBy(inputStream::read).isInstanceOf(IOException.class);
+        assertThat(metrics.errors).containsExactly("retrieve IOException");
+    }
+
+    @Test
+    void testInFlightGauge() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream blockingInputStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        };
+
+        CompletableFuture<Void> future = CompletableFuture.runAsync(
+                () -> storage.store("images/1", createExampleMetadata(), blockingInputStream));
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(metrics.gauges.get(StorageOperation.STORE).getAsInt()).isEqualTo(1);
+        release.countDown();
+        future.get(5, TimeUnit.SECONDS);
+
+        assertThat(metrics.gauges.get(StorageOperation.STORE).getAsInt()).isZero();
+    }
+
+    @Test
+    void testListIsInFlightUntilClosed() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries.count()).isEqualTo(1);
+            assertThat(metrics.gauges.get(StorageOperation.LIST).getAsInt()).isEqualTo(1);
+        }
+
+        assertThat(metrics.gauges.get(StorageOperation.LIST).getAsInt()).isZero();
+        assertThat(metrics.latencies).contains("InMemoryBinaryObjectStorage list true");
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
+    }
+
+    private static class RecordingStorageMetrics implements StorageMetrics {
+        private final Map<StorageOperation, IntSupplier> gauges = new EnumMap<>(StorageOperation.class);
+        private final List<String> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> bytesIn = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> bytesOut = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void registerInFlightGauge(String backend, StorageOperation operation, IntSupplier inFlight) {
+            gauges.put(operation, inFlight);
+        }
+
+        @Override
+        public void recordLatency(String backend, StorageOperation operation, long durationNanos, boolean success) {
+            assertThat(durationNanos).isNotNegative();
+            latencies.add(backend + " " + operation.getTagValue() + " " + success);
+        }
+
+        @Override
+        public void recordError(String backend, StorageOperation operation, Throwable cause) {
+            errors.add(operation.getTagValue() + " " + cause.getClass().getSimpleName());
+        }
+
+        @Override
+        public void recordBytesIn(String backend, StorageOperation operation, long bytes, long readNanos) {
+            bytesIn.add(operation.getTagValue() + " " + bytes);
+        }
+
+        @Override
+        public void recordBytesOut(String backend, StorageOperation operation, long bytes) {
+            bytesOut.add(operation.getTagValue() + " " + bytes);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import com.google.common.hash.Hashing;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncLocalFileSystemBinaryObjectStorageTest {
+
+    @TempDir
+    Path basePath;
+    private ExecutorService executorService;
+    private AsyncLocalFileSystemBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+        storage = new AsyncLocalFileSystemBinaryObjectStorage(new LocalFileSystemBinaryObjectStorage(basePath),
+                                                              executorService,
+                                                              16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        byte[] bytes = createRandomBytes(10_000);
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(bytes)).join();
+
+        assertThat(basePath.resolve("images/1")).hasBinaryContent(bytes);
+        assertThat(storage.retrieve("images/1").join())
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(bytes));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+    }
+
+    @Test
+    void testStoreEmptyStream() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[0])).join();
+
+        assertThat(basePath.resolve("images/1")).hasBinaryContent(new byte[0]);
+        assertThat(storage.getMetadata("images/1").join()).hasValue(createExampleMetadata());
+    }
+
+    @Test
+    void testStoreFailsWhenInputStreamFails() {
+        InputStream failingInputStream = new SequenceInputStream(new ByteArrayInputStream(createRandomBytes(100)),
+                                                                 new InputStream() {
+                                                                     @Override
+                                                                     public int read() throws IOException {
+                                                                         throw new IOException("Connection reset");
+                                                                     }
+                                                                 });
+
+        CompletableFuture<Void> future = storage.store("images/1", createExampleMetadata(), failingInputStream);
+
+        assertThatThrownBy(future::join).isInstanceOf(CompletionException.class)
+                                        .hasCauseInstanceOf(BinaryObjectStorageException.class);
+        assertThat(basePath.resolve("images/1")).doesNotExist();
+    }
+
+    @Test
+    void testStoreCalculatesChecksum() {
+        storage = new AsyncLocalFileSystemBinaryObjectStorage(LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                                                                .checksumAlgorithm(ChecksumAlgorithm.SHA256)
+                                                                                                .build(),
+                                                              executorService,
+                                                              16);
+        byte[] bytes = createRandomBytes(1000);
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(bytes)).join();
+
+        assertThat(storage.getMetadata("images/1").join())
+                .hasValue(createExampleMetadata().withChecksum(
+                        new Checksum(ChecksumAlgorithm.SHA256, Hashing.sha256().hashBytes(bytes).toString())));
+    }
+
+    @Test
+    void testHasBinaryObjectAndDelete() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3})).join();
+        assertThat(storage.hasBinaryObject("images/1").join()).isTrue();
+
+        storage.delete("images/1").join();
+
+        assertThat(storage.hasBinaryObject("images/1").join()).isFalse();
+        assertThat(basePath.resolve("images/1")).doesNotExist();
+    }
+
+    private byte[] createRandomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
+    }
+}
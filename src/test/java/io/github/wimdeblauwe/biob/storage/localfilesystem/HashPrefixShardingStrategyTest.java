@@ -0,0 +1,55 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HashPrefixShardingStrategyTest {
+
+    @Test
+    void testInsertsHashDirectoriesBeforeFileName() {
+        HashPrefixShardingStrategy strategy = new HashPrefixShardingStrategy(2, 2);
+
+        String shardedPath = strategy.toShardedPath("users/1/images/1");
+
+        assertThat(shardedPath).matches("users/1/images/[0-9a-f]{2}/[0-9a-f]{2}/1");
+        assertThat(strategy.toShardedPath("users/1/images/1")).isEqualTo(shardedPath);
+        assertThat(strategy.toFilePath(shardedPath)).isEqualTo("users/1/images/1");
+    }
+
+    @Test
+    void testFilePathWithoutDirectory() {
+        HashPrefixShardingStrategy strategy = new HashPrefixShardingStrategy(1, 3);
+
+        String shardedPath = strategy.toShardedPath("1");
+
+        assertThat(shardedPath).matches("[0-9a-f]{3}/1");
+        assertThat(strategy.toFilePath(shardedPath)).isEqualTo("1");
+    }
+
+    @Test
+    void testSpreadsFilesOverDirectories() {
+        HashPrefixShardingStrategy strategy = new HashPrefixShardingStrategy(1, 1);
+
+        Set<String> directories = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String shardedPath = strategy.toShardedPath("images/" + i);
+            directories.add(shardedPath.substring(0, shardedPath.lastIndexOf('/')));
+        }
+
+        assertThat(directories).hasSize(16);
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThatThrownBy(() -> new HashPrefixShardingStrategy(0, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HashPrefixShardingStrategy(2, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HashPrefixShardingStrategy(9, 8)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HashPrefixShardingStrategy(2, 2).toFilePath("1"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
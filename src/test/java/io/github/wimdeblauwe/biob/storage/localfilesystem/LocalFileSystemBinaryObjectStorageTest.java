@@ -1,16 +1,57 @@
 package io.github.wimdeblauwe.biob.storage.localfilesystem;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BatchResult;
 import io.github.wimdeblauwe.biob.BinaryObject;
 import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectStoreRequest;
+import io.github.wimdeblauwe.biob.ByteBufferBinaryObject;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+import io.github.wimdeblauwe.biob.NoSuchUploadException;
+import io.github.wimdeblauwe.biob.UploadedPart;
+import io.github.wimdeblauwe.biob.io.ChecksumMismatchException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class LocalFileSystemBinaryObjectStorageTest {
 
@@ -88,6 +129,1076 @@ class LocalFileSystemBinaryObjectStorageTest {
         assertThat(basePath.resolve("images/1")).doesNotExist();
     }
 
+    @Test
+    void testTransferToFileChannel() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        Path target = basePath.resolve("copy");
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            assertThat(storage.transferTo("images/1", channel)).hasValue(3L);
+        }
+
+        assertThat(Files.readAllBytes(target)).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void testTransferToAfterPartialRead() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BinaryObject binaryObject = storage.retrieve("images/1").orElseThrow(IllegalStateException::new);
+        try {
+            assertThat(binaryObject.getInputStream().read()).isEqualTo(1);
+            assertThat(binaryObject.transferTo(Channels.newChannel(outputStream))).isEqualTo(2);
+        } finally {
+            binaryObject.getInputStream().close();
+        }
+
+        assertThat(outputStream.toByteArray()).containsExactly(2, 3);
+    }
+
+    @Test
+    void testTransferToIfNotKnown() {
+        assertThat(storage.transferTo("unknown/path/1", Channels.newChannel(new ByteArrayOutputStream()))).isEmpty();
+    }
+
+    @Test
+    void testRetrieveRange() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+
+        assertThat(storage.retrieve("images/1", 1, 3))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{2, 3, 4}));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+    }
+
+    @Test
+    void testRetrieveRangeBeyondEnd() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+
+        assertThat(storage.retrieve("images/1", 3, 10))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5})));
+        assertThat(storage.retrieve("images/1", 10, 10))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void testRetrieveRangeIfNotKnown() {
+        assertThat(storage.retrieve("unknown/path/1", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void testTransferToRange() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BinaryObject binaryObject = storage.retrieve("images/1", 1, 3).orElseThrow(IllegalStateException::new);
+        try {
+            assertThat(binaryObject.transferTo(Channels.newChannel(outputStream))).isEqualTo(3);
+        } finally {
+            binaryObject.getInputStream().close();
+        }
+
+        assertThat(outputStream.toByteArray()).containsExactly(2, 3, 4);
+    }
+
+    @Test
+    void testStoreAllAndRetrieveAll() {
+        List<BinaryObjectStoreRequest> requests = new ArrayList<>();
+        List<String> filePaths = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String filePath = "entity-" + (i % 4) + "/images/" + i;
+            filePaths.add(filePath);
+            requests.add(new BinaryObjectStoreRequest(filePath, createExampleMetadata(),
+                                                      new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        }
+
+        Map<String, BatchResult<Void>> storeResults = storage.storeAll(requests);
+        assertThat(storeResults.keySet()).containsExactlyElementsOf(filePaths);
+        assertThat(storeResults.values()).allMatch(BatchResult::isSuccess);
+
+        Map<String, BatchResult<Optional<BinaryObject>>> retrieveResults = storage.retrieveAll(filePaths);
+        assertThat(retrieveResults.keySet()).containsExactlyElementsOf(filePaths);
+        retrieveResults.values().forEach(result -> assertThat(result.getValue())
+                .hasValueSatisfying(binaryObject -> {
+                    try {
+                        assertThat(binaryObject.getInputStream())
+                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                    } finally {
+                        closeQuietly(binaryObject);
+                    }
+                }));
+    }
+
+    @Test
+    void testStoreAllReportsFailuresPerItem() {
+        Map<String, BatchResult<Void>> results = storage.storeAll(Arrays.asList(
+                new BinaryObjectStoreRequest("images/1", createExampleMetadata(), createFailingInputStream()),
+                new BinaryObjectStoreRequest("images/2", createExampleMetadata(),
+                                             new ByteArrayInputStream(new byte[]{1, 2, 3}))));
+
+        assertThat(results.get("images/1").isSuccess()).isFalse();
+        assertThat(results.get("images/1").getFailure()).isInstanceOf(BinaryObjectStorageException.class);
+        assertThat(results.get("images/2").isSuccess()).isTrue();
+        assertThat(storage.hasBinaryObject("images/2")).isTrue();
+    }
+
+    @Test
+    void testStoreAllRejectsDuplicateFilePaths() {
+        assertThatThrownBy(() -> storage.storeAll(Arrays.asList(
+                new BinaryObjectStoreRequest("images/1", createExampleMetadata(),
+                                             new ByteArrayInputStream(new byte[]{1, 2, 3})),
+                new BinaryObjectStoreRequest("images/1", createExampleMetadata(),
+                                             new ByteArrayInputStream(new byte[]{4, 5, 6})))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testRetrieveAllRetrievesDuplicatePathOnce() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        Map<String, BatchResult<Optional<BinaryObject>>> results =
+                storage.retrieveAll(Arrays.asList("images/1", "unknown/1", "images/1"));
+
+        assertThat(results).containsOnlyKeys("images/1", "unknown/1");
+        assertThat(results.keySet()).containsExactly("images/1", "unknown/1");
+        try (InputStream inputStream = results.get("images/1").getValue().get().getInputStream()) {
+            assertThat(ByteStreams.toByteArray(inputStream)).containsExactly(1, 2, 3);
+        }
+        assertThat(results.get("unknown/1").getValue()).isEmpty();
+    }
+
+    @Test
+    void testGetMetadataAllAndDeleteAll() {
+        storage.store("users/1/images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("users/2/images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        Map<String, BatchResult<Optional<BinaryObjectMetadata>>> metadata =
+                storage.getMetadataAll(Arrays.asList("users/1/images/1", "users/2/images/2", "unknown/path/1"));
+        assertThat(metadata.get("users/1/images/1").getValue()).hasValue(createExampleMetadata());
+        assertThat(metadata.get("users/2/images/2").getValue()).hasValue(createExampleMetadata());
+        assertThat(metadata.get("unknown/path/1").getValue()).isEmpty();
+
+        Map<String, BatchResult<Void>> deleteResults =
+                storage.deleteAll(Arrays.asList("users/1/images/1", "users/2/images/2"));
+        assertThat(deleteResults.values()).allMatch(BatchResult::isSuccess);
+        assertThat(storage.hasBinaryObject("users/1/images/1")).isFalse();
+        assertThat(storage.hasBinaryObject("users/2/images/2")).isFalse();
+    }
+
+    @Test
+    void testStoreWritesBinaryMetadataFile() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(basePath.resolve("images/1-metadata.bin")).exists();
+        assertThat(basePath.resolve("images/1-metadata.properties")).doesNotExist();
+    }
+
+    @Test
+    void testGetMetadataMigratesLegacyMetadataFile() throws Exception {
+        storeWithLegacyMetadata("images/1");
+
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+        assertThat(basePath.resolve("images/1-metadata.bin")).exists();
+        assertThat(basePath.resolve("images/1-metadata.properties")).doesNotExist();
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+    }
+
+    @Test
+    void testMigrateMetadata() throws Exception {
+        storeWithLegacyMetadata("images/1");
+        storeWithLegacyMetadata("images/2");
+        storage.store("images/3", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.migrateMetadata()).isEqualTo(2);
+
+        assertThat(basePath.resolve("images/1-metadata.bin")).exists();
+        assertThat(basePath.resolve("images/2-metadata.bin")).exists();
+        assertThat(basePath.resolve("images/1-metadata.properties")).doesNotExist();
+        assertThat(storage.retrieve("images/2"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getMetadata())
+                        .isEqualTo(createExampleMetadata()));
+    }
+
+    @Test
+    void testDeleteRemovesMetadataFile() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.delete("images/1");
+
+        assertThat(basePath.resolve("images/1-metadata.bin")).doesNotExist();
+    }
+
+    @Test
+    void testMetadataIndexServesMetadataWithoutFileAccess() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .metadataIndex(true)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Files.delete(basePath.resolve("images/1-metadata.bin"));
+
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+
+        storage.delete("images/1");
+        assertThat(storage.getMetadata("images/1")).isEmpty();
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testListDoesNotChangeMetadataIndexOrFiles() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .metadataIndex(true)
+                                                    .build();
+        storeWithLegacyMetadata("images/1");
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries).containsExactly(new BinaryObjectSummary("images/1", createExampleMetadata()));
+        }
+
+        assertThat(basePath.resolve("images/1-metadata.properties")).exists();
+        assertThat(basePath.resolve("images/1-metadata.bin")).doesNotExist();
+        Files.delete(basePath.resolve("images/1"));
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testDeletePrefixOnlyRemovesPathsBelowPrefixFromMetadataIndex() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .metadataIndex(true)
+                                                    .build();
+        for (String filePath : new String[]{"users/1/images/1", "users/10/images/1", "users/1-old"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        storage.deletePrefix("users/1");
+
+        assertThat(storage.hasBinaryObject("users/1/images/1")).isFalse();
+        // Served from the index
+        Files.delete(basePath.resolve("users/10/images/1-metadata.bin"));
+        Files.delete(basePath.resolve("users/1-old-metadata.bin"));
+        assertThat(storage.getMetadata("users/10/images/1")).hasValue(createExampleMetadata());
+        assertThat(storage.getMetadata("users/1-old")).hasValue(createExampleMetadata());
+    }
+
+    @Test
+    void testStoreOverwritesExistingBinaryObject() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        BinaryObjectMetadata newMetadata = new BinaryObjectMetadata(2, "other.jpg", "image/jpg");
+        storage.store("images/1", newMetadata, new ByteArrayInputStream(new byte[]{4, 5}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5}));
+                                        assertThat(binaryObject.getMetadata()).isEqualTo(newMetadata);
+                                    });
+    }
+
+    @Test
+    void testStoreLeavesNoTemporaryFiles() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        try (Stream<Path> paths = Files.list(basePath.resolve("images"))) {
+            assertThat(paths.map(path -> path.getFileName().toString()))
+                    .containsExactlyInAnyOrder("1", "1-metadata.bin");
+        }
+    }
+
+    @Test
+    void testFailedStoreLeavesNothingBehind() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThatThrownBy(() -> storage.store("images/1", createExampleMetadata(), createFailingInputStream()))
+                .isInstanceOf(BinaryObjectStorageException.class);
+        assertThatThrownBy(() -> storage.store("images/2", createExampleMetadata(), createFailingInputStream()))
+                .isInstanceOf(BinaryObjectStorageException.class);
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        try (Stream<Path> paths = Files.list(basePath.resolve("images"))) {
+            assertThat(paths.map(path -> path.getFileName().toString()))
+                    .containsExactlyInAnyOrder("1", "1-metadata.bin");
+        }
+    }
+
+    @Test
+    void testRecoverRemovesLeftoverFiles() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Files.write(basePath.resolve("images/.biob-tmp-1234"), new byte[]{1});
+        Files.write(basePath.resolve("images/2-metadata.bin"), new byte[]{1});
+        Files.write(basePath.resolve("images/3-metadata.properties"), new byte[]{1});
+
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .recoverOnStartup(true)
+                                                    .build();
+
+        try (Stream<Path> paths = Files.list(basePath.resolve("images"))) {
+            assertThat(paths.map(path -> path.getFileName().toString()))
+                    .containsExactlyInAnyOrder("1", "1-metadata.bin");
+        }
+        assertThat(storage.recover()).isEqualTo(0);
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+    }
+
+    @Test
+    void testRecoverFinishesCommittedStores() throws Exception {
+        BinaryObjectMetadata newMetadata = new BinaryObjectMetadata(5, "new.jpg", "image/jpg");
+        for (String filePath : new String[]{"images/1", "images/2", "images/3"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+        Path images = basePath.resolve("images");
+        // Crashed after committing, before moving the files into place
+        Files.write(images.resolve(".biob-tmp-publish-1"), new byte[]{4, 5, 6, 7, 8});
+        writeMetadata(images.resolve(".biob-tmp-publish-1-metadata.bin"), newMetadata);
+        // Crashed after moving the metadata into place
+        Files.write(images.resolve(".biob-tmp-publish-2"), new byte[]{4, 5, 6, 7, 8});
+        writeMetadata(images.resolve("2-metadata.bin"), newMetadata);
+        // Crashed before committing
+        writeMetadata(images.resolve(".biob-tmp-publish-3-metadata.bin"), newMetadata);
+
+        assertThat(storage.recover()).isEqualTo(4);
+
+        for (String filePath : new String[]{"images/1", "images/2"}) {
+            assertThat(storage.getMetadata(filePath)).hasValue(newMetadata);
+            assertThat(storage.retrieve(filePath))
+                    .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                            .hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5, 6, 7, 8})));
+        }
+        assertThat(storage.getMetadata("images/3")).hasValue(createExampleMetadata());
+        try (Stream<Path> paths = Files.list(images)) {
+            assertThat(paths.map(path -> path.getFileName().toString()))
+                    .allMatch(name -> !name.startsWith(".biob"));
+        }
+    }
+
+    @Test
+    void testReadersNeverMixVersions() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                                                    .verifyChecksums(true)
+                                                    .build();
+        byte[][] versions = {new byte[]{1, 2, 3}, new byte[]{4, 5, 6, 7, 8}};
+        storage.store("images/1", new BinaryObjectMetadata(3, "1.jpg", null), new ByteArrayInputStream(versions[0]));
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executorService.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    byte[] version = versions[i % 2];
+                    storage.store("images/1", new BinaryObjectMetadata(version.length, "1.jpg", null),
+                                  new ByteArrayInputStream(version));
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                readers.add(executorService.submit(() -> {
+                    while (!writer.isDone()) {
+                        BinaryObject binaryObject = storage.retrieve("images/1").get();
+                        try (InputStream inputStream = binaryObject.getInputStream()) {
+                            assertThat(ByteStreams.toByteArray(inputStream))
+                                    .hasSize((int) binaryObject.getMetadata().getFileSize());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            writer.get(30, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFsyncPerFile() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .fsyncPolicy(FsyncPolicy.PER_FILE)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    void testFsyncBatchedWithConcurrentStores() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .fsyncPolicy(FsyncPolicy.BATCHED)
+                                                    .build();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String filePath = "images/" + i;
+                futures.add(executorService.submit(() -> storage.store(
+                        filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}))));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        for (int i = 0; i < 64; i++) {
+            assertThat(storage.getMetadata("images/" + i)).hasValue(createExampleMetadata());
+        }
+    }
+
+    @Test
+    void testShardingStrategy() {
+        ShardingStrategy shardingStrategy = ShardingStrategy.hashPrefix(2, 2);
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .shardingStrategy(shardingStrategy)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        Path shardedPath = basePath.resolve(shardingStrategy.toShardedPath("images/1"));
+        assertThat(shardedPath).exists();
+        assertThat(basePath.resolve("images/1")).doesNotExist();
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+
+        storage.delete("images/1");
+        assertThat(shardedPath).doesNotExist();
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testReshard() {
+        for (int i = 0; i < 10; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+        ShardingStrategy shardingStrategy = ShardingStrategy.hashPrefix(1, 2);
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .shardingStrategy(shardingStrategy)
+                                                    .previousShardingStrategy(ShardingStrategy.none())
+                                                    .build();
+
+        // Readable at their previous location before resharding
+        assertThat(storage.getMetadata("images/3")).hasValue(createExampleMetadata());
+        storage.store("images/4", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        assertThat(basePath.resolve("images/4")).doesNotExist();
+        storage.delete("images/5");
+
+        assertThat(storage.reshard()).isEqualTo(8);
+        assertThat(storage.reshard()).isEqualTo(0);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(basePath.resolve("images/" + i)).doesNotExist();
+            assertThat(basePath.resolve("images/" + i + "-metadata.bin")).doesNotExist();
+        }
+        assertThat(basePath.resolve(shardingStrategy.toShardedPath("images/3"))).exists();
+        assertThat(storage.getMetadata("images/3")).hasValue(createExampleMetadata());
+        assertThat(storage.hasBinaryObject("images/5")).isFalse();
+        assertThat(storage.retrieve("images/4"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5, 6})));
+
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .previousShardingStrategy(shardingStrategy)
+                                                    .build();
+        assertThat(storage.reshard()).isEqualTo(9);
+        assertThat(basePath.resolve("images/3")).exists();
+        assertThat(storage.getMetadata("images/3")).hasValue(createExampleMetadata());
+    }
+
+    @Test
+    void testReshardWithoutPreviousStrategy() {
+        assertThatThrownBy(() -> storage.reshard()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testMemoryMappedReads() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .memoryMappedReads(16 * 1024 * 1024)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        BinaryObject first = storage.retrieve("images/1").get();
+        BinaryObject second = storage.retrieve("images/1", 1, 1).get();
+
+        assertThat(first).isInstanceOf(ByteBufferBinaryObject.class);
+        assertThat(((ByteBufferBinaryObject) first).getByteBuffer()).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        assertThat(first.getInputStream()).hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThat(second.getInputStream()).hasSameContentAs(new ByteArrayInputStream(new byte[]{2}));
+        first.getInputStream().close();
+        second.getInputStream().close();
+        assertThat(storage.getMappedFileCacheStats()).hasValueSatisfying(stats -> {
+            assertThat(stats.missCount()).isEqualTo(1);
+            assertThat(stats.hitCount()).isEqualTo(1);
+        });
+        assertThat(storage.getMappedBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void testMemoryMappedReadsSeeOverwritesAndDeletes() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .memoryMappedReads(16 * 1024 * 1024)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        BinaryObject original = storage.retrieve("images/1").get();
+
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+
+        // A binary object that was retrieved before keeps reading the original bytes
+        assertThat(original.getInputStream()).hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        original.getInputStream().close();
+        BinaryObject overwritten = storage.retrieve("images/1").get();
+        assertThat(overwritten.getInputStream()).hasSameContentAs(new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        overwritten.getInputStream().close();
+
+        storage.delete("images/1");
+        assertThat(storage.retrieve("images/1")).isEmpty();
+        assertThat(storage.getMappedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    void testMemoryMappedReadsReleaseEvictedMappings() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .memoryMappedReads(16 * 1024)
+                                                    .build();
+        for (int i = 0; i < 100; i++) {
+            storage.store("images/" + i, new BinaryObjectMetadata(1000, "test.jpg", "image/jpg"),
+                          new ByteArrayInputStream(new byte[1000]));
+        }
+        BinaryObject held = storage.retrieve("images/0").get();
+
+        for (int i = 1; i < 100; i++) {
+            storage.retrieve("images/" + i).get().getInputStream().close();
+        }
+
+        // The mapping of the binary object that is still being read stays valid after it is evicted
+        assertThat(storage.getMappedBytes()).isLessThanOrEqualTo(16 * 1024 + 1000);
+        assertThat(ByteStreams.toByteArray(held.getInputStream())).hasSize(1000);
+        held.getInputStream().close();
+        assertThat(storage.getMappedBytes()).isLessThanOrEqualTo(16 * 1024);
+    }
+
+    @Test
+    void testMemoryMappedReadsSkipLargeFiles() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .memoryMappedReads(16)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> {
+                    assertThat(binaryObject).isNotInstanceOf(ByteBufferBinaryObject.class);
+                    closeQuietly(binaryObject);
+                });
+        assertThat(storage.getMappedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    void testExactKeyIndexAnswersMissesWithoutFileAccess() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .keyIndex(KeyIndexType.EXACT)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images-old/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        // A file that is added behind the back of the storage is not seen
+        Files.copy(basePath.resolve("images/1"), basePath.resolve("images/3"));
+        Files.copy(basePath.resolve("images/1-metadata.bin"), basePath.resolve("images/3-metadata.bin"));
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("images/3")).isFalse();
+        assertThat(storage.retrieve("images/3")).isEmpty();
+        assertThat(storage.getMetadata("images/3")).isEmpty();
+
+        storage.delete("images");
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+        assertThat(storage.hasBinaryObject("images-old/1")).isTrue();
+    }
+
+    @Test
+    void testKeyIndexIsBuiltFromExistingFiles() {
+        ShardingStrategy shardingStrategy = ShardingStrategy.hashPrefix(2, 2);
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .shardingStrategy(shardingStrategy)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        for (KeyIndexType keyIndexType : KeyIndexType.values()) {
+            storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                        .shardingStrategy(shardingStrategy)
+                                                        .keyIndex(keyIndexType)
+                                                        .build();
+            assertThat(storage.hasBinaryObject("images/1")).isTrue();
+            assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+            assertThat(storage.hasBinaryObject("images/2")).isFalse();
+        }
+    }
+
+    @Test
+    void testBloomFilterKeyIndex() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .keyIndex(KeyIndexType.BLOOM_FILTER)
+                                                    .bloomFilterSizing(100, 0.001)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.retrieve("images/2")).isEmpty();
+
+        // Deleted paths stay in the filter, so the filesystem is checked for them
+        storage.delete("images/1");
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testKeyIndexSnapshot() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .keyIndex(KeyIndexType.EXACT)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.saveKeyIndex();
+        assertThat(basePath.resolve(".biob-key-index")).exists();
+        // Not in the snapshot, so not seen by a storage that is built from the snapshot
+        Files.copy(basePath.resolve("images/1"), basePath.resolve("images/2"));
+
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .keyIndex(KeyIndexType.EXACT)
+                                                    .build();
+        assertThat(basePath.resolve(".biob-key-index")).doesNotExist();
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testKeyIndexSnapshotIsDeletedWhenStorageChanges() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .keyIndex(KeyIndexType.BLOOM_FILTER)
+                                                    .build();
+        storage.saveKeyIndex();
+        assertThat(basePath.resolve(".biob-key-index")).exists();
+
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        assertThat(basePath.resolve(".biob-key-index")).doesNotExist();
+
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .keyIndex(KeyIndexType.BLOOM_FILTER)
+                                                    .build();
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+    }
+
+    @Test
+    void testSaveKeyIndexWithoutKeyIndex() {
+        assertThatThrownBy(() -> storage.saveKeyIndex()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testDeletePrefix() {
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                storage.store("users/1/images/" + i + "/" + j, createExampleMetadata(),
+                              new ByteArrayInputStream(new byte[]{1, 2, 3}));
+            }
+        }
+        storage.store("users/10", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        DeletePrefixResult result = storage.deletePrefix("users/1");
+
+        assertThat(result.isSuccessful()).isTrue();
+        // The payload and metadata file of each binary object
+        assertThat(result.getDeletedFileCount()).isEqualTo(200);
+        assertThat(storage.hasBinaryObject("users/1/images/5/5")).isFalse();
+        assertThat(storage.hasBinaryObject("users/10")).isTrue();
+        assertThat(basePath.resolve("users/1")).doesNotExist();
+    }
+
+    @Test
+    void testDeletePrefixWithShardingStrategy() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .shardingStrategy(ShardingStrategy.hashPrefix(2, 2))
+                                                    .keyIndex(KeyIndexType.EXACT)
+                                                    .build();
+        storage.store("users/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("users/1/images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("users/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.deletePrefix("users/1").getDeletedFileCount()).isEqualTo(4);
+
+        assertThat(storage.hasBinaryObject("users/1/images/1")).isFalse();
+        assertThat(storage.hasBinaryObject("users/2")).isTrue();
+    }
+
+    @Test
+    void testDeletePrefixReportsFailures() throws Exception {
+        assumeFalse("root".equals(System.getProperty("user.name")), "root can delete read-only files");
+        storage.store("users/1/images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("users/1/documents/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Path images = basePath.resolve("users/1/images");
+        assumeTrue(images.toFile().setWritable(false));
+        try {
+            DeletePrefixResult result = storage.deletePrefix("users/1");
+
+            assertThat(result.isSuccessful()).isFalse();
+            assertThat(result.getFailures()).containsOnlyKeys(images.resolve("1"), images.resolve("1-metadata.bin"));
+            assertThat(basePath.resolve("users/1/documents")).doesNotExist();
+            assertThat(storage.hasBinaryObject("users/1/images/1")).isTrue();
+        } finally {
+            images.toFile().setWritable(true);
+        }
+    }
+
+    @Test
+    void testDeletePrefixAsync() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .metadataIndex(true)
+                                                    .deletionPool(new ForkJoinPool(2))
+                                                    .build();
+        for (int i = 0; i < 10; i++) {
+            storage.store("users/1/images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        CompletableFuture<DeletePrefixResult> future = storage.deletePrefixAsync("users/1");
+
+        assertThat(storage.hasBinaryObject("users/1/images/1")).isFalse();
+        assertThat(storage.getMetadata("users/1/images/1")).isEmpty();
+        assertThat(basePath.resolve("users/1")).doesNotExist();
+        DeletePrefixResult result = future.get(10, TimeUnit.SECONDS);
+        assertThat(result.getDeletedFileCount()).isEqualTo(20);
+        try (Stream<Path> trash = Files.list(basePath.resolve(".biob-trash"))) {
+            assertThat(trash).isEmpty();
+        }
+    }
+
+    @Test
+    void testRecoverEmptiesTrash() throws Exception {
+        Path trashed = basePath.resolve(".biob-trash/1234/images");
+        Files.createDirectories(trashed);
+        Files.write(trashed.resolve("1"), new byte[]{1, 2, 3});
+        Files.write(trashed.resolve("1-metadata.bin"), new byte[]{1, 2, 3});
+
+        assertThat(storage.recover()).isEqualTo(2);
+        assertThat(basePath.resolve(".biob-trash")).doesNotExist();
+    }
+
+    @Test
+    void testChecksumIsCalculatedWhileStoring() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        BinaryObjectMetadata expected = createExampleMetadata().withChecksum(
+                new Checksum(ChecksumAlgorithm.CRC32C, Hashing.crc32c().hashBytes(new byte[]{1, 2, 3}).toString()));
+        assertThat(storage.getMetadata("images/1")).hasValue(expected);
+        // The checksum is kept in the metadata file
+        assertThat(new LocalFileSystemBinaryObjectStorage(basePath).getMetadata("images/1")).hasValue(expected);
+    }
+
+    @Test
+    void testStoreFailsWhenGivenChecksumDoesNotMatch() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .checksumAlgorithm(ChecksumAlgorithm.SHA256)
+                                                    .build();
+        BinaryObjectMetadata metadata = createExampleMetadata().withChecksum(
+                new Checksum(ChecksumAlgorithm.SHA256, Hashing.sha256().hashBytes(new byte[]{1, 2, 4}).toString()));
+
+        assertThatThrownBy(() -> storage.store("images/1", metadata, new ByteArrayInputStream(new byte[]{1, 2, 3})))
+                .isInstanceOf(BinaryObjectStorageException.class)
+                .hasCauseInstanceOf(ChecksumMismatchException.class);
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testVerifyChecksumsFailsStreamOfCorruptBinaryObject() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                                                    .verifyChecksums(true)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Files.write(basePath.resolve("images/2"), new byte[]{1, 2, 4});
+
+        assertThat(ByteStreams.toByteArray(storage.retrieve("images/1").get().getInputStream()))
+                .containsExactly(1, 2, 3);
+        InputStream corrupt = storage.retrieve("images/2").get().getInputStream();
+        assertThatThrownBy(() -> ByteStreams.toByteArray(corrupt)).isInstanceOf(ChecksumMismatchException.class);
+        corrupt.close();
+        // A range can not be verified
+        try (InputStream range = storage.retrieve("images/2", 1, 1).get().getInputStream()) {
+            assertThat(ByteStreams.toByteArray(range)).containsExactly(2);
+        }
+    }
+
+    @Test
+    void testVerifyChecksumsWithMemoryMappedReads() throws Exception {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                                                    .verifyChecksums(true)
+                                                    .memoryMappedReads(1024 * 1024)
+                                                    .build();
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        Files.write(basePath.resolve("images/1"), new byte[]{1, 2, 4});
+
+        assertThatThrownBy(() -> storage.retrieve("images/1"))
+                .isInstanceOf(BinaryObjectStorageException.class)
+                .hasCauseInstanceOf(ChecksumMismatchException.class);
+    }
+
+    private InputStream createFailingInputStream() {
+        return new SequenceInputStream(new ByteArrayInputStream(new byte[]{4, 5}), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        });
+    }
+
+    private void closeQuietly(BinaryObject binaryObject) {
+        try {
+            binaryObject.getInputStream().close();
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    private void storeWithLegacyMetadata(String filePath) throws Exception {
+        Path targetPath = basePath.resolve(filePath);
+        Files.createDirectories(targetPath.getParent());
+        Files.write(targetPath, new byte[]{1, 2, 3});
+        Properties properties = new Properties();
+        properties.setProperty("fileSize", "3");
+        properties.setProperty("originalFilename", "test.jpg");
+        properties.setProperty("contentType", "image/jpg");
+        try (OutputStream outputStream = Files.newOutputStream(
+                targetPath.resolveSibling(targetPath.getFileName() + "-metadata.properties"))) {
+            properties.store(outputStream, "");
+        }
+    }
+
+    @Test
+    void testList() {
+        for (String filePath : new String[]{"videos/1", "images/2", "images/1", "images-old/1"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries).containsExactlyInAnyOrder(new BinaryObjectSummary("images/1", createExampleMetadata()),
+                                                 new BinaryObjectSummary("images/2", createExampleMetadata()));
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath))
+                    .containsExactlyInAnyOrder("images-old/1", "images/1", "images/2");
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries).hasSize(4);
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("documents/")) {
+            assertThat(summaries).isEmpty();
+        }
+    }
+
+    @Test
+    void testListWithShardingStrategy() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .shardingStrategy(ShardingStrategy.hashPrefix(2, 2))
+                                                    .previousShardingStrategy(ShardingStrategy.none())
+                                                    .keyIndex(KeyIndexType.EXACT)
+                                                    .build();
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.saveKeyIndex();
+        Files.createFile(basePath.resolve("images/.biob-tmp-leftover"));
+
+        // images/1 is still at its location according to the previous strategy
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath)).containsExactlyInAnyOrder("images/1",
+                                                                                                  "images/2");
+        }
+        storage.reshard();
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath)).containsExactlyInAnyOrder("images/1",
+                                                                                                  "images/2");
+        }
+    }
+
+    @Test
+    void testMultipartUpload() throws Exception {
+        storage.store("videos/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(6, "movie.mp4", "video/mp4");
+        String uploadId = storage.initiateMultipartUpload("videos/1", metadata);
+
+        storage.uploadPart(uploadId, 3, new ByteArrayInputStream(new byte[]{6}));
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2}));
+        storage.uploadPart(uploadId, 2, new ByteArrayInputStream(new byte[]{3, 4, 5}));
+
+        assertThat(storage.listParts(uploadId)).containsExactly(new UploadedPart(1, 2),
+                                                                new UploadedPart(2, 3),
+                                                                new UploadedPart(3, 1));
+        // Not visible until the upload is completed
+        assertThat(readContent("videos/1")).containsExactly(1, 2, 3);
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath)).containsExactly("videos/1");
+        }
+
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(readContent("videos/1")).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThat(storage.getMetadata("videos/1")).hasValue(metadata);
+        assertThatThrownBy(() -> storage.listParts(uploadId)).isInstanceOf(NoSuchUploadException.class);
+        assertThatThrownBy(() -> storage.completeMultipartUpload(uploadId)).isInstanceOf(NoSuchUploadException.class);
+        try (Stream<Path> files = Files.list(basePath.resolve(MultipartUploads.DIRECTORY_NAME))) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void testMultipartUploadWithConcurrentParts() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        new Random(42).nextBytes(content);
+        int partSize = 4096;
+        String uploadId = storage.initiateMultipartUpload("videos/1", new BinaryObjectMetadata(content.length,
+                                                                                                "movie.mp4",
+                                                                                                "video/mp4"));
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int partNumber = content.length / partSize; partNumber >= 1; partNumber--) {
+                int offset = (partNumber - 1) * partSize;
+                int finalPartNumber = partNumber;
+                futures.add(executorService.submit(() -> storage.uploadPart(
+                        uploadId, finalPartNumber, new ByteArrayInputStream(content, offset, partSize))));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(readContent("videos/1")).isEqualTo(content);
+    }
+
+    @Test
+    void testMultipartUploadReplacesUploadedPart() {
+        String uploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{9, 9}));
+        storage.uploadPart(uploadId, 2, new ByteArrayInputStream(new byte[]{3}));
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2}));
+
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(readContent("images/1")).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void testMultipartUploadWithoutParts() {
+        String uploadId = storage.initiateMultipartUpload("images/1", new BinaryObjectMetadata(0, "empty", null));
+
+        assertThat(storage.listParts(uploadId)).isEmpty();
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(readContent("images/1")).isEmpty();
+    }
+
+    @Test
+    void testMultipartUploadSurvivesRestart() {
+        String uploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2}));
+
+        storage = new LocalFileSystemBinaryObjectStorage(basePath);
+        assertThat(storage.listParts(uploadId)).containsExactly(new UploadedPart(1, 2));
+        storage.uploadPart(uploadId, 2, new ByteArrayInputStream(new byte[]{3}));
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(readContent("images/1")).containsExactly(1, 2, 3);
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+    }
+
+    @Test
+    void testMultipartUploadWithChecksum() {
+        storage = LocalFileSystemBinaryObjectStorage.builder(basePath)
+                                                    .checksumAlgorithm(ChecksumAlgorithm.SHA256)
+                                                    .build();
+        String uploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        storage.uploadPart(uploadId, 2, new ByteArrayInputStream(new byte[]{3}));
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2}));
+
+        storage.completeMultipartUpload(uploadId);
+
+        assertThat(storage.getMetadata("images/1").flatMap(BinaryObjectMetadata::getChecksum))
+                .hasValue(new Checksum(ChecksumAlgorithm.SHA256,
+                                       Hashing.sha256().hashBytes(new byte[]{1, 2, 3}).toString()));
+    }
+
+    @Test
+    void testAbortMultipartUpload() throws Exception {
+        String uploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.abortMultipartUpload(uploadId);
+        storage.abortMultipartUpload(uploadId);
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThatThrownBy(() -> storage.uploadPart(uploadId, 2, new ByteArrayInputStream(new byte[]{4})))
+                .isInstanceOf(NoSuchUploadException.class);
+        try (Stream<Path> files = Files.list(basePath.resolve(MultipartUploads.DIRECTORY_NAME))) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void testExpireMultipartUploads() {
+        String uploadId = storage.initiateMultipartUpload("images/1", createExampleMetadata());
+        storage.uploadPart(uploadId, 1, new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.expireMultipartUploads(Duration.ofHours(1))).isZero();
+        assertThat(storage.listParts(uploadId)).hasSize(1);
+
+        assertThat(storage.expireMultipartUploads(Duration.ZERO)).isEqualTo(1);
+        assertThatThrownBy(() -> storage.listParts(uploadId)).isInstanceOf(NoSuchUploadException.class);
+    }
+
+    @Test
+    void testUnknownMultipartUpload() {
+        assertThatThrownBy(() -> storage.uploadPart("unknown", 1, new ByteArrayInputStream(new byte[]{1})))
+                .isInstanceOf(NoSuchUploadException.class);
+        assertThatThrownBy(() -> storage.listParts("../images"))
+                .isInstanceOf(NoSuchUploadException.class);
+        assertThatThrownBy(() -> storage.completeMultipartUpload(UUID.randomUUID().toString()))
+                .isInstanceOf(NoSuchUploadException.class);
+    }
+
+    private byte[] readContent(String filePath) {
+        return storage.retrieve(filePath)
+                      .map(binaryObject -> {
+                          try (InputStream inputStream = binaryObject.getInputStream()) {
+                              return ByteStreams.toByteArray(inputStream);
+                          } catch (IOException e) {
+                              throw new UncheckedIOException(e);
+                          }
+                      })
+                      .orElseThrow(() -> new AssertionError("No binary object at " + filePath));
+    }
+
+    private static void writeMetadata(Path metadataFile, BinaryObjectMetadata metadata) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(metadataFile)) {
+            BinaryMetadataFormat.write(metadata, outputStream);
+        }
+    }
+
     private BinaryObjectMetadata createExampleMetadata() {
         return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
     }
@@ -0,0 +1,24 @@
+package io.github.wimdeblauwe.biob.storage.localfilesystem;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedFileCacheTest {
+
+    @Test
+    void testIsMappable() {
+        MappedFileCache cache = new MappedFileCache(16 * 1024);
+
+        assertThat(cache.isMappable(1024)).isTrue();
+        assertThat(cache.isMappable(1025)).isFalse();
+    }
+
+    @Test
+    void testFilesLargerThanAByteBufferAreNotMappable() {
+        MappedFileCache cache = new MappedFileCache(1024L * 1024 * 1024 * 1024);
+
+        assertThat(cache.isMappable(Integer.MAX_VALUE)).isTrue();
+        assertThat(cache.isMappable(Integer.MAX_VALUE + 1L)).isFalse();
+    }
+}
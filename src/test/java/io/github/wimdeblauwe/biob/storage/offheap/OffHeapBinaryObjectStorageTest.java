@@ -0,0 +1,181 @@
+package io.github.wimdeblauwe.biob.storage.offheap;
+
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapBinaryObjectStorageTest {
+
+    private OffHeapBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new OffHeapBinaryObjectStorage();
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+        assertThat(storage.getSizeInBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void testStoreWhenFileSizeInMetadataIsTooSmall() {
+        byte[] bytes = new byte[100_000];
+        new Random(42).nextBytes(bytes);
+        storage.store("images/1", new BinaryObjectMetadata(10, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(bytes));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(bytes)));
+        assertThat(storage.getSizeInBytes()).isEqualTo(100_000);
+    }
+
+    @Test
+    void testStoreWhenFileSizeInMetadataIsTooLarge() {
+        storage.store("images/1", new BinaryObjectMetadata(100_000, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        assertThat(storage.getSizeInBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void testStoreWhenFileSizeInMetadataIsHuge() {
+        storage.store("images/1", new BinaryObjectMetadata(Integer.MAX_VALUE, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        assertThat(storage.getSizeInBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void testStoreLargerThanOneChunk() {
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(bytes);
+        storage.store("images/1", new BinaryObjectMetadata(bytes.length, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(bytes));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(bytes)));
+        assertThat(storage.getSizeInBytes()).isEqualTo(bytes.length);
+    }
+
+    @Test
+    void testRetrieveRangeAcrossChunks() {
+        byte[] bytes = new byte[3 * 1024 * 1024 + 10];
+        new Random(42).nextBytes(bytes);
+        // Without a size hint, so the chunks grow up to their maximum size
+        storage.store("images/1", new BinaryObjectMetadata(0, "test.jpg", "image/jpg"),
+                      new ByteArrayInputStream(bytes));
+
+        int offset = 1024 * 1024 - 5;
+        assertThat(storage.retrieve("images/1", offset, 2 * 1024 * 1024))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(bytes, offset, 2 * 1024 * 1024)));
+        assertThat(storage.retrieve("images/1", bytes.length - 4, 100))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(bytes, bytes.length - 4, 4)));
+        assertThat(storage.retrieve("images/1", bytes.length + 1, 100))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[0])));
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(bytes)));
+        assertThat(storage.getSizeInBytes()).isEqualTo(bytes.length);
+    }
+
+    @Test
+    void testRetrieveTwiceReturnsIndependentStreams() throws Exception {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        BinaryObject first = storage.retrieve("images/1").orElseThrow(IllegalStateException::new);
+        assertThat(first.getInputStream().read()).isEqualTo(1);
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject -> assertThat(binaryObject.getInputStream())
+                        .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    void testRetrieveIfNotKnown() {
+        Optional<BinaryObject> optional = storage.retrieve("unknown/path/1");
+        assertThat(optional).isEmpty();
+    }
+
+    @Test
+    void testGetMetadata() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+        assertThat(storage.getMetadata("unknown/path/1")).isEmpty();
+    }
+
+    @Test
+    void testHasBinaryObject() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("unknown/path/1")).isFalse();
+    }
+
+    @Test
+    void testDelete() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        storage.delete("images/1");
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.getSizeInBytes()).isZero();
+    }
+
+    @Test
+    void testList() {
+        for (String filePath : new String[]{"videos/1", "images/2", "images/1", "images-old/1"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries).containsExactly(new BinaryObjectSummary("images/1", createExampleMetadata()),
+                                                 new BinaryObjectSummary("images/2", createExampleMetadata()));
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath))
+                    .containsExactly("images-old/1", "images/1", "images/2");
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries).hasSize(4);
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("documents/")) {
+            assertThat(summaries).isEmpty();
+        }
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "test.jpg", "image/jpg");
+    }
+}
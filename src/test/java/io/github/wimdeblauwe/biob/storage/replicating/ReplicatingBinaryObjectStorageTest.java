@@ -0,0 +1,303 @@
+package io.github.wimdeblauwe.biob.storage.replicating;
+
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ReplicatingBinaryObjectStorageTest {
+
+    private FlakyBinaryObjectStorage first;
+    private FlakyBinaryObjectStorage second;
+    private FlakyBinaryObjectStorage third;
+
+    @BeforeEach
+    void setUp() {
+        first = new FlakyBinaryObjectStorage();
+        second = new FlakyBinaryObjectStorage();
+        third = new FlakyBinaryObjectStorage();
+    }
+
+    @Test
+    void testStoreWritesAllReplicas() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        byte[] bytes = createBytes(300 * 1024);
+
+        storage.store("images/1", createMetadata(bytes.length), new ByteArrayInputStream(bytes));
+
+        for (FlakyBinaryObjectStorage replica : new FlakyBinaryObjectStorage[]{first, second, third}) {
+            assertThat(readAll(replica.retrieve("images/1").get())).isEqualTo(bytes);
+        }
+        assertThat(readAll(storage.retrieve("images/1").get())).isEqualTo(bytes);
+        assertThat(storage.getMetadata("images/1")).hasValue(createMetadata(bytes.length));
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+    }
+
+    @Test
+    void testEmptyBinaryObject() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+
+        storage.store("images/1", createMetadata(0), new ByteArrayInputStream(new byte[0]));
+
+        assertThat(readAll(storage.retrieve("images/1").get())).isEmpty();
+        assertThat(third.hasBinaryObject("images/1")).isTrue();
+    }
+
+    @Test
+    void testStoreSucceedsWithWriteQuorum() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(2);
+        third.store("images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{9}));
+        third.failing = true;
+        byte[] bytes = createBytes(100 * 1024);
+
+        storage.store("images/1", createMetadata(bytes.length), new ByteArrayInputStream(bytes));
+
+        assertThat(readAll(first.retrieve("images/1").get())).isEqualTo(bytes);
+        assertThat(readAll(second.retrieve("images/1").get())).isEqualTo(bytes);
+        // The previous version is removed from the failed replica once all writes finished
+        third.failing = false;
+        awaitMissing(third, "images/1");
+    }
+
+    @Test
+    void testStoreFailsWithoutWriteQuorum() {
+        ReplicatingBinaryObjectStorage storage = createStorage(2);
+        second.failing = true;
+        third.failing = true;
+
+        assertThatThrownBy(() -> storage.store("images/1", createMetadata(3),
+                                               new ByteArrayInputStream(new byte[]{1, 2, 3})))
+                .isInstanceOf(BinaryObjectStorageException.class)
+                .hasMessageContaining("on 2 of 3 replicas");
+    }
+
+    @Test
+    void testFailingSourceKeepsPreviousVersion() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        storage.store("images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{9}));
+        InputStream failingInputStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+
+        assertThatThrownBy(() -> storage.store("images/1", createMetadata(3), failingInputStream))
+                .isInstanceOf(BinaryObjectStorageException.class)
+                .hasCauseInstanceOf(IOException.class);
+
+        assertThat(readAll(storage.retrieve("images/1").get())).containsExactly(9);
+    }
+
+    @Test
+    void testLaggingReplicaIsDroppedWhenQuorumRemains() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(2);
+        third.store("images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{9}));
+        CountDownLatch blocked = new CountDownLatch(1);
+        third.blockedStores = blocked;
+        byte[] bytes = createBytes(2 * 1024 * 1024);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> storage.store(
+                "images/1", createMetadata(bytes.length), new ByteArrayInputStream(bytes)));
+
+        assertThat(readAll(first.retrieve("images/1").get())).isEqualTo(bytes);
+        assertThat(readAll(second.retrieve("images/1").get())).isEqualTo(bytes);
+        blocked.countDown();
+        awaitMissing(third, "images/1");
+        assertThat(storage.repair().getRepairedCount()).isEqualTo(1);
+        assertThat(readAll(third.retrieve("images/1").get())).isEqualTo(bytes);
+    }
+
+    @Test
+    void testSourceFailingWithRuntimeExceptionReleasesPath() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        InputStream failingInputStream = new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("Broken source");
+            }
+        };
+
+        assertThatThrownBy(() -> storage.store("images/1", createMetadata(3), failingInputStream))
+                .isInstanceOf(IllegalStateException.class);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> storage.store(
+                "images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{9})));
+
+        assertThat(readAll(storage.retrieve("images/1").get())).containsExactly(9);
+    }
+
+    @Test
+    void testStoreClosesInputStream() {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream inputStream = new ByteArrayInputStream(new byte[]{1, 2, 3}) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        storage.store("images/1", createMetadata(3), inputStream);
+
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    void testReadFallsBackToReplicaThatHasTheBinaryObject() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        third.store("images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{7}));
+
+        assertThat(readAll(storage.retrieve("images/1").get())).containsExactly(7);
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.retrieve("images/2")).isEmpty();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testReadFailsWhenAbsenceIsNotCertain() {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        second.failing = true;
+
+        assertThatThrownBy(() -> storage.getMetadata("images/1"))
+                .isInstanceOf(BinaryObjectStorageException.class);
+    }
+
+    @Test
+    void testHedgedReadIsAnsweredBySecondReplica() {
+        ReplicatingBinaryObjectStorage storage = ReplicatingBinaryObjectStorage.builder()
+                                                                               .replica(first)
+                                                                               .replica(second)
+                                                                               .hedgeAfter(Duration.ofMillis(10))
+                                                                               .build();
+        storage.store("images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{7}));
+        first.blocked = new CountDownLatch(1);
+        try {
+            assertThat(storage.getMetadata("images/1")).hasValue(createMetadata(1));
+        } finally {
+            first.blocked.countDown();
+        }
+    }
+
+    @Test
+    void testDeleteAndList() {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        storage.store("images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{1}));
+        storage.store("images/2", createMetadata(1), new ByteArrayInputStream(new byte[]{2}));
+        third.store("images/3", createMetadata(1), new ByteArrayInputStream(new byte[]{3}));
+
+        storage.delete("images/2");
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath).collect(Collectors.toList()))
+                    .containsExactly("images/1", "images/3");
+        }
+        assertThat(first.hasBinaryObject("images/2")).isFalse();
+        assertThat(third.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testRepairCopiesMissingReplicas() throws IOException {
+        ReplicatingBinaryObjectStorage storage = createStorage(3);
+        storage.store("images/1", createMetadata(1), new ByteArrayInputStream(new byte[]{1}));
+        second.store("images/2", createMetadata(1), new ByteArrayInputStream(new byte[]{2}));
+        first.delete("images/1");
+
+        RepairResult result = storage.repair();
+
+        assertThat(result.getCheckedCount()).isEqualTo(2);
+        assertThat(result.getRepairedCount()).isEqualTo(3);
+        assertThat(result.getFailedCount()).isZero();
+        assertThat(readAll(first.retrieve("images/1").get())).containsExactly(1);
+        assertThat(readAll(first.retrieve("images/2").get())).containsExactly(2);
+        assertThat(readAll(third.retrieve("images/2").get())).containsExactly(2);
+        assertThat(storage.repair().getRepairedCount()).isZero();
+    }
+
+    private ReplicatingBinaryObjectStorage createStorage(int writeQuorum) {
+        return ReplicatingBinaryObjectStorage.builder()
+                                             .replica(first)
+                                             .replica(second)
+                                             .replica(third)
+                                             .writeQuorum(writeQuorum)
+                                             .build();
+    }
+
+    private static void awaitMissing(FlakyBinaryObjectStorage replica, String filePath) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (replica.hasBinaryObject(filePath) && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        assertThat(replica.hasBinaryObject(filePath)).isFalse();
+    }
+
+    private static byte[] readAll(BinaryObject binaryObject) throws IOException {
+        try (InputStream inputStream = binaryObject.getInputStream()) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    private static byte[] createBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static BinaryObjectMetadata createMetadata(long size) {
+        return new BinaryObjectMetadata(size, "test.bin", "application/octet-stream");
+    }
+
+    private static class FlakyBinaryObjectStorage extends InMemoryBinaryObjectStorage {
+        private volatile boolean failing;
+        private volatile CountDownLatch blocked;
+        private volatile CountDownLatch blockedStores;
+
+        @Override
+        public void store(String filePath, BinaryObjectMetadata metadata, InputStream inputStream) {
+            if (failing) {
+                throw new BinaryObjectStorageException("Disk failure");
+            }
+            if (blockedStores != null) {
+                try {
+                    blockedStores.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.store(filePath, metadata, inputStream);
+        }
+
+        @Override
+        public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+            if (failing) {
+                throw new BinaryObjectStorageException("Disk failure");
+            }
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getMetadata(filePath);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package io.github.wimdeblauwe.biob.storage.segment;
+
+import com.google.common.io.ByteStreams;
+import io.github.wimdeblauwe.biob.BinaryObject;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.BinaryObjectStorageException;
+import io.github.wimdeblauwe.biob.Checksum;
+import io.github.wimdeblauwe.biob.ChecksumAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class SegmentBinaryObjectStorageTest {
+
+    @TempDir
+    Path directory;
+    private SegmentBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new SegmentBinaryObjectStorage(directory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void testStoreAndRetrieve() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertThat(storage.retrieve("images/1"))
+                .hasValueSatisfying(binaryObject ->
+                                    {
+                                        assertThat(binaryObject.getInputStream())
+                                                .hasSameContentAs(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+                                        assertThat(binaryObject.getMetadata())
+                                                .isEqualTo(createExampleMetadata());
+                                    });
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+    }
+
+    @Test
+    void testRetrieveIfNotKnown() {
+        assertThat(storage.retrieve("unknown/path/1")).isEmpty();
+        assertThat(storage.getMetadata("unknown/path/1")).isEmpty();
+        assertThat(storage.hasBinaryObject("unknown/path/1")).isFalse();
+    }
+
+    @Test
+    void testRetrieveRange() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+
+        assertThat(read(storage.retrieve("images/1", 1, 3))).isEqualTo(new byte[]{2, 3, 4});
+        assertThat(read(storage.retrieve("images/1", 3, 10))).isEqualTo(new byte[]{4, 5});
+        assertThat(read(storage.retrieve("images/1", 10, 10))).isEmpty();
+        assertThat(storage.retrieve("unknown/path/1", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void testOverwriteAndDelete() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        assertThat(read(storage.retrieve("images/1"))).isEqualTo(new byte[]{4, 5, 6});
+
+        storage.delete("images/1");
+        storage.delete("unknown/path/1");
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.retrieve("images/1")).isEmpty();
+    }
+
+    @Test
+    void testStoresAllObjectsInFewFiles() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[]{(byte) i}));
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+        assertThat(read(storage.retrieve("images/42"))).isEqualTo(new byte[]{42});
+    }
+
+    @Test
+    void testRollsOverToNewSegment() throws IOException {
+        storage.close();
+        storage = SegmentBinaryObjectStorage.builder(directory)
+                                            .maximumSegmentSize(1024)
+                                            .build();
+        for (int i = 0; i < 20; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[200]));
+        }
+
+        assertThat(storage.getSegmentCount()).isGreaterThan(1);
+        assertThat(read(storage.retrieve("images/0"))).hasSize(200);
+        assertThat(read(storage.retrieve("images/19"))).hasSize(200);
+    }
+
+    @Test
+    void testObjectLargerThanMaximumSize() {
+        storage.close();
+        storage = SegmentBinaryObjectStorage.builder(directory)
+                                            .maximumObjectSize(2)
+                                            .build();
+
+        assertThatThrownBy(() -> storage.store("images/1", createExampleMetadata(),
+                                               new ByteArrayInputStream(new byte[]{1, 2, 3})))
+                .isInstanceOf(BinaryObjectStorageException.class);
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+    }
+
+    @Test
+    void testReopenFromSnapshot() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        storage.delete("images/2");
+        storage.close();
+        assertThat(directory.resolve("index.snapshot")).exists();
+
+        storage = new SegmentBinaryObjectStorage(directory);
+
+        assertThat(read(storage.retrieve("images/1"))).isEqualTo(new byte[]{1, 2, 3});
+        assertThat(storage.getMetadata("images/1")).hasValue(createExampleMetadata());
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testReopenReadsRecordsAppendedAfterSnapshot() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.checkpoint();
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        storage.delete("images/1");
+
+        // Reopen without closing, as if the process stopped
+        SegmentBinaryObjectStorage reopened = new SegmentBinaryObjectStorage(directory);
+        try {
+            assertThat(reopened.hasBinaryObject("images/1")).isFalse();
+            assertThat(read(reopened.retrieve("images/2"))).isEqualTo(new byte[]{4, 5, 6});
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void testReopenWithoutSnapshotIgnoresIncompleteRecord() throws IOException {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        storage.close();
+        Files.delete(directory.resolve("index.snapshot"));
+        Path segmentFile = findSegmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        storage = new SegmentBinaryObjectStorage(directory);
+
+        assertThat(read(storage.retrieve("images/1"))).isEqualTo(new byte[]{1, 2, 3});
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+        storage.store("images/3", createExampleMetadata(), new ByteArrayInputStream(new byte[]{7}));
+        assertThat(read(storage.retrieve("images/3"))).isEqualTo(new byte[]{7});
+    }
+
+    @Test
+    void testChecksumIsKeptInRecordsAndSnapshot() throws IOException {
+        byte[] bytes = {1, 2, 3};
+        BinaryObjectMetadata metadata = new BinaryObjectMetadata(
+                3, "my-image.png", "image/png",
+                new Checksum(ChecksumAlgorithm.SHA256, ChecksumAlgorithm.SHA256.getHashFunction().hashBytes(bytes)
+                                                                               .toString()));
+        storage.store("images/1", metadata, new ByteArrayInputStream(bytes));
+        storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(bytes));
+        assertThat(storage.getMetadata("images/1")).hasValue(metadata);
+
+        // From the snapshot
+        storage.close();
+        storage = new SegmentBinaryObjectStorage(directory);
+        assertThat(storage.getMetadata("images/1")).hasValue(metadata);
+        assertThat(storage.getMetadata("images/2")).hasValue(createExampleMetadata());
+
+        // From the records in the segment
+        storage.close();
+        Files.delete(directory.resolve("index.snapshot"));
+        storage = new SegmentBinaryObjectStorage(directory);
+        assertThat(storage.getMetadata("images/1")).hasValue(metadata);
+        assertThat(storage.getMetadata("images/2")).hasValue(createExampleMetadata());
+        assertThat(read(storage.retrieve("images/1"))).isEqualTo(bytes);
+    }
+
+    @Test
+    void testReopenFailsOnDamagedOlderSegment() throws IOException {
+        storage.close();
+        storage = SegmentBinaryObjectStorage.builder(directory)
+                                            .maximumSegmentSize(1024)
+                                            .build();
+        for (int i = 0; i < 20; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[200]));
+        }
+        storage.close();
+        Files.delete(directory.resolve("index.snapshot"));
+        Path segmentFile = findSegmentFiles().get(0);
+        long size = Files.size(segmentFile);
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.WRITE)) {
+            // Flip a byte in the payload of the last record
+            channel.write(ByteBuffer.wrap(new byte[]{1}), size - 10);
+        }
+
+        assertThatThrownBy(() -> new SegmentBinaryObjectStorage(directory))
+                .isInstanceOf(BinaryObjectStorageException.class)
+                .satisfies(e -> assertThat(e.getCause()).hasMessageStartingWith("Segment 1 is damaged at offset"));
+        assertThat(Files.size(segmentFile)).isEqualTo(size);
+    }
+
+    @Test
+    void testInterruptedReaderDoesNotBreakTheSegment() {
+        storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // The interrupt closes the channel that all threads share
+            Thread.currentThread().interrupt();
+            assertThat(read(storage.retrieve("images/1"))).isEqualTo(new byte[]{1, 2, 3});
+            assertThat(Thread.interrupted()).isTrue();
+
+            assertThat(read(storage.retrieve("images/1"))).isEqualTo(new byte[]{1, 2, 3});
+            storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+            assertThat(read(storage.retrieve("images/2"))).isEqualTo(new byte[]{4, 5, 6});
+        });
+    }
+
+    @Test
+    void testInterruptedWriterDoesNotBreakTheSegment() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            Thread.currentThread().interrupt();
+            storage.store("images/1", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+            assertThat(Thread.interrupted()).isTrue();
+
+            storage.store("images/2", createExampleMetadata(), new ByteArrayInputStream(new byte[]{4, 5, 6}));
+            assertThat(read(storage.retrieve("images/1"))).isEqualTo(new byte[]{1, 2, 3});
+            assertThat(read(storage.retrieve("images/2"))).isEqualTo(new byte[]{4, 5, 6});
+        });
+        storage.close();
+        storage = new SegmentBinaryObjectStorage(directory);
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("images/2")).isTrue();
+    }
+
+    @Test
+    void testCompactionReclaimsSpace() throws IOException {
+        storage.close();
+        storage = SegmentBinaryObjectStorage.builder(directory)
+                                            .maximumSegmentSize(4096)
+                                            .build();
+        for (int i = 0; i < 50; i++) {
+            storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[500]));
+        }
+        for (int i = 0; i < 50; i++) {
+            if (i % 10 != 0) {
+                storage.delete("images/" + i);
+            }
+        }
+        storage.store("images/0", createExampleMetadata(), new ByteArrayInputStream(new byte[]{1}));
+        long sizeBeforeCompaction = storage.getSizeInBytes();
+
+        assertThat(storage.compact()).isGreaterThan(0);
+
+        assertThat(storage.getSizeInBytes()).isLessThan(sizeBeforeCompaction / 2);
+        assertThat(read(storage.retrieve("images/0"))).isEqualTo(new byte[]{1});
+        for (int i = 1; i < 50; i++) {
+            assertThat(storage.hasBinaryObject("images/" + i)).isEqualTo(i % 10 == 0);
+        }
+        assertThat(read(storage.retrieve("images/40"))).hasSize(500);
+
+        // Reading all segments again gives the same result, so no deleted object comes back
+        storage.close();
+        Files.delete(directory.resolve("index.snapshot"));
+        storage = new SegmentBinaryObjectStorage(directory);
+        for (int i = 1; i < 50; i++) {
+            assertThat(storage.hasBinaryObject("images/" + i)).isEqualTo(i % 10 == 0);
+        }
+        assertThat(read(storage.retrieve("images/0"))).isEqualTo(new byte[]{1});
+    }
+
+    @Test
+    void testBackgroundCompaction() throws Exception {
+        storage.close();
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        try {
+            storage = SegmentBinaryObjectStorage.builder(directory)
+                                                .maximumSegmentSize(1024)
+                                                .compactionSchedule(executorService, Duration.ofMillis(10))
+                                                .build();
+            for (int i = 0; i < 20; i++) {
+                storage.store("images/" + i, createExampleMetadata(), new ByteArrayInputStream(new byte[200]));
+                storage.delete("images/" + i);
+            }
+            int segmentCount = storage.getSegmentCount();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (storage.getSegmentCount() >= segmentCount && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(storage.getSegmentCount()).isLessThan(segmentCount);
+        } finally {
+            storage.close();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentStoresRetrievesAndCompaction() throws Exception {
+        storage.close();
+        storage = SegmentBinaryObjectStorage.builder(directory)
+                                            .maximumSegmentSize(8192)
+                                            .build();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int threadNumber = thread;
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        String filePath = "images/" + threadNumber + "/" + (i % 10);
+                        byte[] bytes = {(byte) threadNumber, (byte) i};
+                        storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(bytes));
+                        assertThat(read(storage.retrieve(filePath))).hasSize(2);
+                        if (i % 50 == 0) {
+                            storage.compact();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertThat(read(storage.retrieve("images/3/9"))).isEqualTo(new byte[]{3, (byte) 199});
+    }
+
+    private List<Path> findSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segmentFiles = new ArrayList<>();
+            files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted()
+                 .forEach(segmentFiles::add);
+            return segmentFiles;
+        }
+    }
+
+    private static byte[] read(Optional<BinaryObject> binaryObject) throws IOException {
+        assertThat(binaryObject).isPresent();
+        try (InputStream inputStream = binaryObject.get().getInputStream()) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    @Test
+    void testList() {
+        for (String filePath : new String[]{"videos/1", "images/2", "images/1", "images-old/1"}) {
+            storage.store(filePath, createExampleMetadata(), new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        }
+
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries).containsExactly(new BinaryObjectSummary("images/1", createExampleMetadata()),
+                                                 new BinaryObjectSummary("images/2", createExampleMetadata()));
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath))
+                    .containsExactly("images-old/1", "images/1", "images/2");
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("")) {
+            assertThat(summaries).hasSize(4);
+        }
+        try (Stream<BinaryObjectSummary> summaries = storage.list("documents/")) {
+            assertThat(summaries).isEmpty();
+        }
+    }
+
+    private BinaryObjectMetadata createExampleMetadata() {
+        return new BinaryObjectMetadata(3, "my-image.png", "image/png");
+    }
+}
@@ -0,0 +1,264 @@
+package io.github.wimdeblauwe.biob.storage.tiered;
+
+import com.google.common.base.Ticker;
+import io.github.wimdeblauwe.biob.BinaryObjectMetadata;
+import io.github.wimdeblauwe.biob.BinaryObjectSummary;
+import io.github.wimdeblauwe.biob.storage.inmemory.InMemoryBinaryObjectStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TieredBinaryObjectStorageTest {
+
+    private CountingBinaryObjectStorage hot;
+    private CountingBinaryObjectStorage cold;
+    private FakeTicker ticker;
+    private TieredBinaryObjectStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        hot = new CountingBinaryObjectStorage();
+        cold = new CountingBinaryObjectStorage();
+        ticker = new FakeTicker();
+        storage = TieredBinaryObjectStorage.builder()
+                                           .tier(hot, 10)
+                                           .tier(cold)
+                                           .watermarks(1.0, 0.5)
+                                           .ticker(ticker)
+                                           .build();
+    }
+
+    @Test
+    void testNeedsAtLeastTwoTiers() {
+        assertThatThrownBy(() -> TieredBinaryObjectStorage.builder().tier(hot).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testStoreGoesToFastestTierWithRoom() throws IOException {
+        store("images/1", 6);
+        store("images/2", 6);
+
+        assertThat(storage.getTierIndex("images/1")).hasValue(0);
+        assertThat(storage.getTierIndex("images/2")).hasValue(1);
+        assertThat(hot.hasBinaryObject("images/1")).isTrue();
+        assertThat(cold.hasBinaryObject("images/2")).isTrue();
+        assertThat(storage.getUsedBytes(0)).isEqualTo(6);
+        try (InputStream inputStream = storage.retrieve("images/2").get().getInputStream()) {
+            assertThat(inputStream).hasSameContentAs(new ByteArrayInputStream(new byte[6]));
+        }
+    }
+
+    @Test
+    void testOverwriteRemovesPreviousTier() {
+        store("images/1", 6);
+        store("images/2", 3);
+        store("images/1", 8);
+
+        assertThat(storage.getTierIndex("images/1")).hasValue(1);
+        assertThat(hot.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.getUsedBytes(0)).isEqualTo(3);
+        assertThat(storage.getMetadata("images/1")).hasValueSatisfying(
+                metadata -> assertThat(metadata.getFileSize()).isEqualTo(8));
+    }
+
+    @Test
+    void testOverwriteToSlowerTierNeverLeavesPreviousVersionToReload() {
+        store("images/1", 6);
+        // Stops the storage between deleting from one tier and storing in the other
+        hot.failDeletes = true;
+
+        assertThatThrownBy(() -> store("images/1", 8)).isInstanceOf(IllegalStateException.class);
+        TieredBinaryObjectStorage reopened = TieredBinaryObjectStorage.builder()
+                                                                      .tier(hot, 10)
+                                                                      .tier(cold)
+                                                                      .build();
+
+        assertThat(reopened.getMetadata("images/1")).isEqualTo(storage.getMetadata("images/1"));
+    }
+
+    @Test
+    void testMetadataIsResolvedWithoutAccessingTiers() {
+        store("images/1", 3);
+        hot.calls.set(0);
+        cold.calls.set(0);
+
+        assertThat(storage.hasBinaryObject("images/1")).isTrue();
+        assertThat(storage.hasBinaryObject("images/2")).isFalse();
+        assertThat(storage.getMetadata("images/1")).isPresent();
+        assertThat(storage.getMetadata("images/2")).isEmpty();
+        try (Stream<BinaryObjectSummary> summaries = storage.list("images/")) {
+            assertThat(summaries.map(BinaryObjectSummary::getFilePath).collect(Collectors.toList()))
+                    .containsExactly("images/1");
+        }
+
+        assertThat(hot.calls).hasValue(0);
+        assertThat(cold.calls).hasValue(0);
+    }
+
+    @Test
+    void testPromoteOnRepeatedAccess() throws IOException {
+        store("images/1", 8);
+        store("images/2", 4);
+        storage.delete("images/1");
+
+        storage.retrieve("images/2").get().getInputStream().close();
+        assertThat(storage.moveObjects().getPromotedCount()).isZero();
+        storage.retrieve("images/2").get().getInputStream().close();
+        storage.retrieve("images/2").get().getInputStream().close();
+        MoveResult result = storage.moveObjects();
+
+        assertThat(result.getPromotedCount()).isEqualTo(1);
+        assertThat(storage.getTierIndex("images/2")).hasValue(0);
+        assertThat(hot.hasBinaryObject("images/2")).isTrue();
+        assertThat(cold.hasBinaryObject("images/2")).isFalse();
+    }
+
+    @Test
+    void testDemoteByAge() {
+        storage = TieredBinaryObjectStorage.builder()
+                                           .tier(hot, 10)
+                                           .tier(cold)
+                                           .demoteAfter(Duration.ofMinutes(10))
+                                           .ticker(ticker)
+                                           .build();
+        store("images/1", 2);
+        ticker.advance(5, TimeUnit.MINUTES);
+        store("images/2", 2);
+        ticker.advance(6, TimeUnit.MINUTES);
+
+        MoveResult result = storage.moveObjects();
+
+        assertThat(result.getDemotedCount()).isEqualTo(1);
+        assertThat(storage.getTierIndex("images/1")).hasValue(1);
+        assertThat(storage.getTierIndex("images/2")).hasValue(0);
+        assertThat(storage.getUsedBytes(0)).isEqualTo(2);
+        assertThat(storage.getUsedBytes(1)).isEqualTo(2);
+    }
+
+    @Test
+    void testDemoteLeastRecentlyAccessedAboveHighWatermark() throws IOException {
+        storage = TieredBinaryObjectStorage.builder()
+                                           .tier(hot, 10)
+                                           .tier(cold)
+                                           .watermarks(0.8, 0.5)
+                                           .ticker(ticker)
+                                           .build();
+        store("images/1", 3);
+        ticker.advance(1, TimeUnit.SECONDS);
+        store("images/2", 3);
+        ticker.advance(1, TimeUnit.SECONDS);
+        store("images/3", 3);
+        ticker.advance(1, TimeUnit.SECONDS);
+        storage.retrieve("images/1").get().getInputStream().close();
+        assertThat(storage.getUsedBytes(0)).isEqualTo(9);
+
+        MoveResult result = storage.moveObjects();
+
+        assertThat(result.getDemotedCount()).isEqualTo(2);
+        assertThat(storage.getTierIndex("images/1")).hasValue(0);
+        assertThat(storage.getTierIndex("images/2")).hasValue(1);
+        assertThat(storage.getTierIndex("images/3")).hasValue(1);
+        assertThat(storage.getUsedBytes(0)).isEqualTo(3);
+    }
+
+    @Test
+    void testIndexIsBuiltFromTiers() {
+        store("images/1", 6);
+        store("images/2", 6);
+        // Left behind in both tiers by an interrupted move
+        cold.store("images/1", createMetadata(6), new ByteArrayInputStream(new byte[6]));
+
+        TieredBinaryObjectStorage reopened = TieredBinaryObjectStorage.builder()
+                                                                      .tier(hot, 10)
+                                                                      .tier(cold)
+                                                                      .build();
+
+        assertThat(reopened.getTierIndex("images/1")).hasValue(0);
+        assertThat(reopened.getTierIndex("images/2")).hasValue(1);
+        assertThat(cold.hasBinaryObject("images/1")).isFalse();
+        assertThat(reopened.getUsedBytes(0)).isEqualTo(6);
+        assertThat(reopened.getUsedBytes(1)).isEqualTo(6);
+    }
+
+    @Test
+    void testDelete() {
+        store("images/1", 6);
+        store("images/2", 6);
+
+        storage.delete("images/1");
+        storage.delete("images/2");
+        storage.delete("images/3");
+
+        assertThat(storage.hasBinaryObject("images/1")).isFalse();
+        assertThat(storage.retrieve("images/2")).isEmpty();
+        assertThat(hot.hasBinaryObject("images/1")).isFalse();
+        assertThat(cold.hasBinaryObject("images/2")).isFalse();
+        assertThat(storage.getUsedBytes(0)).isZero();
+    }
+
+    private void store(String filePath, int size) {
+        storage.store(filePath, createMetadata(size), new ByteArrayInputStream(new byte[size]));
+    }
+
+    private static BinaryObjectMetadata createMetadata(int size) {
+        return new BinaryObjectMetadata(size, "test.bin", "application/octet-stream");
+    }
+
+    private static class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+    }
+
+    private static class CountingBinaryObjectStorage extends InMemoryBinaryObjectStorage {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failDeletes;
+
+        @Override
+        public void delete(String filePath) {
+            if (failDeletes) {
+                throw new IllegalStateException("Stopped before deleting " + filePath);
+            }
+            super.delete(filePath);
+        }
+
+        @Override
+        public Optional<BinaryObjectMetadata> getMetadata(String filePath) {
+            calls.incrementAndGet();
+            return super.getMetadata(filePath);
+        }
+
+        @Override
+        public boolean hasBinaryObject(String filePath) {
+            calls.incrementAndGet();
+            return super.hasBinaryObject(filePath);
+        }
+
+        @Override
+        public Stream<BinaryObjectSummary> list(String prefix) {
+            calls.incrementAndGet();
+            return super.list(prefix);
+        }
+    }
+}